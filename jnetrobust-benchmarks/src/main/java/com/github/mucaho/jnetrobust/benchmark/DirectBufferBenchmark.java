@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.benchmark;
+
+import com.github.mucaho.jnetrobust.Protocol;
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.control.Segment;
+import com.github.mucaho.jnetrobust.controller.Packet;
+import com.github.mucaho.jnetrobust.util.BufferArena;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares heap and direct (off-heap) data buffers,
+ * when encoding packets into a datagram buffer and handing it over to a <code>DatagramChannel</code>.
+ * <br />
+ * Besides throughput, the amount of bytes copied per datagram is reported:
+ * <code>copiedBytes / datagrams</code>.
+ * Encoding copies the packet into the datagram buffer.
+ * Writing a heap datagram buffer to a channel additionally copies it into a temporary direct buffer inside the JDK.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DirectBufferBenchmark {
+    @Param({"false", "true"})
+    public boolean direct;
+
+    @Param({"16", "256", "768"})
+    public int dataSize;
+
+    private boolean useDirectBuffers;
+    private ByteBuffer data;
+    private Packet packet;
+    private ByteBuffer datagram;
+    private DatagramChannel receiver;
+    private DatagramChannel sender;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class CopyCounters {
+        public long copiedBytes;
+        public long datagrams;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            copiedBytes = 0L;
+            datagrams = 0L;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        useDirectBuffers = ProtocolConfig.useDirectBuffers();
+        ProtocolConfig.setUseDirectBuffers(direct);
+        BufferArena.instance.clear();
+
+        data = ByteBuffer.allocate(dataSize);
+        while (data.hasRemaining())
+            data.put((byte) data.position());
+        data.flip();
+
+        packet = new Protocol(new ProtocolConfig()).send(data).lastEntry().getValue().clone();
+        data.rewind();
+
+        datagram = direct
+                ? ByteBuffer.allocateDirect(ProtocolConfig.getHighestPossibleMTUSize())
+                : ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+
+        receiver = DatagramChannel.open();
+        receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        sender = DatagramChannel.open();
+        sender.connect(receiver.getLocalAddress());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+        packet.release();
+        ProtocolConfig.setUseDirectBuffers(useDirectBuffers);
+    }
+
+    @Benchmark
+    public Segment produce(CopyCounters counters) {
+        Segment segment = Segment.obtain((short) 0, data);
+        data.rewind();
+        segment.release();
+
+        counters.copiedBytes += dataSize;
+        return segment;
+    }
+
+    @Benchmark
+    public int encode(CopyCounters counters) {
+        datagram.clear();
+        Packet.writeExternalStatic(packet, datagram);
+        datagram.flip();
+
+        counters.copiedBytes += datagram.remaining();
+        counters.datagrams++;
+        return datagram.remaining();
+    }
+
+    @Benchmark
+    public int encodeAndSend(CopyCounters counters) throws IOException {
+        int size = encode(counters);
+        if (!datagram.isDirect())
+            counters.copiedBytes += size;
+
+        return sender.write(datagram);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.benchmark;
+
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.ProtocolListener;
+import com.github.mucaho.jnetrobust.controller.PacingController;
+import com.github.mucaho.jnetrobust.controller.PackagingController;
+import com.github.mucaho.jnetrobust.controller.Packet;
+import com.github.mucaho.jnetrobust.controller.ProcessingController;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares bursting out the packets of each send invocation with {@link PacingController pacing} them,
+ * at the same offered load, over an emulated bottleneck link.
+ * <br />
+ * The link forwards a fixed number of bytes per millisecond and queues at most a few packets, like a shallow
+ * router queue, thus packets that arrive while its queue is full are dropped.
+ * Time is simulated in millisecond steps, each operation covers one send interval.
+ * The {@link LinkCounters link counters} report how many packets were delivered and dropped by the link.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacingBenchmark {
+    private static final int SEND_INTERVAL = 50; // ms
+    private static final int DATAS_PER_INTERVAL = 8;
+    private static final int DATA_SIZE = 400;
+    // bytes per ms, slightly above the offered load
+    private static final int LINK_RATE = 80;
+    private static final int LINK_QUEUE_CAPACITY = 3 * 1024;
+    // bytes per s, between the offered load and the link rate
+    private static final int PACING_RATE = 75 * 1024;
+
+    @Param({"false", "true"})
+    public boolean paced;
+
+    /**
+     * Counts the packets delivered and dropped by the link.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class LinkCounters {
+        public long deliveredPackets;
+        public long deliveredBytes;
+        public long droppedPackets;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            deliveredPackets = 0L;
+            deliveredBytes = 0L;
+            droppedPackets = 0L;
+        }
+    }
+
+    private PackagingController controller;
+    private PacingController pacingController;
+    private final List<ByteBuffer> datas = new ArrayList<ByteBuffer>();
+
+    private long timeNow;
+    private long linkTime;
+    private long linkQueuedBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ProtocolConfig config = new ProtocolConfig();
+        // no acknowledgements are sent back over the emulated link
+        config.setAutoRetransmitMode(ProtocolConfig.AutoRetransmitMode.NEVER);
+        controller = new PackagingController(new ProcessingController(new ProtocolListener(), config));
+        pacingController = new PacingController(controller, PACING_RATE);
+
+        for (int i = 0; i < DATAS_PER_INTERVAL; ++i)
+            datas.add(ByteBuffer.allocate(DATA_SIZE));
+
+        timeNow = 0L;
+        linkTime = 0L;
+        linkQueuedBytes = 0L;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Packet packet = pacingController.poll(Long.MAX_VALUE / 2);
+        while (packet != null) {
+            packet.release();
+            packet = pacingController.poll(Long.MAX_VALUE / 2);
+        }
+    }
+
+    @Benchmark
+    public long sendInterval(LinkCounters counters) {
+        for (int i = 0; i < DATAS_PER_INTERVAL; ++i)
+            datas.get(i).rewind();
+        NavigableMap<Short, Packet> packets = controller.send(datas);
+
+        if (paced) {
+            pacingController.pace(packets);
+        } else {
+            for (Packet packet : packets.values())
+                transmit(packet.getSize(), counters);
+        }
+
+        for (long end = timeNow + SEND_INTERVAL; timeNow < end; ++timeNow) {
+            drainLink();
+
+            Packet packet = pacingController.poll(timeNow);
+            while (packet != null) {
+                transmit(packet.getSize(), counters);
+                packet.release();
+                packet = pacingController.poll(timeNow);
+            }
+        }
+
+        return linkQueuedBytes;
+    }
+
+    private void drainLink() {
+        linkQueuedBytes = Math.max(linkQueuedBytes - (timeNow - linkTime) * LINK_RATE, 0L);
+        linkTime = timeNow;
+    }
+
+    private void transmit(int packetSize, LinkCounters counters) {
+        drainLink();
+
+        if (linkQueuedBytes + packetSize > LINK_QUEUE_CAPACITY) {
+            counters.droppedPackets++;
+        } else {
+            linkQueuedBytes += packetSize;
+            counters.deliveredPackets++;
+            counters.deliveredBytes += packetSize;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.benchmark;
+
+import com.github.mucaho.jnetrobust.Protocol;
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.controller.Packet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding and decoding packets through the <code>ObjectOutput</code> / <code>ObjectInput</code> streams
+ * with the <code>ByteBuffer</code> codec, which encodes packets directly into the datagram buffer,
+ * and with the gathering codec, which only encodes the headers and references the stored segment datas.
+ * <br />
+ * Each received datagram has to be decoded on its own, thus a new <code>ObjectInputStream</code> is created per decode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketCodecBenchmark {
+    @Param({"16", "256", "768"})
+    public int dataSize;
+
+    private Packet packet;
+
+    private ByteArrayOutputStream outStream;
+    private ObjectOutputStream objectOutput;
+    private byte[] objectBytes;
+
+    private ByteBuffer outBuffer;
+    private ByteBuffer datagram;
+
+    private ByteBuffer headerBuffer;
+    private ByteBuffer[] gatheringBuffers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(dataSize);
+        while (data.hasRemaining())
+            data.put((byte) data.position());
+        data.flip();
+
+        packet = new Protocol(new ProtocolConfig()).send(data).lastEntry().getValue().clone();
+
+        outStream = new ByteArrayOutputStream(ProtocolConfig.getHighestPossibleMTUSize());
+        objectOutput = new ObjectOutputStream(outStream);
+        objectOutput.flush();
+        outStream.reset();
+
+        ByteArrayOutputStream objectBytesStream = new ByteArrayOutputStream();
+        ObjectOutputStream objectBytesOutput = new ObjectOutputStream(objectBytesStream);
+        Packet.writeExternalStatic(packet, objectBytesOutput);
+        objectBytesOutput.close();
+        objectBytes = objectBytesStream.toByteArray();
+
+        outBuffer = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        Packet.writeExternalStatic(packet, datagram);
+        datagram.flip();
+
+        headerBuffer = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        gatheringBuffers = new ByteBuffer[Packet.getMaximumGatheringBufferCount(packet.getSegments().size())];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        packet.release();
+    }
+
+    @Benchmark
+    public int encodeObjectOutput() throws IOException {
+        outStream.reset();
+        Packet.writeExternalStatic(packet, objectOutput);
+        objectOutput.flush();
+        return outStream.size();
+    }
+
+    @Benchmark
+    public int encodeByteBuffer() {
+        return Packet.writeExternalStatic(packet, outBuffer, 0);
+    }
+
+    @Benchmark
+    public int encodeGathering() {
+        headerBuffer.clear();
+        return Packet.writeExternalStatic(packet, headerBuffer, gatheringBuffers);
+    }
+
+    @Benchmark
+    public Short decodeObjectInput() throws IOException, ClassNotFoundException {
+        ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(objectBytes));
+        Packet inPacket = Packet.readExternalStatic(objectInput);
+        Short transmissionAck = inPacket.getTransmissionAck();
+        inPacket.release();
+        return transmissionAck;
+    }
+
+    @Benchmark
+    public Short decodeByteBuffer() {
+        Packet inPacket = Packet.readExternalStatic(datagram, 0);
+        Short transmissionAck = inPacket.getTransmissionAck();
+        inPacket.release();
+        return transmissionAck;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.benchmark;
+
+import com.github.mucaho.jnetrobust.util.IdComparator;
+import com.github.mucaho.jnetrobust.util.ShortWindowMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the <code>TreeMap</code> key index previously used by the segment maps with the {@link ShortWindowMap},
+ * on the access pattern of a sliding id window:
+ * each operation inserts the next id, looks up and navigates around a recent id and evicts the oldest id.
+ * Ids wrap around during the benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SegmentMapBenchmark {
+    @Param({"32", "256", "1024"})
+    public int windowSize;
+
+    private final Object value = new Object();
+
+    private TreeMap<Short, Object> treeMap;
+    private ShortWindowMap<Object> windowMap;
+    private short treeMapNextId;
+    private short windowMapNextId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        treeMap = new TreeMap<Short, Object>(IdComparator.instance);
+        windowMap = new ShortWindowMap<Object>();
+
+        treeMapNextId = windowMapNextId = (short) (Short.MAX_VALUE - windowSize / 2);
+        for (int i = 0; i < windowSize; ++i) {
+            treeMap.put(treeMapNextId++, value);
+            windowMap.put(windowMapNextId++, value);
+        }
+    }
+
+    @Benchmark
+    public Object treeMap() {
+        Short id = treeMapNextId++;
+        treeMap.put(id, value);
+
+        Short recentId = (short) (id - 3);
+        Object recent = treeMap.remove(recentId);
+        Short higherId = treeMap.higherKey(recentId);
+        Short lowerId = treeMap.lowerKey(recentId);
+        treeMap.put(recentId, recent);
+
+        treeMap.remove(treeMap.firstKey());
+        return treeMap.get(higherId) != null ? lowerId : higherId;
+    }
+
+    @Benchmark
+    public Object windowMap() {
+        Short id = windowMapNextId++;
+        windowMap.put(id, value);
+
+        Short recentId = (short) (id - 3);
+        Object recent = windowMap.remove(recentId);
+        Short higherId = windowMap.higherKey(recentId);
+        Short lowerId = windowMap.lowerKey(recentId);
+        windowMap.put(recentId, recent);
+
+        windowMap.remove(windowMap.firstKey());
+        return windowMap.get(higherId) != null ? lowerId : higherId;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust;
+
+/**
+ * A congestion controller which limits the amount of user-data that is in flight, i.e. sent but neither
+ * acknowledged nor considered lost. User-data, which does not fit into the {@link #getCongestionWindow() congestion window},
+ * is deferred to subsequent send invocations instead of being sent immediately.
+ * The protocol accounts for the bytes in flight and informs the controller about acknowledgements, losses and
+ * round-trip time samples, the controller adapts the congestion window accordingly.
+ * <br />
+ * A controller instance is used by one protocol instance only and is called from the thread using that protocol instance,
+ * thus it may keep mutable state.
+ *
+ * @see ProtocolConfig#setCongestionController(CongestionController)
+ * @see com.github.mucaho.jnetrobust.util.AIMDCongestionController
+ * @see com.github.mucaho.jnetrobust.util.DelayBasedCongestionController
+ */
+public interface CongestionController {
+
+    /**
+     * Get the congestion window.
+     *
+     * @return the number of bytes that may be in flight at most
+     */
+    int getCongestionWindow();
+
+    /**
+     * Handle the acknowledgement of user-data that was in flight.
+     *
+     * @param ackedBytes    the number of acknowledged bytes
+     * @param bytesInFlight the number of bytes that remain in flight
+     * @param timeNow       the current time in milliseconds
+     */
+    void handleAcked(int ackedBytes, int bytesInFlight, long timeNow);
+
+    /**
+     * Handle the loss of user-data that was in flight, which is about to be retransmitted.
+     *
+     * @param lostBytes   the number of lost bytes
+     * @param timedOut    <code>true</code> if the retransmission timeout elapsed,
+     *                    <code>false</code> if the loss was inferred from subsequently acknowledged user-data
+     * @param smoothedRTT the smoothed round-trip time in milliseconds
+     * @param timeNow     the current time in milliseconds
+     */
+    void handleLost(int lostBytes, boolean timedOut, long smoothedRTT, long timeNow);
+
+    /**
+     * Handle a round-trip time sample.
+     *
+     * @param rtt         the sampled round-trip time in milliseconds
+     * @param smoothedRTT the smoothed round-trip time in milliseconds, which already accounts for the sample
+     * @param timeNow     the current time in milliseconds
+     */
+    void handleRTTSample(long rtt, long smoothedRTT, long timeNow);
+}
@@ -26,7 +26,8 @@ public abstract class Logger {
         ORDERED("Data received ordered"),
         UNORDERED("Data received not ordered"),
         ACKED("Data was received at other end"),
-        NOTACKED("Data was probably not received at other end");
+        NOTACKED("Data was probably not received at other end"),
+        LEAKED("Pooled objects were garbage collected without being recycled");
 
         private final String description;
         private LoggingEvent(String description) {
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A codec which compresses the segments of a packet, before the packet is sent to another protocol instance,
+ * and decompresses them again, after the packet has been received.
+ * The segment headers and the user-datas of a packet are compressed together,
+ * thus small user-datas with similar contents compress well, even if each one of them is incompressible on its own.
+ * <br />
+ * A codec instance is used by one protocol instance only and is called from the thread using that protocol instance,
+ * thus it may keep mutable scratch state. Both communicating parties have to use the same codec.
+ * <br />
+ * Note that compression requires the {@link ProtocolConfig#useCompactHeaders() compact header format}.
+ *
+ * @see ProtocolConfig#setPayloadCodec(PayloadCodec)
+ * @see com.github.mucaho.jnetrobust.util.DeflatePayloadCodec
+ * @see com.github.mucaho.jnetrobust.util.LZPayloadCodec
+ */
+public interface PayloadCodec {
+
+    /**
+     * Compress the remaining bytes of the source buffer into the remaining space of the destination buffer.
+     * On success, the source buffer's position equals its limit and
+     * the destination buffer's position is advanced past the compressed bytes.
+     * Otherwise the buffers' positions are undefined.
+     *
+     * @param src the bytes to compress
+     * @param dst the buffer to write the compressed bytes to
+     * @return <code>true</code> if the compressed bytes fit into the destination buffer, <code>false</code> otherwise
+     */
+    boolean compress(ByteBuffer src, ByteBuffer dst);
+
+    /**
+     * Decompress the remaining bytes of the source buffer into the remaining space of the destination buffer.
+     * On success, the source buffer's position equals its limit and
+     * the destination buffer's position is advanced past the decompressed bytes.
+     * Otherwise the buffers' positions are undefined.
+     *
+     * @param src the bytes to decompress
+     * @param dst the buffer to write the decompressed bytes to
+     * @return <code>true</code> if the decompressed bytes fit into the destination buffer,
+     * <code>false</code> if they don't fit or if the source bytes are malformed
+     */
+    boolean decompress(ByteBuffer src, ByteBuffer dst);
+}
@@ -9,6 +9,7 @@ package com.github.mucaho.jnetrobust;
 
 import com.github.mucaho.jnetrobust.control.Segment;
 import com.github.mucaho.jnetrobust.controller.PackagingController;
+import com.github.mucaho.jnetrobust.controller.PacingController;
 import com.github.mucaho.jnetrobust.controller.ProcessingController;
 import com.github.mucaho.jnetrobust.controller.DebugProcessingController;
 import com.github.mucaho.jnetrobust.controller.Packet;
@@ -39,6 +40,19 @@ import java.util.*;
  * are utility methods write the packaged user-data to a {@link java.io.ObjectOutput} or
  * read the packaged user-data from a {@link java.io.ObjectInput} respectively. Other than that, they behave
  * exactly like the {@link Protocol#send(ByteBuffer)} and {@link Protocol#receive(Packet)} methods. <br></br>
+ * The {@link Protocol#send(Packet, ByteBuffer)} & {@link Protocol#receive(ByteBuffer)} utility methods do the same,
+ * but encode to and decode from a {@link java.nio.ByteBuffer} directly, which is the preferred way
+ * for transmitting packages over a {@link java.nio.channels.DatagramChannel DatagramChannel}. <br></br>
+ * The {@link Protocol#receiveZeroCopy(ByteBuffer)} utility method additionally avoids copying received user-data,
+ * by handing out views of the received buffer, which must then not be modified until the next <code>receive</code>. <br></br>
+ * User-data can be sent on {@link SendOptions#setLane(ProtocolConfig.DeliveryLane) other delivery lanes},
+ * which differ in whether the user-data is retransmitted and whether it is received in order,
+ * or on {@link SendOptions#setStreamId(int) independently ordered streams},
+ * see {@link Protocol#send(ByteBuffer, SendOptions)}. <br></br>
+ * Packaged user-data can be {@link Protocol#pace(NavigableMap) paced}, which spreads its transmission over time
+ * instead of bursting it out at once. <br></br>
+ * Packaged user-data is compressed if a {@link ProtocolConfig#setPayloadCodec(PayloadCodec) payload codec} is configured,
+ * which allows more user-data to be packed into a single packet. <br></br>
  * How serialization is done and over which medium the {@link Packet packaged user-data} is sent is
  * up to the user (analogue for receiving and deserialization).
  * <p></p>
@@ -57,6 +71,7 @@ import java.util.*;
  */
 public class Protocol implements Comparator<Short> {
     private final PackagingController controller;
+    private final PacingController pacingController;
     // TODO: possibly add currentlyInUse boolean to prevent reentering send / receive procedure while listeners fire
 
     /**
@@ -121,10 +136,12 @@ public class Protocol implements Comparator<Short> {
 
         if (logger != null) {
             ProtocolListener debugListener = new DebugProtocolListener(listener, logger);
-            this.controller = new PackagingController(new DebugProcessingController(debugListener, config, logger));
+            this.controller = new PackagingController(new DebugProcessingController(debugListener, config, logger),
+                    config.getPayloadCodec());
         } else {
-            this.controller = new PackagingController(new ProcessingController(listener, config));
+            this.controller = new PackagingController(new ProcessingController(listener, config), config.getPayloadCodec());
         }
+        this.pacingController = new PacingController(controller, config.getPacingRate());
     }
 
     private final ByteBuffer dataIn = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
@@ -154,6 +171,10 @@ public class Protocol implements Comparator<Short> {
      * @see Protocol#send(ByteBuffer) send(data)
      */
     public synchronized NavigableMap<Short, Packet> send(byte[] data, int offset, int length) {
+        // fragmented user-data does not fit into the buffer
+        if (length > dataIn.capacity())
+            return send(ByteBuffer.wrap(data, offset, length).slice());
+
         dataIn.clear();
         dataIn.put(data, offset, length);
         dataIn.flip();
@@ -171,6 +192,8 @@ public class Protocol implements Comparator<Short> {
      * <br /><br />
      * The supplied data must be smaller or equal to the {@link #getMaximumDataSize() maximum data size} allowed for a
      * single package. Otherwise a {@link IllegalArgumentException} is thrown. See that method for further information.
+     * If a {@link ProtocolConfig#setFragmentLimit(int) fragment limit} is configured, larger data is split into fragments
+     * instead, as long as it is smaller or equal to the {@link #getMaximumFragmentedDataSize() maximum fragmented data size}.
      * <br />
      * This also means that each of the returned packages <b>should be transmitted individually</b> over the underlying
      * transport protocol (e.g. UDP).
@@ -200,14 +223,97 @@ public class Protocol implements Comparator<Short> {
      *          the returned map may have just one key, which is null, mapping an empty packet containing just the
      *          to-be-sent acknowledgements, see the the above code for proper and fast iteration;
      *          the returned map should not be saved by the user,
-     *          as its contents are invalidated next time one of the <code>send</code> methods is called
+     *          as its contents are invalidated next time one of the <code>send</code> methods is called;
+     *          the returned packets are pooled and recycled next time one of the <code>send</code> methods is called,
+     *          {@link Packet#clone() clone} them if they need to be retained any longer
      * @throws IllegalArgumentException if the supplied {@code data} is larger than the
-     *                                  {@link #getMaximumDataSize() maximum data size} allowed
+     *                                  {@link #getMaximumDataSize() maximum data size} allowed,
+     *                                  or the {@link #getMaximumFragmentedDataSize() maximum fragmented data size}
+     *                                  if fragmentation is enabled
      */
     public synchronized NavigableMap<Short, Packet> send(ByteBuffer data) {
         return controller.send(data);
     }
 
+    /**
+     * Package the user-data with the given {@link SendOptions options},
+     * which does the same as {@link Protocol#send(ByteBuffer) <code>send(data)</code>} otherwise.
+     * <br />
+     * The options select the {@link SendOptions#setLane(ProtocolConfig.DeliveryLane) delivery lane},
+     * the {@link SendOptions#setStreamId(int) stream} of the ordered lane,
+     * the {@link SendOptions#setPriority(ProtocolConfig.Priority) priority}
+     * and the {@link SendOptions#setTimeout(long) timeout} of the user-data, any of which may be combined,
+     * except for streams other than the default one, which only exist on the ordered lane.
+     * User-data that is sent without specifying options is sent with the {@link SendOptions#SendOptions() default options}.
+     *
+     * @param data    the user-data to package, if it's <code>null</code> no user-data will be contained in the package
+     * @param options the options to send the user-data with
+     * @return a <code>NavigableMap</code> mapping all {@code dataIds} to their respective {@link Packet package of user-data},
+     *          see {@link Protocol#send(ByteBuffer) send(data)} for how to navigate it
+     * @throws IllegalArgumentException if the supplied {@code data} is too large, see {@link Protocol#send(ByteBuffer) send(data)}
+     *                                  and {@link SendOptions#setLane(ProtocolConfig.DeliveryLane)},
+     *                                  or if a stream other than the default one is combined with another lane
+     * @throws IllegalStateException    if the lane or the stream is not the default one
+     *                                  and {@link ProtocolConfig#useDeliveryLanes() delivery lanes} are not used
+     * @see Protocol#send(ByteBuffer) send(data)
+     */
+    public synchronized NavigableMap<Short, Packet> send(ByteBuffer data, SendOptions options) {
+        return controller.send(data, options);
+    }
+
+    /**
+     * Convenience method does the same as {@link Protocol#send(List) <code>send(datas)</code>},
+     * by viewing the supplied array as a list.
+     * @see Protocol#send(List) send(datas)
+     */
+    public synchronized NavigableMap<Short, Packet> send(ByteBuffer[] datas) {
+        return send(Arrays.asList(datas));
+    }
+
+    /**
+     * Package multiple user-datas at once, which does the same as invoking {@link Protocol#send(ByteBuffer) <code>send(data)</code>}
+     * for each of the user-datas, but retransmits, discards timed out user-data and measures the current time only once.
+     * <br />
+     * Each user-data is assigned a <code>dataId</code> of its own, in the order of the supplied list,
+     * thus it is acknowledged and received in order individually.
+     * Multiple user-datas are packed into the same package as long as they fit.
+     * <br /><br />
+     * Each user-data must be smaller or equal to the {@link #getMaximumDataSize() maximum data size},
+     * otherwise an {@link IllegalArgumentException} is thrown before any of the user-datas is packaged.
+     *
+     * @param datas the user-datas to package, <code>null</code> elements are skipped
+     * @return a <code>NavigableMap</code> mapping all {@code dataIds} to their respective {@link Packet package of user-data},
+     *          see {@link Protocol#send(ByteBuffer) send(data)} for how to navigate it;
+     *          each package is keyed by the <code>dataId</code> of the last user-data it contains
+     * @throws IllegalArgumentException if any of the supplied {@code datas} is larger than the
+     *                                  {@link #getMaximumDataSize() maximum data size} allowed,
+     *                                  or the {@link #getMaximumFragmentedDataSize() maximum fragmented data size}
+     *                                  if fragmentation is enabled
+     * @see Protocol#send(ByteBuffer) send(data)
+     */
+    public synchronized NavigableMap<Short, Packet> send(List<ByteBuffer> datas) {
+        return controller.send(datas);
+    }
+
+    /**
+     * Package multiple user-datas at once with the given {@link SendOptions options},
+     * which does the same as invoking {@link Protocol#send(ByteBuffer, SendOptions) <code>send(data, options)</code>}
+     * for each of the user-datas.
+     *
+     * @param datas   the user-datas to package, <code>null</code> elements are skipped
+     * @param options the options to send the user-datas with
+     * @return a <code>NavigableMap</code> mapping all {@code dataIds} to their respective {@link Packet package of user-data},
+     *          see {@link Protocol#send(ByteBuffer) send(data)} for how to navigate it
+     * @throws IllegalArgumentException if any of the supplied {@code datas} is too large or the options can not be combined,
+     *                                  see {@link Protocol#send(ByteBuffer, SendOptions) send(data, options)}
+     * @throws IllegalStateException    if the lane or the stream is not the default one
+     *                                  and {@link ProtocolConfig#useDeliveryLanes() delivery lanes} are not used
+     * @see Protocol#send(List) send(datas)
+     */
+    public synchronized NavigableMap<Short, Packet> send(List<ByteBuffer> datas, SendOptions options) {
+        return controller.send(datas, options);
+    }
+
     /**
      * Convenience method which can be used to iteratively write the output of
      * {@link Protocol#send(ByteBuffer) <code>send(data)</code>} to a {@link java.io.ObjectOutput}.
@@ -222,6 +328,105 @@ public class Protocol implements Comparator<Short> {
         controller.send(packet, objectOutput);
     }
 
+    /**
+     * Convenience method which can be used to iteratively write the output of
+     * {@link Protocol#send(ByteBuffer) <code>send(data)</code>} directly to a {@link java.nio.ByteBuffer},
+     * starting at the buffer's current position.
+     * The packet is encoded with absolute puts, thus no intermediate stream or buffer is involved.
+     * <br />
+     * Note that each {@code packet} is meant to be sent separately over the underlying communication channel.
+     *
+     * @param out the buffer to write the packaged user-data to
+     * @throws java.nio.BufferOverflowException if there is insufficient space remaining in the buffer,
+     *                                          which can hold at most {@link #getMaximumTransmissionUnitSize()} bytes
+     * @see Protocol#send(ByteBuffer) <code>send(data)</code>
+     */
+    public synchronized void send(Packet packet, ByteBuffer out) {
+        controller.send(packet, out);
+    }
+
+    /**
+     * Convenience method which can be used to iteratively write the output of
+     * {@link Protocol#send(ByteBuffer) <code>send(data)</code>} as a sequence of buffers,
+     * which can be handed to a {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[], int, int) gathering write},
+     * e.g. of a connected {@link java.nio.channels.DatagramChannel DatagramChannel}.
+     * Only the headers are written to the supplied header buffer, starting at the buffer's current position,
+     * while the user-datas are referenced as they are stored by the protocol, thus they are not copied again,
+     * e.g. when retransmitting them.
+     * <br />
+     * The returned buffers are only valid until the next time one of the <code>send</code> methods is called.
+     * Note that each {@code packet} is meant to be sent separately over the underlying communication channel.
+     *
+     * @param headers the buffer to write the headers of the packaged user-data to
+     * @param out     the array to store the sequence of buffers in, starting at index <code>0</code>;
+     *                it must have room for {@link Packet#getMaximumGatheringBufferCount(int)} buffers
+     * @return the number of buffers stored in the array
+     * @throws java.nio.BufferOverflowException if there is insufficient space remaining in the header buffer
+     * @throws IllegalArgumentException         if the array is too short
+     * @see Protocol#send(ByteBuffer) <code>send(data)</code>
+     */
+    public synchronized int send(Packet packet, ByteBuffer headers, ByteBuffer[] out) {
+        return controller.send(packet, headers, out);
+    }
+
+    /**
+     * Queue the output of {@link Protocol#send(ByteBuffer) <code>send(data)</code>}, in order to spread
+     * the transmission of the packets over time at the {@link ProtocolConfig#setPacingRate(int) pacing rate},
+     * instead of transmitting all of them at once.
+     * The packets are {@link Packet#clone() cloned}, thus they stay valid after the next <code>send</code>.
+     * <br />
+     * Queued packets are retrieved with {@link #pollPacedPacket()}, once it is time to transmit them,
+     * see {@link #getNextSendTime()} for when that is the case.
+     *
+     * @param packets the packets returned by one of the <code>send</code> methods
+     * @see Protocol#send(ByteBuffer) <code>send(data)</code>
+     */
+    public synchronized void pace(NavigableMap<Short, Packet> packets) {
+        pacingController.pace(packets);
+    }
+
+    /**
+     * Retrieve the next {@link #pace(NavigableMap) paced} packet, if it is time to transmit it.
+     * Packets are retrieved in the order they were queued.
+     * <br />
+     * The returned packet can be written with one of the <code>send(packet, ...)</code> utility methods
+     * and has to be {@link Packet#release() released} thereafter.
+     *
+     * @return the next paced packet, or <code>null</code> if no packet is queued or if it is not yet time to transmit it
+     */
+    public synchronized Packet pollPacedPacket() {
+        return pacingController.poll(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the time at which the next {@link #pace(NavigableMap) paced} packet may be transmitted,
+     * so that an event loop can sleep until then, instead of polling for paced packets.
+     *
+     * @return the time (in ms, as returned by {@link System#currentTimeMillis()}) at which the next paced packet
+     *         can be {@link #pollPacedPacket() retrieved}, which is the current time if it can be retrieved immediately,
+     *         or {@link Long#MAX_VALUE} if no packet is queued
+     */
+    public synchronized long getNextSendTime() {
+        return pacingController.getNextSendTime(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the number of {@link #pace(NavigableMap) paced} packets, which have not been retrieved yet.
+     * @return the number of queued packets
+     */
+    public synchronized int getPacedCount() {
+        return pacingController.getPacedCount();
+    }
+
+    /**
+     * Get the rate at which {@link #pace(NavigableMap) paced} packets are transmitted,
+     * see {@link ProtocolConfig#setPacingRate(int)}.
+     * @return the pacing rate in bytes per second, or <code>0</code> if paced packets are transmitted without delay
+     */
+    public synchronized long getPacingRate() {
+        return pacingController.getPacingRate();
+    }
+
     /**
      * Unpackage the packaged user-data, in order to retrieve the user-data that was received, acknowledge sent data and
      * receive retransmitted data (if {@link ProtocolConfig#getAutoRetransmitMode() automatic retransmission} is enabled).
@@ -231,10 +436,16 @@ public class Protocol implements Comparator<Short> {
      * {@link ProtocolListener#handleAckedData(short, ByteBuffer) ackedData} or
      * {@link ProtocolListener#handleNewestData(short, ByteBuffer) newestData}
      * events may be fired before this method returns.
+     * <br />
+     * The user-data contained in the supplied packet is taken over by the protocol, leaving the packet empty.
+     * <br />
+     * The user-datas handed to the listener are only valid until the respective listener method returns,
+     * as their pooled memory is reused by the protocol thereafter, see {@link ProtocolListener}.
      *
      * @param packet the packaged-user data to unpackage
      * @return a <code>NavigableMap</code> containing all received (directly received or received by retransmission)
-     *         user-datas and their assigned <code>dataId</code>s;
+     *         user-datas and their assigned <code>dataId</code>s, except for fragments of larger user-datas,
+     *         which are only handed to the listener once they are reassembled;
      *         the returned map should not be saved by the user,
      *         as its contents are invalidated next time one of the <code>receive</code> methods is called;
      *         the returned user-data should be processed, copied or cloned by the user immediately,
@@ -257,6 +468,40 @@ public class Protocol implements Comparator<Short> {
         return controller.receive(objectInput);
     }
 
+    /**
+     * Convenience method which reads the packaged user-data directly from a {@link java.nio.ByteBuffer},
+     * starting at the buffer's current position, with the help of
+     * internally called {@link Protocol#receive(Packet) <code>receive(package)</code>}.
+     * The buffer's position is advanced past the packaged user-data.
+     *
+     * @param in the buffer to read the packaged user-data from
+     * @throws java.nio.BufferUnderflowException if there are insufficient bytes remaining in the buffer
+     * @see Protocol#receive(Packet) <code>receive(package)</code>
+     */
+    public synchronized NavigableMap<Short, ByteBuffer> receive(ByteBuffer in) {
+        return controller.receive(in);
+    }
+
+    /**
+     * Convenience method which does the same as {@link Protocol#receive(ByteBuffer) <code>receive(in)</code>},
+     * but without copying the received user-data.
+     * The user-datas handed to the {@link ProtocolListener listener} and contained in the returned map
+     * are read-only views of the supplied buffer.
+     * User-data is only copied if it has to be kept by the protocol, i.e. if it's received out of order.
+     * <br />
+     * The supplied buffer is borrowed by the protocol until the next time one of the <code>receive</code> methods is called,
+     * thus its contents must not be modified before then.
+     * The views of the buffer are invalidated (their limit is set to <code>0</code>)
+     * the next time one of the <code>receive</code> methods is called.
+     *
+     * @param in the buffer to read the packaged user-data from
+     * @throws java.nio.BufferUnderflowException if there are insufficient bytes remaining in the buffer
+     * @see Protocol#receive(ByteBuffer) <code>receive(in)</code>
+     */
+    public synchronized NavigableMap<Short, ByteBuffer> receiveZeroCopy(ByteBuffer in) {
+        return controller.receiveZeroCopy(in);
+    }
+
     /**
      * Compare <code>dataIds</code> against each other. The user <b>must not compare these ids</b> with built-in comparison
      * operators. These ids wrap around to their {@link Short#MIN_VALUE min value} once they are incremented beyond
@@ -297,6 +542,110 @@ public class Protocol implements Comparator<Short> {
         return controller.getRTTVariation();
     }
 
+    /**
+     * Get the rate at which transmitted user-data is lost. <br></br>
+     * Updated on receiving acknowledgement of data receipt and on retransmitting data, using the formula
+     * <code>LOSS_RATE = 31/32 * LOSS_RATE + 1/32 * (retransmitted ? 1 : 0)</code>
+     * @return the exponentially smoothed loss rate, between <code>0</code> and <code>1</code>
+     */
+    public float getLossRate() {
+        return controller.getLossRate();
+    }
+
+    /**
+     * Get the congestion window, which limits the amount of user-data in flight,
+     * see {@link ProtocolConfig#setCongestionController(CongestionController)}.
+     * @return the number of bytes that may be in flight at most,
+     * or {@link Integer#MAX_VALUE} if congestion control is disabled
+     */
+    public int getCongestionWindow() {
+        return controller.getCongestionWindow();
+    }
+
+    /**
+     * Get the amount of user-data in flight, i.e. sent but neither acknowledged nor considered lost.
+     * Only accounted for if {@link ProtocolConfig#setCongestionController(CongestionController) congestion control}
+     * is enabled.
+     * @return the number of bytes in flight
+     */
+    public int getBytesInFlight() {
+        return controller.getBytesInFlight();
+    }
+
+    /**
+     * Get the number of user-datas of the given priority, which have been sent for the first time,
+     * see {@link SendOptions#setPriority(ProtocolConfig.Priority)}.
+     * @param priority the priority of the user-datas
+     * @return the number of sent user-datas, excluding retransmissions
+     */
+    public synchronized long getSentCount(ProtocolConfig.Priority priority) {
+        return controller.getSentCount(priority);
+    }
+
+    /**
+     * Get the number of bytes of user-datas of the given priority, which have been sent for the first time.
+     * @param priority the priority of the user-datas
+     * @return the number of sent bytes, excluding retransmissions
+     */
+    public synchronized long getSentBytes(ProtocolConfig.Priority priority) {
+        return controller.getSentBytes(priority);
+    }
+
+    /**
+     * Get how many times user-data of the given priority has been deferred to a later send,
+     * as it did not fit into the congestion window or the receive window of the remote side.
+     * @param priority the priority of the user-datas
+     * @return the number of deferrals
+     */
+    public synchronized long getDeferredCount(ProtocolConfig.Priority priority) {
+        return controller.getDeferredCount(priority);
+    }
+
+    /**
+     * Get the average time user-data of the given priority waited, from being passed to one of the <code>send</code> methods
+     * until it was sent for the first time.
+     * @param priority the priority of the user-datas
+     * @return the average queuing delay in ms
+     */
+    public synchronized long getAverageQueuingDelay(ProtocolConfig.Priority priority) {
+        return controller.getAverageQueuingDelay(priority);
+    }
+
+    /**
+     * Get the maximum time user-data of the given priority waited, from being passed to one of the <code>send</code> methods
+     * until it was sent for the first time.
+     * @param priority the priority of the user-datas
+     * @return the maximum queuing delay in ms
+     */
+    public synchronized long getMaximumQueuingDelay(ProtocolConfig.Priority priority) {
+        return controller.getMaximumQueuingDelay(priority);
+    }
+
+    /**
+     * Get the number of user-datas the application is willing to receive,
+     * see {@link #setConsumptionWindow(int)}.
+     * @return the consumption window
+     */
+    public synchronized int getConsumptionWindow() {
+        return controller.getConsumptionWindow();
+    }
+
+    /**
+     * Set the number of user-datas the application is willing to receive, starting from the next user-data
+     * that is expected to be received in order.
+     * The consumption window further limits the receive window that is advertised to the communication partner,
+     * if {@link ProtocolConfig#setUseFlowControl(boolean) flow control} is enabled,
+     * e.g. to throttle the communication partner while received user-data is still being processed.
+     * Defaults to {@link ProtocolConfig#MAX_PACKET_QUEUE_LIMIT}, which does not limit the receive window further.
+     * <br />
+     * The changed window is advertised by the packets produced with the next <code>send</code>.
+     *
+     * @param consumptionWindow the consumption window, between <code>0</code> and {@link ProtocolConfig#MAX_PACKET_QUEUE_LIMIT}
+     */
+    public synchronized void setConsumptionWindow(int consumptionWindow) {
+        controller.setConsumptionWindow(consumptionWindow);
+    }
+
     /**
      * Gets the path's maximum transmission unit size in bytes. Defaults to {@link ProtocolConfig#CONSERVATIVE_MTU_SIZE}.
      * <br />
@@ -358,7 +707,7 @@ public class Protocol implements Comparator<Short> {
      * and optionally tagging all these objects with a collection identifier, tying them all together at the receiver side.
      * <br />
      * The protocol does not do this automatically, as it has no knowledge about the objects and their boundaries
-     * in this serialized format.
+     * in this serialized format, unless a {@link ProtocolConfig#setFragmentLimit(int) fragment limit} is configured.
      * <br /><br />
      * This limitation is enforced in order to avoid IP fragmentation, which lowers transmission performance considerably
      * in congested networks.
@@ -368,4 +717,18 @@ public class Protocol implements Comparator<Short> {
     public int getMaximumDataSize() {
         return controller.getMaximumDataSize();
     }
+
+    /**
+     * Gets the maximum data size which regulates how much user-data may be sent at once,
+     * if the protocol is allowed to split it into {@link ProtocolConfig#setFragmentLimit(int) fragments}.
+     * Each fragment is packaged into a packet of its own, it is sent, acknowledged and retransmitted individually.
+     * The user-data is reassembled at the receiver, before it is handed to the listener.
+     * <br /><br />
+     * Equals the {@link #getMaximumDataSize() maximum data size} if fragmentation is disabled.
+     *
+     * @see ProtocolConfig#setFragmentLimit(int)
+     */
+    public int getMaximumFragmentedDataSize() {
+        return controller.getMaximumFragmentedDataSize();
+    }
 }
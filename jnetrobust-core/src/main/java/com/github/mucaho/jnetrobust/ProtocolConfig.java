@@ -7,7 +7,9 @@
 
 package com.github.mucaho.jnetrobust;
 
+import com.github.mucaho.jnetrobust.control.Segment;
 import com.github.mucaho.jnetrobust.controller.Packet;
+import com.github.mucaho.jnetrobust.util.BufferArena;
 import com.github.mucaho.jnetrobust.util.IdComparator;
 import java.nio.ByteBuffer;
 
@@ -23,6 +25,71 @@ public final class ProtocolConfig {
         NEWEST
     }
 
+    /**
+     * The lanes user-data can be sent on, which share the acknowledgements and round-trip time estimation
+     * of one protocol instance, see {@link #useDeliveryLanes()}.
+     */
+    public enum DeliveryLane {
+        /**
+         * Retransmitted according to the {@link #getAutoRetransmitMode() AutoRetransmitMode},
+         * handed over {@link ProtocolListener#handleOrderedData(short, ByteBuffer) in order}
+         * of the user-datas sent on this lane.
+         */
+        RELIABLE_ORDERED,
+        /**
+         * Retransmitted according to the {@link #getAutoRetransmitMode() AutoRetransmitMode},
+         * handed over {@link ProtocolListener#handleUnorderedData(short, ByteBuffer) once} as soon as it is received.
+         */
+        RELIABLE_UNORDERED,
+        /**
+         * Never retransmitted, received user-data is dropped unless it is newer than all user-data
+         * received on this lane before.
+         */
+        UNRELIABLE_SEQUENCED,
+        /**
+         * Never retransmitted, received user-data is never dropped.
+         */
+        UNRELIABLE;
+
+        public boolean isReliable() {
+            return this == RELIABLE_ORDERED || this == RELIABLE_UNORDERED;
+        }
+    }
+
+    /**
+     * The priorities user-data can be sent with, which determine the order user-data is packed in,
+     * once not all of it can be sent at once, see {@link SendOptions#setPriority(Priority)}.
+     * <br />
+     * Each priority is granted a share of the sent bytes proportional to its weight,
+     * thus user-data of higher priority is sent sooner, but user-data of lower priority is not starved.
+     * The priority is only known to the sending side, it is not transmitted.
+     */
+    public enum Priority {
+        /**
+         * Bulk user-data, which is sent at an eighth of the rate of {@link #URGENT} user-data under load.
+         */
+        LOW(1),
+        /**
+         * The priority of user-data that is sent without specifying a priority.
+         */
+        NORMAL(2),
+        HIGH(4),
+        /**
+         * Urgent user-data, e.g. control messages.
+         */
+        URGENT(8);
+
+        private final int weight;
+
+        Priority(int weight) {
+            this.weight = weight;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+    }
+
     /**
      * The constant MAX_PACKET_QUEUE_LIMIT.
      */
@@ -35,6 +102,31 @@ public final class ProtocolConfig {
      * The constant MAX_PACKET_RETRANSMIT_LIMIT.
      */
     public static final int MAX_PACKET_RETRANSMIT_LIMIT = Packet.MAX_DATAS_PER_PACKET;
+    /**
+     * The highest stream id user-data of the {@link DeliveryLane#RELIABLE_ORDERED ordered lane} can be sent on.
+     */
+    public static final int MAX_STREAM_ID = 0xFFFF;
+    /**
+     * The number of <code>dataIds</code> that may lie between consecutive user-datas of a stream,
+     * beyond which the state of the stream is evicted and they are no longer ordered relative to each other.
+     */
+    public static final int MAX_STREAM_OFFSET = IdComparator.MAX_SEQUENCE / 4;
+    /**
+     * The constant MAX_ACK_RANGE_LIMIT.
+     */
+    public static final int MAX_ACK_RANGE_LIMIT = 16;
+    /**
+     * The constant MAX_FRAGMENT_LIMIT.
+     */
+    public static final int MAX_FRAGMENT_LIMIT = Byte.MAX_VALUE;
+    /**
+     * The constant MAX_PARITY_GROUP_SIZE.
+     */
+    public static final int MAX_PARITY_GROUP_SIZE = 32;
+    /**
+     * The constant MAX_REDUNDANCY_LIMIT.
+     */
+    public static final int MAX_REDUNDANCY_LIMIT = 16;
     /**
      * The constant LOWEST_POSSIBLE_MTU.
      */
@@ -47,6 +139,11 @@ public final class ProtocolConfig {
      * The constant MOST_COMMON_MTU_SIZE.
      */
     public static final int MOST_COMMON_MTU_SIZE = 1500;
+    /**
+     * The constant MAX_HIGHEST_POSSIBLE_MTU_SIZE.
+     * The fixed header format reserves the two upper bits of the 16 bit data size for flags.
+     */
+    public static final int MAX_HIGHEST_POSSIBLE_MTU_SIZE = (1 << 14) - 1;
     /**
      * The constant MAXIMUM_LOWER_STACK_HEADER_SIZE.
      * Maximum IPv4 header size (60B) + UDP header size (8B)
@@ -93,6 +190,77 @@ public final class ProtocolConfig {
      * Defaults to {@link ProtocolConfig#MAX_PACKET_RETRANSMIT_LIMIT}.
      */
     private int packetRetransmitLimit = MAX_PACKET_RETRANSMIT_LIMIT;
+    /**
+     * The codec used for compressing the segments of sent packets and for decompressing the segments of received packets,
+     * or <code>null</code> if packets are not compressed.
+     * Compression allows more segments to be packed into a single packet of the given MTU size.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * Defaults to <code>null</code>.
+     * <br />
+     * Note that both communicating parties have to use the same codec.
+     * Note that a codec instance must not be shared between protocol instances.
+     */
+    private PayloadCodec payloadCodec = null;
+    /**
+     * The congestion controller which limits the amount of user-data in flight,
+     * or <code>null</code> if user-data is sent without delay.
+     * Defaults to <code>null</code>.
+     * <br />
+     * Note that a controller instance must not be shared between protocol instances.
+     */
+    private CongestionController congestionController = null;
+    /**
+     * Number indicating the rate (in bytes per second) at which {@link Protocol#pace(java.util.NavigableMap) paced}
+     * packets are released.
+     * <code>0</code> indicates that the rate is derived from the congestion window and the smoothed round-trip time,
+     * if a {@link #setCongestionController(CongestionController) congestion controller} is set,
+     * otherwise paced packets are released without delay.
+     * Defaults to <code>0</code>.
+     */
+    private int pacingRate = 0;
+    /**
+     * Boolean indicating whether to encode user-data against the newest user-data which was acknowledged by the receiver.
+     * Bytes which did not change since that baseline are not transmitted again,
+     * which considerably shrinks consecutive snapshots of a slowly changing state.
+     * A user-data is only encoded if the encoded data is smaller, retransmitted user-data is never encoded.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that both communicating parties have to enable delta encoding.
+     */
+    private boolean useDeltaEncoding = false;
+    /**
+     * Boolean indicating whether to assign one transmission id per packet, which is shared by all segments of the packet.
+     * The preceding transmission ack vector then covers the most recent packets rather than the most recent segments,
+     * which avoids segments being reported as unacknowledged needlessly if many user-datas are packed into each packet.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * Defaults to {@code false}.
+     */
+    private boolean usePacketTransmissionIds = false;
+    /**
+     * Number indicating into how many fragments a user-data, which is larger than the
+     * {@link Protocol#getMaximumDataSize() maximum data size}, may be split at most.
+     * Each fragment is sent, acknowledged and retransmitted individually,
+     * the user-data is reassembled at the receiver before it is handed to the listener.
+     * <code>0</code> indicates that user-data must not be split.
+     * Defaults to <code>0</code>.
+     */
+    private int fragmentLimit = 0;
+    /**
+     * Number indicating after how many packets at most a parity packet is sent,
+     * which allows the receiver to recover one lost packet of each such group without waiting for a retransmit.
+     * The actual group size adapts to the {@link Protocol#getLossRate() measured loss rate}.
+     * <code>0</code> indicates that no parity packets are sent.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * Defaults to <code>0</code>.
+     */
+    private int parityGroupSize = 0;
+    /**
+     * Number indicating how many of the most recently sent, unacknowledged user-datas are piggybacked
+     * onto outgoing packets, while space remains in them.
+     * <code>0</code> indicates that no redundant copies are sent.
+     * Defaults to <code>0</code>.
+     */
+    private int redundancyLimit = 0;
 
     /**
      * Boolean indicating whether to use extended preceding transmissions ack vector
@@ -106,6 +274,63 @@ public final class ProtocolConfig {
      */
     private static boolean useExtendedPrecedingTransmissionAcks = false;
 
+    /**
+     * The maximum number of selective ack ranges that are written in each packet header.
+     * Ack ranges acknowledge received transmissions that precede the preceding transmission ack vector,
+     * so that their acknowledgement is not lost during long bursts of lost packets or at high sending rates.
+     * Each ack range takes between {@code 2B} and {@code 5B}, a count of ranges is written in addition.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * Defaults to {@code 0}, which disables ack ranges.
+     * <br />
+     * Note that both communicating parties have to use the same limit.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    private static int ackRangeLimit = 0;
+
+    /**
+     * Boolean indicating whether each packet header advertises the receive window,
+     * i.e. the <code>dataId</code> of the next user-data that is expected to be received in order
+     * and the number of user-datas starting from it that can be queued without being discarded.
+     * The sender then holds back new user-data which does not fit into the receive window of its communication partner.
+     * Increases each packet header by {@code 3B} to {@code 4B}.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that both communicating parties have to use the same setting.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    private static boolean useFlowControl = false;
+
+    /**
+     * Boolean indicating whether user-data can be sent on {@link DeliveryLane delivery lanes}
+     * other than {@link DeliveryLane#RELIABLE_ORDERED}, or on streams other than the default one.
+     * Increases the header of segments, which are not sent on the default lane and stream, by {@code 1B} to {@code 6B}.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that both communicating parties have to use the same setting.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    private static boolean useDeliveryLanes = false;
+
+    /**
+     * Boolean indicating whether to use the compact packet header format.
+     * The compact format encodes lengths as variable-length integers,
+     * encodes the ids of all but the first segment of a packet as deltas relative to the first segment
+     * and omits the preceding transmission ack vector if it is empty.
+     * This cuts the header overhead of packets carrying many small segments considerably.
+     * Features, which require the compact format, say so in their documentation.
+     * Defaults to {@code false}, which keeps the header format compatible with previous releases.
+     * <br />
+     * Note that both communicating parties have to use the same header format.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    private static boolean useCompactHeaders = false;
+
     /**
      * The highest possible MTU (Maximum Transmission Unit) size (in bytes) that can be configured for all protocol instances.
      * Used internally to determine maximum buffer capacities.
@@ -115,6 +340,33 @@ public final class ProtocolConfig {
      */
     private static int highestPossibleMTUSize = 2048;
 
+    /**
+     * The upper limit (in bytes) of memory that is kept for reuse by the {@link BufferArena buffer arena},
+     * which all protocol instances allocate their data buffers from.
+     * Defaults to {@value}.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    private static long bufferArenaMemoryLimit = 1024L * 1024L;
+
+    /**
+     * Boolean indicating whether data buffers are allocated in direct (off-heap) memory.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    private static boolean useDirectBuffers = false;
+
+    /**
+     * Boolean indicating whether the pools of segments and packets detect objects,
+     * which are garbage collected without being recycled.
+     * Leaks are logged by protocol instances which are constructed with a {@link Logger logger}.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    private static boolean usePoolLeakDetection = false;
+
     /**
      * The <code>K</code> constant used for computing the retransmission timeout.
      * <br />
@@ -155,6 +407,14 @@ public final class ProtocolConfig {
         this.packetOffsetLimit = config.packetOffsetLimit;
         this.packetQueueTimeout = config.packetQueueTimeout;
         this.packetRetransmitLimit = config.packetRetransmitLimit;
+        this.payloadCodec = config.payloadCodec;
+        this.congestionController = config.congestionController;
+        this.pacingRate = config.pacingRate;
+        this.useDeltaEncoding = config.useDeltaEncoding;
+        this.usePacketTransmissionIds = config.usePacketTransmissionIds;
+        this.fragmentLimit = config.fragmentLimit;
+        this.parityGroupSize = config.parityGroupSize;
+        this.redundancyLimit = config.redundancyLimit;
         this.G = config.G;
         this.K = config.K;
     }
@@ -258,6 +518,240 @@ public final class ProtocolConfig {
         this.autoRetransmitMode = autoRetransmitMode;
     }
 
+    /**
+     * Gets the codec used for compressing the segments of sent packets and for decompressing the segments of received packets,
+     * or <code>null</code> if packets are not compressed.
+     * Defaults to <code>null</code>.
+     *
+     * @return the payload codec
+     */
+    public PayloadCodec getPayloadCodec() {
+        return payloadCodec;
+    }
+
+    /**
+     * Sets the codec used for compressing the segments of sent packets and for decompressing the segments of received packets,
+     * or <code>null</code> if packets should not be compressed.
+     * Compression allows more segments to be packed into a single packet of the given MTU size.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * Defaults to <code>null</code>.
+     * <br />
+     * Note that both communicating parties have to use the same codec.
+     * Note that a codec instance must not be shared between protocol instances,
+     * thus configs which are copied have to be assigned a new codec instance.
+     *
+     * @param payloadCodec the payload codec
+     */
+    public void setPayloadCodec(PayloadCodec payloadCodec) {
+        this.payloadCodec = payloadCodec;
+    }
+
+    /**
+     * Gets the congestion controller which limits the amount of user-data in flight,
+     * or <code>null</code> if user-data is sent without delay.
+     * Defaults to <code>null</code>.
+     *
+     * @return the congestion controller
+     */
+    public CongestionController getCongestionController() {
+        return congestionController;
+    }
+
+    /**
+     * Sets the congestion controller which limits the amount of user-data in flight,
+     * or <code>null</code> if user-data should be sent without delay.
+     * User-data and retransmits, which do not fit into the congestion window, are deferred to subsequent
+     * send invocations, instead of worsening congestion along the path.
+     * At most {@link ProtocolConfig#MAX_PACKET_QUEUE_LIMIT} user-datas are deferred, older ones are sent regardless.
+     * Defaults to <code>null</code>.
+     * <br />
+     * Note that a controller instance must not be shared between protocol instances,
+     * thus configs which are copied have to be assigned a new controller instance.
+     *
+     * @param congestionController the congestion controller
+     * @see com.github.mucaho.jnetrobust.util.AIMDCongestionController
+     * @see com.github.mucaho.jnetrobust.util.DelayBasedCongestionController
+     */
+    public void setCongestionController(CongestionController congestionController) {
+        this.congestionController = congestionController;
+    }
+
+    /**
+     * Gets the rate (in bytes per second) at which {@link Protocol#pace(java.util.NavigableMap) paced} packets are released.
+     * Defaults to <code>0</code>, which indicates that the rate is derived from the congestion window, if any.
+     *
+     * @return the pacing rate
+     */
+    public int getPacingRate() {
+        return pacingRate;
+    }
+
+    /**
+     * Sets the rate (in bytes per second) at which {@link Protocol#pace(java.util.NavigableMap) paced} packets are released.
+     * Pacing spreads the packets of a send invocation over time, instead of bursting them out at once,
+     * which would otherwise overflow shallow router and network interface queues.
+     * A burst of at most two packets of {@link Protocol#getMaximumTransmissionUnitSize() MTU size} may be released at once.
+     * <br />
+     * <code>0</code> indicates that the rate is derived from the congestion window and the smoothed round-trip time,
+     * such that the congestion window is spread over slightly less than one round-trip,
+     * if a {@link #setCongestionController(CongestionController) congestion controller} is set,
+     * otherwise paced packets are released without delay.
+     * Defaults to <code>0</code>.
+     *
+     * @param pacingRate the pacing rate
+     */
+    public void setPacingRate(int pacingRate) {
+        this.pacingRate = Math.max(pacingRate, 0);
+    }
+
+    /**
+     * Gets the boolean indicating whether to encode user-data against the newest user-data acknowledged by the receiver.
+     * Defaults to {@code false}.
+     *
+     * @return whether delta encoding is used
+     */
+    public boolean useDeltaEncoding() {
+        return useDeltaEncoding;
+    }
+
+    /**
+     * Sets the boolean indicating whether to encode user-data against the newest user-data acknowledged by the receiver.
+     * Bytes which did not change since that baseline are not transmitted again,
+     * which considerably shrinks consecutive snapshots of a slowly changing state.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that both communicating parties have to enable delta encoding.
+     *
+     * @param useDeltaEncoding whether to use delta encoding
+     */
+    public void setUseDeltaEncoding(boolean useDeltaEncoding) {
+        this.useDeltaEncoding = useDeltaEncoding;
+    }
+
+    /**
+     * Gets the boolean indicating whether to assign one transmission id per packet,
+     * which is shared by all segments of the packet.
+     * Defaults to {@code false}.
+     *
+     * @return whether transmission ids are assigned per packet
+     */
+    public boolean usePacketTransmissionIds() {
+        return usePacketTransmissionIds;
+    }
+
+    /**
+     * Sets the boolean indicating whether to assign one transmission id per packet,
+     * which is shared by all segments of the packet.
+     * The preceding transmission ack vector then covers the most recent packets rather than the most recent segments,
+     * which avoids segments being reported as unacknowledged needlessly if many user-datas are packed into each packet.
+     * Requires the {@link #useCompactHeaders() compact header format}, it is ignored otherwise.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that this setting only affects the sending side, the receiving side acknowledges either kind of transmission id.
+     *
+     * @param usePacketTransmissionIds whether to assign transmission ids per packet
+     */
+    public void setUsePacketTransmissionIds(boolean usePacketTransmissionIds) {
+        this.usePacketTransmissionIds = usePacketTransmissionIds;
+    }
+
+    /**
+     * Gets the number indicating into how many fragments a user-data, which is larger than the
+     * {@link Protocol#getMaximumDataSize() maximum data size}, may be split at most.
+     * Defaults to <code>0</code>, which indicates that user-data must not be split.
+     *
+     * @return the fragment limit
+     */
+    public int getFragmentLimit() {
+        return fragmentLimit;
+    }
+
+    /**
+     * Sets the number indicating into how many fragments a user-data, which is larger than the
+     * {@link Protocol#getMaximumDataSize() maximum data size}, may be split at most.
+     * Each fragment is sent, acknowledged and retransmitted individually, thus only lost fragments are retransmitted.
+     * The user-data is reassembled at the receiver, before it is handed to the listener
+     * with the <code>dataId</code> of its last fragment.
+     * Incomplete user-data is discarded once its missing fragments can no longer be received
+     * or once the {@link #getPacketQueueTimeout() packet queue timeout} elapses.
+     * Defaults to <code>0</code>, which indicates that user-data must not be split.
+     * Can not be set higher than {@link ProtocolConfig#MAX_FRAGMENT_LIMIT}.
+     * <br />
+     * Note that the listener events of the sending side refer to the individual fragments.
+     * Note that the fragments count towards the {@link #getPacketQueueLimit() packet queue limit}.
+     *
+     * @param fragmentLimit the fragment limit
+     */
+    public void setFragmentLimit(int fragmentLimit) {
+        fragmentLimit = Math.min(fragmentLimit, MAX_FRAGMENT_LIMIT);
+        fragmentLimit = Math.max(fragmentLimit, 0);
+        this.fragmentLimit = fragmentLimit;
+    }
+
+    /**
+     * Gets the number indicating after how many packets at most a parity packet is sent.
+     * Defaults to <code>0</code>, which indicates that no parity packets are sent.
+     *
+     * @return the parity group size
+     */
+    public int getParityGroupSize() {
+        return parityGroupSize;
+    }
+
+    /**
+     * Sets the number indicating after how many packets at most a parity packet is sent.
+     * The parity packet contains the XOR of a group of previously sent packets,
+     * which allows the receiver to recover one lost packet of each group without waiting for a retransmit.
+     * The recovered user-data is acknowledged as if it had been received directly.
+     * The actual group size shrinks down to <code>2</code> as the {@link Protocol#getLossRate() measured loss rate} grows.
+     * Both sides need to enable this setting in order to send and recover lost packets respectively.
+     * Defaults to <code>0</code>, which indicates that no parity packets are sent.
+     * Can not be set higher than {@link ProtocolConfig#MAX_PARITY_GROUP_SIZE}.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * <br />
+     * Note that lost packets can only be recovered if the packets are received
+     * via {@link Protocol#receive(ByteBuffer) byte buffers}.
+     *
+     * @param parityGroupSize the parity group size
+     */
+    public void setParityGroupSize(int parityGroupSize) {
+        parityGroupSize = Math.min(parityGroupSize, MAX_PARITY_GROUP_SIZE);
+        parityGroupSize = Math.max(parityGroupSize, 0);
+        this.parityGroupSize = parityGroupSize;
+    }
+
+    /**
+     * Gets the number indicating how many of the most recently sent, unacknowledged user-datas are piggybacked
+     * onto outgoing packets.
+     * Defaults to <code>0</code>, which indicates that no redundant copies are sent.
+     *
+     * @return the redundancy limit
+     */
+    public int getRedundancyLimit() {
+        return redundancyLimit;
+    }
+
+    /**
+     * Sets the number indicating how many of the most recently sent, unacknowledged user-datas are piggybacked
+     * onto outgoing packets, while space remains in them.
+     * Each send invocation copies these user-datas into its packets proactively,
+     * thus a lost user-data is usually received with the next packet, instead of waiting for its retransmission.
+     * This suits small, latency-critical user-data, like input streams or commands, which is sent at a fixed interval.
+     * <br />
+     * Redundant copies do not count towards the {@link #getPacketRetransmitLimit() packet retransmit limit},
+     * neither do they delay the retransmission of the user-data nor do they yield round-trip time samples.
+     * Fragments of larger user-data are not copied.
+     * Defaults to <code>0</code>, which indicates that no redundant copies are sent.
+     * Can not be set higher than {@link ProtocolConfig#MAX_REDUNDANCY_LIMIT}.
+     *
+     * @param redundancyLimit the redundancy limit
+     */
+    public void setRedundancyLimit(int redundancyLimit) {
+        redundancyLimit = Math.min(redundancyLimit, MAX_REDUNDANCY_LIMIT);
+        redundancyLimit = Math.max(redundancyLimit, 0);
+        this.redundancyLimit = redundancyLimit;
+    }
+
     /**
      * Gets the <code>K</code> constant used for computing the retransmission timeout.
      * <br />
@@ -346,6 +840,150 @@ public final class ProtocolConfig {
         useExtendedPrecedingTransmissionAcks = useIt;
     }
 
+    /**
+     * Gets the maximum number of selective ack ranges that are written in each packet header.
+     * Defaults to {@code 0}, which disables ack ranges.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     *
+     * @return the ack range limit
+     */
+    public static int getAckRangeLimit() {
+        return ackRangeLimit;
+    }
+
+    /**
+     * Sets the maximum number of selective ack ranges that are written in each packet header.
+     * Ack ranges acknowledge received transmissions that precede the preceding transmission ack vector,
+     * so that their acknowledgement is not lost during long bursts of lost packets or at high sending rates.
+     * Each ack range takes between {@code 2B} and {@code 5B}, a count of ranges is written in addition.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * Defaults to {@code 0}, which disables ack ranges.
+     * Can not be set higher than {@link ProtocolConfig#MAX_ACK_RANGE_LIMIT}.
+     * <br />
+     * Note that both communicating parties have to use the same limit.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     *
+     * @param ackRangeLimit the ack range limit
+     */
+    public static void setAckRangeLimit(int ackRangeLimit) {
+        ackRangeLimit = Math.min(ackRangeLimit, MAX_ACK_RANGE_LIMIT);
+        ackRangeLimit = Math.max(ackRangeLimit, 0);
+        ProtocolConfig.ackRangeLimit = ackRangeLimit;
+    }
+
+    /**
+     * Gets a boolean indicating whether each packet header advertises the receive window.
+     * Defaults to {@code false}.
+     *
+     * @return true, if flow control is used
+     */
+    public static boolean useFlowControl() {
+        return useFlowControl && useCompactHeaders;
+    }
+
+    /**
+     * Sets a boolean indicating whether each packet header advertises the receive window,
+     * i.e. the <code>dataId</code> of the next user-data that is expected to be received in order
+     * and the number of user-datas starting from it that can be queued without being discarded.
+     * The receive window is limited by the {@link #getPacketQueueLimit() packet queue limit}
+     * and the {@link #getPacketOffsetLimit() packet offset limit} of the receiver,
+     * as well as by the {@link Protocol#setConsumptionWindow(int) consumption window} the receiving application sets.
+     * <br />
+     * The sender holds back new user-data which does not fit into the advertised receive window,
+     * rather than sending user-data the receiver would discard as {@link ProtocolListener#handleUnorderedData(short, ByteBuffer) unordered}.
+     * Held back user-data is sent once the receive window advances, retransmits are never held back.
+     * If the sender gave up on the user-data the receiver is waiting for, user-data is no longer held back,
+     * as the receiver can only skip it by discarding it.
+     * For the same reason, user-data is only held back with {@link AutoRetransmitMode#ALWAYS automatic retransmission}.
+     * At most {@link #MAX_PACKET_QUEUE_LIMIT} user-datas are held back, older ones are sent regardless.
+     * Only user-data of the default stream of the {@link DeliveryLane#RELIABLE_ORDERED ordered lane} is held back.
+     * Increases each packet header by {@code 3B} to {@code 4B}.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that both communicating parties have to use the same setting.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     *
+     * @param useIt true, if flow control should be used
+     */
+    public static void setUseFlowControl(boolean useIt) {
+        ProtocolConfig.useFlowControl = useIt;
+    }
+
+    /**
+     * Gets a boolean indicating whether user-data can be sent on {@link DeliveryLane delivery lanes}
+     * other than {@link DeliveryLane#RELIABLE_ORDERED}.
+     * Defaults to {@code false}.
+     *
+     * @return true, if delivery lanes are used
+     */
+    public static boolean useDeliveryLanes() {
+        return useDeliveryLanes && useCompactHeaders;
+    }
+
+    /**
+     * Sets a boolean indicating whether user-data can be sent on {@link DeliveryLane delivery lanes}
+     * other than {@link DeliveryLane#RELIABLE_ORDERED}, or on streams other than the default one,
+     * see {@link SendOptions#setLane(DeliveryLane)} and {@link SendOptions#setStreamId(int)}.
+     * All lanes share the acknowledgements and the round-trip time estimation of a protocol instance.
+     * <br />
+     * User-data of the unreliable lanes is not kept after it is sent,
+     * thus it is never retransmitted, nor is the sender notified about its receipt.
+     * User-data of the reliable, ordered lane is only ordered relative to other user-data of that lane
+     * and of the same {@link SendOptions#setStreamId(int) stream},
+     * the receiver does not wait for user-data of other lanes or streams.
+     * Only user-data of the reliable, ordered lane is split into {@link #getFragmentLimit() fragments}.
+     * Increases the header of segments, which are not sent on the default lane and stream, by {@code 1B} to {@code 6B}.
+     * Requires the {@link #useCompactHeaders() compact header format}.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that both communicating parties have to use the same setting.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     *
+     * @param useThem true, if delivery lanes should be used
+     */
+    public static void setUseDeliveryLanes(boolean useThem) {
+        ProtocolConfig.useDeliveryLanes = useThem;
+    }
+
+    /**
+     * Gets a boolean indicating whether to use the compact packet header format.
+     * The compact format encodes lengths as variable-length integers,
+     * encodes the ids of all but the first segment of a packet as deltas relative to the first segment
+     * and omits the preceding transmission ack vector if it is empty.
+     * This cuts the header overhead of packets carrying many small segments considerably.
+     * Features, which require the compact format, say so in their documentation.
+     * Defaults to {@code false}, which keeps the header format compatible with previous releases.
+     * <br />
+     * Note that both communicating parties have to use the same header format.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    public static boolean useCompactHeaders() {
+        return useCompactHeaders;
+    }
+
+    /**
+     * Sets a boolean indicating whether to use the compact packet header format.
+     * The compact format encodes lengths as variable-length integers,
+     * encodes the ids of all but the first segment of a packet as deltas relative to the first segment
+     * and omits the preceding transmission ack vector if it is empty.
+     * This cuts the header overhead of packets carrying many small segments considerably.
+     * Features, which require the compact format, say so in their documentation.
+     * Defaults to {@code false}, which keeps the header format compatible with previous releases.
+     * <br />
+     * Note that both communicating parties have to use the same header format.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    public static void setUseCompactHeaders(boolean useThem) {
+        useCompactHeaders = useThem;
+    }
+
     /**
      * Gets the highest possible MTU (Maximum Transmission Unit) size (in bytes) that can be configured for all protocol instances.
      * Used internally to determine maximum buffer capacities.
@@ -360,11 +998,86 @@ public final class ProtocolConfig {
     /**
      * Sets the highest possible MTU (Maximum Transmission Unit) size (in bytes) that can be configured for all protocol instances.
      * Used internally to determine maximum buffer capacities.
-     * Defaults to {@code 2048}.
+     * Defaults to {@code 2048}, cannot exceed {@link #MAX_HIGHEST_POSSIBLE_MTU_SIZE}
+     * and is therefore clamped accordingly.
      * <br />
      * Note that this setting can only be set statically for all protocol instances.
      */
     public static void setHighestPossibleMTUSize(int highestPossibleMTUSize) {
-        ProtocolConfig.highestPossibleMTUSize = highestPossibleMTUSize;
+        ProtocolConfig.highestPossibleMTUSize = Math.min(highestPossibleMTUSize, MAX_HIGHEST_POSSIBLE_MTU_SIZE);
+    }
+
+    /**
+     * Gets the upper limit (in bytes) of memory that is kept for reuse by the {@link BufferArena buffer arena},
+     * which all protocol instances allocate their data buffers from.
+     * Data buffers are partitioned into size classes, thus memory used by the protocol scales with the actual data sizes.
+     * Defaults to {@code 1MiB}.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    public static long getBufferArenaMemoryLimit() {
+        return bufferArenaMemoryLimit;
+    }
+
+    /**
+     * Sets the upper limit (in bytes) of memory that is kept for reuse by the {@link BufferArena buffer arena},
+     * which all protocol instances allocate their data buffers from.
+     * Released data buffers exceeding this limit are left to the garbage collector.
+     * Defaults to {@code 1MiB}.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    public static void setBufferArenaMemoryLimit(long bufferArenaMemoryLimit) {
+        ProtocolConfig.bufferArenaMemoryLimit = Math.max(0L, bufferArenaMemoryLimit);
+    }
+
+    /**
+     * Gets the boolean indicating whether data buffers are allocated in direct (off-heap) memory.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    public static boolean useDirectBuffers() {
+        return useDirectBuffers;
+    }
+
+    /**
+     * Sets the boolean indicating whether data buffers are allocated in direct (off-heap) memory.
+     * Direct data buffers can be transferred to a direct <code>ByteBuffer</code>, which is handed over to a
+     * {@link java.nio.channels.DatagramChannel DatagramChannel} without further copying,
+     * see {@link Packet#writeExternalStatic(Packet, ByteBuffer)}.
+     * Writing direct data buffers to an {@link java.io.ObjectOutput ObjectOutput} is slower than writing heap buffers.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    public static void setUseDirectBuffers(boolean useThem) {
+        useDirectBuffers = useThem;
+    }
+
+    /**
+     * Gets the boolean indicating whether the pools of segments and packets detect objects,
+     * which are garbage collected without being recycled.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    public static boolean usePoolLeakDetection() {
+        return usePoolLeakDetection;
+    }
+
+    /**
+     * Sets the boolean indicating whether the pools of segments and packets detect objects,
+     * which are garbage collected without being recycled.
+     * Leaks are logged by protocol instances which are constructed with a {@link Logger logger}.
+     * Tracking each pooled object adds overhead, thus leak detection should only be enabled for debugging purposes.
+     * Defaults to {@code false}.
+     * <br />
+     * Note that this setting can only be set statically for all protocol instances.
+     */
+    public static void setUsePoolLeakDetection(boolean useIt) {
+        usePoolLeakDetection = useIt;
+        Segment.getPool().setLeakDetection(useIt);
+        Packet.getPool().setLeakDetection(useIt);
     }
 }
@@ -16,6 +16,11 @@ import java.nio.ByteBuffer;
 
 /**
  * The listener which will be notified about specific {@link Protocol protocol} events.
+ * <br />
+ * The user-datas supplied to the listener are backed by pooled memory, which is reused by the protocol
+ * as soon as it no longer holds on to the user-data, see {@link ProtocolConfig#getBufferArenaMemoryLimit()}.
+ * Thus the supplied user-datas are only valid until the respective method returns,
+ * they should be copied by the user / application if they are needed thereafter.
  */
 public class ProtocolListener implements TransmissionSuccessListener,
         TransmissionOrderListener, RetransmissionListener, NewestReceivedListener {
@@ -32,6 +37,8 @@ public class ProtocolListener implements TransmissionSuccessListener,
     /**
      * This protocol instance was unable to receive data in the same order it was sent from another protocol instance.
      * It skipped over a gap of one or more unreceived datas and reestablished order with the first <code>unorderedData</code> after the gap.
+     * User-data of the {@link ProtocolConfig.DeliveryLane#RELIABLE_UNORDERED reliable, unordered lane} is handed over
+     * this way once, as soon as it is received.
      * @param dataId        the <code>id</code> of the data
      * @param unorderedData the actual user-data; the supplied user-data should not be modified by the user / application as it's used internally later on
      */
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust;
+
+/**
+ * The options user-data is {@link Protocol#send(java.nio.ByteBuffer, SendOptions) sent} with.
+ * The default options send user-data on the {@link ProtocolConfig.DeliveryLane#RELIABLE_ORDERED ordered lane}'s
+ * stream <code>0</code> with {@link ProtocolConfig.Priority#NORMAL normal priority}, without it expiring,
+ * which is the same as sending it without specifying any options.
+ * <br />
+ * The options are read once per send invocation, thus they can be reused for subsequent send invocations.
+ */
+public class SendOptions {
+    private ProtocolConfig.DeliveryLane lane = ProtocolConfig.DeliveryLane.RELIABLE_ORDERED;
+    private int streamId = 0;
+    private ProtocolConfig.Priority priority = ProtocolConfig.Priority.NORMAL;
+    private long timeout = 0L;
+
+    /**
+     * Instantiates new send options with default values.
+     */
+    public SendOptions() {
+        super();
+    }
+
+    /**
+     * Instantiates new send options by copying the provided options.
+     *
+     * @param options the options
+     */
+    public SendOptions(SendOptions options) {
+        super();
+        this.lane = options.lane;
+        this.streamId = options.streamId;
+        this.priority = options.priority;
+        this.timeout = options.timeout;
+    }
+
+    /**
+     * Gets the {@link ProtocolConfig.DeliveryLane delivery lane} to send the user-data on.
+     * Defaults to {@link ProtocolConfig.DeliveryLane#RELIABLE_ORDERED}.
+     */
+    public ProtocolConfig.DeliveryLane getLane() {
+        return lane;
+    }
+
+    /**
+     * Sets the {@link ProtocolConfig.DeliveryLane delivery lane} to send the user-data on.
+     * Lanes other than the default one require {@link ProtocolConfig#useDeliveryLanes() delivery lanes} to be used.
+     * <br />
+     * User-data of lanes other than {@link ProtocolConfig.DeliveryLane#RELIABLE_ORDERED} is never fragmented,
+     * thus it must be smaller or equal to the {@link Protocol#getMaximumDataSize() maximum data size}.
+     * Defaults to {@link ProtocolConfig.DeliveryLane#RELIABLE_ORDERED}.
+     *
+     * @param lane the lane
+     */
+    public void setLane(ProtocolConfig.DeliveryLane lane) {
+        if (lane == null)
+            throw new IllegalArgumentException("Invalid lane!");
+        this.lane = lane;
+    }
+
+    /**
+     * Gets the stream of the {@link ProtocolConfig.DeliveryLane#RELIABLE_ORDERED ordered lane} to send the user-data on.
+     * Defaults to <code>0</code>.
+     */
+    public int getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * Sets the stream of the {@link ProtocolConfig.DeliveryLane#RELIABLE_ORDERED ordered lane} to send the user-data on,
+     * ranging from <code>0</code> to {@link ProtocolConfig#MAX_STREAM_ID}.
+     * Streams other than the default one require {@link ProtocolConfig#useDeliveryLanes() delivery lanes} to be used,
+     * and they can not be combined with other lanes.
+     * <br />
+     * User-data of a stream is {@link ProtocolListener#handleOrderedData(short, java.nio.ByteBuffer) handed over in order}
+     * relative to the other user-data of the same stream only,
+     * thus the loss of user-data delays the delivery of its own stream only.
+     * The state of a stream is allocated once it is used and evicted once user-data of other lanes and streams
+     * exceeds {@link ProtocolConfig#MAX_STREAM_OFFSET} <code>dataIds</code> since the stream was last used,
+     * thus the order of user-data sent before and after such a pause is not guaranteed.
+     * Defaults to <code>0</code>.
+     *
+     * @param streamId the stream id
+     */
+    public void setStreamId(int streamId) {
+        if (streamId < 0 || streamId > ProtocolConfig.MAX_STREAM_ID)
+            throw new IllegalArgumentException("Invalid stream id " + streamId + "!");
+        this.streamId = streamId;
+    }
+
+    /**
+     * Gets the {@link ProtocolConfig.Priority priority} to send the user-data with.
+     * Defaults to {@link ProtocolConfig.Priority#NORMAL}.
+     */
+    public ProtocolConfig.Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the {@link ProtocolConfig.Priority priority} to send the user-data with.
+     * <br />
+     * Once not all user-data can be sent at once, e.g. as the congestion window is exhausted,
+     * the priorities take turns according to their weights, both for new and retransmitted user-data.
+     * The delay of user-data of each priority can be inspected with
+     * {@link Protocol#getAverageQueuingDelay(ProtocolConfig.Priority)}.
+     * Defaults to {@link ProtocolConfig.Priority#NORMAL}.
+     *
+     * @param priority the priority
+     */
+    public void setPriority(ProtocolConfig.Priority priority) {
+        if (priority == null)
+            throw new IllegalArgumentException("Invalid priority!");
+        this.priority = priority;
+    }
+
+    /**
+     * Gets the time (in ms) after which the user-data is of no use to the remote side anymore.
+     * Defaults to <code>0</code>, which indicates that the user-data does not expire.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the time (in ms) after which the user-data is of no use to the remote side anymore.
+     * <br />
+     * User-data is sent and retransmitted in the order of its deadline, the earliest one first,
+     * ahead of user-data that does not expire, within the turns of its {@link ProtocolConfig.Priority priority}.
+     * Once its deadline passes, the user-data is neither sent nor retransmitted anymore,
+     * and reliable user-data is reported as {@link ProtocolListener#handleUnackedData(short, java.nio.ByteBuffer) unacked},
+     * unless it has been acknowledged already.
+     * Thus the bandwidth is spent on user-data that can still arrive in time.
+     * <br />
+     * Note that user-data of the ordered lane, which expired before it was received, delays the delivery of subsequent
+     * user-data at the remote side, until the remote side gives up on it, see {@link ProtocolConfig#getPacketQueueTimeout()}.
+     * Defaults to <code>0</code>, which indicates that the user-data does not expire.
+     *
+     * @param timeout the timeout
+     */
+    public void setTimeout(long timeout) {
+        if (timeout < 0L)
+            throw new IllegalArgumentException("Invalid timeout " + timeout + "!");
+        this.timeout = timeout;
+    }
+}
@@ -41,7 +41,7 @@ public abstract class AbstractMapControl {
 
     protected abstract AbstractSegmentMap createMap();
 
-    public NavigableSet<Short> getKeys() {
+    public Set<Short> getKeys() {
         return dataMap.getKeys();
     }
 
@@ -49,6 +49,14 @@ public abstract class AbstractMapControl {
         return dataMap.getValues();
     }
 
+    /**
+     * Release a segment that has been removed entirely from the {@link #dataMap}.
+     */
+    protected static void release(Segment segment) {
+        if (segment != null)
+            segment.release();
+    }
+
     protected abstract void discardEntry(Short key);
     protected abstract void discardEntry(Segment segment);
     protected abstract void discardEntryKey(Short key);
@@ -92,7 +100,9 @@ public abstract class AbstractMapControl {
     private void discardEntriesWithTooManyEntryKeys() {
         if (maxEntryOccurrences > 0) {
             Segment segment = dataMap.firstValue();
-            while (segment != null && dataMap.getKeys(segment).size() > maxEntryOccurrences) {
+            // redundant copies do not count as retransmissions
+            while (segment != null && dataMap.getKeys(segment).size() - segment.getRedundantTransmissionCount()
+                    > maxEntryOccurrences) {
                 discardEntry(segment);
                 segment = dataMap.firstValue();
             }
@@ -7,44 +7,38 @@
 
 package com.github.mucaho.jnetrobust.control;
 
-import com.github.mucaho.jnetrobust.util.CollectionUtils;
 import com.github.mucaho.jnetrobust.util.EntryIterator;
+import com.github.mucaho.jnetrobust.util.ShortWindowMap;
 
 import java.util.*;
 
 public abstract class AbstractSegmentMap {
-    protected final NavigableMap<Short, Segment> keyMap;
-    private final NavigableMap<Short, Segment> keyMapOut;
+    protected final ShortWindowMap<Segment> keyMap;
+    private final Map<Short, Segment> keyMapOut;
 
-    protected final NavigableMap<Segment, NavigableSet<Short>> valueMap;
-    private final NavigableMap<Segment, NavigableSet<Short>> valueMapOut;
+    protected final LinkedSegmentSet valueSet;
 
     private final EntryIterator<Short, Segment> entryIterator;
 
-    public AbstractSegmentMap(Comparator<Short> idComparator, Comparator<Segment> segmentComparator) {
-        this.keyMap = new TreeMap<Short, Segment>(idComparator);
-        this.keyMapOut = CollectionUtils.unmodifiableNavigableMap(keyMap);
+    public AbstractSegmentMap(Comparator<Segment> segmentComparator) {
+        this.keyMap = new ShortWindowMap<Segment>();
+        this.keyMapOut = Collections.unmodifiableMap(keyMap);
 
-        this.valueMap = new TreeMap<Segment, NavigableSet<Short>>(segmentComparator);
-        this.valueMapOut = CollectionUtils.unmodifiableNavigableMap(valueMap);
+        this.valueSet = new LinkedSegmentSet(segmentComparator);
 
         this.entryIterator = new SegmentMapIterator(this);
     }
 
-    public NavigableMap<Short, Segment> getKeyMap() {
+    public Map<Short, Segment> getKeyMap() {
         return keyMapOut;
     }
 
-    public NavigableMap<Segment, NavigableSet<Short>> getValueMap() {
-        return valueMapOut;
-    }
-
-    public NavigableSet<Short> getKeys() {
-        return keyMapOut.navigableKeySet();
+    public Set<Short> getKeys() {
+        return keyMapOut.keySet();
     }
 
     public NavigableSet<Segment> getValues() {
-        return valueMapOut.navigableKeySet();
+        return valueSet;
     }
 
     public Segment getValue(Short key) {
@@ -52,9 +46,16 @@ public abstract class AbstractSegmentMap {
     }
 
     public NavigableSet<Short> getKeys(Segment segment) {
-        return valueMapOut.get(segment);
+        return valueSet.getKeys(segment);
     }
 
+    /*
+     * The map holds a reference to each segment contained in it, see Segment#retain().
+     * Segments which are displaced entirely by a put operation are released by the map,
+     * whereas segments which are removed entirely by a remove operation are handed over to the caller,
+     * who is responsible to release them.
+     */
+
     abstract void putAll(Segment segment);
 
     abstract void putAll(NavigableSet<Short> keys, Segment segment);
@@ -76,7 +77,7 @@ public abstract class AbstractSegmentMap {
     }
 
     public Short firstKey() {
-        return keyMap.isEmpty() ? null : keyMap.firstKey();
+        return keyMap.firstKey();
     }
 
     public Short higherKey(Short key) {
@@ -84,7 +85,7 @@ public abstract class AbstractSegmentMap {
     }
 
     public Short lastKey() {
-        return keyMap.isEmpty() ? null : keyMap.lastKey();
+        return keyMap.lastKey();
     }
 
     public Short lowerKey(Short key) {
@@ -92,23 +93,23 @@ public abstract class AbstractSegmentMap {
     }
 
     public int valueSize() {
-        return valueMap.size();
+        return valueSet.size();
     }
 
     public Segment firstValue() {
-        return valueMap.isEmpty() ? null : valueMap.firstKey();
+        return valueSet.isEmpty() ? null : valueSet.first();
     }
 
     public Segment higherValue(Segment segment) {
-        return valueMap.higherKey(segment);
+        return valueSet.higher(segment);
     }
 
     public Segment lastValue() {
-        return valueMap.isEmpty() ? null : valueMap.lastKey();
+        return valueSet.isEmpty() ? null : valueSet.last();
     }
 
     public Segment lowerValue(Segment segment) {
-        return valueMap.lowerKey(segment);
+        return valueSet.lower(segment);
     }
 
     void clear() {
@@ -116,8 +117,13 @@ public abstract class AbstractSegmentMap {
     }
 
     void clear(boolean thourough) {
+        Segment segment = valueSet.pollFirstSegment();
+        while (segment != null) {
+            segment.release();
+            segment = valueSet.pollFirstSegment();
+        }
+
         keyMap.clear();
-        valueMap.clear();
     }
 
     public boolean isEmpty() {
@@ -12,6 +12,7 @@ import com.github.mucaho.jnetrobust.util.ShiftableBitSet;
 
 import java.util.NavigableSet;
 
+import static com.github.mucaho.jnetrobust.util.BitConstants.LSB;
 import static com.github.mucaho.jnetrobust.util.BitConstants.OFFSET;
 import static com.github.mucaho.jnetrobust.util.BitConstants.SIZE;
 
@@ -21,6 +22,15 @@ public class AckBitsControl {
      */
     private final ShiftableBitSet ackRemoteBits = new ShiftableBitSet();
 
+    /*
+     * History of the remoteTransmissionIds received most recently, which extends beyond the ack bits.
+     * Bit (id & HISTORY_MASK) is set if the id was received, bits of ids yet to be received are cleared in advance.
+     */
+    public static final int HISTORY_SIZE = 1 << 10;
+    private static final int HISTORY_MASK = HISTORY_SIZE - 1;
+    private final long[] history = new long[HISTORY_SIZE / Long.SIZE];
+    private Short newestHistoryId = null;
+
     public long getAckRemoteBits() {
         return this.ackRemoteBits.get();
     }
@@ -32,11 +42,80 @@ public class AckBitsControl {
         while (id != null) {
             diff = IdComparator.instance.compare(remoteTransmissionId, id);
             addToAck(diff);
+            addToHistory(id);
 
             id = remoteTransmissionIds.higher(id);
         }
     }
 
+    private void addToHistory(short id) {
+        if (newestHistoryId == null) {
+            newestHistoryId = id;
+        } else {
+            int diff = IdComparator.instance.compare(id, newestHistoryId);
+            if (diff > 0) {
+                // clear the bits of skipped ids, which were last used by ids HISTORY_SIZE before them
+                for (int i = 1, l = Math.min(diff, HISTORY_SIZE); i < l; ++i)
+                    setHistoryBit((short) (newestHistoryId + i), false);
+                newestHistoryId = id;
+            } else if (-diff >= HISTORY_SIZE) {
+                return;
+            }
+        }
+        setHistoryBit(id, true);
+    }
+
+    private void setHistoryBit(short id, boolean set) {
+        int index = id & HISTORY_MASK;
+        if (set)
+            history[index >>> 6] |= LSB << (index & 63);
+        else
+            history[index >>> 6] &= ~(LSB << (index & 63));
+    }
+
+    private boolean getHistoryBit(short id) {
+        int index = id & HISTORY_MASK;
+        return (history[index >>> 6] & (LSB << (index & 63))) != 0;
+    }
+
+    /**
+     * Get the ranges of received remoteTransmissionIds which precede the ids covered by the ack bits,
+     * starting with the newest range.
+     *
+     * @param remoteTransmissionId the newest remoteTransmissionId, which is acknowledged on its own
+     * @param ackBitsSize          the number of preceding remoteTransmissionIds covered by the ack bits
+     * @param ranges               the array to store the ranges in, each as a pair of the oldest id and the range length
+     * @param maxRanges            the maximum number of ranges to store
+     * @return the number of ranges stored
+     */
+    public int getAckRanges(short remoteTransmissionId, int ackBitsSize, short[] ranges, int maxRanges) {
+        if (newestHistoryId == null || maxRanges <= 0)
+            return 0;
+
+        int count = 0;
+        int rangeLength = 0;
+        // ids older than the history size have been overwritten
+        int maxOffset = HISTORY_SIZE - IdComparator.instance.compare(newestHistoryId, remoteTransmissionId);
+        for (int offset = ackBitsSize + OFFSET; offset < maxOffset; ++offset) {
+            short id = (short) (remoteTransmissionId - offset);
+            if (getHistoryBit(id)) {
+                rangeLength++;
+            } else if (rangeLength > 0) {
+                ranges[count * 2] = (short) (id + 1);
+                ranges[count * 2 + 1] = (short) rangeLength;
+                rangeLength = 0;
+                if (++count == maxRanges)
+                    return count;
+            }
+        }
+        if (rangeLength > 0) {
+            ranges[count * 2] = (short) (remoteTransmissionId - maxOffset + 1);
+            ranges[count * 2 + 1] = (short) rangeLength;
+            count++;
+        }
+        return count;
+    }
+
     protected void addToAck(int diff) {
         // add to received bitset
         if ((diff > 0) && (diff - OFFSET < SIZE)) { // save late pkg.seq into bitset
@@ -27,16 +27,18 @@ public class AckedMapControl extends AbstractMapControl {
 
     @Override
     protected void discardEntry(Short key) {
-        dataMap.removeAll(key);
+        release(dataMap.removeAll(key));
     }
 
     @Override
     protected void discardEntry(Segment segment) {
-        dataMap.removeAll(segment);
+        release(dataMap.removeAll(segment));
     }
 
     @Override
     protected void discardEntryKey(Short key) {
-        dataMap.remove(key);
+        Segment shrankSegment = dataMap.remove(key);
+        if (shrankSegment != null && shrankSegment.getTransmissionIds().isEmpty())
+            release(shrankSegment);
     }
 }
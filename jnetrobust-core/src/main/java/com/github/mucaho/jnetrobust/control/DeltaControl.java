@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.control;
+
+import com.github.mucaho.jnetrobust.util.IdComparator;
+import com.github.mucaho.jnetrobust.util.ShortWindowMap;
+
+public class DeltaControl {
+    // the maximum distance between the data id of a segment and the data id of its baseline
+    public static final int MAX_BASELINE_OFFSET = 64;
+    // received segments are held on to for longer, as encoded segments may arrive out of order
+    private static final int MAX_RECEIVED_BASELINE_OFFSET = MAX_BASELINE_OFFSET * 2;
+
+    // sending side: the newest segment that was acknowledged by the receiver
+    private Segment sentBaseline = null;
+
+    // receiving side: the newest segments that were received, any of which may be referenced as a baseline
+    private final ShortWindowMap<Segment> receivedBaselines = new ShortWindowMap<Segment>(MAX_RECEIVED_BASELINE_OFFSET);
+
+    // fragments are neither encoded nor referenced as baselines, as they are only parts of a user-data
+
+    public void refreshSentBaseline(Segment ackedSegment, short newestDataId) {
+        if (ackedSegment.isFragment())
+            return;
+        // the receiver does not keep segments that arrive too late, even though it acknowledges them
+        if (IdComparator.instance.compare(newestDataId, ackedSegment.getDataId()) >= MAX_RECEIVED_BASELINE_OFFSET)
+            return;
+
+        if (sentBaseline == null
+                || IdComparator.instance.compare(ackedSegment.getDataId(), sentBaseline.getDataId()) > 0) {
+            ackedSegment.retain();
+            if (sentBaseline != null)
+                sentBaseline.release();
+            sentBaseline = ackedSegment;
+        }
+    }
+
+    public void encode(Segment segment) {
+        if (sentBaseline == null || segment.isFragment())
+            return;
+
+        int baselineOffset = IdComparator.instance.compare(segment.getDataId(), sentBaseline.getDataId());
+        if (baselineOffset > 0 && baselineOffset <= MAX_BASELINE_OFFSET)
+            segment.encodeDelta(sentBaseline);
+    }
+
+    // returns whether the segment's data is available, rather than discarded as it could not be decoded
+    public boolean decode(Segment segment) {
+        if (!segment.isDeltaEncoded())
+            return true;
+
+        return segment.decodeDelta(receivedBaselines.get(segment.getBaselineDataId().shortValue()));
+    }
+
+    public void refreshReceivedBaseline(Segment segment) {
+        if (segment.isFragment())
+            return;
+
+        Short dataId = segment.getDataId();
+        Short newestDataId = receivedBaselines.lastKey();
+        if (newestDataId != null
+                && IdComparator.instance.compare(dataId, newestDataId) <= -MAX_RECEIVED_BASELINE_OFFSET)
+            return;
+        if (receivedBaselines.containsKey(dataId))
+            return;
+
+        segment.retain();
+        receivedBaselines.put(dataId, segment);
+
+        // discard baselines that can no longer be referenced
+        newestDataId = receivedBaselines.lastKey();
+        Short oldestDataId = receivedBaselines.firstKey();
+        while (IdComparator.instance.compare(newestDataId, oldestDataId) >= MAX_RECEIVED_BASELINE_OFFSET) {
+            receivedBaselines.remove(oldestDataId.shortValue()).release();
+            oldestDataId = receivedBaselines.firstKey();
+        }
+    }
+}
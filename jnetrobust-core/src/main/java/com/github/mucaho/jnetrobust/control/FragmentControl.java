@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.control;
+
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.util.IdComparator;
+import com.github.mucaho.jnetrobust.util.SystemClock;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FragmentControl {
+    // the maximum number of user-datas that are reassembled at the same time
+    public static final int MAX_PENDING_MESSAGES = 8;
+
+    private final long maxMessageTimeout;
+    private final SystemClock systemClock;
+
+    // ordered from oldest to newest
+    private final List<Message> messages = new ArrayList<Message>(MAX_PENDING_MESSAGES);
+    private final ArrayDeque<Message> freeMessages = new ArrayDeque<Message>(MAX_PENDING_MESSAGES);
+
+    // scratch buffer the fragments are concatenated in
+    private ByteBuffer reassembledData = ByteBuffer.allocate(0);
+    private boolean reassembledOrdered = true;
+
+    public FragmentControl(long maxMessageTimeout, SystemClock systemClock) {
+        this.maxMessageTimeout = maxMessageTimeout;
+        this.systemClock = systemClock;
+    }
+
+    /**
+     * Add a received fragment to the user-data it is part of.
+     *
+     * @param fragment the fragment, which is retained until the user-data is complete
+     * @param ordered  whether the fragment has been received in order
+     * @return the reassembled user-data, which has the data id of its last fragment
+     * and has to be {@link Segment#release() released} by the caller,
+     * or <code>null</code> if the user-data is not complete yet
+     */
+    public Segment addFragment(Segment fragment, boolean ordered) {
+        short firstDataId = (short) (fragment.getDataId() - fragment.getFragmentIndex());
+        Message message = getMessage(firstDataId);
+        if (message == null) {
+            if (messages.size() >= MAX_PENDING_MESSAGES)
+                discardMessage(0);
+
+            message = freeMessages.isEmpty() ? new Message() : freeMessages.pollFirst();
+            message.firstDataId = firstDataId;
+            message.streamId = fragment.getStreamId();
+            message.fragmentCount = fragment.getFragmentCount();
+            message.time = systemClock.getTimeNow();
+            messages.add(message);
+        } else if (message.fragmentCount != fragment.getFragmentCount()) {
+            return null;
+        }
+
+        if (message.fragments[fragment.getFragmentIndex()] == null) {
+            // the fragment outlives the buffer it may have been received in
+            fragment.detachData();
+            fragment.retain();
+            message.fragments[fragment.getFragmentIndex()] = fragment;
+            message.receivedCount++;
+        }
+        message.ordered &= ordered;
+
+        if (message.receivedCount < message.fragmentCount)
+            return null;
+
+        Segment reassembled = reassemble(message);
+        reassembledOrdered = message.ordered;
+        discardMessage(messages.indexOf(message));
+        return reassembled;
+    }
+
+    /**
+     * Whether the user-data that was last {@link #addFragment(Segment, boolean) reassembled}
+     * consists of fragments which have all been received in order.
+     *
+     * @return <code>true</code> if the user-data has been received in order
+     */
+    public boolean isReassembledOrdered() {
+        return reassembledOrdered;
+    }
+
+    /**
+     * Discard the user-datas that can no longer be completed,
+     * because their missing fragments are older than the next expected data id of their stream
+     * or because they timed out.
+     *
+     * @param streamId   the stream the next data id applies to
+     * @param nextDataId the next data id the receiver accepts on the stream
+     */
+    public void discardMessages(int streamId, short nextDataId) {
+        long timeNow = systemClock.getTimeNow();
+        for (int i = messages.size() - 1; i >= 0; --i) {
+            Message message = messages.get(i);
+            short lastDataId = (short) (message.firstDataId + message.fragmentCount - 1);
+            if (message.streamId == streamId && IdComparator.instance.compare(lastDataId, nextDataId) < 0
+                    || (maxMessageTimeout > 0 && timeNow - message.time > maxMessageTimeout))
+                discardMessage(i);
+        }
+    }
+
+    public int getPendingMessageCount() {
+        return messages.size();
+    }
+
+    private Message getMessage(short firstDataId) {
+        for (int i = 0, l = messages.size(); i < l; ++i) {
+            Message message = messages.get(i);
+            if (message.firstDataId == firstDataId)
+                return message;
+        }
+        return null;
+    }
+
+    private Segment reassemble(Message message) {
+        int dataSize = 0;
+        for (int i = 0; i < message.fragmentCount; ++i) {
+            ByteBuffer data = message.fragments[i].getData();
+            dataSize += data != null ? data.remaining() : 0;
+        }
+
+        if (reassembledData.capacity() < dataSize)
+            reassembledData = ByteBuffer.allocate(dataSize);
+        reassembledData.clear();
+        for (int i = 0; i < message.fragmentCount; ++i) {
+            ByteBuffer data = message.fragments[i].getData();
+            if (data != null) {
+                reassembledData.put(data);
+                data.rewind();
+            }
+        }
+        reassembledData.flip();
+
+        Segment lastFragment = message.fragments[message.fragmentCount - 1];
+        return Segment.obtain(lastFragment.getDataId(), reassembledData);
+    }
+
+    private void discardMessage(int index) {
+        Message message = messages.remove(index);
+        for (int i = 0; i < message.fragmentCount; ++i) {
+            if (message.fragments[i] != null) {
+                message.fragments[i].release();
+                message.fragments[i] = null;
+            }
+        }
+        message.receivedCount = 0;
+        message.ordered = true;
+        freeMessages.addLast(message);
+    }
+
+    private static final class Message {
+        private final Segment[] fragments = new Segment[ProtocolConfig.MAX_FRAGMENT_LIMIT];
+        private short firstDataId;
+        private int streamId;
+        private int fragmentCount;
+        private int receivedCount = 0;
+        private boolean ordered = true;
+        private long time;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.control;
+
+import com.github.mucaho.jnetrobust.util.CollectionUtils;
+
+import java.util.*;
+
+/**
+ * A sorted set of segments, which links the contained segments to each other in a doubly-linked list.
+ * Each contained segment is associated with the set of keys it is stored under.
+ * <br />
+ * The links are stored inside the segments themselves, thus a segment can be contained in one such set at a time.
+ * Navigating from a contained segment to its {@link #higher(Segment) higher} or {@link #lower(Segment) lower} segment
+ * takes constant time.
+ * Segments are inserted by walking from the tail of the list, which takes constant time for segments that sort last.
+ * When the sort key of a contained segment changes, the segment has to be put again to restore the order,
+ * which takes constant time if it moves to the tail of the list.
+ * <br />
+ * The set is read-only through the <code>Set</code> interface.
+ * The range views ({@link #subSet(Segment, boolean, Segment, boolean) subSet}, {@link #headSet(Segment, boolean) headSet},
+ * {@link #tailSet(Segment, boolean) tailSet} and {@link #descendingSet() descendingSet}) are unmodifiable snapshots.
+ */
+public class LinkedSegmentSet extends AbstractSet<Segment> implements NavigableSet<Segment> {
+    private final Comparator<Segment> comparator;
+
+    private Segment head = null;
+    private Segment tail = null;
+    private int size = 0;
+
+    public LinkedSegmentSet(Comparator<Segment> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Add the segment or, if it's already contained, restore the order of the set after the sort key of the segment changed.
+     *
+     * @return <code>true</code> if the segment was not contained before
+     */
+    boolean putSegment(Segment segment, NavigableSet<Short> keys) {
+        if (segment.linkOwner == this) {
+            segment.linkKeys = keys;
+            reposition(segment);
+            return false;
+        }
+        if (segment.linkOwner != null)
+            throw new IllegalStateException("Segment is already contained in another set!");
+
+        linkBefore(segment, ceilingFromTail(segment));
+        segment.linkOwner = this;
+        segment.linkKeys = keys;
+        size++;
+        return true;
+    }
+
+    boolean removeSegment(Segment segment) {
+        if (segment.linkOwner != this)
+            return false;
+
+        unlink(segment);
+        segment.linkOwner = null;
+        segment.linkKeys = null;
+        size--;
+        return true;
+    }
+
+    NavigableSet<Short> getKeys(Segment segment) {
+        return segment.linkOwner == this ? segment.linkKeys : null;
+    }
+
+    private void reposition(Segment segment) {
+        Segment previous = segment.previous;
+        Segment next = segment.next;
+        if (next != null && comparator.compare(segment, next) > 0) {
+            unlink(segment);
+            if (comparator.compare(segment, tail) > 0) {
+                linkBefore(segment, null);
+            } else {
+                while (next != null && comparator.compare(segment, next) > 0)
+                    next = next.next;
+                linkBefore(segment, next);
+            }
+        } else if (previous != null && comparator.compare(segment, previous) < 0) {
+            unlink(segment);
+            while (previous != null && comparator.compare(segment, previous) < 0)
+                previous = previous.previous;
+            linkBefore(segment, previous != null ? previous.next : head);
+        }
+    }
+
+    Segment pollFirstSegment() {
+        Segment first = head;
+        if (first != null)
+            removeSegment(first);
+        return first;
+    }
+
+    // the first segment, walking from the tail, that is greater than or equal to the given segment
+    private Segment ceilingFromTail(Segment segment) {
+        Segment ceiling = null;
+        Segment current = tail;
+        while (current != null && comparator.compare(segment, current) <= 0) {
+            ceiling = current;
+            current = current.previous;
+        }
+        return ceiling;
+    }
+
+    private void linkBefore(Segment segment, Segment next) {
+        Segment previous = next != null ? next.previous : tail;
+        segment.previous = previous;
+        segment.next = next;
+        if (previous != null)
+            previous.next = segment;
+        else
+            head = segment;
+        if (next != null)
+            next.previous = segment;
+        else
+            tail = segment;
+    }
+
+    private void unlink(Segment segment) {
+        if (segment.previous != null)
+            segment.previous.next = segment.next;
+        else
+            head = segment.next;
+        if (segment.next != null)
+            segment.next.previous = segment.previous;
+        else
+            tail = segment.previous;
+        segment.previous = null;
+        segment.next = null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Segment && ((Segment) o).linkOwner == this;
+    }
+
+    @Override
+    public boolean add(Segment segment) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Segment first() {
+        if (head == null)
+            throw new NoSuchElementException();
+        return head;
+    }
+
+    @Override
+    public Segment last() {
+        if (tail == null)
+            throw new NoSuchElementException();
+        return tail;
+    }
+
+    @Override
+    public Segment lower(Segment segment) {
+        if (segment.linkOwner == this)
+            return segment.previous;
+
+        Segment current = tail;
+        while (current != null && comparator.compare(current, segment) >= 0)
+            current = current.previous;
+        return current;
+    }
+
+    @Override
+    public Segment floor(Segment segment) {
+        if (segment.linkOwner == this)
+            return segment;
+
+        Segment current = tail;
+        while (current != null && comparator.compare(current, segment) > 0)
+            current = current.previous;
+        return current;
+    }
+
+    @Override
+    public Segment ceiling(Segment segment) {
+        if (segment.linkOwner == this)
+            return segment;
+
+        Segment current = head;
+        while (current != null && comparator.compare(current, segment) < 0)
+            current = current.next;
+        return current;
+    }
+
+    @Override
+    public Segment higher(Segment segment) {
+        if (segment.linkOwner == this)
+            return segment.next;
+
+        Segment current = head;
+        while (current != null && comparator.compare(current, segment) <= 0)
+            current = current.next;
+        return current;
+    }
+
+    @Override
+    public Segment pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Segment pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Comparator<? super Segment> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public Iterator<Segment> iterator() {
+        return new SegmentIterator(false);
+    }
+
+    @Override
+    public Iterator<Segment> descendingIterator() {
+        return new SegmentIterator(true);
+    }
+
+    private NavigableSet<Segment> snapshot() {
+        NavigableSet<Segment> snapshot = new TreeSet<Segment>(comparator);
+        for (Segment segment = head; segment != null; segment = segment.next)
+            snapshot.add(segment);
+        return snapshot;
+    }
+
+    @Override
+    public NavigableSet<Segment> descendingSet() {
+        return CollectionUtils.unmodifiableNavigableSet(snapshot().descendingSet());
+    }
+
+    @Override
+    public NavigableSet<Segment> subSet(Segment fromElement, boolean fromInclusive, Segment toElement, boolean toInclusive) {
+        return CollectionUtils.unmodifiableNavigableSet(snapshot().subSet(fromElement, fromInclusive, toElement, toInclusive));
+    }
+
+    @Override
+    public NavigableSet<Segment> headSet(Segment toElement, boolean inclusive) {
+        return CollectionUtils.unmodifiableNavigableSet(snapshot().headSet(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<Segment> tailSet(Segment fromElement, boolean inclusive) {
+        return CollectionUtils.unmodifiableNavigableSet(snapshot().tailSet(fromElement, inclusive));
+    }
+
+    @Override
+    public SortedSet<Segment> subSet(Segment fromElement, Segment toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<Segment> headSet(Segment toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<Segment> tailSet(Segment fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    private class SegmentIterator implements Iterator<Segment> {
+        private final boolean descending;
+        private Segment next;
+
+        private SegmentIterator(boolean descending) {
+            this.descending = descending;
+            this.next = descending ? tail : head;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Segment next() {
+            if (next == null)
+                throw new NoSuchElementException();
+
+            Segment current = next;
+            next = descending ? current.previous : current.next;
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
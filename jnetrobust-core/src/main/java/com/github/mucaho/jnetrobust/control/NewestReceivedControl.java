@@ -21,21 +21,28 @@ public class NewestReceivedControl {
         this.listener = listener;
     }
 
-    private boolean newestReceivedChanged = false;
+    // the newest segment is only held until it's emitted, its data may be borrowed from the received buffer
+    private Short newestReceivedDataId = null;
     private Segment newestReceivedSegment = null;
 
     public void refreshNewestReceived(Segment segment) {
-        if (newestReceivedSegment == null || IdComparator.instance.compare(segment.getDataId(), newestReceivedSegment.getDataId()) > 0) {
+        if (newestReceivedDataId == null || IdComparator.instance.compare(segment.getDataId(), newestReceivedDataId) > 0) {
+            segment.retain();
+            if (newestReceivedSegment != null)
+                newestReceivedSegment.release();
+
+            newestReceivedDataId = segment.getDataId();
             newestReceivedSegment = segment;
-            newestReceivedChanged = true;
         }
     }
 
     public void emitNewestReceived() {
-        if (newestReceivedChanged && newestReceivedSegment != null) {
+        if (newestReceivedSegment != null) {
             listener.handleNewestData(newestReceivedSegment.getDataId(), newestReceivedSegment.getData());
             if (newestReceivedSegment.getData() != null) newestReceivedSegment.getData().rewind();
+
+            newestReceivedSegment.release();
+            newestReceivedSegment = null;
         }
-        newestReceivedChanged = false;
     }
 }
@@ -7,10 +7,13 @@
 
 package com.github.mucaho.jnetrobust.control;
 
+import com.github.mucaho.jnetrobust.ProtocolConfig;
 import com.github.mucaho.jnetrobust.util.IdComparator;
 import com.github.mucaho.jnetrobust.util.SystemClock;
 
 import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 public class ReceivedMapControl extends AbstractMapControl {
     public interface TransmissionOrderListener {
@@ -19,20 +22,32 @@ public class ReceivedMapControl extends AbstractMapControl {
     }
 
     private final TransmissionOrderListener listener;
+    // the next data id of the default stream
     private short nextDataId;
+    private short newestDataId;
+
+    /*
+     * The next data ids of the other streams, which are allocated once user-data of a stream is received.
+     * Streams are kept in access order, thus the ones that have not been received on for the longest time come first.
+     * Streams that fall behind the newest data id by more than ProtocolConfig.MAX_STREAM_OFFSET are evicted,
+     * as the sender no longer references their preceding user-data, see Segment#setPrecedingDataId.
+     * The queued segments of all streams share one map, which is bounded by the queue limit.
+     */
+    private final LinkedHashMap<Integer, Stream> streams = new LinkedHashMap<Integer, Stream>(16, 0.75f, true);
 
     public ReceivedMapControl(short initialDataId, TransmissionOrderListener listener, int maxEntries, int maxEntryOffset,
                               int maxEntryOccurrences, long maxEntryTimeout, SystemClock systemClock) {
         super(maxEntries, maxEntryOffset, maxEntryOccurrences, maxEntryTimeout, systemClock);
         this.listener = listener;
         this.nextDataId = (short) (initialDataId + 1);
+        this.newestDataId = initialDataId;
     }
 
     @Override
     protected AbstractSegmentMap createMap() {
         return new ReceivedSegmentMap() {
             Segment put(Segment segment) {
-                if (IdComparator.instance.compare(segment.getDataId(), nextDataId) >= 0) {
+                if (IdComparator.instance.compare(segment.getDataId(), getNextDataId(segment.getStreamId())) >= 0) {
                     return super.put(segment);
                 }
                 return null;
@@ -40,27 +55,93 @@ public class ReceivedMapControl extends AbstractMapControl {
         };
     }
 
+    public short getNextDataId() {
+        return getNextDataId(0);
+    }
+
+    public short getNextDataId(int streamId) {
+        Stream stream = streamId == 0 ? null : streams.get(streamId);
+        short next = streamId == 0 ? nextDataId : stream != null ? stream.nextDataId : getOldestDataId();
+        return IdComparator.instance.compare(next, getOldestDataId()) >= 0 ? next : getOldestDataId();
+    }
+
+    private short getOldestDataId() {
+        return (short) (newestDataId - ProtocolConfig.MAX_STREAM_OFFSET);
+    }
+
+    private void setNextDataId(int streamId, short next) {
+        if (streamId == 0) {
+            nextDataId = next;
+            return;
+        }
+
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            stream = new Stream();
+            streams.put(streamId, stream);
+        }
+        stream.nextDataId = next;
+    }
+
+    public int getStreamCount() {
+        return streams.size() + 1;
+    }
+
     public void addToReceived(Segment segment) {
+        // update newest data id, which the state of idle streams is evicted relative to
+        if (IdComparator.instance.compare(segment.getDataId(), newestDataId) > 0) {
+            newestDataId = segment.getDataId();
+            evictStreams();
+        }
+
         // add original to received map
         dataMap.put(segment);
     }
 
+    private void evictStreams() {
+        // the state of an evicted stream equals the state of a stream that is received on for the first time
+        short oldestDataId = getOldestDataId();
+        if (!streams.isEmpty()) {
+            Iterator<Stream> iterator = streams.values().iterator();
+            while (iterator.hasNext() && IdComparator.instance.compare(iterator.next().nextDataId, oldestDataId) <= 0)
+                iterator.remove();
+        }
+
+        if (IdComparator.instance.compare(nextDataId, oldestDataId) < 0)
+            nextDataId = oldestDataId;
+    }
+
     public void removeFromTail() {
-        // remove multiple from map -> least, consecutive, ordered elements
+        // remove multiple from map -> least, consecutive, ordered elements of each stream;
+        // the data ids of other delivery lanes and streams in between are skipped
         Short key = dataMap.firstKey();
-        while (key != null && key == nextDataId) {
-            notifyOrdered(key, dataMap.removeAll(key));
+        while (key != null) {
+            int streamId = dataMap.getValue(key).getStreamId();
+            short next = getNextDataId(streamId);
+            if (key == next || IdComparator.instance.compare(dataMap.getValue(key).getPrecedingDataId(), next) < 0) {
+                Segment orderedSegment = dataMap.removeAll(key);
+                notifyOrdered(key, orderedSegment);
+                release(orderedSegment);
 
+                setNextDataId(streamId, (short) (key + 1));
+            } else if (streams.isEmpty()) {
+                // the following segments of the default stream wait for the same preceding user-data
+                break;
+            }
             key = dataMap.higherKey(key);
-            nextDataId++;
         }
     }
 
     @Override
     protected void discardEntry(Short key) {
-        nextDataId = IdComparator.instance.compare((short) (key + 1), nextDataId) > 0 ?
-                (short) (key + 1) : nextDataId;
-        notifyUnordered(key, dataMap.removeAll(key));
+        Segment unorderedSegment = dataMap.getValue(key);
+        int streamId = unorderedSegment != null ? unorderedSegment.getStreamId() : 0;
+        short next = getNextDataId(streamId);
+        setNextDataId(streamId, IdComparator.instance.compare((short) (key + 1), next) > 0 ?
+                (short) (key + 1) : next);
+        unorderedSegment = dataMap.removeAll(key);
+        notifyUnordered(key, unorderedSegment);
+        release(unorderedSegment);
     }
 
     @Override
@@ -86,4 +167,8 @@ public class ReceivedMapControl extends AbstractMapControl {
             if (orderedSegment.getData() != null) orderedSegment.getData().rewind();
         }
     }
+
+    private static final class Stream {
+        private short nextDataId;
+    }
 }
@@ -7,7 +7,6 @@
 
 package com.github.mucaho.jnetrobust.control;
 
-import com.github.mucaho.jnetrobust.util.IdComparator;
 import com.github.mucaho.jnetrobust.util.SegmentDataIdComparator;
 
 import java.util.NavigableSet;
@@ -15,7 +14,7 @@ import java.util.NavigableSet;
 public class ReceivedSegmentMap extends AbstractSegmentMap {
 
     public ReceivedSegmentMap() {
-        super(IdComparator.instance, SegmentDataIdComparator.instance);
+        super(SegmentDataIdComparator.instance);
     }
 
     @Override
@@ -34,8 +33,17 @@ public class ReceivedSegmentMap extends AbstractSegmentMap {
 
     @Override
     Segment put(Short dataId, Segment segment) {
-        valueMap.put(segment, segment.getDataIds());
-        return keyMap.put(dataId, segment);
+        Segment replacedSegment = keyMap.put(dataId, segment);
+
+        if (replacedSegment != null && replacedSegment != segment) {
+            valueSet.removeSegment(replacedSegment);
+            replacedSegment.release();
+        }
+
+        if (valueSet.putSegment(segment, segment.getDataIds()))
+            segment.retain();
+
+        return replacedSegment;
     }
 
     @Override
@@ -69,7 +77,7 @@ public class ReceivedSegmentMap extends AbstractSegmentMap {
     Segment remove(Short dataId) {
         Segment removedSegment = keyMap.remove(dataId);
         if (removedSegment != null)
-            valueMap.remove(removedSegment);
+            valueSet.removeSegment(removedSegment);
         return removedSegment;
     }
 }
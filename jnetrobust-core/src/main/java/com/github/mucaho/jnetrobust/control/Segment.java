@@ -13,34 +13,140 @@ import com.github.mucaho.jnetrobust.util.*;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.*;
 
 public final class Segment implements Timestamp, Freezable<Segment>, Sizeable {
+    private static final int POOL_CAPACITY = 1024;
+    private static final int ID_SIZE = Short.SIZE / Byte.SIZE // dataId
+            + Short.SIZE / Byte.SIZE; // lastTransmissionId
+    private static final int HEADER_SIZE = ID_SIZE
+            + Short.SIZE / Byte.SIZE; // dataSize
+    // flags the data size of a delta encoded segment, see encodeDelta
+    private static final int FIXED_DELTA_FLAG = 0x8000;
+    private static final int COMPACT_DELTA_FLAG = 0x1;
+    // flags the data size of a fragment, see setFragment
+    private static final int FIXED_FRAGMENT_FLAG = 0x4000;
+    private static final int COMPACT_FRAGMENT_FLAG = 0x2;
+    // flags the data size of a segment that is not sent on the default lane, see setLane
+    private static final int COMPACT_LANE_FLAG = 0x4;
+    private static final int COMPACT_FLAG_BITS = 2;
+    private static final int COMPACT_LANE_FLAG_BITS = 3;
+    private static final int LANE_BITS = 2;
+    private static final int LANE_MASK = (1 << LANE_BITS) - 1;
+    // flags the lane field of a segment that is sent on a stream other than the default one, see setStreamId
+    private static final int STREAM_FLAG = 1 << LANE_BITS;
+    private static final int LANE_FLAG_BITS = LANE_BITS + 1;
+    private static final ProtocolConfig.DeliveryLane[] LANES = ProtocolConfig.DeliveryLane.values();
+    private static final ByteBuffer EMPTY_DATA = ByteBuffer.allocate(0);
+    private static final ObjectPool<Segment> pool = new ObjectPool<Segment>(POOL_CAPACITY) {
+        @Override
+        protected Segment create() {
+            return new Segment();
+        }
+
+        @Override
+        protected void reset(Segment segment) {
+            segment.reset();
+        }
+    };
+
+    /**
+     * Get the pool shared by all protocol instances, which recycles released segments.
+     *
+     * @return the global segment pool
+     */
+    public static ObjectPool<Segment> getPool() {
+        return pool;
+    }
+
+    /**
+     * Obtain a segment from the {@link #getPool() pool}, which is initialized with the given arguments.
+     * The returned segment is referenced once, it has to be {@link #release() released} once it's no longer used.
+     *
+     * @param dataId the data id of the segment
+     * @param data the data to copy into the segment
+     * @return the initialized segment
+     */
+    public static Segment obtain(Short dataId, ByteBuffer data) {
+        Segment segment = obtain();
+        segment.dataId = dataId;
+        segment.dataIds.addId(dataId);
+        segment.setData(data);
+        return segment;
+    }
+
+    private static Segment obtain() {
+        Segment segment = pool.obtain();
+        segment.referenceCount = 1;
+        return segment;
+    }
+
+    /**
+     * The {@link #getDeadline() deadline} of segments, whose user-data does not expire.
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private transient int referenceCount = 1;
+
     private transient long newestSentTime = -1L;
     private transient long ackedTime = -1L;
+    // the number of bytes this segment accounts for while it is in flight, see CongestionController
+    private transient int flightSize = 0;
+    // whether the segment is presumed lost and still awaits its retransmission, see ProcessingController
+    private transient boolean lost = false;
+    // the time after which the user-data is of no use to the remote side, it is neither sent nor retransmitted thereafter
+    private transient long deadline = NO_DEADLINE;
+    // the priority the segment is packed with, and the time it was queued for sending, see PriorityController
+    private transient ProtocolConfig.Priority priority = ProtocolConfig.Priority.NORMAL;
+    private transient long queuedTime = -1L;
 
     private transient Integer packetId = null;
 
+    // intrusive links of the ordered set of segments this segment is contained in, see LinkedSegmentSet
+    transient LinkedSegmentSet linkOwner = null;
+    transient NavigableSet<Short> linkKeys = null;
+    transient Segment previous = null;
+    transient Segment next = null;
+
+    // the ids are kept in compact sets, which are read-only to the outside and reused after the segment is recycled
     private Short dataId;
-    private final transient NavigableSet<Short> dataIds = new TreeSet<Short>();
-    private final transient NavigableSet<Short> dataIdsOut = CollectionUtils.unmodifiableNavigableSet(dataIds);
+    private final transient IdSet dataIds = new IdSet(1);
 
-    private final NavigableSet<Short> transmissionIds = new TreeSet<Short>(IdComparator.instance);
-    private final transient NavigableSet<Short> transmissionIdsOut = CollectionUtils.unmodifiableNavigableSet(transmissionIds);
+    private final IdSet transmissionIds = new IdSet(4);
+    // the transmission ids that stand for redundant copies, which are not retransmissions
+    private final transient IdSet redundantTransmissionIds = new IdSet(1);
 
-    private final ByteBuffer data = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize()); {
-        data.flip();
-    }
-    private final transient ByteBuffer dataOut = data.asReadOnlyBuffer(); {
-        dataOut.flip();
-    }
+    // borrowed from the buffer arena, sized according to the actual data size,
+    // or a read-only slice of a received buffer, which the segment must not outlive
+    private ByteBuffer data = null;
+    private transient ByteBuffer dataOut = null;
+    private transient boolean dataBorrowed = false;
+
+    // the data encoded against the data of a baseline segment, which is transmitted instead of the data
+    private transient Short baselineDataId = null;
+    private transient ByteBuffer delta = null;
+    private transient ByteBuffer deltaOut = null;
+
+    // the position of this segment within the user-data it is a fragment of, the fragment count is 0 otherwise
+    private int fragmentIndex = 0;
+    private int fragmentCount = 0;
+
+    // the lane this segment is delivered on; segments of the ordered lane reference the preceding one of their stream,
+    // by the number of data ids of other lanes and streams in between
+    private ProtocolConfig.DeliveryLane lane = ProtocolConfig.DeliveryLane.RELIABLE_ORDERED;
+    private int precedingGap = 0;
+    private int streamId = 0;
 
-    // TODO: hide public constructors for segment and packet
-    //  and use static factory methods instead which will delegate to object pools in future
+    /**
+     * Construct a new segment that is not pooled initially.
+     * Prefer {@link #obtain(Short, ByteBuffer)} instead.
+     */
     public Segment(Short dataId, ByteBuffer data) {
         this.dataId = dataId;
-        this.dataIds.add(dataId);
+        this.dataIds.addId(dataId);
         setData(data);
     }
 
@@ -48,17 +154,330 @@ public final class Segment implements Timestamp, Freezable<Segment>, Sizeable {
         super();
     }
 
+    /**
+     * Increment the reference count of this segment.
+     * Each party that holds on to the segment beyond a single method invocation has to retain it.
+     */
+    public void retain() {
+        if (referenceCount <= 0)
+            throw new IllegalStateException("Cannot retain segment that has already been recycled!");
+
+        referenceCount++;
+    }
+
+    /**
+     * Decrement the reference count of this segment.
+     * The segment is recycled into the {@link #getPool() pool} once it's no longer referenced,
+     * it must not be used thereafter.
+     */
+    public void release() {
+        if (referenceCount <= 0)
+            throw new IllegalStateException("Cannot release segment that has already been recycled!");
+
+        if (--referenceCount == 0)
+            pool.recycle(this);
+    }
+
+    /**
+     * Get the number of parties that currently hold on to this segment.
+     *
+     * @return the reference count
+     */
+    public int getReferenceCount() {
+        return referenceCount;
+    }
+
+    private void reset() {
+        newestSentTime = -1L;
+        ackedTime = -1L;
+        flightSize = 0;
+        lost = false;
+        deadline = NO_DEADLINE;
+        priority = ProtocolConfig.Priority.NORMAL;
+        queuedTime = -1L;
+        packetId = null;
+        linkOwner = null;
+        linkKeys = null;
+        previous = null;
+        next = null;
+        dataId = null;
+        dataIds.clearIds();
+        transmissionIds.clearIds();
+        redundantTransmissionIds.clearIds();
+        releaseData();
+        discardDelta();
+        fragmentIndex = 0;
+        fragmentCount = 0;
+        lane = ProtocolConfig.DeliveryLane.RELIABLE_ORDERED;
+        precedingGap = 0;
+        streamId = 0;
+        referenceCount = 0;
+    }
+
     private void setData(ByteBuffer data) {
+        releaseData();
+        if (data != null && data.hasRemaining()) {
+            this.data = BufferArena.instance.allocate(data.remaining());
+            this.data.put(data);
+            this.data.flip();
+            this.dataOut = this.data.asReadOnlyBuffer();
+        }
+    }
+
+    private void releaseData() {
         if (data != null) {
-            this.data.limit(this.data.capacity());
-            this.dataOut.limit(this.dataOut.capacity());
+            if (dataBorrowed) {
+                // invalidate the view handed out, as the buffer it's borrowed from is reused by its owner
+                dataOut.limit(0);
+                dataBorrowed = false;
+            } else {
+                BufferArena.instance.release(data);
+            }
+            data = null;
+            dataOut = null;
+        }
+    }
 
-            this.data.put(data);
-            this.dataOut.position(this.data.position());
+    /**
+     * Whether the data of this segment is a slice of a received buffer,
+     * which is only valid as long as the owner of that buffer does not reuse it.
+     *
+     * @return <code>true</code> if the data is borrowed
+     * @see #detachData()
+     */
+    public boolean isDataBorrowed() {
+        return dataBorrowed;
+    }
 
-            this.data.flip();
-            this.dataOut.flip();
+    /**
+     * Copy borrowed data into a buffer of the segment's own,
+     * so that the segment can be held on to after the buffer it was received in is reused.
+     * The previous view of the borrowed data is invalidated.
+     * Does nothing if the data is not borrowed.
+     */
+    public void detachData() {
+        if (dataBorrowed) {
+            ByteBuffer borrowedData = data.duplicate();
+            borrowedData.rewind();
+            setData(borrowedData);
+        }
+    }
+
+    /**
+     * Discard the delta encoded data, so that the data itself is transmitted.
+     * Does nothing if the segment is not {@link #isDeltaEncoded() delta encoded}.
+     */
+    public void discardDelta() {
+        if (delta != null)
+            BufferArena.instance.release(delta);
+        delta = null;
+        deltaOut = null;
+        baselineDataId = null;
+    }
+
+    /**
+     * Encode the data of this segment against the data of a baseline segment,
+     * which the receiving protocol instance already received.
+     * The encoded data is transmitted instead of the data, the data itself remains unchanged.
+     * Does nothing, if the encoded data, along with the baseline reference, would not be smaller than the data.
+     *
+     * @param baseline the baseline segment
+     * @return <code>true</code> if the data has been encoded, <code>false</code> otherwise
+     * @see com.github.mucaho.jnetrobust.util.XorDelta
+     */
+    public boolean encodeDelta(Segment baseline) {
+        discardDelta();
+        int dataSize = getDataSize(data);
+        ByteBuffer baselineData = baseline.data;
+        int maximumDeltaSize = dataSize - getBaselineSize(dataId, baseline.dataId) - 1;
+        if (baselineData == null || maximumDeltaSize <= 0)
+            return false;
+
+        ByteBuffer encoded = BufferArena.instance.allocate(maximumDeltaSize);
+        encoded.limit(maximumDeltaSize);
+        int deltaSize = XorDelta.encode(data, baselineData, encoded);
+        if (deltaSize < 0) {
+            BufferArena.instance.release(encoded);
+            return false;
         }
+
+        encoded.limit(deltaSize);
+        delta = encoded;
+        deltaOut = delta.asReadOnlyBuffer();
+        baselineDataId = baseline.dataId;
+        return true;
+    }
+
+    /**
+     * Decode the data of this segment, which was received encoded against the data of the baseline segment.
+     * The data is discarded, if the baseline is not available or the encoded data is malformed.
+     * Does nothing if the segment is not {@link #isDeltaEncoded() delta encoded}.
+     *
+     * @param baseline the baseline segment with the {@link #getBaselineDataId() baseline data id},
+     *                 or <code>null</code> if it is not available
+     * @return <code>false</code> if the data was discarded, as it could not be decoded
+     */
+    public boolean decodeDelta(Segment baseline) {
+        if (delta == null)
+            return true;
+
+        boolean decodable = false;
+        releaseData();
+        if (baseline != null) {
+            ByteBuffer baselineData = baseline.data != null ? baseline.data : EMPTY_DATA;
+            ByteBuffer decoded = null;
+            try {
+                int dataSize = XorDelta.getDecodedSize(delta);
+                if (dataSize > 0) {
+                    decoded = BufferArena.instance.allocate(dataSize);
+                    decoded.limit(XorDelta.decode(delta, baselineData, decoded));
+                    data = decoded;
+                    dataOut = data.asReadOnlyBuffer();
+                }
+                decodable = true;
+            } catch (IllegalArgumentException e) {
+                if (decoded != null)
+                    BufferArena.instance.release(decoded);
+            }
+        }
+        discardDelta();
+        return decodable;
+    }
+
+    /**
+     * Whether the data of this segment is transmitted encoded against the data of a baseline segment.
+     *
+     * @return <code>true</code> if the segment is delta encoded
+     * @see #encodeDelta(Segment)
+     * @see #decodeDelta(Segment)
+     */
+    public boolean isDeltaEncoded() {
+        return delta != null;
+    }
+
+    /**
+     * Get the data id of the baseline segment, against which the data of this segment is encoded.
+     *
+     * @return the baseline data id, or <code>null</code> if the segment is not {@link #isDeltaEncoded() delta encoded}
+     */
+    public Short getBaselineDataId() {
+        return baselineDataId;
+    }
+
+    /**
+     * Get the data as it is transmitted, which is the {@link #isDeltaEncoded() delta encoded} data if available,
+     * or the data itself otherwise.
+     *
+     * @return the transmitted data, or <code>null</code> if there is none
+     */
+    public ByteBuffer getTransmittedData() {
+        if (delta == null)
+            return getData();
+
+        if (!deltaOut.hasRemaining())
+            deltaOut.rewind();
+        return deltaOut;
+    }
+
+    /**
+     * Mark this segment as a fragment of a user-data that is larger than the maximum data size.
+     * The fragments of a user-data are assigned consecutive data ids,
+     * thus the data id of the first fragment is the data id of this segment minus the fragment index.
+     *
+     * @param fragmentIndex the position of this fragment within the user-data, starting at <code>0</code>
+     * @param fragmentCount the number of fragments the user-data is split into
+     * @throws IllegalArgumentException if the fragment index or count is out of range
+     * @see ProtocolConfig#getFragmentLimit()
+     */
+    public void setFragment(int fragmentIndex, int fragmentCount) {
+        if (!isValidFragment(fragmentIndex, fragmentCount))
+            throw new IllegalArgumentException("Invalid fragment " + fragmentIndex + " of " + fragmentCount + "!");
+
+        this.fragmentIndex = fragmentIndex;
+        this.fragmentCount = fragmentCount;
+    }
+
+    private static boolean isValidFragment(int fragmentIndex, int fragmentCount) {
+        return fragmentCount > 1 && fragmentCount <= ProtocolConfig.MAX_FRAGMENT_LIMIT
+                && fragmentIndex >= 0 && fragmentIndex < fragmentCount;
+    }
+
+    /**
+     * Whether this segment is a fragment of a user-data that is larger than the maximum data size.
+     *
+     * @return <code>true</code> if the segment is a fragment
+     * @see #setFragment(int, int)
+     */
+    public boolean isFragment() {
+        return fragmentCount > 0;
+    }
+
+    public int getFragmentIndex() {
+        return fragmentIndex;
+    }
+
+    public int getFragmentCount() {
+        return fragmentCount;
+    }
+
+    /**
+     * Assign this segment to a delivery lane, which determines whether it is retransmitted and how it is delivered.
+     * Requires {@link ProtocolConfig#useDeliveryLanes() delivery lanes} for any lane
+     * other than {@link ProtocolConfig.DeliveryLane#RELIABLE_ORDERED}.
+     *
+     * @param lane the delivery lane
+     */
+    public void setLane(ProtocolConfig.DeliveryLane lane) {
+        this.lane = lane;
+        this.precedingGap = 0;
+        this.streamId = 0;
+    }
+
+    public ProtocolConfig.DeliveryLane getLane() {
+        return lane;
+    }
+
+    /**
+     * Assign this segment to an ordered stream of the {@link ProtocolConfig.DeliveryLane#RELIABLE_ORDERED ordered lane},
+     * user-data of one stream is ordered independently of the user-data of other streams.
+     * Requires {@link ProtocolConfig#useDeliveryLanes() delivery lanes} for any stream other than <code>0</code>.
+     *
+     * @param streamId the stream id, ranging from <code>0</code> to {@link ProtocolConfig#MAX_STREAM_ID}
+     * @throws IllegalArgumentException if the stream id is out of range
+     */
+    public void setStreamId(int streamId) {
+        if (streamId < 0 || streamId > ProtocolConfig.MAX_STREAM_ID)
+            throw new IllegalArgumentException("Invalid stream id " + streamId + "!");
+
+        this.streamId = streamId;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * Set the data id of the user-data that precedes this segment on its stream of the
+     * {@link ProtocolConfig.DeliveryLane#RELIABLE_ORDERED ordered lane}.
+     * The data ids in between belong to user-datas of other lanes or streams, which the receiver does not wait for.
+     * The preceding data id must not lie more than {@link ProtocolConfig#MAX_STREAM_OFFSET} data ids behind.
+     *
+     * @param precedingDataId the data id of the preceding, ordered user-data
+     */
+    public void setPrecedingDataId(short precedingDataId) {
+        this.precedingGap = (dataId - 1 - precedingDataId) & 0xFFFF;
+    }
+
+    /**
+     * Get the data id of the user-data that precedes this segment on the
+     * {@link ProtocolConfig.DeliveryLane#RELIABLE_ORDERED ordered lane},
+     * which is <code>dataId - 1</code> unless user-datas of other lanes or streams were sent in between.
+     *
+     * @return the data id of the preceding, ordered user-data
+     * @see #setPrecedingDataId(short)
+     */
+    public short getPrecedingDataId() {
+        return (short) (dataId - 1 - precedingGap);
     }
 
     public Short getDataId() {
@@ -66,23 +485,25 @@ public final class Segment implements Timestamp, Freezable<Segment>, Sizeable {
     }
 
     public NavigableSet<Short> getDataIds() {
-        return dataIdsOut;
+        return dataIds;
     }
 
     boolean addTransmissionId(Short e) {
-        return transmissionIds.add(e);
+        return transmissionIds.addId(e);
     }
 
     boolean removeTransmissionId(Short e) {
-        return transmissionIds.remove(e);
+        redundantTransmissionIds.removeId(e);
+        return transmissionIds.removeId(e);
     }
 
     void clearTransmissionIds() {
-        transmissionIds.clear();
+        transmissionIds.clearIds();
+        redundantTransmissionIds.clearIds();
     }
 
     public NavigableSet<Short> getTransmissionIds() {
-        return transmissionIdsOut;
+        return transmissionIds;
     }
 
     public Short getFirstTransmissionId() {
@@ -115,6 +536,76 @@ public final class Segment implements Timestamp, Freezable<Segment>, Sizeable {
         return ackedTime;
     }
 
+    /**
+     * Get the number of {@link #getTransmissionIds() transmission ids} of this segment,
+     * which stand for redundant copies rather than retransmissions.
+     *
+     * @return the number of redundant transmission ids
+     */
+    public int getRedundantTransmissionCount() {
+        return redundantTransmissionIds.size();
+    }
+
+    /**
+     * Mark one of the {@link #getTransmissionIds() transmission ids} of this segment as a redundant copy.
+     * The mark is removed along with the transmission id.
+     *
+     * @param transmissionId the transmission id of the redundant copy
+     */
+    public void addRedundantTransmissionId(Short transmissionId) {
+        if (transmissionIds.contains(transmissionId))
+            redundantTransmissionIds.addId(transmissionId);
+    }
+
+    public int getFlightSize() {
+        return flightSize;
+    }
+
+    public void setFlightSize(int flightSize) {
+        this.flightSize = flightSize;
+    }
+
+    public boolean isLost() {
+        return lost;
+    }
+
+    public void setLost(boolean lost) {
+        this.lost = lost;
+    }
+
+    /**
+     * Get the time after which the user-data of this segment is of no use to the remote side.
+     *
+     * @return the deadline, or {@link #NO_DEADLINE} if the user-data does not expire
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public boolean isExpired(long timeNow) {
+        return timeNow >= deadline;
+    }
+
+    public ProtocolConfig.Priority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(ProtocolConfig.Priority priority) {
+        this.priority = priority;
+    }
+
+    public long getQueuedTime() {
+        return queuedTime;
+    }
+
+    public void setQueuedTime(long timeNow) {
+        this.queuedTime = timeNow;
+    }
+
     void setAckedTime(long timeNow) {
         ackedTime = timeNow;
     }
@@ -143,6 +634,12 @@ public final class Segment implements Timestamp, Freezable<Segment>, Sizeable {
             transmissionId = transmissionIds.higher(transmissionId);
         }
         out.append("]");
+        if (fragmentCount > 0)
+            out.append(" #").append(fragmentIndex).append("/").append(fragmentCount);
+        if (lane != ProtocolConfig.DeliveryLane.RELIABLE_ORDERED)
+            out.append(" ").append(lane);
+        if (streamId != 0)
+            out.append(" @").append(streamId);
         out.append(": ").append(getDataSize(data)).append("B");
 
         return out.toString();
@@ -160,6 +657,22 @@ public final class Segment implements Timestamp, Freezable<Segment>, Sizeable {
         segment.writeExternal(out);
     }
 
+    /**
+     * Externalize the segment as part of a packet.
+     * If {@link ProtocolConfig#useCompactHeaders() compact headers} are used,
+     * the ids of the segment are encoded relative to the ids of the first segment of the packet.
+     *
+     * @param segment               the instance to write
+     * @param out                   the {@link java.io.ObjectOutput} to write to
+     * @param first                 the first segment of the packet, or <code>null</code> if this is the first segment
+     * @param transmissionIdImplied whether the transmission id can be omitted, as the packet implies it
+     * @throws IOException if an error occurs
+     */
+    public static void writeExternalStatic(Segment segment, ObjectOutput out,
+                                           Segment first, boolean transmissionIdImplied) throws IOException {
+        segment.writeExternal(out, first, transmissionIdImplied);
+    }
+
     /**
      * Deexternalize the multiKeyValue.
      * Static method that does the same thing as {@link java.io.Externalizable#readExternal(java.io.ObjectInput)} .
@@ -170,11 +683,154 @@ public final class Segment implements Timestamp, Freezable<Segment>, Sizeable {
      * @throws ClassNotFoundException if an error occurs.
      */
     public static Segment readExternalStatic(ObjectInput in) throws IOException, ClassNotFoundException {
-        Segment segment = new Segment();
+        return readExternalStatic(in, null, null);
+    }
+
+    /**
+     * Deexternalize the segment as part of a packet.
+     *
+     * @param in                     the {@link java.io.ObjectInput} to read from
+     * @param first                  the first segment of the packet, or <code>null</code> if this is the first segment
+     * @param impliedTransmissionId  the transmission id implied by the packet,
+     *                               or <code>null</code> if the transmission id is to be read
+     * @return a new segment instance, constructed by the data read
+     * @throws IOException if an error occurs
+     */
+    public static Segment readExternalStatic(ObjectInput in, Segment first, Short impliedTransmissionId) throws IOException {
+        Segment segment = obtain();
+        try {
+            segment.readExternal(in, first, impliedTransmissionId);
+        } catch (IOException e) {
+            segment.release();
+            throw e;
+        } catch (RuntimeException e) {
+            segment.release();
+            throw e;
+        }
+        return segment;
+    }
+
+    /**
+     * Externalize the segment into a <code>ByteBuffer</code>, starting at the buffer's current position.
+     * The data is transferred directly, thus no intermediate copies are made
+     * if the data and the supplied buffer reside in the same kind of memory (e.g. {@link ByteBuffer#isDirect() direct memory}).
+     *
+     * @param segment the instance to write
+     * @param out     the {@link java.nio.ByteBuffer} to write to
+     * @throws java.nio.BufferOverflowException if there is insufficient space remaining in the buffer
+     */
+    public static void writeExternalStatic(Segment segment, ByteBuffer out) {
+        segment.writeExternal(out);
+    }
+
+    /**
+     * Externalize the segment into a <code>ByteBuffer</code>, starting at the given absolute index.
+     * The buffer's position is not modified.
+     *
+     * @param segment the instance to write
+     * @param out     the {@link java.nio.ByteBuffer} to write to
+     * @param index   the index to start writing at
+     * @return the index following the last byte written, which equals <code>index + segment.getSize()</code>
+     * @throws IndexOutOfBoundsException if there is insufficient space between the index and the buffer's limit
+     */
+    public static int writeExternalStatic(Segment segment, ByteBuffer out, int index) {
+        return segment.writeExternal(out, index, null, false);
+    }
+
+    /**
+     * Externalize the segment as part of a packet into a <code>ByteBuffer</code>, starting at the given absolute index.
+     * The buffer's position is not modified.
+     *
+     * @param segment               the instance to write
+     * @param out                   the {@link java.nio.ByteBuffer} to write to
+     * @param index                 the index to start writing at
+     * @param first                 the first segment of the packet, or <code>null</code> if this is the first segment
+     * @param transmissionIdImplied whether the transmission id can be omitted, as the packet implies it
+     * @return the index following the last byte written,
+     * which equals <code>index + segment.getSize(first, transmissionIdImplied)</code>
+     * @throws IndexOutOfBoundsException if there is insufficient space between the index and the buffer's limit
+     */
+    public static int writeExternalStatic(Segment segment, ByteBuffer out, int index,
+                                          Segment first, boolean transmissionIdImplied) {
+        return segment.writeExternal(out, index, first, transmissionIdImplied);
+    }
+
+    /**
+     * Externalize only the header of the segment as part of a packet into a <code>ByteBuffer</code>,
+     * starting at the given absolute index.
+     * The segment's data, which is expected to follow the header, is not written.
+     * The buffer's position is not modified.
+     *
+     * @param segment               the instance to write
+     * @param out                   the {@link java.nio.ByteBuffer} to write to
+     * @param index                 the index to start writing at
+     * @param first                 the first segment of the packet, or <code>null</code> if this is the first segment
+     * @param transmissionIdImplied whether the transmission id can be omitted, as the packet implies it
+     * @return the index following the last byte written
+     * @throws IndexOutOfBoundsException if there is insufficient space between the index and the buffer's limit
+     */
+    public static int writeHeaderStatic(Segment segment, ByteBuffer out, int index,
+                                        Segment first, boolean transmissionIdImplied) {
+        int dataSize = getDataSize(segment.delta != null ? segment.delta : segment.data);
+        if (index < 0 || out.limit() - index < segment.getHeaderSize(first, transmissionIdImplied, dataSize))
+            throw new IndexOutOfBoundsException();
+
+        return segment.writeHeader(out, index, first, transmissionIdImplied, dataSize);
+    }
+
+    /**
+     * Deexternalize the segment from a <code>ByteBuffer</code>, starting at the buffer's current position.
+     *
+     * @param in the {@link java.nio.ByteBuffer} to read from
+     * @return a new segment instance, constructed by the data read
+     * @throws java.nio.BufferUnderflowException if there are insufficient bytes remaining in the buffer
+     */
+    public static Segment readExternalStatic(ByteBuffer in) {
+        Segment segment = obtain();
         segment.readExternal(in);
         return segment;
     }
 
+    /**
+     * Deexternalize the segment from a <code>ByteBuffer</code>, starting at the given absolute index.
+     * The buffer's position is not modified, the segment occupied {@link #getSize()} bytes of the buffer.
+     *
+     * @param in    the {@link java.nio.ByteBuffer} to read from
+     * @param index the index to start reading at
+     * @return a new segment instance, constructed by the data read
+     * @throws IndexOutOfBoundsException if there are insufficient bytes between the index and the buffer's limit
+     */
+    public static Segment readExternalStatic(ByteBuffer in, int index) {
+        return readExternalStatic(in, index, null, null, false);
+    }
+
+    /**
+     * Deexternalize the segment as part of a packet from a <code>ByteBuffer</code>, starting at the given absolute index.
+     * The buffer's position is not modified,
+     * the segment occupied {@link #getSize(Segment, boolean) getSize(first, impliedTransmissionId != null)} bytes of the buffer.
+     *
+     * @param in                    the {@link java.nio.ByteBuffer} to read from
+     * @param index                 the index to start reading at
+     * @param first                 the first segment of the packet, or <code>null</code> if this is the first segment
+     * @param impliedTransmissionId the transmission id implied by the packet,
+     *                              or <code>null</code> if the transmission id is to be read
+     * @param borrowData            whether the segment's data should be a slice of the supplied buffer instead of a copy,
+     *                              the segment must not be used after the buffer is reused then, see {@link #isDataBorrowed()}
+     * @return a new segment instance, constructed by the data read
+     * @throws IndexOutOfBoundsException if there are insufficient bytes between the index and the buffer's limit
+     */
+    public static Segment readExternalStatic(ByteBuffer in, int index, Segment first, Short impliedTransmissionId,
+                                             boolean borrowData) {
+        Segment segment = obtain();
+        try {
+            segment.readExternal(in, index, first, impliedTransmissionId, borrowData);
+        } catch (RuntimeException e) {
+            segment.release();
+            throw e;
+        }
+        return segment;
+    }
+
     private void writeObject(java.io.ObjectOutputStream out) throws IOException {
         writeExternal(out);
     }
@@ -185,48 +841,518 @@ public final class Segment implements Timestamp, Freezable<Segment>, Sizeable {
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
-        out.writeShort(dataId);
-        out.writeShort(transmissionIds.last());
-        int dataSize = getDataSize(data);
-        out.writeShort(dataSize); // dataSize must be < MTU, Short.MAX is enough for this
-        if (dataSize > 0)
-            out.write(data.array(), data.arrayOffset(), data.limit());
+        writeExternal(out, null, false);
+    }
+
+    private void writeExternal(ObjectOutput out, Segment first, boolean transmissionIdImplied) throws IOException {
+        ByteBuffer transmittedData = delta != null ? delta : data;
+        int dataSize = getDataSize(transmittedData);
+        if (!ProtocolConfig.useCompactHeaders()) {
+            out.writeShort(dataId);
+            out.writeShort(transmissionIds.last());
+            out.writeShort(getFixedDataSizeField(dataSize)); // dataSize must be < MTU, Short.MAX is enough for this
+            if (delta != null)
+                out.writeShort(baselineDataId);
+            if (fragmentCount > 0) {
+                out.writeByte(fragmentIndex);
+                out.writeByte(fragmentCount);
+            }
+        } else {
+            if (first == null) {
+                out.writeShort(dataId);
+                if (!transmissionIdImplied)
+                    out.writeShort(transmissionIds.last());
+            } else {
+                VarInt.write(out, VarInt.encodeDelta(dataId, first.dataId));
+                if (!transmissionIdImplied)
+                    VarInt.write(out, VarInt.encodeDelta(transmissionIds.last(), first.transmissionIds.last()));
+            }
+            VarInt.write(out, getCompactDataSizeField(dataSize));
+            if (delta != null)
+                VarInt.write(out, getBaselineOffset(dataId, baselineDataId));
+            if (fragmentCount > 0) {
+                VarInt.write(out, fragmentIndex);
+                VarInt.write(out, fragmentCount);
+            }
+            if (hasLaneField()) {
+                VarInt.write(out, getLaneField());
+                if (streamId != 0)
+                    VarInt.write(out, streamId);
+            }
+        }
+
+        if (dataSize > 0) {
+            if (transmittedData.hasArray()) {
+                out.write(transmittedData.array(), transmittedData.arrayOffset(), dataSize);
+            } else {
+                for (int i = 0; i < dataSize; ++i)
+                    out.writeByte(transmittedData.get(i));
+            }
+        }
+    }
+
+    public void writeExternal(ByteBuffer out) {
+        try {
+            out.position(writeExternal(out, out.position(), null, false));
+        } catch (IndexOutOfBoundsException e) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    private int writeExternal(ByteBuffer out, int index, Segment first, boolean transmissionIdImplied) {
+        ByteBuffer transmittedData = delta != null ? delta : data;
+        int dataSize = getDataSize(transmittedData);
+        if (index < 0 || out.limit() - index < getHeaderSize(first, transmissionIdImplied, dataSize) + dataSize)
+            throw new IndexOutOfBoundsException();
+
+        index = writeHeader(out, index, first, transmissionIdImplied, dataSize);
+
+        if (dataSize > 0) {
+            if (transmittedData.hasArray() && out.hasArray()) {
+                System.arraycopy(transmittedData.array(), transmittedData.arrayOffset(),
+                        out.array(), out.arrayOffset() + index, dataSize);
+            } else {
+                // bulk transfer, e.g. between direct buffers
+                int position = out.position();
+                out.position(index);
+                out.put(transmittedData);
+                out.position(position);
+                transmittedData.rewind();
+            }
+            index += dataSize;
+        }
+
+        return index;
+    }
+
+    private int writeHeader(ByteBuffer out, int index, Segment first, boolean transmissionIdImplied, int dataSize) {
+        if (!ProtocolConfig.useCompactHeaders()) {
+            out.putShort(index, dataId);
+            out.putShort(index + 2, transmissionIds.last());
+            out.putShort(index + 4, getFixedDataSizeField(dataSize)); // dataSize must be < MTU, Short.MAX is enough for this
+            index += HEADER_SIZE;
+            if (delta != null) {
+                out.putShort(index, baselineDataId);
+                index += Short.SIZE / Byte.SIZE;
+            }
+            if (fragmentCount > 0) {
+                out.put(index++, (byte) fragmentIndex);
+                out.put(index++, (byte) fragmentCount);
+            }
+        } else {
+            if (first == null) {
+                out.putShort(index, dataId);
+                index += Short.SIZE / Byte.SIZE;
+                if (!transmissionIdImplied) {
+                    out.putShort(index, transmissionIds.last());
+                    index += Short.SIZE / Byte.SIZE;
+                }
+            } else {
+                index = VarInt.write(out, index, VarInt.encodeDelta(dataId, first.dataId));
+                if (!transmissionIdImplied)
+                    index = VarInt.write(out, index, VarInt.encodeDelta(transmissionIds.last(), first.transmissionIds.last()));
+            }
+            index = VarInt.write(out, index, getCompactDataSizeField(dataSize));
+            if (delta != null)
+                index = VarInt.write(out, index, getBaselineOffset(dataId, baselineDataId));
+            if (fragmentCount > 0) {
+                index = VarInt.write(out, index, fragmentIndex);
+                index = VarInt.write(out, index, fragmentCount);
+            }
+            if (hasLaneField()) {
+                index = VarInt.write(out, index, getLaneField());
+                if (streamId != 0)
+                    index = VarInt.write(out, index, streamId);
+            }
+        }
+
+        return index;
+    }
+
+    // the data size of delta encoded segments is flagged, they are followed by a reference to their baseline;
+    // the data size of fragments is flagged, they are followed by the fragment index and count;
+    // the flags do not overlap the data size, as it can not exceed ProtocolConfig#MAX_HIGHEST_POSSIBLE_MTU_SIZE
+    private short getFixedDataSizeField(int dataSize) {
+        int field = dataSize;
+        if (delta != null)
+            field |= FIXED_DELTA_FLAG;
+        if (fragmentCount > 0)
+            field |= FIXED_FRAGMENT_FLAG;
+        return (short) field;
+    }
+
+    private int getCompactDataSizeField(int dataSize) {
+        int field = dataSize << getCompactFlagBits();
+        if (delta != null)
+            field |= COMPACT_DELTA_FLAG;
+        if (fragmentCount > 0)
+            field |= COMPACT_FRAGMENT_FLAG;
+        if (hasLaneField())
+            field |= COMPACT_LANE_FLAG;
+        return field;
+    }
+
+    // the lane flag is only reserved if delivery lanes are used, which keeps the header format otherwise
+    private static int getCompactFlagBits() {
+        return ProtocolConfig.useDeliveryLanes() ? COMPACT_LANE_FLAG_BITS : COMPACT_FLAG_BITS;
+    }
+
+    // ordered segments of the default stream that directly follow their predecessor are sent on the default lane,
+    // which is not written; the stream id follows the lane field otherwise, unless it is the default one
+    private boolean hasLaneField() {
+        return lane != ProtocolConfig.DeliveryLane.RELIABLE_ORDERED || precedingGap != 0 || streamId != 0;
+    }
+
+    private int getLaneField() {
+        return precedingGap << LANE_FLAG_BITS | (streamId != 0 ? STREAM_FLAG : 0) | lane.ordinal();
+    }
+
+    private int getLaneSize() {
+        if (!hasLaneField())
+            return 0;
+
+        return VarInt.getSize(getLaneField()) + (streamId != 0 ? VarInt.getSize(streamId) : 0);
+    }
+
+    private static int getMaximumLaneSize() {
+        return ProtocolConfig.useDeliveryLanes()
+                ? VarInt.getSize(0xFFFF << LANE_FLAG_BITS | STREAM_FLAG | LANE_MASK) + VarInt.getSize(ProtocolConfig.MAX_STREAM_ID)
+                : 0;
+    }
+
+    // returns whether a stream id follows the lane field
+    private boolean readLane(int laneField) {
+        int laneIndex = laneField & LANE_MASK;
+        boolean hasStream = (laneField & STREAM_FLAG) != 0;
+        int gap = laneField >>> LANE_FLAG_BITS;
+        if (laneIndex >= LANES.length || gap > 0xFFFF
+                || (gap != 0 || hasStream) && LANES[laneIndex] != ProtocolConfig.DeliveryLane.RELIABLE_ORDERED)
+            throw new IllegalArgumentException("Malformed lane header!");
+
+        this.lane = LANES[laneIndex];
+        this.precedingGap = gap;
+        return hasStream;
+    }
+
+    private void readStreamId(int streamId) {
+        if (streamId <= 0 || streamId > ProtocolConfig.MAX_STREAM_ID)
+            throw new IllegalArgumentException("Malformed stream header!");
+
+        this.streamId = streamId;
+    }
+
+    private int getFragmentSize() {
+        if (fragmentCount <= 0)
+            return 0;
+
+        return !ProtocolConfig.useCompactHeaders()
+                ? 2
+                : VarInt.getSize(fragmentIndex) + VarInt.getSize(fragmentCount);
+    }
+
+    /**
+     * Get the largest size the fragment index and count add to the header of a segment.
+     *
+     * @return the size in bytes
+     * @see #setFragment(int, int)
+     */
+    public static int getMaximumFragmentHeaderSize() {
+        return !ProtocolConfig.useCompactHeaders()
+                ? 2
+                : VarInt.getSize(ProtocolConfig.MAX_FRAGMENT_LIMIT - 1) + VarInt.getSize(ProtocolConfig.MAX_FRAGMENT_LIMIT);
+    }
+
+    // the data size is read before its buffer is allocated, thus it is checked against the highest possible MTU size
+    private static void checkDataSize(int dataSize) {
+        if (dataSize > ProtocolConfig.getHighestPossibleMTUSize())
+            throw new IllegalArgumentException("Malformed data size header!");
+    }
+
+    private void readFragment(int fragmentIndex, int fragmentCount) {
+        if (!isValidFragment(fragmentIndex, fragmentCount))
+            throw new IllegalArgumentException("Malformed fragment header!");
+
+        this.fragmentIndex = fragmentIndex;
+        this.fragmentCount = fragmentCount;
+    }
+
+    // the baseline precedes the segment, thus the offset is positive and small
+    private static int getBaselineOffset(short dataId, short baselineDataId) {
+        return (dataId - baselineDataId) & 0xFFFF;
+    }
+
+    private static int getBaselineSize(short dataId, short baselineDataId) {
+        return !ProtocolConfig.useCompactHeaders()
+                ? Short.SIZE / Byte.SIZE
+                : VarInt.getSize(getBaselineOffset(dataId, baselineDataId));
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        dataId = in.readShort();
-        dataIds.add(dataId);
-        transmissionIds.add(in.readShort());
-        int dataSize = in.readShort(); // dataSize must be < MTU, Short.MAX is enough for this
+        readExternal(in, null, null);
+    }
+
+    private void readExternal(ObjectInput in, Segment first, Short impliedTransmissionId) throws IOException {
+        short transmissionId;
+        int dataSize;
+        Short baselineId = null;
+        if (!ProtocolConfig.useCompactHeaders()) {
+            dataId = in.readShort();
+            transmissionId = in.readShort();
+            int dataSizeField = in.readUnsignedShort();
+            dataSize = dataSizeField & ~(FIXED_DELTA_FLAG | FIXED_FRAGMENT_FLAG); // dataSize fits into 14 bits
+            if ((dataSizeField & FIXED_DELTA_FLAG) != 0)
+                baselineId = in.readShort();
+            if ((dataSizeField & FIXED_FRAGMENT_FLAG) != 0)
+                readFragment(in.readUnsignedByte(), in.readUnsignedByte());
+        } else {
+            if (first == null) {
+                dataId = in.readShort();
+                transmissionId = impliedTransmissionId != null ? impliedTransmissionId : in.readShort();
+            } else {
+                dataId = VarInt.decodeDelta(VarInt.read(in), first.dataId);
+                transmissionId = impliedTransmissionId != null ? impliedTransmissionId
+                        : VarInt.decodeDelta(VarInt.read(in), first.transmissionIds.last());
+            }
+            int dataSizeField = VarInt.read(in);
+            dataSize = dataSizeField >>> getCompactFlagBits();
+            if ((dataSizeField & COMPACT_DELTA_FLAG) != 0)
+                baselineId = (short) (dataId - VarInt.read(in));
+            if ((dataSizeField & COMPACT_FRAGMENT_FLAG) != 0) {
+                int index = VarInt.read(in);
+                readFragment(index, VarInt.read(in));
+            }
+            if (ProtocolConfig.useDeliveryLanes() && (dataSizeField & COMPACT_LANE_FLAG) != 0 && readLane(VarInt.read(in)))
+                readStreamId(VarInt.read(in));
+        }
+        dataIds.addId(dataId);
+        transmissionIds.addId(transmissionId);
+
+        releaseData();
+        discardDelta();
+        checkDataSize(dataSize);
         if (dataSize > 0) {
-            in.read(data.array(), 0, dataSize);
-            data.limit(dataSize);
-            dataOut.limit(dataSize);
+            ByteBuffer readData = BufferArena.instance.allocate(dataSize);
+            if (readData.hasArray()) {
+                in.readFully(readData.array(), readData.arrayOffset(), dataSize);
+            } else {
+                for (int i = 0; i < dataSize; ++i)
+                    readData.put(i, in.readByte());
+            }
+            readData.limit(dataSize);
+
+            if (baselineId != null) {
+                delta = readData;
+                deltaOut = delta.asReadOnlyBuffer();
+                baselineDataId = baselineId;
+            } else {
+                data = readData;
+                dataOut = data.asReadOnlyBuffer();
+            }
         }
     }
 
+    public void readExternal(ByteBuffer in) {
+        try {
+            in.position(readExternal(in, in.position(), null, null, false));
+        } catch (IndexOutOfBoundsException e) {
+            throw new BufferUnderflowException();
+        }
+    }
+
+    private int readExternal(ByteBuffer in, int index, Segment first, Short impliedTransmissionId, boolean borrowData) {
+        if (index < 0)
+            throw new IndexOutOfBoundsException();
+
+        short transmissionId;
+        int dataSize;
+        Short baselineId = null;
+        if (!ProtocolConfig.useCompactHeaders()) {
+            dataId = in.getShort(index);
+            transmissionId = in.getShort(index + 2);
+            int dataSizeField = in.getShort(index + 4) & 0xFFFF;
+            dataSize = dataSizeField & ~(FIXED_DELTA_FLAG | FIXED_FRAGMENT_FLAG); // dataSize fits into 14 bits
+            index += HEADER_SIZE;
+            if ((dataSizeField & FIXED_DELTA_FLAG) != 0) {
+                baselineId = in.getShort(index);
+                index += Short.SIZE / Byte.SIZE;
+            }
+            if ((dataSizeField & FIXED_FRAGMENT_FLAG) != 0) {
+                readFragment(in.get(index) & 0xFF, in.get(index + 1) & 0xFF);
+                index += 2;
+            }
+        } else {
+            if (first == null) {
+                dataId = in.getShort(index);
+                index += Short.SIZE / Byte.SIZE;
+                if (impliedTransmissionId != null) {
+                    transmissionId = impliedTransmissionId;
+                } else {
+                    transmissionId = in.getShort(index);
+                    index += Short.SIZE / Byte.SIZE;
+                }
+            } else {
+                int dataIdDelta = VarInt.read(in, index);
+                index += VarInt.getSize(dataIdDelta);
+                dataId = VarInt.decodeDelta(dataIdDelta, first.dataId);
+                if (impliedTransmissionId != null) {
+                    transmissionId = impliedTransmissionId;
+                } else {
+                    int transmissionIdDelta = VarInt.read(in, index);
+                    index += VarInt.getSize(transmissionIdDelta);
+                    transmissionId = VarInt.decodeDelta(transmissionIdDelta, first.transmissionIds.last());
+                }
+            }
+            int dataSizeField = VarInt.read(in, index);
+            index += VarInt.getSize(dataSizeField);
+            dataSize = dataSizeField >>> getCompactFlagBits();
+            if ((dataSizeField & COMPACT_DELTA_FLAG) != 0) {
+                int baselineOffset = VarInt.read(in, index);
+                index += VarInt.getSize(baselineOffset);
+                baselineId = (short) (dataId - baselineOffset);
+            }
+            if ((dataSizeField & COMPACT_FRAGMENT_FLAG) != 0) {
+                int fragmentIndex = VarInt.read(in, index);
+                index += VarInt.getSize(fragmentIndex);
+                int fragmentCount = VarInt.read(in, index);
+                index += VarInt.getSize(fragmentCount);
+                readFragment(fragmentIndex, fragmentCount);
+            }
+            if (ProtocolConfig.useDeliveryLanes() && (dataSizeField & COMPACT_LANE_FLAG) != 0) {
+                int laneField = VarInt.read(in, index);
+                index += VarInt.getSize(laneField);
+                if (readLane(laneField)) {
+                    int streamId = VarInt.read(in, index);
+                    index += VarInt.getSize(streamId);
+                    readStreamId(streamId);
+                }
+            }
+        }
+        dataIds.addId(dataId);
+        transmissionIds.addId(transmissionId);
+
+        releaseData();
+        discardDelta();
+        checkDataSize(dataSize);
+        if (dataSize > 0) {
+            if (in.limit() - index < dataSize)
+                throw new IndexOutOfBoundsException();
+
+            // delta encoded data is decoded later on, thus it is never borrowed
+            if (borrowData && baselineId == null) {
+                ByteBuffer view = in.asReadOnlyBuffer();
+                view.limit(index + dataSize);
+                view.position(index);
+                data = dataOut = view.slice();
+                dataBorrowed = true;
+                return index + dataSize;
+            }
+
+            ByteBuffer readData = BufferArena.instance.allocate(dataSize);
+            if (readData.hasArray() && in.hasArray()) {
+                System.arraycopy(in.array(), in.arrayOffset() + index, readData.array(), readData.arrayOffset(), dataSize);
+                readData.limit(dataSize);
+            } else {
+                // bulk transfer, e.g. between direct buffers
+                int position = in.position();
+                int limit = in.limit();
+                in.limit(index + dataSize);
+                in.position(index);
+                readData.put(in);
+                readData.flip();
+                in.limit(limit);
+                in.position(position);
+            }
+            index += dataSize;
+
+            if (baselineId != null) {
+                delta = readData;
+                deltaOut = delta.asReadOnlyBuffer();
+                baselineDataId = baselineId;
+            } else {
+                data = readData;
+                dataOut = data.asReadOnlyBuffer();
+            }
+        }
+
+        return index;
+    }
+
     @Override
     public Segment clone() {
-        Segment clone = new Segment();
+        Segment clone = obtain();
         if (getData() != null) {
             getData().rewind();
             clone.setData(getData());
             getData().rewind();
         }
+        if (delta != null) {
+            ByteBuffer deltaCopy = delta.duplicate();
+            deltaCopy.rewind();
+            clone.delta = BufferArena.instance.allocate(deltaCopy.limit());
+            clone.delta.put(deltaCopy);
+            clone.delta.flip();
+            clone.deltaOut = clone.delta.asReadOnlyBuffer();
+            clone.baselineDataId = baselineDataId;
+        }
+        clone.fragmentIndex = fragmentIndex;
+        clone.fragmentCount = fragmentCount;
+        clone.lane = lane;
+        clone.precedingGap = precedingGap;
+        clone.streamId = streamId;
         clone.dataId = dataId;
-        clone.dataIds.add(dataId);
-        clone.transmissionIds.addAll(transmissionIds);
-        // TODO: convert all addAll method invocations into manual iterations
+        clone.dataIds.addId(dataId);
+        clone.transmissionIds.addAllIds(transmissionIds);
         return clone;
     }
 
     @Override
     public int getSize() {
+        return getSize(null, false);
+    }
+
+    /**
+     * Get the exact size of the segment, when it is externalized as part of a packet.
+     *
+     * @param first                 the first segment of the packet, or <code>null</code> if this is the first segment
+     * @param transmissionIdImplied whether the transmission id is omitted, as the packet implies it
+     * @return the size in bytes
+     */
+    public int getSize(Segment first, boolean transmissionIdImplied) {
+        int dataSize = getDataSize(delta != null ? delta : data);
+        return getHeaderSize(first, transmissionIdImplied, dataSize) + dataSize;
+    }
+
+    private int getHeaderSize(Segment first, boolean transmissionIdImplied, int dataSize) {
+        int size = delta != null ? getBaselineSize(dataId, baselineDataId) : 0;
+        size += getFragmentSize();
+        if (!ProtocolConfig.useCompactHeaders())
+            return HEADER_SIZE + size;
+
+        size += VarInt.getSize(getCompactDataSizeField(dataSize)) + getLaneSize();
+        if (first == null) {
+            size += transmissionIdImplied ? Short.SIZE / Byte.SIZE : ID_SIZE;
+        } else {
+            size += VarInt.getSize(VarInt.encodeDelta(dataId, first.dataId));
+            if (!transmissionIdImplied)
+                size += VarInt.getSize(VarInt.encodeDelta(transmissionIds.last(), first.transmissionIds.last()));
+        }
+        return size;
+    }
+
+    /**
+     * Get the largest header size the first segment of a packet can have.
+     * The compact header format moves the transmission id of the first segment into the packet header.
+     *
+     * @return the size in bytes
+     */
+    public static int getMaximumHeaderSize() {
+        if (!ProtocolConfig.useCompactHeaders())
+            return HEADER_SIZE;
+
         return Short.SIZE / Byte.SIZE // dataId
-                + Short.SIZE / Byte.SIZE // lastTransmissionId
-                + Integer.SIZE / Byte.SIZE // dataLimit
-                + getDataSize(data); // data
+                + VarInt.getSize(ProtocolConfig.getHighestPossibleMTUSize() << getCompactFlagBits()) // dataSize with flags
+                + getMaximumLaneSize();
     }
 
     @Override
@@ -247,4 +1373,30 @@ public final class Segment implements Timestamp, Freezable<Segment>, Sizeable {
     private static int getDataSize(ByteBuffer data) {
         return data != null ? data.limit() : 0;
     }
+
+    private static final class IdSet extends ShortIdSet {
+        private IdSet(int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        @Override
+        protected boolean addId(Short id) {
+            return super.addId(id);
+        }
+
+        @Override
+        protected boolean removeId(Short id) {
+            return super.removeId(id);
+        }
+
+        @Override
+        protected void clearIds() {
+            super.clearIds();
+        }
+
+        @Override
+        protected void addAllIds(ShortIdSet other) {
+            super.addAllIds(other);
+        }
+    }
 }
@@ -8,9 +8,12 @@
 package com.github.mucaho.jnetrobust.control;
 
 import com.github.mucaho.jnetrobust.util.FastLog;
+import com.github.mucaho.jnetrobust.util.IdComparator;
 import com.github.mucaho.jnetrobust.util.SystemClock;
+import com.github.mucaho.jnetrobust.util.TimeoutHandler;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import static com.github.mucaho.jnetrobust.util.BitConstants.LSB;
 import static com.github.mucaho.jnetrobust.util.BitConstants.OFFSET;
@@ -23,6 +26,19 @@ public class SentMapControl extends AbstractMapControl {
 
     private TransmissionSuccessListener listener;
 
+    private final TimeoutHandler deadlineHandler = new TimeoutHandler();
+
+    /*
+     * If transmission ids are assigned per packet, each packet transmission id stands for
+     * the consecutive transmission ids of the packet's segments, which are recorded in a ring of the most recent packets.
+     * Acknowledgements of packets that were displaced from the ring are ignored, their segments time out eventually.
+     */
+    private static final int PACKET_HISTORY_SIZE = 1 << 10;
+    private static final int PACKET_HISTORY_MASK = PACKET_HISTORY_SIZE - 1;
+    private short[] packetTransmissionIds;
+    private short[] firstTransmissionIds;
+    private int[] transmissionIdCounts;
+
     public SentMapControl(TransmissionSuccessListener listener, int maxEntries, int maxEntryOffset,
                           int maxEntryOccurrences, long maxEntryTimeout, SystemClock systemClock) {
         super(maxEntries, maxEntryOffset, maxEntryOccurrences, maxEntryTimeout, systemClock);
@@ -34,17 +50,129 @@ public class SentMapControl extends AbstractMapControl {
         return new SentSegmentMap();
     }
 
+    @Override
+    public void discardEntries() {
+        discardExpiredEntries();
+
+        super.discardEntries();
+    }
+
+    // user-data, whose deadline passed, is given up on without being retransmitted
+    private void discardExpiredEntries() {
+        List<Segment> expireds = deadlineHandler.filterExpired(dataMap.getValues(), systemClock.getTimeNow());
+        for (int i = 0, l = expireds.size(); i < l; ++i)
+            discardEntry(expireds.get(i));
+    }
+
     public void addToSent(Short transmissionId, Segment segment) {
         // add to pending map
         dataMap.put(transmissionId, segment);
     }
 
+    public void addToSentUnretained(Short transmissionId, Segment segment) {
+        // the segment is never retransmitted, thus it is not added to the pending map
+        segment.addTransmissionId(transmissionId);
+    }
+
+    public void addToSent(short packetTransmissionId, short firstTransmissionId, int transmissionIdCount) {
+        if (packetTransmissionIds == null) {
+            packetTransmissionIds = new short[PACKET_HISTORY_SIZE];
+            firstTransmissionIds = new short[PACKET_HISTORY_SIZE];
+            transmissionIdCounts = new int[PACKET_HISTORY_SIZE];
+        }
+
+        int index = packetTransmissionId & PACKET_HISTORY_MASK;
+        packetTransmissionIds[index] = packetTransmissionId;
+        firstTransmissionIds[index] = firstTransmissionId;
+        transmissionIdCounts[index] = transmissionIdCount;
+    }
+
+    public void removePacketsFromSent(Short packetTransmissionId, long precedingPacketTransmissionIds) {
+        removePacketsFromSent(packetTransmissionId, precedingPacketTransmissionIds, null, 0);
+    }
+
+    public void removePacketsFromSent(Short packetTransmissionId, long precedingPacketTransmissionIds,
+                                      short[] ackRanges, int ackRangeCount) {
+        if (packetTransmissionIds == null)
+            return;
+
+        // remove ranges (oldest until newest) from pending map
+        for (int i = ackRangeCount - 1; i >= 0; --i) {
+            short start = ackRanges[i * 2];
+            int length = ackRanges[i * 2 + 1] & 0xFFFF;
+            for (int j = 0; j < length; ++j)
+                removePacketFromSent((short) (start + j), false);
+        }
+
+        // remove multiple (oldest until newest) from pending map
+        Short precedingPacketTransmissionId;
+        int msbIndex;
+        while (precedingPacketTransmissionIds != 0) {
+            msbIndex = FastLog.log2(precedingPacketTransmissionIds);
+            precedingPacketTransmissionId = (short) (packetTransmissionId - msbIndex - OFFSET);
+            removePacketFromSent(precedingPacketTransmissionId, false);
+            precedingPacketTransmissionIds &= ~(LSB << msbIndex);
+        }
+
+        // remove newest from pending map
+        removePacketFromSent(packetTransmissionId, true);
+    }
+
+    private void removePacketFromSent(short packetTransmissionId, boolean directlyAcked) {
+        int index = packetTransmissionId & PACKET_HISTORY_MASK;
+        int transmissionIdCount = transmissionIdCounts[index];
+        if (transmissionIdCount == 0 || packetTransmissionIds[index] != packetTransmissionId)
+            return;
+        transmissionIdCounts[index] = 0;
+
+        for (int i = 0; i < transmissionIdCount; ++i) {
+            Short transmissionId = (short) (firstTransmissionIds[index] + i);
+            Segment ackedSegment = dataMap.removeAll(transmissionId);
+            // the round-trip time of a packet is sampled once
+            notifyAcked(transmissionId, ackedSegment, directlyAcked);
+            if (ackedSegment != null)
+                directlyAcked = false;
+            release(ackedSegment);
+        }
+    }
+
     public void removeFromSent(Short transmissionId, long precedingTransmissionIds) {
+        removeFromSent(transmissionId, precedingTransmissionIds, null, 0);
+    }
+
+    public void removeFromSent(Short transmissionId, long precedingTransmissionIds,
+                               short[] ackRanges, int ackRangeCount) {
+        // remove ranges (oldest until newest) from pending map
+        removeFromSentOnRanges(ackRanges, ackRangeCount);
+
         // remove multiple (oldest until newest) from pending map
         removeFromSentOnBits(transmissionId, precedingTransmissionIds);
 
         // remove newest from pending map
-        notifyAcked(transmissionId, dataMap.removeAll(transmissionId), true);
+        Segment ackedSegment = dataMap.removeAll(transmissionId);
+        notifyAcked(transmissionId, ackedSegment, true);
+        release(ackedSegment);
+    }
+
+    private void removeFromSentOnRanges(short[] ackRanges, int ackRangeCount) {
+        for (int i = ackRangeCount - 1; i >= 0; --i) {
+            short start = ackRanges[i * 2];
+            int length = ackRanges[i * 2 + 1] & 0xFFFF;
+
+            // visit pending transmission ids within the range only
+            Short transmissionId = dataMap.higherKey((short) (start - 1));
+            while (transmissionId != null && isWithinRange(transmissionId, start, length)) {
+                Segment ackedSegment = dataMap.removeAll(transmissionId);
+                notifyAcked(transmissionId, ackedSegment, false);
+                release(ackedSegment);
+                transmissionId = dataMap.higherKey(transmissionId);
+            }
+        }
+    }
+
+    private static boolean isWithinRange(short transmissionId, short start, int length) {
+        int offset = IdComparator.instance.compare(transmissionId, start);
+        return offset >= 0 && offset < length;
     }
 
     private void removeFromSentOnBits(Short transmissionId, long precedingTransmissionIds) {
@@ -53,7 +181,9 @@ public class SentMapControl extends AbstractMapControl {
         while (precedingTransmissionIds != 0) {
             msbIndex = FastLog.log2(precedingTransmissionIds);
             precedingTransmissionId = (short) (transmissionId - msbIndex - OFFSET);
-            notifyAcked(precedingTransmissionId, dataMap.removeAll(precedingTransmissionId), false);
+            Segment ackedSegment = dataMap.removeAll(precedingTransmissionId);
+            notifyAcked(precedingTransmissionId, ackedSegment, false);
+            release(ackedSegment);
             precedingTransmissionIds &= ~(LSB << msbIndex);
         }
 
@@ -61,19 +191,26 @@ public class SentMapControl extends AbstractMapControl {
 
     @Override
     protected void discardEntry(Short key) {
-        notifyNotAcked(key, dataMap.removeAll(key));
+        Segment unackedSegment = dataMap.removeAll(key);
+        notifyNotAcked(key, unackedSegment);
+        release(unackedSegment);
     }
 
     @Override
     protected void discardEntry(Segment segment) {
-        notifyNotAcked(segment.getLastTransmissionId(), dataMap.removeAll(segment));
+        Short lastTransmissionId = segment.getLastTransmissionId();
+        Segment unackedSegment = dataMap.removeAll(segment);
+        notifyNotAcked(lastTransmissionId, unackedSegment);
+        release(unackedSegment);
     }
 
     @Override
     protected void discardEntryKey(Short key) {
         Segment shrankSegment = dataMap.remove(key);
-        if (shrankSegment != null && shrankSegment.getTransmissionIds().isEmpty())
+        if (shrankSegment != null && shrankSegment.getTransmissionIds().isEmpty()) {
             notifyNotAcked(key, shrankSegment);
+            release(shrankSegment);
+        }
     }
 
     protected void notifyNotAcked(Short transmissionId, Segment unackedSegment) {
@@ -7,14 +7,13 @@
 
 package com.github.mucaho.jnetrobust.control;
 
-import com.github.mucaho.jnetrobust.util.IdComparator;
 import com.github.mucaho.jnetrobust.util.SegmentLastTransmissionIdComparator;
 
 import java.util.NavigableSet;
 
 public class SentSegmentMap extends AbstractSegmentMap {
     public SentSegmentMap() {
-        super(IdComparator.instance, SegmentLastTransmissionIdComparator.instance);
+        super(SegmentLastTransmissionIdComparator.instance);
     }
 
     @Override
@@ -33,20 +32,24 @@ public class SentSegmentMap extends AbstractSegmentMap {
 
     @Override
     Segment put(Short transmissionId, Segment segment) {
-        // remove from valueMap, then possibly re-add after modifying transmissionIds
-        valueMap.remove(segment);
+        // (re-)position in valueSet after modifying transmissionIds, usually the segment moves to the tail
         segment.addTransmissionId(transmissionId);
-        if (!segment.getTransmissionIds().isEmpty())
-            valueMap.put(segment, segment.getTransmissionIds());
+        if (!segment.getTransmissionIds().isEmpty()) {
+            if (valueSet.putSegment(segment, segment.getTransmissionIds()))
+                segment.retain();
+        }
 
         Segment replacedSegment = keyMap.put(transmissionId, segment);
 
         if (replacedSegment != null && replacedSegment != segment) {
-            // remove from valueMap, then possibly re-add after modifying transmissionIds
-            valueMap.remove(replacedSegment);
+            // reposition in valueSet or remove from it after modifying transmissionIds
             replacedSegment.removeTransmissionId(transmissionId);
-            if (!replacedSegment.getTransmissionIds().isEmpty())
-                valueMap.put(replacedSegment, replacedSegment.getTransmissionIds());
+            if (!replacedSegment.getTransmissionIds().isEmpty()) {
+                valueSet.putSegment(replacedSegment, replacedSegment.getTransmissionIds());
+            } else {
+                valueSet.removeSegment(replacedSegment);
+                replacedSegment.release();
+            }
         }
 
         return replacedSegment;
@@ -86,11 +89,12 @@ public class SentSegmentMap extends AbstractSegmentMap {
     Segment remove(Short transmissionId) {
         Segment segment = keyMap.remove(transmissionId);
         if (segment != null) {
-            // remove from valueMap, then possibly re-add after modifying transmissionIds
-            valueMap.remove(segment);
+            // reposition in valueSet or remove from it after modifying transmissionIds
             segment.removeTransmissionId(transmissionId);
             if (!segment.getTransmissionIds().isEmpty())
-                valueMap.put(segment, segment.getTransmissionIds());
+                valueSet.putSegment(segment, segment.getTransmissionIds());
+            else
+                valueSet.removeSegment(segment);
         }
 
         return segment;
@@ -99,12 +103,11 @@ public class SentSegmentMap extends AbstractSegmentMap {
     @Override
     void clear(boolean thourough) {
         if (thourough) {
-            NavigableSet<Segment> segments = valueMap.navigableKeySet();
-            Segment segment = segments.isEmpty() ? null : segments.first();
+            Segment segment = valueSet.isEmpty() ? null : valueSet.first();
             while (segment != null) {
                 segment.clearTransmissionIds();
 
-                segment = segments.higher(segment);
+                segment = valueSet.higher(segment);
             }
         }
 
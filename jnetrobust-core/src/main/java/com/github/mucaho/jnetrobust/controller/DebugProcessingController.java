@@ -17,6 +17,8 @@ import java.util.List;
 
 public class DebugProcessingController extends ProcessingController {
     private final Logger logger;
+    private long leakedSegments = 0L;
+    private long leakedPackets = 0L;
 
     public DebugProcessingController(ProtocolListener listener, ProtocolConfig config, Logger logger) {
         super(listener, config);
@@ -24,8 +26,15 @@ public class DebugProcessingController extends ProcessingController {
     }
 
     @Override
-    public Segment produce(ByteBuffer data) {
-        Segment out = super.produce(data);
+    public Packet produce() {
+        logLeaks();
+
+        return super.produce();
+    }
+
+    @Override
+    public Segment produce(ByteBuffer data, int fragmentIndex, int fragmentCount) {
+        Segment out = super.produce(data, fragmentIndex, fragmentCount);
 
         logger.log(Logger.LoggingEvent.SEND.toString(), out.getDataId(), out.getData());
 
@@ -49,4 +58,18 @@ public class DebugProcessingController extends ProcessingController {
 
         return retransmits;
     }
+
+    private void logLeaks() {
+        if (!ProtocolConfig.usePoolLeakDetection())
+            return;
+
+        long segmentLeaks = Segment.getPool().getLeakCount();
+        long packetLeaks = Packet.getPool().getLeakCount();
+        if (segmentLeaks > leakedSegments || packetLeaks > leakedPackets) {
+            logger.log(Logger.LoggingEvent.LEAKED.toString(),
+                    "Segments = " + (segmentLeaks - leakedSegments), "Packets = " + (packetLeaks - leakedPackets));
+            leakedSegments = segmentLeaks;
+            leakedPackets = packetLeaks;
+        }
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.controller;
+
+import java.util.ArrayDeque;
+import java.util.NavigableMap;
+
+/**
+ * Spreads sent packets over time with a token bucket.
+ * <br />
+ * The bucket is refilled at the pacing rate and holds at most two packets of MTU size.
+ * Queued packets are released in order, once the bucket holds enough credit for them.
+ */
+public class PacingController {
+    private static final long MILLIS_PER_SECOND = 1000L;
+    // number of packets of MTU size that may be released in a burst
+    private static final int BURST_PACKETS = 2;
+    // the congestion window is spread over 4/5 of the smoothed round-trip time,
+    // so that acknowledgements keep up with the pace
+    private static final int PACING_GAIN_NUMERATOR = 5;
+    private static final int PACING_GAIN_DENOMINATOR = 4;
+
+    private final PackagingController controller;
+    private final int pacingRate;
+
+    private final ArrayDeque<Packet> pacedPackets = new ArrayDeque<Packet>();
+    // credit in bytes * ms / s, so that refilling it at a rate given in bytes / s does not lose precision
+    private long credit;
+    private long refillTime = -1L;
+
+    public PacingController(PackagingController controller, int pacingRate) {
+        this.controller = controller;
+        this.pacingRate = pacingRate;
+    }
+
+    public void pace(NavigableMap<Short, Packet> packets) {
+        for (Packet packet : packets.values())
+            pacedPackets.addLast(packet.clone());
+    }
+
+    public Packet poll(long timeNow) {
+        Packet packet = pacedPackets.peekFirst();
+        if (packet == null)
+            return null;
+
+        long rate = getPacingRate();
+        if (rate > 0L) {
+            refill(rate, timeNow);
+
+            long cost = getCost(packet);
+            if (credit < cost)
+                return null;
+            credit -= cost;
+        }
+
+        return pacedPackets.pollFirst();
+    }
+
+    public long getNextSendTime(long timeNow) {
+        Packet packet = pacedPackets.peekFirst();
+        if (packet == null)
+            return Long.MAX_VALUE;
+
+        long rate = getPacingRate();
+        if (rate <= 0L)
+            return timeNow;
+
+        refill(rate, timeNow);
+
+        long deficit = getCost(packet) - credit;
+        return deficit > 0L ? timeNow + (deficit + rate - 1L) / rate : timeNow;
+    }
+
+    public int getPacedCount() {
+        return pacedPackets.size();
+    }
+
+    public long getPacingRate() {
+        if (pacingRate > 0)
+            return pacingRate;
+
+        int congestionWindow = controller.getCongestionWindow();
+        long smoothedRTT = controller.getSmoothedRTT();
+        if (congestionWindow == Integer.MAX_VALUE || smoothedRTT <= 0L)
+            return 0L;
+
+        return Math.max(congestionWindow * MILLIS_PER_SECOND * PACING_GAIN_NUMERATOR
+                / (PACING_GAIN_DENOMINATOR * smoothedRTT), 1L);
+    }
+
+    private long getBurstCredit() {
+        return BURST_PACKETS * controller.getMaximumTransmissionUnitSize() * MILLIS_PER_SECOND;
+    }
+
+    private long getCost(Packet packet) {
+        // a packet larger than the bucket would never be released otherwise
+        return Math.min(packet.getSize() * MILLIS_PER_SECOND, getBurstCredit());
+    }
+
+    private void refill(long rate, long timeNow) {
+        long burstCredit = getBurstCredit();
+        long elapsed = refillTime < 0L ? Long.MAX_VALUE : Math.max(timeNow - refillTime, 0L);
+        refillTime = timeNow;
+
+        // compare against the time needed to fill up the bucket first, to avoid overflowing the credit
+        if (credit >= burstCredit || elapsed >= (burstCredit - credit) / rate + 1L)
+            credit = burstCredit;
+        else
+            credit += rate * elapsed;
+    }
+}
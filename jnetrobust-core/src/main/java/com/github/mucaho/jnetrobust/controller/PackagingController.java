@@ -7,25 +7,41 @@
 
 package com.github.mucaho.jnetrobust.controller;
 
+import com.github.mucaho.jnetrobust.PayloadCodec;
 import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.SendOptions;
 import com.github.mucaho.jnetrobust.control.Segment;
+import com.github.mucaho.jnetrobust.util.BufferArena;
 import com.github.mucaho.jnetrobust.util.CollectionUtils;
 import com.github.mucaho.jnetrobust.util.IdComparator;
+import com.github.mucaho.jnetrobust.util.SegmentDeadlineComparator;
 
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 
 public class PackagingController {
     private final ProcessingController controller;
+    private final PayloadCodec payloadCodec;
+    // null if forward error correction is disabled
+    private final ParityController parityController;
+    private final PriorityController priorityController = new PriorityController();
 
     public PackagingController(ProcessingController controller) {
+        this(controller, null);
+    }
+
+    public PackagingController(ProcessingController controller, PayloadCodec payloadCodec) {
         this.controller = controller;
+        this.payloadCodec = payloadCodec;
+        this.parityController = controller.getParityGroupSize() > 0
+                ? new ParityController(controller.getParityGroupSize()) : null;
 
         setMaximumTransmissionUnitSize(maximumTransmissionUnitSize);
     }
@@ -34,16 +50,34 @@ public class PackagingController {
     private int maximumPacketSize;
     private int minimumPacketSize;
     private int maximumDataSize;
+    private int maximumFragmentSize;
+
+    // scratch buffers for compressing the segments of a packet
+    private ByteBuffer uncompressedSegments = ByteBuffer.allocate(0);
+    private ByteBuffer compressedSegments = ByteBuffer.allocate(0);
+    // compressed size relative to the uncompressed size of the previously compressed segments
+    private float compressionRatio = 1f;
 
     public void setMaximumTransmissionUnitSize(int maximumTransmissionUnitSize) {
         this.maximumTransmissionUnitSize = Math.min(maximumTransmissionUnitSize, ProtocolConfig.getHighestPossibleMTUSize());
 
-        minimumPacketSize = new Packet().getSize();
+        minimumPacketSize = Packet.getMaximumHeaderSize();
         maximumPacketSize = maximumTransmissionUnitSize
                 - ProtocolConfig.MAXIMUM_LOWER_STACK_HEADER_SIZE;
+        // packets carrying segments leave room for the parity packet, which covers them
+        if (parityController != null)
+            maximumPacketSize -= minimumPacketSize
+                    + ParityController.getMaximumOverhead(controller.getParityGroupSize());
         maximumDataSize = maximumPacketSize
                 - minimumPacketSize
-                - new Segment().getSize();
+                - Segment.getMaximumHeaderSize();
+        maximumFragmentSize = maximumDataSize
+                - Segment.getMaximumFragmentHeaderSize();
+
+        if (payloadCodec != null && uncompressedSegments.capacity() < ProtocolConfig.getHighestPossibleMTUSize()) {
+            uncompressedSegments = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+            compressedSegments = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        }
     }
 
     public int getMaximumTransmissionUnitSize() {
@@ -62,51 +96,196 @@ public class PackagingController {
         return maximumDataSize;
     }
 
+    public int getMaximumFragmentedDataSize() {
+        return controller.getFragmentLimit() > 0 ? maximumFragmentSize * controller.getFragmentLimit() : maximumDataSize;
+    }
+
     private final List<Segment> allSegments = new ArrayList<Segment>();
+    private final List<Segment> redundantSegments = new ArrayList<Segment>();
+    // segments that did not fit into the congestion window, which are scheduled again on the next send
+    private final List<Segment> deferredSegments = new ArrayList<Segment>();
+    private int congestionBudget;
     private final List<Segment> packetSegments = new ArrayList<Segment>();
     private final NavigableMap<Short, Packet> packetMap = new TreeMap<Short, Packet>(IdComparator.instance);
     private final NavigableMap<Short, Packet> packetMapOut = CollectionUtils.unmodifiableNavigableMap(packetMap);
 
+    private final List<ByteBuffer> singleData = new ArrayList<ByteBuffer>(1);
+    private final SendOptions defaultOptions = new SendOptions();
+
     public NavigableMap<Short, Packet> send(ByteBuffer data) {
-        int dataSize = data != null ? data.limit() : 0;
-        if (dataSize > getMaximumDataSize())
-            throw new IllegalArgumentException("Cannot add more than " + getMaximumDataSize() + " data bytes to packet!");
+        return send(data, defaultOptions);
+    }
+
+    public NavigableMap<Short, Packet> send(ByteBuffer data, SendOptions options) {
+        singleData.clear();
+        if (data != null)
+            singleData.add(data);
+
+        try {
+            return send(singleData, options);
+        } finally {
+            singleData.clear();
+        }
+    }
+
+    public NavigableMap<Short, Packet> send(List<ByteBuffer> datas) {
+        return send(datas, defaultOptions);
+    }
 
+    // the user-datas expire once the timeout elapses, they do not expire if the timeout is 0
+    public NavigableMap<Short, Packet> send(List<ByteBuffer> datas, SendOptions options) {
+        ProtocolConfig.DeliveryLane lane = options.getLane();
+        int streamId = options.getStreamId();
+        long timeout = options.getTimeout();
+        ProtocolConfig.Priority priority = options.getPriority();
+        if (lane != ProtocolConfig.DeliveryLane.RELIABLE_ORDERED && !ProtocolConfig.useDeliveryLanes())
+            throw new IllegalStateException("Cannot send data on " + lane + " lane, as delivery lanes are not used!");
+        if (streamId != 0 && !ProtocolConfig.useDeliveryLanes())
+            throw new IllegalStateException("Cannot send data on stream " + streamId + ", as delivery lanes are not used!");
+        if (streamId != 0 && lane != ProtocolConfig.DeliveryLane.RELIABLE_ORDERED)
+            throw new IllegalArgumentException("Cannot send data on stream " + streamId + " of " + lane + " lane!");
+
+        // validate all datas upfront, so that none of them is sent if one of them is too large;
+        // only user-data of the ordered lane is fragmented
+        int maximumSize = lane == ProtocolConfig.DeliveryLane.RELIABLE_ORDERED
+                ? getMaximumFragmentedDataSize() : getMaximumDataSize();
+        for (int i = 0, l = datas.size(); i < l; ++i) {
+            ByteBuffer data = datas.get(i);
+            int dataSize = data != null ? data.limit() : 0;
+            if (dataSize > maximumSize)
+                throw new IllegalArgumentException("Cannot add more than " + maximumSize + " data bytes to packet!");
+        }
+
+        // release packets of previous invocation
+        for (Packet packet : packetMap.values())
+            packet.release();
         packetMap.clear();
 
         // update current time
         controller.setTimeNow(System.currentTimeMillis());
+        long deadline = timeout > 0L ? controller.getTimeNow() + timeout : Segment.NO_DEADLINE;
 
         // produce all retransmits & user-data segments
         allSegments.clear();
-        allSegments.addAll(controller.retransmit());
-        if (data != null)
-            allSegments.add(controller.produce(data));
+        List<Segment> retransmits = controller.retransmit();
+        for (int i = 0, l = retransmits.size(); i < l; ++i) {
+            Segment retransmit = retransmits.get(i);
+            retransmit.retain();
+            allSegments.add(retransmit);
+        }
+        // deferred segments, whose deadline passed while they were deferred, are not sent at all;
+        // deferred retransmits, which were acknowledged or given up on in the meantime, are not sent either
+        for (int i = 0, l = deferredSegments.size(); i < l; ++i) {
+            Segment deferred = deferredSegments.get(i);
+            if (deferred.getNewestSentTime() >= 0L && !deferred.isLost())
+                deferred.release();
+            else if (deferred.isExpired(controller.getTimeNow()))
+                controller.discardExpired(deferred);
+            else
+                allSegments.add(deferred);
+        }
+        deferredSegments.clear();
+        List<Segment> redundants = controller.getRedundantTransmits();
+        for (int i = 0, l = redundants.size(); i < l; ++i) {
+            Segment redundant = redundants.get(i);
+            if (!allSegments.contains(redundant)) {
+                redundant.retain();
+                redundantSegments.add(redundant);
+            }
+        }
+        for (int i = 0, l = datas.size(); i < l; ++i) {
+            ByteBuffer data = datas.get(i);
+            if (data == null)
+                continue;
+
+            int dataSize = data.limit();
+            int producedCount = allSegments.size();
+            if (dataSize > getMaximumDataSize())
+                produceFragments(data, dataSize, streamId);
+            else if (lane == ProtocolConfig.DeliveryLane.RELIABLE_ORDERED)
+                allSegments.add(controller.produce(data, streamId));
+            else
+                allSegments.add(controller.produce(data, lane));
+            for (int j = producedCount, m = allSegments.size(); j < m; ++j) {
+                Segment segment = allSegments.get(j);
+                segment.setDeadline(deadline);
+                segment.setPriority(priority);
+                segment.setQueuedTime(controller.getTimeNow());
+            }
+        }
+
+        // the segments with the earliest deadline are sent first, the others keep their order thereafter
+        boolean hasDeadlines = false;
+        for (int i = 0, l = allSegments.size(); i < l && !hasDeadlines; ++i)
+            hasDeadlines = allSegments.get(i).getDeadline() != Segment.NO_DEADLINE;
+        if (hasDeadlines)
+            Collections.sort(allSegments, SegmentDeadlineComparator.instance);
+        // the priorities take turns according to their weights, segments of the same priority keep the order above
+        priorityController.schedule(allSegments);
+
+        deferSegments();
+
+        for (int i = 0, l = allSegments.size(); i < l; ++i) {
+            Segment segment = allSegments.get(i);
+            priorityController.addSent(segment,
+                    isRetransmit(segment) ? -1L : controller.getTimeNow() - segment.getQueuedTime());
+        }
 
         // create new segment set
-        int currentPacketSize = minimumPacketSize;
+        int segmentsSize = 0;
         packetSegments.clear();
 
-        for (int i = 0, l = allSegments.size(); i < l; ++i) {
+        for (int i = 0, l = allSegments.size(); i < l; ) {
             Segment segment = allSegments.get(i);
-            int segmentSize = segment.getSize();
+            // exact size within the packet, segments sent together are assigned consecutive transmission ids
+            int segmentSize = segment.getSize(packetSegments.isEmpty() ? null : packetSegments.get(0), true);
+
+            boolean fits = packetSegments.size() < Packet.MAX_DATAS_PER_PACKET && fits(segmentsSize + segmentSize);
+            if (fits || packetSegments.isEmpty()) {
+                // increase current segment set
+                segmentsSize += segmentSize;
+                packetSegments.add(segment);
+                ++i;
+            }
 
-            if ((currentPacketSize + segmentSize > maximumPacketSize) || (packetSegments.size() >= Packet.MAX_DATAS_PER_PACKET)) {
-                // apply current segment set to new packet
-                doSend(packetSegments, packetMap);
+            if (!fits || i == l) {
+                // piggyback redundant copies onto the last packet
+                int redundantCount = packetSegments.size();
+                if (i == l)
+                    segmentsSize = addRedundantSegments(segmentsSize);
+                redundantCount = packetSegments.size() - redundantCount;
+
+                // apply current segment set to new packet, segments that do not fit are packed again
+                i -= doSend(packetSegments, segmentsSize, redundantCount, packetMap);
 
                 // create new packet
-                currentPacketSize = minimumPacketSize;
+                segmentsSize = 0;
                 packetSegments.clear();
             }
+        }
+
+        // if there are no other segments, redundant copies are sent on their own
+        if (allSegments.isEmpty() && !redundantSegments.isEmpty()) {
+            segmentsSize = addRedundantSegments(0);
+            doSend(packetSegments, segmentsSize, packetSegments.size(), packetMap);
+        }
+
+        // segments are referenced by packets and internal data structures from now on
+        for (int i = 0, l = allSegments.size(); i < l; ++i)
+            allSegments.get(i).release();
+        allSegments.clear();
+        for (int i = 0, l = redundantSegments.size(); i < l; ++i)
+            redundantSegments.get(i).release();
+        redundantSegments.clear();
+        packetSegments.clear();
 
-            // increase current segment set
-            currentPacketSize += segmentSize;
-            packetSegments.add(segment);
+        // send the parity of the previously sent packets, once enough of them are sent
+        if (parityController != null && parityController.getSentCount() > 0
+                && parityController.getSentCount() >= parityController.getGroupSize(controller.getLossRate())) {
+            Packet parityPacket = controller.produce();
+            parityController.produceParity(parityPacket);
+            packetMap.put(null, parityPacket);
         }
-        // apply remaining segments to new packet
-        if (!packetSegments.isEmpty())
-            doSend(packetSegments, packetMap);
 
         // if there is no packet, send at least an empty packet
         if (packetMap.isEmpty())
@@ -115,38 +294,318 @@ public class PackagingController {
         return packetMapOut;
     }
 
-    private void doSend(List<Segment> segments, NavigableMap<Short, Packet> outMap) {
+    // defer the segments that do not fit into the congestion window or the receive window of the remote side,
+    // deferred retransmits remain presumed lost, thus they are not accounted for as lost anew on the next send
+    private void deferSegments() {
+        congestionBudget = controller.getCongestionBudget();
+        Short receiveWindowEnd = controller.getReceiveWindowEnd();
+        if (congestionBudget == Integer.MAX_VALUE && receiveWindowEnd == null)
+            return;
+
+        int retransmitCount = 0;
+        for (int i = 0, l = allSegments.size(); i < l; ++i) {
+            if (isRetransmit(allSegments.get(i)))
+                retransmitCount++;
+        }
+
+        // the number of deferred segments is bounded, the foremost ones are sent regardless
+        int overflowCount = allSegments.size() - retransmitCount - ProtocolConfig.MAX_PACKET_QUEUE_LIMIT;
+        boolean congested = false;
+        int count = 0;
+        int unsentIndex = 0;
+        for (int i = 0, l = allSegments.size(); i < l; ++i) {
+            Segment segment = allSegments.get(i);
+            boolean retransmit = isRetransmit(segment);
+            boolean overflows = !retransmit && unsentIndex++ < overflowCount;
+
+            // retransmits fit into the receive window, as the remote side still waits for them;
+            // the receive window applies to the default stream of the ordered lane only
+            boolean held = !retransmit && receiveWindowEnd != null
+                    && segment.getLane() == ProtocolConfig.DeliveryLane.RELIABLE_ORDERED && segment.getStreamId() == 0
+                    && IdComparator.instance.compare(segment.getDataId(), receiveWindowEnd) >= 0;
+            if (!held && !congested && congestionBudget != Integer.MAX_VALUE) {
+                int segmentSize = segment.getSize();
+                // a single segment is sent regardless if nothing is in flight, lest a small window stalls
+                if (segmentSize > congestionBudget && (count > 0 || controller.getBytesInFlight() > 0))
+                    congested = true;
+                else
+                    congestionBudget -= segmentSize;
+            }
+
+            if (!held && !congested || overflows) {
+                allSegments.set(count++, segment);
+            } else {
+                deferredSegments.add(segment);
+                if (!retransmit)
+                    priorityController.addDeferred(segment);
+            }
+        }
+        while (allSegments.size() > count)
+            allSegments.remove(allSegments.size() - 1);
+    }
+
+    // segments that have not been sent yet are not assigned any transmission id
+    private static boolean isRetransmit(Segment segment) {
+        return !segment.getTransmissionIds().isEmpty();
+    }
+
+    // split the data into fragments, each of which is sent in a packet of its own
+    private void produceFragments(ByteBuffer data, int dataSize, int streamId) {
+        int fragmentCount = (dataSize + maximumFragmentSize - 1) / maximumFragmentSize;
+        ByteBuffer fragmentData = data.duplicate();
+        for (int i = 0; i < fragmentCount; ++i) {
+            fragmentData.clear();
+            fragmentData.limit(Math.min(dataSize, (i + 1) * maximumFragmentSize));
+            fragmentData.position(i * maximumFragmentSize);
+            allSegments.add(controller.produce(fragmentData, streamId, i, fragmentCount));
+        }
+    }
+
+    // add redundant copies to the current segment set while space remains, returns the new size of the segment set
+    private int addRedundantSegments(int segmentsSize) {
+        for (int i = 0, l = redundantSegments.size(); i < l && packetSegments.size() < Packet.MAX_DATAS_PER_PACKET; ++i) {
+            Segment redundant = redundantSegments.get(i);
+            int segmentSize = redundant.getSize(packetSegments.isEmpty() ? null : packetSegments.get(0), true);
+            if (minimumPacketSize + segmentsSize + segmentSize <= maximumPacketSize && segmentSize <= congestionBudget) {
+                congestionBudget -= segmentSize;
+                segmentsSize += segmentSize;
+                packetSegments.add(redundant);
+            }
+        }
+        return segmentsSize;
+    }
+
+    private boolean usesCompression() {
+        return payloadCodec != null && ProtocolConfig.useCompactHeaders();
+    }
+
+    private boolean fits(int segmentsSize) {
+        if (minimumPacketSize + segmentsSize <= maximumPacketSize)
+            return true;
+
+        // more segments fit once compressed, the compression ratio of the previous packet serves as an estimate
+        return usesCompression() && segmentsSize <= ProtocolConfig.getHighestPossibleMTUSize()
+                && minimumPacketSize + Packet.getCompressedSegmentsSize(segmentsSize,
+                (int) (segmentsSize * compressionRatio)) <= maximumPacketSize;
+    }
+
+    // the last redundantCount segments are redundant copies, which are dropped first if the segments do not fit;
+    // returns the number of other segments that are removed from the end of the list, as they did not fit
+    private int doSend(List<Segment> segments, int segmentsSize, int redundantCount, NavigableMap<Short, Packet> outMap) {
+        int removedCount = 0;
+        int compressedSize = -1;
+        if (usesCompression()) {
+            compressedSize = compress(segments, segmentsSize);
+
+            // segments packed according to the estimated compression ratio have to be verified
+            while (compressedSize < 0 && minimumPacketSize + segmentsSize > maximumPacketSize) {
+                int targetSize = Math.max(maximumPacketSize - minimumPacketSize, segmentsSize * 3 / 4);
+                do {
+                    Segment segment = segments.remove(segments.size() - 1);
+                    segmentsSize -= segment.getSize(segments.get(0), true);
+                    if (redundantCount > 0)
+                        redundantCount--;
+                    else
+                        removedCount++;
+                } while (segmentsSize > targetSize);
+
+                compressedSize = compress(segments, segmentsSize);
+            }
+        }
+
         Packet packet = controller.produce();
-        controller.send(packet, segments);
-        outMap.put(packet.getLastSegment().getDataId(), packet);
+        controller.send(packet, segments, redundantCount);
+        if (compressedSize >= 0) {
+            compressedSegments.flip();
+            ByteBuffer compressed = BufferArena.instance.allocate(compressedSize);
+            compressed.put(compressedSegments);
+            compressed.flip();
+            packet.setCompressedSegments(compressed, segmentsSize);
+        }
+        if (parityController != null)
+            parityController.addSent(packet);
+        // packets are keyed by their newest data, which redundant copies are not
+        int keyIndex = redundantCount < segments.size() ? segments.size() - 1 - redundantCount : segments.size() - 1;
+        outMap.put(segments.get(keyIndex).getDataId(), packet);
+
+        return removedCount;
+    }
+
+    // returns the size of the compressed segments, or -1 if they do not fit into the packet or are not any smaller
+    private int compress(List<Segment> segments, int segmentsSize) {
+        uncompressedSegments.clear();
+        uncompressedSegments.limit(Packet.writeSegmentsStatic(segments, uncompressedSegments, 0));
+
+        int maximumSegmentsSize = maximumPacketSize - minimumPacketSize;
+        compressedSegments.clear();
+        compressedSegments.limit(Math.min(maximumSegmentsSize, compressedSegments.capacity()));
+        if (!payloadCodec.compress(uncompressedSegments, compressedSegments)) {
+            compressionRatio = 1f;
+            return -1;
+        }
+
+        int compressedSize = compressedSegments.position();
+        compressionRatio = (float) compressedSize / segmentsSize;
+        int size = Packet.getCompressedSegmentsSize(segmentsSize, compressedSize);
+        return size <= maximumSegmentsSize && size < segmentsSize ? compressedSize : -1;
     }
 
     public void send(Packet packet, ObjectOutput objectOutput) throws IOException {
         Packet.writeExternalStatic(packet, objectOutput);
     }
 
+    public void send(Packet packet, ByteBuffer out) {
+        Packet.writeExternalStatic(packet, out);
+    }
+
+    public int send(Packet packet, ByteBuffer headers, ByteBuffer[] out) {
+        return Packet.writeExternalStatic(packet, headers, out);
+    }
+
+    private final List<Segment> receivedSegments = new ArrayList<Segment>();
     private final NavigableMap<Short, ByteBuffer> receivedDatas = new TreeMap<Short, ByteBuffer>(IdComparator.instance);
     private final NavigableMap<Short, ByteBuffer> receivedDatasOut = CollectionUtils.unmodifiableNavigableMap(receivedDatas);
 
     public NavigableMap<Short, ByteBuffer> receive(Packet packet) {
+        // release segments of previous invocation
+        for (int i = 0, l = receivedSegments.size(); i < l; ++i)
+            receivedSegments.get(i).release();
+        receivedSegments.clear();
         receivedDatas.clear();
 
         // update current time
         controller.setTimeNow(System.currentTimeMillis());
 
         controller.consume(packet);
+        if (parityController != null && packet.isParity())
+            parityController.addReceivedParity(packet.getParity());
+        receiveSegments(packet);
+
+        return receivedDatasOut;
+    }
+
+    private void receiveSegments(Packet packet) {
+        // decode all segments first, as receiving any of them may acknowledge the others
+        controller.decode(packet);
+
         Segment segment = controller.receive(packet);
         while (segment != null) {
-            receivedDatas.put(segment.getDataId(), controller.consume(segment));
+            receivedSegments.add(segment);
+            // fragments are handed to the listener once they are reassembled
+            if (!segment.isFragment())
+                receivedDatas.put(segment.getDataId(), controller.consume(segment));
             segment = controller.receive(packet);
         }
+    }
 
-        return receivedDatasOut;
+    // keep the received packet for recovering other packets, then process the packets that can be recovered
+    private void receiveRecoverable(Packet packet, ByteBuffer in, int start, int end) {
+        if (parityController == null) {
+            receive(packet);
+            return;
+        }
+
+        parityController.addReceived(packet.getFirstTransmissionId(), in, start, end);
+        receive(packet);
+
+        ByteBuffer recovered = parityController.pollRecovered();
+        while (recovered != null) {
+            Packet recoveredPacket;
+            try {
+                recoveredPacket = Packet.readExternalStatic(recovered, 0, false, payloadCodec);
+            } catch (RuntimeException e) {
+                // the parity did not match the received packets
+                recoveredPacket = null;
+            }
+
+            if (recoveredPacket != null) {
+                // the acknowledgements of the recovered packet are outdated, thus only its segments are processed
+                parityController.addReceived(recoveredPacket.getFirstTransmissionId(),
+                        recovered, 0, recoveredPacket.getSize());
+                receiveSegments(recoveredPacket);
+                recoveredPacket.release();
+            }
+
+            recovered = parityController.pollRecovered();
+        }
     }
 
     public NavigableMap<Short, ByteBuffer> receive(ObjectInput objectInput) throws IOException, ClassNotFoundException {
-        Packet packet = Packet.readExternalStatic(objectInput);
-        return receive(packet);
+        Packet packet = Packet.readExternalStatic(objectInput, payloadCodec);
+        NavigableMap<Short, ByteBuffer> receivedDatas = receive(packet);
+        packet.release();
+        return receivedDatas;
+    }
+
+    public NavigableMap<Short, ByteBuffer> receive(ByteBuffer in) {
+        int start = in.position();
+        Packet packet = Packet.readExternalStatic(in, false, payloadCodec);
+        receiveRecoverable(packet, in, start, in.position());
+        packet.release();
+        return receivedDatasOut;
+    }
+
+    public NavigableMap<Short, ByteBuffer> receiveZeroCopy(ByteBuffer in) {
+        int start = in.position();
+        Packet packet = Packet.readExternalStatic(in, true, payloadCodec);
+        receiveRecoverable(packet, in, start, in.position());
+        packet.release();
+
+        // segments that are held on to beyond this invocation, e.g. for reordering, must not reference the buffer
+        for (int i = 0, l = receivedSegments.size(); i < l; ++i) {
+            Segment segment = receivedSegments.get(i);
+            if (segment.isDataBorrowed() && segment.getReferenceCount() > 1) {
+                segment.detachData();
+                if (!segment.isFragment())
+                    receivedDatas.put(segment.getDataId(), controller.consume(segment));
+            }
+        }
+
+        return receivedDatasOut;
+    }
+
+    public float getLossRate() {
+        return controller.getLossRate();
+    }
+
+    public int getCongestionWindow() {
+        return controller.getCongestionWindow();
+    }
+
+    public int getBytesInFlight() {
+        return controller.getBytesInFlight();
+    }
+
+    public void setConsumptionWindow(int consumptionWindow) {
+        controller.setConsumptionWindow(consumptionWindow);
+    }
+
+    public int getConsumptionWindow() {
+        return controller.getConsumptionWindow();
+    }
+
+    public int getStreamCount() {
+        return controller.getStreamCount();
+    }
+
+    public long getSentCount(ProtocolConfig.Priority priority) {
+        return priorityController.getSentCount(priority);
+    }
+
+    public long getSentBytes(ProtocolConfig.Priority priority) {
+        return priorityController.getSentBytes(priority);
+    }
+
+    public long getDeferredCount(ProtocolConfig.Priority priority) {
+        return priorityController.getDeferredCount(priority);
+    }
+
+    public long getAverageQueuingDelay(ProtocolConfig.Priority priority) {
+        return priorityController.getAverageQueuingDelay(priority);
+    }
+
+    public long getMaximumQueuingDelay(ProtocolConfig.Priority priority) {
+        return priorityController.getMaximumQueuingDelay(priority);
     }
 
     public long getSmoothedRTT() {
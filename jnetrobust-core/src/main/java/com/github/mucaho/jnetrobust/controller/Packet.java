@@ -7,30 +7,102 @@
 
 package com.github.mucaho.jnetrobust.controller;
 
+import com.github.mucaho.jnetrobust.PayloadCodec;
 import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.control.AckBitsControl;
 import com.github.mucaho.jnetrobust.control.Segment;
 import com.github.mucaho.jnetrobust.util.BitConstants;
+import com.github.mucaho.jnetrobust.util.BufferArena;
 import com.github.mucaho.jnetrobust.util.Freezable;
+import com.github.mucaho.jnetrobust.util.ObjectPool;
 import com.github.mucaho.jnetrobust.util.Sizeable;
+import com.github.mucaho.jnetrobust.util.VarInt;
 
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 
 public final class Packet implements Freezable<Packet>, Sizeable {
     public static final transient int MAX_DATAS_PER_PACKET = (Byte.MAX_VALUE - Byte.MIN_VALUE + 1) - 1;
 
+    private static final int POOL_CAPACITY = 256;
+
+    // flags of the compact header format
+    private static final int FLAG_PRECEDING_ACKS = 0x1;
+    private static final int FLAG_IMPLIED_TRANSMISSION_IDS = 0x2;
+    private static final int FLAG_COMPRESSED_SEGMENTS = 0x4;
+    private static final int FLAG_SHARED_TRANSMISSION_ID = 0x8;
+    private static final int FLAG_PARITY = 0x10;
+    private static final int FLAG_MASK = FLAG_PRECEDING_ACKS | FLAG_IMPLIED_TRANSMISSION_IDS | FLAG_COMPRESSED_SEGMENTS
+            | FLAG_SHARED_TRANSMISSION_ID | FLAG_PARITY;
+    private static final int FLAG_BITS = 5;
+    private static final ObjectPool<Packet> pool = new ObjectPool<Packet>(POOL_CAPACITY) {
+        @Override
+        protected Packet create() {
+            return new Packet();
+        }
+
+        @Override
+        protected void reset(Packet packet) {
+            packet.reset();
+        }
+    };
+
+    /**
+     * Get the pool shared by all protocol instances, which recycles released packets.
+     *
+     * @return the global packet pool
+     */
+    public static ObjectPool<Packet> getPool() {
+        return pool;
+    }
+
+    /**
+     * Obtain an empty packet from the {@link #getPool() pool}.
+     * The returned packet has to be {@link #release() released} once it's no longer used.
+     *
+     * @return the empty packet
+     */
+    public static Packet obtain() {
+        Packet packet = pool.obtain();
+        packet.released = false;
+        return packet;
+    }
+
+    /**
+     * Construct a new packet that is not pooled initially.
+     * Prefer {@link #obtain()} instead.
+     */
     public Packet() {
         super();
     }
 
+    private transient boolean released = false;
+
     // possibly use ArrayDeque with iterator instead
     private final LinkedList<Segment> segments = new LinkedList<Segment>();
     private transient final List<Segment> segmentsOut = Collections.unmodifiableList(segments);
     private Short transmissionAck;
     private long precedingTransmissionAcks;
+    // the transmission id shared by all segments, if transmission ids are assigned per packet
+    private Short transmissionId;
+    // pairs of the oldest transmission id and the length of each range of acknowledged transmission ids,
+    // which precede the ones covered by the preceding transmission acks
+    private transient short[] ackRanges = new short[0];
+    private transient int ackRangeCount;
+    // the receive window advertised by the sender of this packet, see ProtocolConfig#useFlowControl()
+    private transient short receiveNextDataId;
+    private transient int receiveWindow;
+    // segments compressed by a payload codec, which are written instead of the segments
+    private transient ByteBuffer compressedSegments;
+    private transient int uncompressedSegmentsSize;
+    // parity of a group of previously sent packets, which is written instead of segments, see ParityController
+    private transient ByteBuffer parity;
 
     public List<Segment> getSegments() {
         return segmentsOut;
@@ -48,13 +120,50 @@ public final class Packet implements Freezable<Packet>, Sizeable {
         if (segments.size() >= MAX_DATAS_PER_PACKET)
             throw new IndexOutOfBoundsException("Cannot add more than " + MAX_DATAS_PER_PACKET + " segments to packet!");
 
+        segment.retain();
         segments.addLast(segment);
     }
 
+    /**
+     * Remove the first segment from this packet.
+     * The reference to the segment is passed to the caller, who is responsible to {@link Segment#release() release} it.
+     *
+     * @return the first segment or <code>null</code> if there are no segments
+     */
     Segment removeFirstSegment() {
         return segments.pollFirst();
     }
 
+    /**
+     * Remove the given segment from this packet.
+     * The reference to the segment is passed to the caller, who is responsible to {@link Segment#release() release} it.
+     *
+     * @return whether the segment was contained in this packet
+     */
+    boolean removeSegment(Segment segment) {
+        for (Iterator<Segment> iterator = segments.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() == segment) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the transmission id which is shared by all segments of this packet,
+     * see {@link ProtocolConfig#setUsePacketTransmissionIds(boolean)}.
+     *
+     * @return the transmission id of this packet, or <code>null</code> if each segment has a transmission id of its own
+     */
+    public Short getTransmissionId() {
+        return transmissionId;
+    }
+
+    void setTransmissionId(Short transmissionId) {
+        this.transmissionId = transmissionId;
+    }
+
     public Short getTransmissionAck() {
         return transmissionAck;
     }
@@ -71,6 +180,169 @@ public final class Packet implements Freezable<Packet>, Sizeable {
         this.precedingTransmissionAcks = lastAcks;
     }
 
+    /**
+     * Get the number of ranges of acknowledged transmission ids, which precede the ones covered by the
+     * {@link #getPrecedingTransmissionAcks() preceding transmission acks}, see {@link ProtocolConfig#setAckRangeLimit(int)}.
+     *
+     * @return the number of ack ranges
+     */
+    public int getAckRangeCount() {
+        return ackRangeCount;
+    }
+
+    /**
+     * Get the oldest transmission id of an ack range. Ranges are ordered from newest to oldest.
+     *
+     * @param index the index of the ack range
+     * @return the oldest transmission id of the range
+     */
+    public short getAckRangeStart(int index) {
+        return ackRanges[index * 2];
+    }
+
+    /**
+     * Get the number of consecutive transmission ids of an ack range. Ranges are ordered from newest to oldest.
+     *
+     * @param index the index of the ack range
+     * @return the number of transmission ids in the range
+     */
+    public int getAckRangeLength(int index) {
+        return ackRanges[index * 2 + 1] & 0xFFFF;
+    }
+
+    short[] getAckRanges() {
+        return ackRanges;
+    }
+
+    void setAckRanges(short[] ranges, int count) {
+        ensureAckRangesCapacity(count);
+        System.arraycopy(ranges, 0, ackRanges, 0, count * 2);
+        ackRangeCount = count;
+    }
+
+    private void ensureAckRangesCapacity(int count) {
+        if (ackRanges.length < count * 2)
+            ackRanges = new short[count * 2];
+    }
+
+    /**
+     * Get the <code>dataId</code> of the next user-data the sender of this packet expects to receive in order,
+     * see {@link ProtocolConfig#setUseFlowControl(boolean)}.
+     *
+     * @return the first <code>dataId</code> of the receive window
+     */
+    public short getReceiveNextDataId() {
+        return receiveNextDataId;
+    }
+
+    /**
+     * Get the number of user-datas the sender of this packet can queue,
+     * starting from the {@link #getReceiveNextDataId() next expected user-data},
+     * see {@link ProtocolConfig#setUseFlowControl(boolean)}.
+     *
+     * @return the size of the receive window
+     */
+    public int getReceiveWindow() {
+        return receiveWindow;
+    }
+
+    void setReceiveWindow(short nextDataId, int window) {
+        this.receiveNextDataId = nextDataId;
+        this.receiveWindow = window;
+    }
+
+    /**
+     * Check whether the segments of this packet are written in compressed form,
+     * see {@link ProtocolConfig#setPayloadCodec(PayloadCodec)}.
+     *
+     * @return <code>true</code> if the segments are compressed, <code>false</code> otherwise
+     */
+    public boolean isCompressed() {
+        return compressedSegments != null;
+    }
+
+    /**
+     * Set the compressed form of the segments of this packet, which is written instead of the segments.
+     * The segments must have been written with {@link #writeSegmentsStatic(List, ByteBuffer, int)}.
+     * The packet takes ownership of the supplied buffer, which has to be {@link BufferArena#allocate(int) allocated}
+     * from the buffer arena.
+     *
+     * @param compressedSegments       the compressed segments, between position <code>0</code> and the buffer's limit
+     * @param uncompressedSegmentsSize the size of the segments before compression
+     */
+    void setCompressedSegments(ByteBuffer compressedSegments, int uncompressedSegmentsSize) {
+        releaseCompressedSegments();
+        this.compressedSegments = compressedSegments;
+        this.uncompressedSegmentsSize = uncompressedSegmentsSize;
+    }
+
+    /**
+     * Check whether this packet carries the parity of previously sent packets instead of segments,
+     * see {@link ProtocolConfig#setParityGroupSize(int)}.
+     *
+     * @return <code>true</code> if this is a parity packet, <code>false</code> otherwise
+     */
+    public boolean isParity() {
+        return parity != null;
+    }
+
+    ByteBuffer getParity() {
+        return parity;
+    }
+
+    /**
+     * Set the parity of previously sent packets, which is written instead of segments.
+     * The packet takes ownership of the supplied buffer, which has to be {@link BufferArena#allocate(int) allocated}
+     * from the buffer arena.
+     *
+     * @param parity the parity, between position <code>0</code> and the buffer's limit
+     */
+    void setParity(ByteBuffer parity) {
+        releaseParity();
+        this.parity = parity;
+    }
+
+    private void releaseParity() {
+        if (parity != null)
+            BufferArena.instance.release(parity);
+        parity = null;
+    }
+
+    private void releaseCompressedSegments() {
+        if (compressedSegments != null)
+            BufferArena.instance.release(compressedSegments);
+        compressedSegments = null;
+        uncompressedSegmentsSize = 0;
+    }
+
+    /**
+     * Release this packet and the segments it contains back to the {@link #getPool() pool}.
+     * The packet must not be used thereafter.
+     */
+    public void release() {
+        if (released)
+            throw new IllegalStateException("Cannot release packet that has already been recycled!");
+
+        pool.recycle(this);
+    }
+
+    private void reset() {
+        Segment segment = segments.pollFirst();
+        while (segment != null) {
+            segment.release();
+            segment = segments.pollFirst();
+        }
+        transmissionAck = null;
+        precedingTransmissionAcks = 0L;
+        transmissionId = null;
+        ackRangeCount = 0;
+        receiveNextDataId = 0;
+        receiveWindow = 0;
+        releaseCompressedSegments();
+        releaseParity();
+        released = true;
+    }
+
     @Override
     public String toString() {
         return toDebugString();
@@ -78,8 +350,12 @@ public final class Packet implements Freezable<Packet>, Sizeable {
 
     public String toDebugString() {
         return "Packet:" + "\t"
+                + "transmissionId = " + transmissionId + "\t"
                 + "transmissionAck = " + transmissionAck + "\t"
                 + "precedingTransmissionAcks = " + String.format("%33s", Long.toBinaryString(precedingTransmissionAcks)) + "\t"
+                + (ProtocolConfig.useFlowControl()
+                        ? "receiveWindow = " + receiveNextDataId + "+" + receiveWindow + "\t" : "")
+                + (parity != null ? "parity = " + parity.limit() + "B" + "\t" : "")
                 + "segments = " + Arrays.deepToString(segments.toArray()) + "\n";
     }
 
@@ -105,11 +381,186 @@ public final class Packet implements Freezable<Packet>, Sizeable {
      * @throws ClassNotFoundException if an error occurs.
      */
     public static Packet readExternalStatic(ObjectInput in) throws IOException, ClassNotFoundException {
-        Packet packet = new Packet();
+        Packet packet = obtain();
         packet.readExternal(in);
         return packet;
     }
 
+    /**
+     * Deexternalize the packet, the segments of which may be compressed.
+     *
+     * @param in    the {@link java.io.ObjectInput} to read from
+     * @param codec the codec to decompress the segments with, or <code>null</code> if they are not compressed
+     * @return a new packet instance, constructed by the data read
+     * @throws IOException              if an error occurs
+     * @throws IllegalArgumentException if the compressed segments are malformed
+     * @throws IllegalStateException    if the segments are compressed, but no codec is given
+     */
+    public static Packet readExternalStatic(ObjectInput in, PayloadCodec codec) throws IOException {
+        Packet packet = obtain();
+        try {
+            packet.readExternal(in, codec);
+        } catch (IOException e) {
+            packet.release();
+            throw e;
+        } catch (RuntimeException e) {
+            packet.release();
+            throw e;
+        }
+        return packet;
+    }
+
+    /**
+     * Externalize the packet into a <code>ByteBuffer</code>, starting at the buffer's current position.
+     * If the supplied buffer is {@link ByteBuffer#allocateDirect(int) direct} and
+     * {@link ProtocolConfig#useDirectBuffers() direct buffers} are used,
+     * the segment datas are transferred from direct memory to direct memory.
+     * Such a buffer can then be handed over to a {@link java.nio.channels.DatagramChannel DatagramChannel}
+     * without any further copies.
+     *
+     * @param packet the instance to write
+     * @param out    the {@link java.nio.ByteBuffer} to write to
+     * @throws java.nio.BufferOverflowException if there is insufficient space remaining in the buffer
+     */
+    public static void writeExternalStatic(Packet packet, ByteBuffer out) {
+        packet.writeExternal(out);
+    }
+
+    /**
+     * Externalize the packet into a <code>ByteBuffer</code>, starting at the given absolute index.
+     * The buffer's position is not modified.
+     *
+     * @param packet the instance to write
+     * @param out    the {@link java.nio.ByteBuffer} to write to
+     * @param index  the index to start writing at
+     * @return the index following the last byte written, which equals <code>index + packet.getSize()</code>
+     * @throws IndexOutOfBoundsException if there is insufficient space between the index and the buffer's limit
+     */
+    public static int writeExternalStatic(Packet packet, ByteBuffer out, int index) {
+        return packet.writeExternal(out, index);
+    }
+
+    /**
+     * Externalize the packet into a sequence of buffers, suitable for a
+     * {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[], int, int) gathering write}.
+     * The headers are written into the supplied header buffer, starting at the buffer's current position,
+     * and the buffer's position is advanced past them.
+     * The resulting sequence consists of views of the written headers, which are interleaved with views of the
+     * segment datas stored in the packet, thus the segment datas are not copied.
+     * The views are only valid as long as the packet is not released and the header buffer is not reused.
+     * <br />
+     * Gathering writes avoid copying segment datas if the supplied header buffer is
+     * {@link ByteBuffer#allocateDirect(int) direct} and {@link ProtocolConfig#useDirectBuffers() direct buffers} are used.
+     *
+     * @param packet  the instance to write
+     * @param headers the {@link java.nio.ByteBuffer} to write the headers to
+     * @param out     the array to store the sequence of buffers in, starting at index <code>0</code>;
+     *                it must have room for at least {@link #getMaximumGatheringBufferCount(int)} buffers
+     * @return the number of buffers stored in the array
+     * @throws java.nio.BufferOverflowException if there is insufficient space remaining in the header buffer
+     * @throws IllegalArgumentException         if the array is too short
+     */
+    public static int writeExternalStatic(Packet packet, ByteBuffer headers, ByteBuffer[] out) {
+        try {
+            return packet.writeExternal(headers, out);
+        } catch (IndexOutOfBoundsException e) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    /**
+     * Get the maximum number of buffers a packet is externalized into by a gathering write,
+     * see {@link #writeExternalStatic(Packet, ByteBuffer, ByteBuffer[])}.
+     *
+     * @param segmentCount the number of segments in the packet
+     * @return the maximum number of buffers
+     */
+    public static int getMaximumGatheringBufferCount(int segmentCount) {
+        return 2 * segmentCount + 1;
+    }
+
+    /**
+     * Deexternalize the packet from a <code>ByteBuffer</code>, starting at the buffer's current position.
+     *
+     * @param in the {@link java.nio.ByteBuffer} to read from
+     * @return a new packet instance, constructed by the data read
+     * @throws java.nio.BufferUnderflowException if there are insufficient bytes remaining in the buffer
+     */
+    public static Packet readExternalStatic(ByteBuffer in) {
+        Packet packet = obtain();
+        packet.readExternal(in);
+        return packet;
+    }
+
+    /**
+     * Deexternalize the packet from a <code>ByteBuffer</code>, starting at the given absolute index.
+     * The buffer's position is not modified, the packet occupied {@link #getSize()} bytes of the buffer.
+     *
+     * @param in    the {@link java.nio.ByteBuffer} to read from
+     * @param index the index to start reading at
+     * @return a new packet instance, constructed by the data read
+     * @throws IndexOutOfBoundsException if there are insufficient bytes between the index and the buffer's limit
+     */
+    public static Packet readExternalStatic(ByteBuffer in, int index) {
+        return readExternalStatic(in, index, false, null);
+    }
+
+    /**
+     * Deexternalize the packet from a <code>ByteBuffer</code>, starting at the buffer's current position.
+     * If the segment datas are borrowed, the segments reference slices of the supplied buffer instead of copies,
+     * thus they must not be used after the buffer's contents are reused, see {@link Segment#isDataBorrowed()}.
+     *
+     * Compressed segments are decompressed into copies and never borrowed.
+     *
+     * @param in         the {@link java.nio.ByteBuffer} to read from
+     * @param borrowData whether the segment datas should be slices of the supplied buffer
+     * @param codec      the codec to decompress the segments with, or <code>null</code> if they are not compressed
+     * @return a new packet instance, constructed by the data read
+     * @throws java.nio.BufferUnderflowException if there are insufficient bytes remaining in the buffer
+     * @throws IllegalArgumentException          if the compressed segments are malformed
+     * @throws IllegalStateException             if the segments are compressed, but no codec is given
+     */
+    public static Packet readExternalStatic(ByteBuffer in, boolean borrowData, PayloadCodec codec) {
+        Packet packet = obtain();
+        try {
+            in.position(packet.readExternal(in, in.position(), borrowData, codec));
+        } catch (IndexOutOfBoundsException e) {
+            packet.release();
+            throw new BufferUnderflowException();
+        } catch (RuntimeException e) {
+            packet.release();
+            throw e;
+        }
+        return packet;
+    }
+
+    /**
+     * Deexternalize the packet from a <code>ByteBuffer</code>, starting at the given absolute index.
+     * If the segment datas are borrowed, the segments reference slices of the supplied buffer instead of copies,
+     * thus they must not be used after the buffer's contents are reused, see {@link Segment#isDataBorrowed()}.
+     * Compressed segments are decompressed into copies and never borrowed.
+     * The buffer's position is not modified, the packet occupied {@link #getSize()} bytes of the buffer.
+     *
+     * @param in         the {@link java.nio.ByteBuffer} to read from
+     * @param index      the index to start reading at
+     * @param borrowData whether the segment datas should be slices of the supplied buffer
+     * @param codec      the codec to decompress the segments with, or <code>null</code> if they are not compressed
+     * @return a new packet instance, constructed by the data read
+     * @throws IndexOutOfBoundsException if there are insufficient bytes between the index and the buffer's limit
+     * @throws IllegalArgumentException  if the compressed segments are malformed
+     * @throws IllegalStateException     if the segments are compressed, but no codec is given
+     */
+    public static Packet readExternalStatic(ByteBuffer in, int index, boolean borrowData, PayloadCodec codec) {
+        Packet packet = obtain();
+        try {
+            packet.readExternal(in, index, borrowData, codec);
+        } catch (RuntimeException e) {
+            packet.release();
+            throw e;
+        }
+        return packet;
+    }
+
     private void writeObject(java.io.ObjectOutputStream out) throws IOException {
         writeExternal(out);
     }
@@ -120,51 +571,699 @@ public final class Packet implements Freezable<Packet>, Sizeable {
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
-        out.writeShort(transmissionAck);
+        if (!ProtocolConfig.useCompactHeaders()) {
+            out.writeShort(transmissionAck);
+            if (ProtocolConfig.useExtendedPrecedingTransmissionAcks())
+                out.writeLong(precedingTransmissionAcks);
+            else
+                out.writeInt(BitConstants.convertBits(precedingTransmissionAcks));
+            out.writeByte(segments.size());
 
-        if (ProtocolConfig.useExtendedPrecedingTransmissionAcks())
-            out.writeLong(precedingTransmissionAcks);
-        else
-            out.writeInt(BitConstants.convertBits(precedingTransmissionAcks));
+            for (int i = 0, l = segments.size(); i < l; ++i)
+                Segment.writeExternalStatic(segments.get(i), out);
+        } else {
+            int flags = getCompactFlags();
+            VarInt.write(out, flags);
+            out.writeShort(transmissionAck);
+            if ((flags & FLAG_PRECEDING_ACKS) != 0) {
+                if (ProtocolConfig.useExtendedPrecedingTransmissionAcks())
+                    out.writeLong(precedingTransmissionAcks);
+                else
+                    out.writeInt(BitConstants.convertBits(precedingTransmissionAcks));
+                if (ProtocolConfig.getAckRangeLimit() > 0)
+                    writeAckRanges(out);
+            }
+            if (ProtocolConfig.useFlowControl()) {
+                out.writeShort(receiveNextDataId);
+                VarInt.write(out, receiveWindow);
+            }
+            if (!segments.isEmpty())
+                out.writeShort(getFirstTransmissionId());
 
-        out.writeByte(segments.size());
-        for (int i = 0, l = segments.size(); i < l; ++i)
-            Segment.writeExternalStatic(segments.get(i), out);
+            if ((flags & FLAG_PARITY) != 0) {
+                int paritySize = parity.limit();
+                VarInt.write(out, paritySize);
+                if (parity.hasArray()) {
+                    out.write(parity.array(), parity.arrayOffset(), paritySize);
+                } else {
+                    for (int i = 0; i < paritySize; ++i)
+                        out.writeByte(parity.get(i));
+                }
+                return;
+            }
+
+            if ((flags & FLAG_COMPRESSED_SEGMENTS) != 0) {
+                int compressedSize = compressedSegments.limit();
+                VarInt.write(out, uncompressedSegmentsSize);
+                VarInt.write(out, compressedSize);
+                if (compressedSegments.hasArray()) {
+                    out.write(compressedSegments.array(), compressedSegments.arrayOffset(), compressedSize);
+                } else {
+                    for (int i = 0; i < compressedSize; ++i)
+                        out.writeByte(compressedSegments.get(i));
+                }
+                return;
+            }
+
+            Segment first = null;
+            for (int i = 0, l = segments.size(); i < l; ++i) {
+                Segment segment = segments.get(i);
+                Segment.writeExternalStatic(segment, out, first, isTransmissionIdImplied(first, flags));
+                if (first == null)
+                    first = segment;
+            }
+        }
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        transmissionAck = in.readShort();
+        readExternal(in, null);
+    }
 
-        if (ProtocolConfig.useExtendedPrecedingTransmissionAcks())
-            precedingTransmissionAcks = in.readLong();
-        else
-            precedingTransmissionAcks = BitConstants.convertBits(in.readInt());
+    private void readExternal(ObjectInput in, PayloadCodec codec) throws IOException {
+        if (!ProtocolConfig.useCompactHeaders()) {
+            transmissionAck = in.readShort();
+            if (ProtocolConfig.useExtendedPrecedingTransmissionAcks())
+                precedingTransmissionAcks = in.readLong();
+            else
+                precedingTransmissionAcks = BitConstants.convertBits(in.readInt());
+
+            int size = in.readUnsignedByte();
+            for (int i = 0; i < size; ++i)
+                segments.addLast(Segment.readExternalStatic(in, null, null));
+        } else {
+            int flags = VarInt.read(in);
+            transmissionAck = in.readShort();
+            if ((flags & FLAG_PRECEDING_ACKS) != 0) {
+                if (ProtocolConfig.useExtendedPrecedingTransmissionAcks())
+                    precedingTransmissionAcks = in.readLong();
+                else
+                    precedingTransmissionAcks = BitConstants.convertBits(in.readInt());
+                if (ProtocolConfig.getAckRangeLimit() > 0)
+                    readAckRanges(in);
+            }
+            if (ProtocolConfig.useFlowControl()) {
+                receiveNextDataId = in.readShort();
+                receiveWindow = readReceiveWindow(VarInt.read(in));
+            }
+            int size = flags >>> FLAG_BITS;
+            Short firstTransmissionId = size > 0 ? in.readShort() : null;
+            if ((flags & FLAG_SHARED_TRANSMISSION_ID) != 0)
+                transmissionId = firstTransmissionId;
+
+            if ((flags & FLAG_PARITY) != 0) {
+                int paritySize = readParitySize(VarInt.read(in));
+                ByteBuffer readParity = BufferArena.instance.allocate(paritySize);
+                if (readParity.hasArray()) {
+                    in.readFully(readParity.array(), readParity.arrayOffset(), paritySize);
+                } else {
+                    for (int i = 0; i < paritySize; ++i)
+                        readParity.put(i, in.readByte());
+                }
+                readParity.limit(paritySize);
+                setParity(readParity);
+                return;
+            }
+
+            if ((flags & FLAG_COMPRESSED_SEGMENTS) != 0) {
+                int uncompressedSize = VarInt.read(in);
+                int compressedSize = VarInt.read(in);
+                if (compressedSize > ProtocolConfig.getHighestPossibleMTUSize())
+                    throw new IllegalArgumentException("Malformed compressed segments!");
+
+                ByteBuffer compressed = BufferArena.instance.allocate(compressedSize);
+                try {
+                    if (compressed.hasArray()) {
+                        in.readFully(compressed.array(), compressed.arrayOffset(), compressedSize);
+                    } else {
+                        for (int i = 0; i < compressedSize; ++i)
+                            compressed.put(i, in.readByte());
+                    }
+                    compressed.limit(compressedSize);
+                    readCompressedSegments(compressed, uncompressedSize, size, flags, firstTransmissionId, codec);
+                } finally {
+                    BufferArena.instance.release(compressed);
+                }
+                return;
+            }
+
+            Segment first = null;
+            for (int i = 0; i < size; ++i) {
+                Segment segment = Segment.readExternalStatic(in, first,
+                        getImpliedTransmissionId(first, flags, firstTransmissionId, i));
+                segments.addLast(segment);
+                if (first == null)
+                    first = segment;
+            }
+        }
+    }
+
+    public void writeExternal(ByteBuffer out) {
+        try {
+            out.position(writeExternal(out, out.position()));
+        } catch (IndexOutOfBoundsException e) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    private int writeExternal(ByteBuffer out, int index) {
+        int flags = ProtocolConfig.useCompactHeaders() ? getCompactFlags() : 0;
+        index = writeHeader(out, index, flags);
+
+        if ((flags & FLAG_PARITY) != 0)
+            return writeBuffer(parity, out, index);
+        if ((flags & FLAG_COMPRESSED_SEGMENTS) != 0)
+            return writeBuffer(compressedSegments, out, index);
+
+        Segment first = null;
+        for (int i = 0, l = segments.size(); i < l; ++i) {
+            Segment segment = segments.get(i);
+            index = Segment.writeExternalStatic(segment, out, index, first, isTransmissionIdImplied(first, flags));
+            if (first == null)
+                first = segment;
+        }
+
+        return index;
+    }
+
+    // write the contents of the supplied buffer, between position 0 and its limit, at the given absolute index
+    private static int writeBuffer(ByteBuffer buffer, ByteBuffer out, int index) {
+        int size = buffer.limit();
+        if (out.limit() - index < size)
+            throw new IndexOutOfBoundsException();
+
+        ByteBuffer view = buffer.duplicate();
+        view.rewind();
+        int position = out.position();
+        out.position(index);
+        out.put(view);
+        out.position(position);
+        return index + size;
+    }
+
+    private int writeExternal(ByteBuffer headers, ByteBuffer[] out) {
+        if (out.length < getMaximumGatheringBufferCount(segments.size()))
+            throw new IllegalArgumentException("Cannot gather packet into less than "
+                    + getMaximumGatheringBufferCount(segments.size()) + " buffers!");
+
+        int flags = ProtocolConfig.useCompactHeaders() ? getCompactFlags() : 0;
+        int headerStart = headers.position();
+        int index = writeHeader(headers, headerStart, flags);
+        int count = 0;
+
+        if ((flags & (FLAG_PARITY | FLAG_COMPRESSED_SEGMENTS)) != 0) {
+            out[count++] = headerView(headers, headerStart, index);
+            ByteBuffer body = ((flags & FLAG_PARITY) != 0 ? parity : compressedSegments).duplicate();
+            body.rewind();
+            out[count++] = body;
+            headers.position(index);
+            return count;
+        }
+
+        Segment first = null;
+        for (int i = 0, l = segments.size(); i < l; ++i) {
+            Segment segment = segments.get(i);
+            index = Segment.writeHeaderStatic(segment, headers, index, first, isTransmissionIdImplied(first, flags));
+            if (first == null)
+                first = segment;
+
+            ByteBuffer data = segment.getTransmittedData();
+            if (data != null) {
+                // headers written so far, followed by a view of the stored data
+                out[count++] = headerView(headers, headerStart, index);
+                ByteBuffer dataView = data.duplicate();
+                dataView.rewind();
+                out[count++] = dataView;
+                headerStart = index;
+            }
+        }
+        if (index > headerStart || count == 0)
+            out[count++] = headerView(headers, headerStart, index);
+
+        headers.position(index);
+        return count;
+    }
+
+    private static ByteBuffer headerView(ByteBuffer headers, int start, int end) {
+        ByteBuffer view = headers.duplicate();
+        view.limit(end);
+        view.position(start);
+        return view;
+    }
+
+    private int writeHeader(ByteBuffer out, int index, int flags) {
+        if (!ProtocolConfig.useCompactHeaders()) {
+            out.putShort(index, transmissionAck);
+            index += Short.SIZE / Byte.SIZE;
+            index = writePrecedingTransmissionAcks(out, index);
+            out.put(index++, (byte) segments.size());
+        } else {
+            index = VarInt.write(out, index, flags);
+            out.putShort(index, transmissionAck);
+            index += Short.SIZE / Byte.SIZE;
+            if ((flags & FLAG_PRECEDING_ACKS) != 0) {
+                index = writePrecedingTransmissionAcks(out, index);
+                if (ProtocolConfig.getAckRangeLimit() > 0)
+                    index = writeAckRanges(out, index);
+            }
+            if (ProtocolConfig.useFlowControl()) {
+                out.putShort(index, receiveNextDataId);
+                index += Short.SIZE / Byte.SIZE;
+                index = VarInt.write(out, index, receiveWindow);
+            }
+            if (!segments.isEmpty()) {
+                out.putShort(index, getFirstTransmissionId());
+                index += Short.SIZE / Byte.SIZE;
+            }
+            if ((flags & FLAG_PARITY) != 0)
+                index = VarInt.write(out, index, parity.limit());
+            if ((flags & FLAG_COMPRESSED_SEGMENTS) != 0) {
+                index = VarInt.write(out, index, uncompressedSegmentsSize);
+                index = VarInt.write(out, index, compressedSegments.limit());
+            }
+        }
+        return index;
+    }
+
+    private int writePrecedingTransmissionAcks(ByteBuffer out, int index) {
+        if (ProtocolConfig.useExtendedPrecedingTransmissionAcks()) {
+            out.putLong(index, precedingTransmissionAcks);
+            index += Long.SIZE / Byte.SIZE;
+        } else {
+            out.putInt(index, BitConstants.convertBits(precedingTransmissionAcks));
+            index += Integer.SIZE / Byte.SIZE;
+        }
+        return index;
+    }
+
+    /**
+     * Write the given segments, as they are written by a packet whose segments are assigned consecutive transmission ids,
+     * starting at the given absolute index. The buffer's position is not modified.
+     * The written segments can be compressed and {@link #setCompressedSegments(ByteBuffer, int) set} on such a packet.
+     *
+     * @param segments the segments to write
+     * @param out      the {@link java.nio.ByteBuffer} to write to
+     * @param index    the index to start writing at
+     * @return the index following the last byte written
+     * @throws IndexOutOfBoundsException if there is insufficient space between the index and the buffer's limit
+     */
+    static int writeSegmentsStatic(List<Segment> segments, ByteBuffer out, int index) {
+        Segment first = null;
+        for (int i = 0, l = segments.size(); i < l; ++i) {
+            Segment segment = segments.get(i);
+            index = Segment.writeExternalStatic(segment, out, index, first, true);
+            if (first == null)
+                first = segment;
+        }
+        return index;
+    }
+
+    /**
+     * Get the size the compressed segments occupy in a packet.
+     *
+     * @param uncompressedSegmentsSize the size of the segments before compression
+     * @param compressedSegmentsSize   the size of the segments after compression
+     * @return the size in bytes
+     */
+    static int getCompressedSegmentsSize(int uncompressedSegmentsSize, int compressedSegmentsSize) {
+        return VarInt.getSize(uncompressedSegmentsSize) + VarInt.getSize(compressedSegmentsSize) + compressedSegmentsSize;
+    }
+
+    public void readExternal(ByteBuffer in) {
+        try {
+            in.position(readExternal(in, in.position(), false, null));
+        } catch (IndexOutOfBoundsException e) {
+            throw new BufferUnderflowException();
+        }
+    }
 
-        int size = in.readUnsignedByte();
-        for (int i = 0; i < size; ++i)
-            segments.addLast(Segment.readExternalStatic(in));
+    private int readExternal(ByteBuffer in, int index, boolean borrowData, PayloadCodec codec) {
+        int flags = 0;
+        int size;
+        Short firstTransmissionId = null;
+        if (!ProtocolConfig.useCompactHeaders()) {
+            transmissionAck = in.getShort(index);
+            index += Short.SIZE / Byte.SIZE;
+            index = readPrecedingTransmissionAcks(in, index);
+            size = in.get(index++) & 0xFF;
+        } else {
+            flags = VarInt.read(in, index);
+            index += VarInt.getSize(flags);
+            transmissionAck = in.getShort(index);
+            index += Short.SIZE / Byte.SIZE;
+            if ((flags & FLAG_PRECEDING_ACKS) != 0) {
+                index = readPrecedingTransmissionAcks(in, index);
+                if (ProtocolConfig.getAckRangeLimit() > 0)
+                    index = readAckRanges(in, index);
+            }
+            if (ProtocolConfig.useFlowControl()) {
+                receiveNextDataId = in.getShort(index);
+                index += Short.SIZE / Byte.SIZE;
+                receiveWindow = readReceiveWindow(VarInt.read(in, index));
+                index += VarInt.getSize(receiveWindow);
+            }
+            size = flags >>> FLAG_BITS;
+            if (size > 0) {
+                firstTransmissionId = in.getShort(index);
+                index += Short.SIZE / Byte.SIZE;
+                if ((flags & FLAG_SHARED_TRANSMISSION_ID) != 0)
+                    transmissionId = firstTransmissionId;
+            }
+
+            if ((flags & FLAG_PARITY) != 0) {
+                int paritySize = readParitySize(VarInt.read(in, index));
+                index += VarInt.getSize(paritySize);
+                if (index < 0 || in.limit() - index < paritySize)
+                    throw new IndexOutOfBoundsException();
+
+                ByteBuffer readParity = BufferArena.instance.allocate(paritySize);
+                ByteBuffer view = in.duplicate();
+                view.limit(index + paritySize);
+                view.position(index);
+                readParity.put(view);
+                readParity.flip();
+                setParity(readParity);
+                return index + paritySize;
+            }
+
+            if ((flags & FLAG_COMPRESSED_SEGMENTS) != 0) {
+                int uncompressedSize = VarInt.read(in, index);
+                index += VarInt.getSize(uncompressedSize);
+                int compressedSize = VarInt.read(in, index);
+                index += VarInt.getSize(compressedSize);
+                if (index < 0 || in.limit() - index < compressedSize)
+                    throw new IndexOutOfBoundsException();
+
+                ByteBuffer compressed = in.duplicate();
+                compressed.limit(index + compressedSize);
+                compressed.position(index);
+                readCompressedSegments(compressed, uncompressedSize, size, flags, firstTransmissionId, codec);
+                return index + compressedSize;
+            }
+        }
+
+        return readSegments(in, index, size, flags, firstTransmissionId, borrowData);
+    }
+
+    private int readSegments(ByteBuffer in, int index, int size, int flags, Short firstTransmissionId, boolean borrowData) {
+        Segment first = null;
+        for (int i = 0; i < size; ++i) {
+            Segment segment = Segment.readExternalStatic(in, index, first,
+                    getImpliedTransmissionId(first, flags, firstTransmissionId, i), borrowData);
+            index += segment.getSize(first, isTransmissionIdImplied(first, flags));
+            segments.addLast(segment);
+            if (first == null)
+                first = segment;
+        }
+        return index;
+    }
+
+    // decompress the remaining bytes of the supplied buffer and read the segments from them
+    private void readCompressedSegments(ByteBuffer compressed, int uncompressedSize, int size, int flags,
+                                        Short firstTransmissionId, PayloadCodec codec) {
+        if (codec == null)
+            throw new IllegalStateException("Cannot read compressed segments without a payload codec!");
+        if (uncompressedSize > ProtocolConfig.getHighestPossibleMTUSize())
+            throw new IllegalArgumentException("Malformed compressed segments!");
+
+        ByteBuffer uncompressed = BufferArena.instance.allocate(uncompressedSize);
+        try {
+            uncompressed.limit(uncompressedSize);
+            if (!codec.decompress(compressed, uncompressed) || uncompressed.hasRemaining())
+                throw new IllegalArgumentException("Malformed compressed segments!");
+            if (readSegments(uncompressed, 0, size, flags, firstTransmissionId, false) != uncompressedSize)
+                throw new IllegalArgumentException("Malformed compressed segments!");
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed compressed segments!", e);
+        } finally {
+            BufferArena.instance.release(uncompressed);
+        }
+    }
+
+    private static int readParitySize(int paritySize) {
+        if (paritySize < 0 || paritySize > ProtocolConfig.getHighestPossibleMTUSize())
+            throw new IllegalArgumentException("Malformed parity!");
+        return paritySize;
+    }
+
+    private int readPrecedingTransmissionAcks(ByteBuffer in, int index) {
+        if (ProtocolConfig.useExtendedPrecedingTransmissionAcks()) {
+            precedingTransmissionAcks = in.getLong(index);
+            index += Long.SIZE / Byte.SIZE;
+        } else {
+            precedingTransmissionAcks = BitConstants.convertBits(in.getInt(index));
+            index += Integer.SIZE / Byte.SIZE;
+        }
+        return index;
+    }
+
+    /*
+     * Ack ranges are written from newest to oldest, following the ack range count.
+     * Each range is written as the gap between its newest transmission id and the oldest transmission id of
+     * the previous range (or the oldest transmission id covered by the preceding transmission acks),
+     * followed by its length minus one.
+     */
+
+    private void writeAckRanges(ObjectOutput out) throws IOException {
+        VarInt.write(out, ackRangeCount);
+        short previous = getAckRangesBase();
+        for (int i = 0; i < ackRangeCount; ++i) {
+            VarInt.write(out, getAckRangeGap(previous, i));
+            VarInt.write(out, getAckRangeLength(i) - 1);
+            previous = getAckRangeStart(i);
+        }
+    }
+
+    private int writeAckRanges(ByteBuffer out, int index) {
+        index = VarInt.write(out, index, ackRangeCount);
+        short previous = getAckRangesBase();
+        for (int i = 0; i < ackRangeCount; ++i) {
+            index = VarInt.write(out, index, getAckRangeGap(previous, i));
+            index = VarInt.write(out, index, getAckRangeLength(i) - 1);
+            previous = getAckRangeStart(i);
+        }
+        return index;
+    }
+
+    private void readAckRanges(ObjectInput in) throws IOException {
+        int count = readAckRangeCount(VarInt.read(in));
+        short previous = getAckRangesBase();
+        for (int i = 0; i < count; ++i) {
+            int gap = VarInt.read(in);
+            previous = setAckRange(i, previous, gap, VarInt.read(in));
+        }
+        ackRangeCount = count;
+    }
+
+    private int readAckRanges(ByteBuffer in, int index) {
+        int count = readAckRangeCount(VarInt.read(in, index));
+        index += VarInt.getSize(count);
+        short previous = getAckRangesBase();
+        for (int i = 0; i < count; ++i) {
+            int gap = VarInt.read(in, index);
+            index += VarInt.getSize(gap);
+            int length = VarInt.read(in, index);
+            index += VarInt.getSize(length);
+            previous = setAckRange(i, previous, gap, length);
+        }
+        ackRangeCount = count;
+        return index;
+    }
+
+    private static int readReceiveWindow(int window) {
+        if (window < 0 || window > ProtocolConfig.MAX_PACKET_QUEUE_LIMIT)
+            throw new IllegalArgumentException("Malformed receive window!");
+        return window;
+    }
+
+    private int readAckRangeCount(int count) {
+        if (count < 0 || count > ProtocolConfig.getAckRangeLimit())
+            throw new IllegalArgumentException("Malformed ack ranges!");
+        ensureAckRangesCapacity(count);
+        return count;
+    }
+
+    private short setAckRange(int index, short previous, int gap, int lengthMinusOne) {
+        if (gap < 0 || lengthMinusOne < 0 || lengthMinusOne >= AckBitsControl.HISTORY_SIZE)
+            throw new IllegalArgumentException("Malformed ack ranges!");
+        short start = (short) (previous - gap - 1 - lengthMinusOne);
+        ackRanges[index * 2] = start;
+        ackRanges[index * 2 + 1] = (short) (lengthMinusOne + 1);
+        return start;
+    }
+
+    private short getAckRangesBase() {
+        return (short) (transmissionAck - getPrecedingTransmissionAcksSize() * Byte.SIZE);
+    }
+
+    private int getAckRangeGap(short previous, int index) {
+        return (previous - (getAckRangeStart(index) + getAckRangeLength(index) - 1) - 1) & 0xFFFF;
+    }
+
+    private int getAckRangesSize() {
+        int size = VarInt.getSize(ackRangeCount);
+        short previous = getAckRangesBase();
+        for (int i = 0; i < ackRangeCount; ++i) {
+            size += VarInt.getSize(getAckRangeGap(previous, i)) + VarInt.getSize(getAckRangeLength(i) - 1);
+            previous = getAckRangeStart(i);
+        }
+        return size;
+    }
+
+    // segment count, shifted by the flag bits, followed by the flags of the compact header format
+    private int getCompactFlags() {
+        int flags = segments.size() << FLAG_BITS;
+        if (hasPrecedingTransmissionAcks() || (ackRangeCount > 0 && ProtocolConfig.getAckRangeLimit() > 0))
+            flags |= FLAG_PRECEDING_ACKS;
+        if (transmissionId != null && !segments.isEmpty())
+            flags |= FLAG_SHARED_TRANSMISSION_ID;
+        else if (hasConsecutiveTransmissionIds())
+            flags |= FLAG_IMPLIED_TRANSMISSION_IDS;
+        // compressed segments were written with implied transmission ids
+        if (compressedSegments != null && (flags & (FLAG_IMPLIED_TRANSMISSION_IDS | FLAG_SHARED_TRANSMISSION_ID)) != 0)
+            flags |= FLAG_COMPRESSED_SEGMENTS;
+        // parity packets do not carry segments
+        if (parity != null && segments.isEmpty())
+            flags |= FLAG_PARITY;
+        return flags;
+    }
+
+    private boolean hasPrecedingTransmissionAcks() {
+        return ProtocolConfig.useExtendedPrecedingTransmissionAcks()
+                ? precedingTransmissionAcks != 0L
+                : BitConstants.convertBits(precedingTransmissionAcks) != 0;
+    }
+
+    // segments sent together are assigned consecutive transmission ids, which need not be transmitted then
+    private boolean hasConsecutiveTransmissionIds() {
+        Short firstTransmissionId = segments.isEmpty() ? null : segments.peekFirst().getLastTransmissionId();
+        if (firstTransmissionId == null)
+            return false;
+
+        for (int i = 1, l = segments.size(); i < l; ++i) {
+            Short transmissionId = segments.get(i).getLastTransmissionId();
+            if (transmissionId == null || transmissionId != (short) (firstTransmissionId + i))
+                return false;
+        }
+        return true;
+    }
+
+    Short getFirstTransmissionId() {
+        if (transmissionId != null)
+            return transmissionId;
+        return segments.isEmpty() ? null : segments.peekFirst().getLastTransmissionId();
+    }
+
+    // the compact header format carries the transmission id of the first segment,
+    // which implies the transmission ids of the other segments if they are consecutive or shared
+    private static boolean isTransmissionIdImplied(Segment first, int flags) {
+        return first == null ? ProtocolConfig.useCompactHeaders()
+                : (flags & (FLAG_IMPLIED_TRANSMISSION_IDS | FLAG_SHARED_TRANSMISSION_ID)) != 0;
+    }
+
+    private static Short getImpliedTransmissionId(Segment first, int flags, Short firstTransmissionId, int i) {
+        if (first == null || (flags & FLAG_SHARED_TRANSMISSION_ID) != 0)
+            return firstTransmissionId;
+        return (flags & FLAG_IMPLIED_TRANSMISSION_IDS) != 0
+                ? Short.valueOf((short) (firstTransmissionId + i)) : null;
     }
 
     @Override
     public Packet clone() {
-        Packet clone = new Packet();
+        Packet clone = obtain();
         clone.transmissionAck = transmissionAck;
         clone.precedingTransmissionAcks = precedingTransmissionAcks;
+        clone.transmissionId = transmissionId;
+        clone.setAckRanges(ackRanges, ackRangeCount);
+        clone.setReceiveWindow(receiveNextDataId, receiveWindow);
         for (int i = 0, l = segments.size(); i < l; ++i)
-            clone.addLastSegment(segments.get(i).clone());
+            clone.segments.addLast(segments.get(i).clone());
+        if (compressedSegments != null) {
+            ByteBuffer compressed = compressedSegments.duplicate();
+            compressed.rewind();
+            ByteBuffer compressedClone = BufferArena.instance.allocate(compressed.limit());
+            compressedClone.put(compressed);
+            compressedClone.flip();
+            clone.setCompressedSegments(compressedClone, uncompressedSegmentsSize);
+        }
+        if (parity != null) {
+            ByteBuffer parityView = parity.duplicate();
+            parityView.rewind();
+            ByteBuffer parityClone = BufferArena.instance.allocate(parityView.limit());
+            parityClone.put(parityView);
+            parityClone.flip();
+            clone.setParity(parityClone);
+        }
         return clone;
     }
 
-    // TODO: test getSize() == serializationSize
     @Override
     public int getSize() {
-        int size = Short.SIZE / Byte.SIZE // transmissionAck
-                // precedingTransmissionAcks
-                + (ProtocolConfig.useExtendedPrecedingTransmissionAcks() ? Long.SIZE / Byte.SIZE : Integer.SIZE / Byte.SIZE)
-                + Byte.SIZE / Byte.SIZE; // segmentsSize
-        for (int i = 0, l = segments.size(); i < l; ++i)
-            size += segments.get(i).getSize(); // segments
+        int size = Short.SIZE / Byte.SIZE; // transmissionAck
+        int flags = 0;
+        if (!ProtocolConfig.useCompactHeaders()) {
+            size += getPrecedingTransmissionAcksSize()
+                    + Byte.SIZE / Byte.SIZE; // segmentsSize
+        } else {
+            flags = getCompactFlags();
+            size += VarInt.getSize(flags)
+                    + ((flags & FLAG_PRECEDING_ACKS) != 0 ? getPrecedingTransmissionAcksSize() : 0)
+                    + (!segments.isEmpty() ? Short.SIZE / Byte.SIZE : 0); // first transmissionId
+            if ((flags & FLAG_PRECEDING_ACKS) != 0 && ProtocolConfig.getAckRangeLimit() > 0)
+                size += getAckRangesSize();
+            if (ProtocolConfig.useFlowControl())
+                size += Short.SIZE / Byte.SIZE + VarInt.getSize(receiveWindow);
+            if ((flags & FLAG_PARITY) != 0)
+                return size + VarInt.getSize(parity.limit()) + parity.limit();
+            if ((flags & FLAG_COMPRESSED_SEGMENTS) != 0)
+                return size + getCompressedSegmentsSize(uncompressedSegmentsSize, compressedSegments.limit());
+        }
+
+        Segment first = null;
+        for (int i = 0, l = segments.size(); i < l; ++i) {
+            Segment segment = segments.get(i);
+            size += segment.getSize(first, isTransmissionIdImplied(first, flags)); // segments
+            if (first == null)
+                first = segment;
+        }
         return size;
     }
+
+    /**
+     * Get the largest size of a packet header, which excludes the segments and their headers.
+     * The compact header format omits parts of the header depending on the contents of the packet,
+     * in which case the actual size may be smaller.
+     *
+     * @return the size in bytes
+     */
+    public static int getMaximumHeaderSize() {
+        int size = Short.SIZE / Byte.SIZE // transmissionAck
+                + getPrecedingTransmissionAcksSize();
+        if (!ProtocolConfig.useCompactHeaders())
+            return size + Byte.SIZE / Byte.SIZE; // segmentsSize
+        else
+            return size + VarInt.getSize((MAX_DATAS_PER_PACKET << FLAG_BITS) | FLAG_MASK)
+                    + Short.SIZE / Byte.SIZE // first transmissionId
+                    + getMaximumAckRangesSize()
+                    + getMaximumReceiveWindowSize();
+    }
+
+    private static int getMaximumReceiveWindowSize() {
+        if (!ProtocolConfig.useFlowControl())
+            return 0;
+        return Short.SIZE / Byte.SIZE // receiveNextDataId
+                + VarInt.getSize(ProtocolConfig.MAX_PACKET_QUEUE_LIMIT); // receiveWindow
+    }
+
+    private static int getMaximumAckRangesSize() {
+        int limit = ProtocolConfig.getAckRangeLimit();
+        if (limit == 0)
+            return 0;
+        return VarInt.getSize(limit) // ackRangeCount
+                + limit * (VarInt.getSize(0xFFFF) + VarInt.getSize(AckBitsControl.HISTORY_SIZE - 1)); // gaps, lengths
+    }
+
+    private static int getPrecedingTransmissionAcksSize() {
+        return ProtocolConfig.useExtendedPrecedingTransmissionAcks() ? Long.SIZE / Byte.SIZE : Integer.SIZE / Byte.SIZE;
+    }
 }
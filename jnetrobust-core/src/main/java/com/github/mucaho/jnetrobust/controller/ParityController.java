@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.controller;
+
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.util.BufferArena;
+import com.github.mucaho.jnetrobust.util.VarInt;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The sending side XORs a group of serialized packets together, the resulting parity is sent in a packet of its own.
+ * The receiving side recovers a single missing packet of the group, by XORing the parity with the other packets
+ * of the group it received.
+ * <p/>
+ * parity = groupSize | first transmissionId | transmissionId deltas | XOR of the packets, padded with zeros
+ */
+final class ParityController {
+    private static final int MIN_GROUP_SIZE = 2;
+    // the number of lost packets per group the group size is adapted to
+    private static final float TARGET_GROUP_LOSS = 0.1f;
+    private static final int MAX_PENDING_PARITIES = 4;
+    // the number of received packets which are kept to recover packets from subsequent parities
+    private static final int RECEIVED_PACKET_HISTORY = ProtocolConfig.MAX_PARITY_GROUP_SIZE * MAX_PENDING_PARITIES;
+
+    private final int maxGroupSize;
+
+    // sending side
+    private ByteBuffer sentPacket = ByteBuffer.allocate(0);
+    private ByteBuffer sentParity = ByteBuffer.allocate(0);
+    private int sentParitySize = 0;
+    private final short[] sentTransmissionIds = new short[ProtocolConfig.MAX_PARITY_GROUP_SIZE];
+    private int sentCount = 0;
+
+    // receiving side
+    private final short[] receivedTransmissionIds = new short[RECEIVED_PACKET_HISTORY];
+    private final ByteBuffer[] receivedPackets = new ByteBuffer[RECEIVED_PACKET_HISTORY];
+    // the received packets are kept in the order of their arrival, as the first transmissionIds of
+    // packets carrying multiple segments are spread irregularly
+    private int receivedIndex = 0;
+    private final List<ByteBuffer> pendingParities = new ArrayList<ByteBuffer>(MAX_PENDING_PARITIES);
+    private final short[] parityTransmissionIds = new short[ProtocolConfig.MAX_PARITY_GROUP_SIZE];
+    private ByteBuffer recoveredPacket = ByteBuffer.allocate(0);
+
+    ParityController(int maxGroupSize) {
+        this.maxGroupSize = Math.max(maxGroupSize, MIN_GROUP_SIZE);
+    }
+
+    /**
+     * Get the maximum number of bytes a parity packet is larger than the largest packet it covers,
+     * excluding the header of the parity packet.
+     */
+    static int getMaximumOverhead(int groupSize) {
+        return VarInt.getSize(ProtocolConfig.getHighestPossibleMTUSize() << 1) // parity size
+                + VarInt.getSize(ProtocolConfig.MAX_PARITY_GROUP_SIZE) // group size
+                + Short.SIZE / Byte.SIZE // first transmission id
+                + (Math.max(groupSize, MIN_GROUP_SIZE) - 1) * VarInt.getSize(0xFFFF); // transmission id deltas
+    }
+
+    /**
+     * Get the number of packets the parity is computed over, which shrinks as the loss rate grows.
+     */
+    int getGroupSize(float lossRate) {
+        int groupSize = lossRate > 0f ? (int) Math.min(maxGroupSize, TARGET_GROUP_LOSS / lossRate) : maxGroupSize;
+        return Math.max(groupSize, MIN_GROUP_SIZE);
+    }
+
+    int getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Add a sent packet to the current group. Packets without segments are not covered by parities.
+     */
+    void addSent(Packet packet) {
+        Short transmissionId = packet.getFirstTransmissionId();
+        if (transmissionId == null)
+            return;
+        if (sentCount >= maxGroupSize)
+            clearSent();
+
+        int size = packet.getSize();
+        if (sentPacket.capacity() < size)
+            sentPacket = ByteBuffer.allocate(size);
+        if (sentParity.capacity() < size) {
+            ByteBuffer parity = ByteBuffer.allocate(size);
+            for (int i = 0; i < sentParitySize; ++i)
+                parity.put(i, sentParity.get(i));
+            sentParity = parity;
+        }
+
+        Packet.writeExternalStatic(packet, sentPacket, 0);
+        for (int i = 0; i < size; ++i)
+            sentParity.put(i, (byte) (sentParity.get(i) ^ sentPacket.get(i)));
+        sentParitySize = Math.max(sentParitySize, size);
+        sentTransmissionIds[sentCount++] = transmissionId;
+    }
+
+    /**
+     * Move the parity of the current group into the supplied packet, which contains no segments.
+     */
+    void produceParity(Packet packet) {
+        ByteBuffer parity = BufferArena.instance.allocate(getMaximumOverhead(sentCount) + sentParitySize);
+        int index = VarInt.write(parity, 0, sentCount);
+        parity.putShort(index, sentTransmissionIds[0]);
+        index += Short.SIZE / Byte.SIZE;
+        for (int i = 1; i < sentCount; ++i)
+            index = VarInt.write(parity, index, VarInt.encodeDelta(sentTransmissionIds[i], sentTransmissionIds[i - 1]));
+        for (int i = 0; i < sentParitySize; ++i)
+            parity.put(index++, sentParity.get(i));
+        parity.limit(index);
+        packet.setParity(parity);
+
+        clearSent();
+    }
+
+    private void clearSent() {
+        for (int i = 0; i < sentParitySize; ++i)
+            sentParity.put(i, (byte) 0);
+        sentParitySize = 0;
+        sentCount = 0;
+    }
+
+    /**
+     * Keep a copy of a received packet, which occupies the bytes between the start and end index of the buffer,
+     * in order to recover other packets of its group later on.
+     */
+    void addReceived(Short transmissionId, ByteBuffer in, int start, int end) {
+        if (transmissionId == null)
+            return;
+
+        int slot = receivedIndex;
+        receivedIndex = (receivedIndex + 1) % RECEIVED_PACKET_HISTORY;
+        ByteBuffer received = receivedPackets[slot];
+        if (received == null || received.capacity() < end - start) {
+            if (received != null)
+                BufferArena.instance.release(received);
+            received = BufferArena.instance.allocate(end - start);
+            receivedPackets[slot] = received;
+        }
+
+        ByteBuffer view = in.duplicate();
+        view.limit(end);
+        view.position(start);
+        received.clear();
+        received.put(view);
+        received.flip();
+        receivedTransmissionIds[slot] = transmissionId;
+    }
+
+    private ByteBuffer getReceived(short transmissionId) {
+        // search from the newest to the oldest received packet
+        for (int i = 1; i <= RECEIVED_PACKET_HISTORY; ++i) {
+            int slot = (receivedIndex - i + RECEIVED_PACKET_HISTORY) % RECEIVED_PACKET_HISTORY;
+            ByteBuffer received = receivedPackets[slot];
+            if (received == null)
+                return null;
+            if (receivedTransmissionIds[slot] == transmissionId)
+                return received;
+        }
+        return null;
+    }
+
+    /**
+     * Keep a copy of a received parity, until one of the packets it covers can be recovered.
+     */
+    void addReceivedParity(ByteBuffer parity) {
+        if (pendingParities.size() >= MAX_PENDING_PARITIES)
+            BufferArena.instance.release(pendingParities.remove(0));
+
+        ByteBuffer view = parity.duplicate();
+        view.rewind();
+        ByteBuffer copy = BufferArena.instance.allocate(view.limit());
+        copy.put(view);
+        copy.flip();
+        pendingParities.add(copy);
+    }
+
+    /**
+     * Recover the next packet, which is the only packet missing from one of the received parities.
+     *
+     * @return the recovered packet, which is valid until the next invocation and may be padded with zeros,
+     * or <code>null</code> if no packet can be recovered
+     */
+    ByteBuffer pollRecovered() {
+        for (int p = 0; p < pendingParities.size(); ++p) {
+            ByteBuffer parity = pendingParities.get(p);
+
+            int missingCount = 0;
+            short missingTransmissionId = 0;
+            int index;
+            int count;
+            try {
+                count = VarInt.read(parity, 0);
+                if (count < MIN_GROUP_SIZE || count > ProtocolConfig.MAX_PARITY_GROUP_SIZE)
+                    throw new IllegalArgumentException("Malformed parity!");
+                index = VarInt.getSize(count);
+                parityTransmissionIds[0] = parity.getShort(index);
+                index += Short.SIZE / Byte.SIZE;
+                for (int i = 1; i < count; ++i) {
+                    int delta = VarInt.read(parity, index);
+                    index += VarInt.getSize(delta);
+                    parityTransmissionIds[i] = VarInt.decodeDelta(delta, parityTransmissionIds[i - 1]);
+                }
+            } catch (RuntimeException e) {
+                // discard malformed parity
+                count = 0;
+                index = 0;
+            }
+
+            for (int i = 0; i < count; ++i) {
+                if (getReceived(parityTransmissionIds[i]) == null) {
+                    missingCount++;
+                    missingTransmissionId = parityTransmissionIds[i];
+                }
+            }
+            // wait for more packets of the group to arrive
+            if (missingCount > 1)
+                continue;
+
+            pendingParities.remove(p--);
+            if (missingCount == 0) {
+                BufferArena.instance.release(parity);
+                continue;
+            }
+
+            int size = parity.limit() - index;
+            if (recoveredPacket.capacity() < size)
+                recoveredPacket = ByteBuffer.allocate(size);
+            recoveredPacket.clear();
+            for (int i = 0; i < size; ++i)
+                recoveredPacket.put(i, parity.get(index + i));
+            BufferArena.instance.release(parity);
+
+            for (int i = 0; i < count; ++i) {
+                if (parityTransmissionIds[i] == missingTransmissionId)
+                    continue;
+
+                ByteBuffer received = getReceived(parityTransmissionIds[i]);
+                for (int j = 0, l = Math.min(size, received.limit()); j < l; ++j)
+                    recoveredPacket.put(j, (byte) (recoveredPacket.get(j) ^ received.get(j)));
+            }
+            recoveredPacket.limit(size);
+            return recoveredPacket;
+        }
+        return null;
+    }
+}
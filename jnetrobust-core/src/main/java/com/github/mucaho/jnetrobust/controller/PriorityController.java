@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.controller;
+
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.control.Segment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Orders the segments of each send invocation by start-time fair queuing over their
+ * {@link ProtocolConfig.Priority priorities}, which grants each priority a share of the sent bytes
+ * proportional to its weight. Thus no priority starves, as long as segments are sent at all.
+ * <br />
+ * Each sent segment advances the virtual time of its priority by its size divided by the priority's weight,
+ * the segment with the earliest virtual start time is sent first.
+ * A priority that was idle starts at the current virtual time, instead of catching up on its unused share.
+ * Segments keep their order within the same priority.
+ * <br />
+ * Only segments that are actually sent are accounted for, deferred segments are ordered anew on the next send.
+ */
+final class PriorityController {
+    private static final ProtocolConfig.Priority[] PRIORITIES = ProtocolConfig.Priority.values();
+    private static final int MAX_WEIGHT = ProtocolConfig.Priority.URGENT.getWeight();
+
+    // the virtual time of the most recently sent segment, and the virtual finish time of each priority
+    private long virtualTime = 0L;
+    private final long[] finishTimes = new long[PRIORITIES.length];
+
+    private final List<List<Segment>> queues = new ArrayList<List<Segment>>(PRIORITIES.length);
+    private final int[] queueIndices = new int[PRIORITIES.length];
+    private final long[] startTimes = new long[PRIORITIES.length];
+
+    // per-priority counters
+    private final long[] sentCounts = new long[PRIORITIES.length];
+    private final long[] sentBytes = new long[PRIORITIES.length];
+    private final long[] deferredCounts = new long[PRIORITIES.length];
+    private final long[] queuingDelays = new long[PRIORITIES.length];
+    private final long[] maximumQueuingDelays = new long[PRIORITIES.length];
+
+    PriorityController() {
+        for (int i = 0; i < PRIORITIES.length; ++i)
+            queues.add(new ArrayList<Segment>());
+    }
+
+    /**
+     * Reorder the segments, unless all of them are of the same priority.
+     */
+    void schedule(List<Segment> segments) {
+        ProtocolConfig.Priority firstPriority = segments.isEmpty() ? null : segments.get(0).getPriority();
+        boolean mixed = false;
+        for (int i = 1, l = segments.size(); i < l && !mixed; ++i)
+            mixed = segments.get(i).getPriority() != firstPriority;
+        if (!mixed)
+            return;
+
+        for (int i = 0, l = segments.size(); i < l; ++i) {
+            Segment segment = segments.get(i);
+            queues.get(segment.getPriority().ordinal()).add(segment);
+        }
+        for (int p = 0; p < PRIORITIES.length; ++p) {
+            queueIndices[p] = 0;
+            startTimes[p] = Math.max(virtualTime, finishTimes[p]);
+        }
+
+        // tentatively advance the virtual times, ties are resolved in favor of the higher priority
+        for (int i = 0, l = segments.size(); i < l; ++i) {
+            int next = -1;
+            for (int p = PRIORITIES.length - 1; p >= 0; --p) {
+                if (queueIndices[p] < queues.get(p).size() && (next < 0 || startTimes[p] < startTimes[next]))
+                    next = p;
+            }
+
+            Segment segment = queues.get(next).get(queueIndices[next]++);
+            startTimes[next] += getCost(segment);
+            segments.set(i, segment);
+        }
+
+        for (int p = 0; p < PRIORITIES.length; ++p)
+            queues.get(p).clear();
+    }
+
+    /**
+     * Account for the sent segment, the <code>queuingDelay</code> is negative if the segment was sent before.
+     */
+    void addSent(Segment segment, long queuingDelay) {
+        int p = segment.getPriority().ordinal();
+
+        long startTime = Math.max(virtualTime, finishTimes[p]);
+        virtualTime = startTime;
+        finishTimes[p] = startTime + getCost(segment);
+
+        if (queuingDelay >= 0L) {
+            sentCounts[p]++;
+            sentBytes[p] += segment.getSize();
+            queuingDelays[p] += queuingDelay;
+            maximumQueuingDelays[p] = Math.max(maximumQueuingDelays[p], queuingDelay);
+        }
+    }
+
+    void addDeferred(Segment segment) {
+        deferredCounts[segment.getPriority().ordinal()]++;
+    }
+
+    long getSentCount(ProtocolConfig.Priority priority) {
+        return sentCounts[priority.ordinal()];
+    }
+
+    long getSentBytes(ProtocolConfig.Priority priority) {
+        return sentBytes[priority.ordinal()];
+    }
+
+    long getDeferredCount(ProtocolConfig.Priority priority) {
+        return deferredCounts[priority.ordinal()];
+    }
+
+    long getAverageQueuingDelay(ProtocolConfig.Priority priority) {
+        long sentCount = sentCounts[priority.ordinal()];
+        return sentCount > 0L ? queuingDelays[priority.ordinal()] / sentCount : 0L;
+    }
+
+    long getMaximumQueuingDelay(ProtocolConfig.Priority priority) {
+        return maximumQueuingDelays[priority.ordinal()];
+    }
+
+    // the size scaled by the inverse weight, which stays integral as all weights divide the maximum weight
+    private static long getCost(Segment segment) {
+        return (long) Math.max(segment.getSize(), 1) * (MAX_WEIGHT / segment.getPriority().getWeight());
+    }
+}
@@ -7,29 +7,86 @@
 
 package com.github.mucaho.jnetrobust.controller;
 
+import com.github.mucaho.jnetrobust.CongestionController;
 import com.github.mucaho.jnetrobust.ProtocolConfig;
 import com.github.mucaho.jnetrobust.ProtocolListener;
 import com.github.mucaho.jnetrobust.control.*;
 import com.github.mucaho.jnetrobust.util.IdComparator;
+import com.github.mucaho.jnetrobust.util.LossRateHandler;
 import com.github.mucaho.jnetrobust.util.RTTHandler;
 import com.github.mucaho.jnetrobust.util.SystemClock;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 public class ProcessingController implements SystemClock {
     private short localTransmissionId = Short.MIN_VALUE;
+    private short localPacketTransmissionId = Short.MIN_VALUE;
+    private final boolean usePacketTransmissionIds;
     private final SentMapControl sentMapControl;
     private final AckedMapControl ackedMapControl;
     private final RTTHandler rttHandler;
+    private final LossRateHandler lossRateHandler;
     private final RetransmissionControl retransmissionControl;
 
+    // null if congestion control is disabled
+    private final CongestionController congestionController;
+    private int bytesInFlight = 0;
+
+    // the transmission ids of the most recent redundant copies, which do not yield round-trip time samples
+    private static final int REDUNDANT_TRANSMISSION_HISTORY = 1 << 8;
+    private static final int REDUNDANT_TRANSMISSION_MASK = REDUNDANT_TRANSMISSION_HISTORY - 1;
+    private final int redundancyLimit;
+    private final short[] redundantTransmissionIds;
+    private final boolean[] redundantTransmissions;
+    private final List<Segment> redundantTransmits = new ArrayList<Segment>();
+    private final List<Segment> redundantTransmitsOut = Collections.unmodifiableList(redundantTransmits);
+
+    private final List<Segment> newlyLostSegments = new ArrayList<Segment>();
+    private final List<Segment> newlyLostSegmentsOut = Collections.unmodifiableList(newlyLostSegments);
+
+    // the receive window advertised by the remote side, see ProtocolConfig#useFlowControl()
+    private final boolean holdsBackData;
+    private boolean hasRemoteReceiveWindow = false;
+    private short remoteNextDataId;
+    private int remoteReceiveWindow;
+    private short newestSentOrderedDataId = Short.MIN_VALUE;
+
     private short remoteTransmissionId = Short.MIN_VALUE;
     private final AckBitsControl ackBitsControl;
+    private final short[] ackRanges = new short[ProtocolConfig.MAX_ACK_RANGE_LIMIT * 2];
 
     private short dataId = Short.MIN_VALUE;
+    // the dataId of the newest user-data of the ordered lane's default stream, which the next one of that stream references
+    private short orderedDataId = Short.MIN_VALUE;
+    // the dataIds of the newest user-datas of the other streams, in the order the streams were sent on;
+    // allocated once a stream is sent on and evicted once it falls behind by more than MAX_STREAM_OFFSET dataIds
+    private final LinkedHashMap<Integer, Stream> streams = new LinkedHashMap<Integer, Stream>(16, 0.75f, true);
+    private int packetId = Integer.MIN_VALUE;
+    private final ProtocolListener listener;
     private final ReceivedMapControl receivedMapControl;
     private final NewestReceivedControl newestReceivedControl;
+    private final FragmentControl fragmentControl;
+
+    // the dataIds of the most recently received user-datas of the reliable, unordered lane, which are handed over once
+    private static final int UNORDERED_HISTORY = 1 << 10;
+    private static final int UNORDERED_MASK = UNORDERED_HISTORY - 1;
+    private short[] unorderedDataIds;
+    private boolean[] unorderedDatas;
+    // the dataId of the newest user-data received on the sequenced lane
+    private boolean hasSequencedDataId = false;
+    private short sequencedDataId;
+    private final int receiveWindow;
+    private int consumptionWindow = ProtocolConfig.MAX_PACKET_QUEUE_LIMIT;
+    private final int fragmentLimit;
+    private final int parityGroupSize;
+
+    // null if delta encoding is disabled
+    private final DeltaControl deltaControl;
 
     private long timeNow = -1L;
 
@@ -37,6 +94,7 @@ public class ProcessingController implements SystemClock {
 
         // sending side
 
+        usePacketTransmissionIds = config.usePacketTransmissionIds();
         sentMapControl = new SentMapControl(listener, config.getPacketQueueLimit(),
                 config.getPacketOffsetLimit(), config.getPacketRetransmitLimit(), config.getPacketQueueTimeout(), this) {
             @Override
@@ -45,21 +103,83 @@ public class ProcessingController implements SystemClock {
 
                 acknowledge(transmissionId, ackedSegment, directlyAcked);
             }
+
+            @Override
+            protected void notifyNotAcked(Short transmissionId, Segment unackedSegment) {
+                super.notifyNotAcked(transmissionId, unackedSegment);
+
+                if (unackedSegment != null) {
+                    leaveFlight(unackedSegment);
+                    unackedSegment.setLost(false);
+                }
+            }
         };
         ackedMapControl = new AckedMapControl(config.getPacketQueueLimit(), config.getPacketOffsetLimit(),
                 config.getPacketRetransmitLimit(), config.getPacketQueueTimeout(), this);
 
         rttHandler = new RTTHandler(config.getK(), config.getG());
+        lossRateHandler = new LossRateHandler();
         retransmissionControl = new RetransmissionControl(sentMapControl.getValues(), ackedMapControl.getValues(),
                 listener, config.getAutoRetransmitMode());
 
+        congestionController = config.getCongestionController();
+
+        redundancyLimit = config.getRedundancyLimit();
+        redundantTransmissionIds = redundancyLimit > 0 ? new short[REDUNDANT_TRANSMISSION_HISTORY] : null;
+        redundantTransmissions = redundancyLimit > 0 ? new boolean[REDUNDANT_TRANSMISSION_HISTORY] : null;
+
+        // otherwise the remote side may wait for user-data that is never retransmitted
+        holdsBackData = ProtocolConfig.useFlowControl()
+                && config.getAutoRetransmitMode() == ProtocolConfig.AutoRetransmitMode.ALWAYS;
+
         // receiving side
 
         ackBitsControl = new AckBitsControl();
 
+        this.listener = listener;
         receivedMapControl = new ReceivedMapControl(Short.MIN_VALUE, listener, config.getPacketQueueLimit(),
-                config.getPacketOffsetLimit(), config.getPacketRetransmitLimit(), config.getPacketQueueTimeout(), this);
+                config.getPacketOffsetLimit(), config.getPacketRetransmitLimit(), config.getPacketQueueTimeout(), this) {
+            @Override
+            protected void notifyOrdered(Short dataId, Segment orderedSegment) {
+                if (orderedSegment != null && orderedSegment.isFragment())
+                    reassemble(orderedSegment, true);
+                else
+                    super.notifyOrdered(dataId, orderedSegment);
+            }
+
+            @Override
+            protected void notifyUnordered(Short dataId, Segment unorderedSegment) {
+                if (unorderedSegment != null && unorderedSegment.isFragment())
+                    reassemble(unorderedSegment, false);
+                else
+                    super.notifyUnordered(dataId, unorderedSegment);
+            }
+
+            private void reassemble(Segment fragment, boolean ordered) {
+                Segment reassembledSegment = fragmentControl.addFragment(fragment, ordered);
+                if (reassembledSegment != null) {
+                    // the user-data is ordered only if all of its fragments are
+                    if (fragmentControl.isReassembledOrdered())
+                        super.notifyOrdered(reassembledSegment.getDataId(), reassembledSegment);
+                    else
+                        super.notifyUnordered(reassembledSegment.getDataId(), reassembledSegment);
+
+                    // update newest, remote data
+                    newestReceivedControl.refreshNewestReceived(reassembledSegment);
+                    reassembledSegment.release();
+                }
+            }
+        };
         newestReceivedControl = new NewestReceivedControl(listener);
+        fragmentControl = new FragmentControl(config.getPacketQueueTimeout(), this);
+        // user-datas ranging from the next expected one up to this limit are queued without being discarded
+        receiveWindow = Math.min(config.getPacketQueueLimit(), config.getPacketOffsetLimit());
+
+        // both sides
+
+        deltaControl = config.useDeltaEncoding() ? new DeltaControl() : null;
+        fragmentLimit = config.getFragmentLimit();
+        parityGroupSize = ProtocolConfig.useCompactHeaders() ? config.getParityGroupSize() : 0;
     }
 
     public void setTimeNow(long timeNow) {
@@ -73,7 +193,7 @@ public class ProcessingController implements SystemClock {
     }
 
     public Packet produce() {
-        Packet packet = new Packet();
+        Packet packet = Packet.obtain();
 
         // apply remote transmissionId
         packet.setTransmissionAck(remoteTransmissionId);
@@ -81,102 +201,463 @@ public class ProcessingController implements SystemClock {
         // apply remote precedingTransmissionIds
         packet.setPrecedingTransmissionAcks(ackBitsControl.getAckRemoteBits());
 
+        // apply ranges of remote transmissionIds preceding the remote precedingTransmissionIds
+        if (ProtocolConfig.getAckRangeLimit() > 0 && ProtocolConfig.useCompactHeaders()) {
+            int ackBitsSize = ProtocolConfig.useExtendedPrecedingTransmissionAcks() ? Long.SIZE : Integer.SIZE;
+            int ackRangeCount = ackBitsControl.getAckRanges(remoteTransmissionId, ackBitsSize,
+                    ackRanges, ProtocolConfig.getAckRangeLimit());
+            packet.setAckRanges(ackRanges, ackRangeCount);
+        }
+
+        // apply local receive window
+        if (ProtocolConfig.useFlowControl())
+            packet.setReceiveWindow(receivedMapControl.getNextDataId(), Math.min(receiveWindow, consumptionWindow));
+
         return packet;
     }
 
     public Segment produce(ByteBuffer data) {
+        return produce(data, ProtocolConfig.DeliveryLane.RELIABLE_ORDERED);
+    }
+
+    public Segment produce(ByteBuffer data, ProtocolConfig.DeliveryLane lane) {
+        return produce(data, lane, 0, 0, 0);
+    }
+
+    public Segment produce(ByteBuffer data, int streamId) {
+        return produce(data, ProtocolConfig.DeliveryLane.RELIABLE_ORDERED, streamId, 0, 0);
+    }
+
+    public Segment produce(ByteBuffer data, int fragmentIndex, int fragmentCount) {
+        return produce(data, 0, fragmentIndex, fragmentCount);
+    }
+
+    public Segment produce(ByteBuffer data, int streamId, int fragmentIndex, int fragmentCount) {
+        return produce(data, ProtocolConfig.DeliveryLane.RELIABLE_ORDERED, streamId, fragmentIndex, fragmentCount);
+    }
+
+    private Segment produce(ByteBuffer data, ProtocolConfig.DeliveryLane lane, int streamId,
+                            int fragmentIndex, int fragmentCount) {
         // increment unique data id; apply unique data id
-        return new Segment(++dataId, data);
+        Segment segment = Segment.obtain(++dataId, data);
+
+        // ordered user-data references the preceding user-data of its stream, as other lanes and streams share the data ids
+        if (lane == ProtocolConfig.DeliveryLane.RELIABLE_ORDERED) {
+            segment.setStreamId(streamId);
+            segment.setPrecedingDataId(refreshStream(streamId));
+        } else {
+            segment.setLane(lane);
+        }
+
+        // fragments of the same user-data are assigned consecutive data ids
+        if (fragmentCount > 0)
+            segment.setFragment(fragmentIndex, fragmentCount);
+
+        // encode data against newest acked data
+        if (deltaControl != null)
+            deltaControl.encode(segment);
+
+        return segment;
+    }
+
+    // returns the dataId of the preceding user-data of the stream, which is no older than MAX_STREAM_OFFSET dataIds
+    private short refreshStream(int streamId) {
+        short oldestDataId = (short) (dataId - 1 - ProtocolConfig.MAX_STREAM_OFFSET);
+
+        // the remote side evicted the state of streams that fell behind too far
+        if (!streams.isEmpty()) {
+            Iterator<Stream> iterator = streams.values().iterator();
+            while (iterator.hasNext() && IdComparator.instance.compare(iterator.next().dataId, oldestDataId) <= 0)
+                iterator.remove();
+        }
+        if (IdComparator.instance.compare(orderedDataId, oldestDataId) < 0)
+            orderedDataId = oldestDataId;
+
+        short precedingDataId;
+        if (streamId == 0) {
+            precedingDataId = orderedDataId;
+            orderedDataId = dataId;
+        } else {
+            Stream stream = streams.get(streamId);
+            if (stream == null) {
+                stream = new Stream();
+                stream.dataId = oldestDataId;
+                streams.put(streamId, stream);
+            }
+            precedingDataId = stream.dataId;
+            stream.dataId = dataId;
+        }
+        return precedingDataId;
     }
 
     public List<Segment> retransmit() {
+        // discard old sent entries in internal datastructures, once for all packets sent thereafter
+        sentMapControl.discardEntries();
+
         // update outdated not acked packets
-        List<Segment> retransmits = retransmissionControl.getTimedoutRetransmits(rttHandler.getRTO(), dataId, timeNow);
-        if (!retransmits.isEmpty()) {
+        List<Segment> retransmits = filterNewlyLost(
+                retransmissionControl.getTimedoutRetransmits(rttHandler.getRTO(), dataId, timeNow));
+        boolean timedOut = !retransmits.isEmpty();
+        if (timedOut) {
             rttHandler.backoff(timeNow);
         } else if (!rttHandler.isBackedOff()) {
-            retransmits = retransmissionControl.getFastRetransmits(rttHandler.getVTO(), dataId);
+            retransmits = filterNewlyLost(retransmissionControl.getFastRetransmits(rttHandler.getVTO(), dataId));
         }
+
+        // lost segments are no longer in flight, until they are retransmitted
+        if (congestionController != null && !retransmits.isEmpty()) {
+            int lostBytes = 0;
+            for (int i = 0, l = retransmits.size(); i < l; ++i)
+                lostBytes += leaveFlight(retransmits.get(i));
+            congestionController.handleLost(lostBytes, timedOut, rttHandler.getSmoothedRTT(), timeNow);
+        }
+
+        // each retransmit stands for a transmission that has presumably been lost
+        for (int i = 0, l = retransmits.size(); i < l; ++i) {
+            retransmits.get(i).setLost(true);
+            lossRateHandler.updateLost();
+        }
+
+        // retransmit data as is, as the receiver may no longer hold on to the baseline it was encoded against
+        if (deltaControl != null) {
+            for (int i = 0, l = retransmits.size(); i < l; ++i)
+                retransmits.get(i).discardDelta();
+        }
+
         return retransmits;
     }
 
+    // segments, which are presumed lost already, but have not been retransmitted yet, are not lost anew
+    private List<Segment> filterNewlyLost(List<Segment> retransmits) {
+        newlyLostSegments.clear();
+        for (int i = 0, l = retransmits.size(); i < l; ++i) {
+            Segment retransmit = retransmits.get(i);
+            if (!retransmit.isLost())
+                newlyLostSegments.add(retransmit);
+        }
+        return newlyLostSegmentsOut;
+    }
+
+    /**
+     * Give up on the segment, which was never sent, as its deadline passed.
+     * Reliable user-data is reported as unacked, as if it had been sent.
+     */
+    public void discardExpired(Segment segment) {
+        if (segment.getLane().isReliable()) {
+            listener.handleUnackedData(segment.getDataId(), segment.getData());
+            if (segment.getData() != null) segment.getData().rewind();
+        }
+        segment.release();
+    }
+
+    public List<Segment> getRedundantTransmits() {
+        redundantTransmits.clear();
+
+        // the most recently produced, unacked user-datas; the ones produced hereafter are not sent yet
+        if (redundancyLimit > 0) {
+            short oldestDataId = (short) (dataId - redundancyLimit);
+            for (Segment segment : sentMapControl.getValues()) {
+                if (!segment.isFragment() && IdComparator.instance.compare(segment.getDataId(), oldestDataId) > 0)
+                    redundantTransmits.add(segment);
+            }
+        }
+
+        return redundantTransmitsOut;
+    }
+
     public void send(Packet packet, List<Segment> segments) {
-        // discard old sent entries in internal datastructures
-        sentMapControl.discardEntries();
+        send(packet, segments, 0);
+    }
+
+    /**
+     * Send the segments, the last <code>redundantCount</code> of which are redundant copies of previously sent segments.
+     */
+    public void send(Packet packet, List<Segment> segments, int redundantCount) {
+        // assign one transmission id to the packet, which stands for the consecutive transmission ids of its segments
+        if (usesPacketTransmissionIds() && !segments.isEmpty()) {
+            short packetTransmissionId = ++localPacketTransmissionId;
+            packet.setTransmissionId(packetTransmissionId);
+            sentMapControl.addToSent(packetTransmissionId, (short) (localTransmissionId + 1), segments.size());
+        }
 
+        // packets are pooled, thus their identity can not be used to group segments sent together
+        Integer sentPacketId = ++packetId;
         for (int i = 0, l = segments.size(); i < l; ++i) {
             Segment segment = segments.get(i);
 
             // save segment to send into internal data structures
-            send(segment);
+            if (i < l - redundantCount)
+                send(segment);
+            else
+                sendRedundant(segment);
 
             // assign segment to packet
             packet.addLastSegment(segment);
-            segment.setPacketId(packet.hashCode());
+            segment.setPacketId(sentPacketId);
         }
     }
 
     private void send(Segment segment) {
+        // unreliable user-data is not kept, it is neither retransmitted nor accounted for in flight
+        if (!segment.getLane().isReliable()) {
+            // increment local transmissionId; apply local transmissionId
+            sentMapControl.addToSentUnretained(++localTransmissionId, segment);
+            if (redundantTransmissions != null)
+                redundantTransmissions[localTransmissionId & REDUNDANT_TRANSMISSION_MASK] = false;
+            return;
+        }
+
         // update newest sent time
         retransmissionControl.updateSentTime(segment, timeNow);
+        segment.setLost(false);
+
+        // account for the bytes in flight
+        if (congestionController != null && segment.getFlightSize() == 0) {
+            segment.setFlightSize(segment.getSize());
+            bytesInFlight += segment.getFlightSize();
+        }
 
+        // update newest sent dataId of the ordered lane's default stream
+        if (segment.getLane() == ProtocolConfig.DeliveryLane.RELIABLE_ORDERED && segment.getStreamId() == 0
+                && IdComparator.instance.compare(segment.getDataId(), newestSentOrderedDataId) > 0)
+            newestSentOrderedDataId = segment.getDataId();
+
+        // increment local transmissionId; add pending, local transmissionId
+        sentMapControl.addToSent(++localTransmissionId, segment);
+        if (redundantTransmissions != null)
+            redundantTransmissions[localTransmissionId & REDUNDANT_TRANSMISSION_MASK] = false;
+    }
+
+    private void sendRedundant(Segment segment) {
         // increment local transmissionId; add pending, local transmissionId
+        // the sent time is kept, thus the retransmission timeout of the segment is not postponed
         sentMapControl.addToSent(++localTransmissionId, segment);
+        segment.addRedundantTransmissionId(localTransmissionId);
+        redundantTransmissionIds[localTransmissionId & REDUNDANT_TRANSMISSION_MASK] = localTransmissionId;
+        redundantTransmissions[localTransmissionId & REDUNDANT_TRANSMISSION_MASK] = true;
+    }
+
+    // returns the number of bytes the segment accounted for while it was in flight
+    private int leaveFlight(Segment segment) {
+        int flightSize = segment.getFlightSize();
+        segment.setFlightSize(0);
+        bytesInFlight -= flightSize;
+        return flightSize;
+    }
+
+    private boolean isRedundantTransmission(Short transmissionId) {
+        int index = transmissionId & REDUNDANT_TRANSMISSION_MASK;
+        return redundantTransmissions != null && redundantTransmissions[index]
+                && redundantTransmissionIds[index] == transmissionId;
     }
 
     private void acknowledge(Short transmissionId, Segment ackedSegment, boolean directlyAcked) {
-        if (ackedSegment != null && directlyAcked)
+        // the acknowledgement of a redundant copy can not be related to the sent time of the segment
+        if (ackedSegment != null && directlyAcked && !isRedundantTransmission(transmissionId)) {
             rttHandler.updateRTT(ackedSegment.getNewestSentTime(), timeNow); // update RTT
+            lossRateHandler.updateDelivered(); // update loss rate
+            if (congestionController != null)
+                congestionController.handleRTTSample(timeNow - ackedSegment.getNewestSentTime(),
+                        rttHandler.getSmoothedRTT(), timeNow);
+        }
+        if (ackedSegment != null)
+            ackedSegment.setLost(false);
+        if (ackedSegment != null && congestionController != null) {
+            int ackedBytes = leaveFlight(ackedSegment);
+            if (ackedBytes > 0)
+                congestionController.handleAcked(ackedBytes, bytesInFlight, timeNow);
+        }
 
         if (transmissionId != null && ackedSegment != null) {
             // update acked time
             retransmissionControl.setAcknowledgedTime(ackedSegment, timeNow);
 
             // discard old acked entries in internal data structures
-            receivedMapControl.discardEntries();
+            ackedMapControl.discardEntries();
             // add acked, local transmissionId
             ackedMapControl.addToAcked(transmissionId, ackedSegment);
+
+            // update baseline for encoding subsequent data
+            if (deltaControl != null)
+                deltaControl.refreshSentBaseline(ackedSegment, dataId);
         }
     }
 
     public void consume(Packet packet) {
         // remove pending, local transmissionIds
-        sentMapControl.removeFromSent(packet.getTransmissionAck(), packet.getPrecedingTransmissionAcks());
+        if (usesPacketTransmissionIds())
+            sentMapControl.removePacketsFromSent(packet.getTransmissionAck(), packet.getPrecedingTransmissionAcks(),
+                    packet.getAckRanges(), packet.getAckRangeCount());
+        else
+            sentMapControl.removeFromSent(packet.getTransmissionAck(), packet.getPrecedingTransmissionAcks(),
+                    packet.getAckRanges(), packet.getAckRangeCount());
+
+        // change remote receive window, unless the packet was overtaken by a more recent one
+        if (ProtocolConfig.useFlowControl() && (!hasRemoteReceiveWindow
+                || IdComparator.instance.compare(packet.getReceiveNextDataId(), remoteNextDataId) >= 0)) {
+            hasRemoteReceiveWindow = true;
+            remoteNextDataId = packet.getReceiveNextDataId();
+            remoteReceiveWindow = packet.getReceiveWindow();
+        }
+    }
+
+    /**
+     * Get the <code>dataId</code> following the last user-data that fits into the receive window of the remote side,
+     * which is <code>null</code> if no user-data has to be held back.
+     */
+    public Short getReceiveWindowEnd() {
+        if (!holdsBackData || !hasRemoteReceiveWindow)
+            return null;
+
+        // the remote side can only skip the user-data it waits for by discarding it, if it is no longer retransmitted
+        if (IdComparator.instance.compare(remoteNextDataId, newestSentOrderedDataId) <= 0 && !isAwaited(remoteNextDataId))
+            return null;
+
+        return (short) (remoteNextDataId + remoteReceiveWindow);
+    }
+
+    // whether the ordered user-data, which the remote side waits for to deliver the next dataId, is still sent
+    private boolean isAwaited(short nextDataId) {
+        for (Segment segment : sentMapControl.getValues()) {
+            if (segment.getLane() == ProtocolConfig.DeliveryLane.RELIABLE_ORDERED && segment.getStreamId() == 0
+                    && IdComparator.instance.compare(segment.getDataId(), nextDataId) >= 0
+                    && IdComparator.instance.compare(segment.getPrecedingDataId(), nextDataId) < 0)
+                return true;
+        }
+        return false;
+    }
+
+    public void setConsumptionWindow(int consumptionWindow) {
+        consumptionWindow = Math.min(consumptionWindow, ProtocolConfig.MAX_PACKET_QUEUE_LIMIT);
+        consumptionWindow = Math.max(consumptionWindow, 0);
+        this.consumptionWindow = consumptionWindow;
+    }
+
+    public int getConsumptionWindow() {
+        return consumptionWindow;
+    }
+
+    private final List<Segment> undecodableSegments = new ArrayList<Segment>();
+
+    /**
+     * Decode the delta encoded segments of the packet, before any segment of it is {@link #receive(Packet) received}.
+     * Segments that can not be decoded are dropped, so they are neither acknowledged nor delivered
+     * and get retransmitted unencoded.
+     */
+    public void decode(Packet packet) {
+        if (deltaControl == null)
+            return;
+
+        for (Segment segment : packet.getSegments()) {
+            if (!deltaControl.decode(segment))
+                undecodableSegments.add(segment);
+        }
+        if (undecodableSegments.isEmpty())
+            return;
+
+        if (packet.getTransmissionId() != null) {
+            // acknowledging any segment of the packet would acknowledge all of them, as they share the transmissionId
+            Segment segment = packet.removeFirstSegment();
+            while (segment != null) {
+                segment.release();
+                segment = packet.removeFirstSegment();
+            }
+        } else {
+            for (int i = 0, l = undecodableSegments.size(); i < l; ++i) {
+                Segment segment = undecodableSegments.get(i);
+                packet.removeSegment(segment);
+                segment.release();
+            }
+        }
+        undecodableSegments.clear();
     }
 
     public Segment receive(Packet packet) {
         // remove segment from packet assignment
         Segment segment = packet.removeFirstSegment();
 
-        if (segment != null)
-            // save received segment into internal data structures
-            receive(segment);
-        else
-            // emit newest, remote data after packet is empty
+        // save received segment into internal data structures; outdated, sequenced segments are dropped
+        while (segment != null && !receive(segment)) {
+            segment.release();
+            segment = packet.removeFirstSegment();
+        }
+
+        // emit newest, remote data after packet is empty
+        if (segment == null)
             newestReceivedControl.emitNewestReceived();
 
         return segment;
     }
 
-    private void receive(Segment segment) {
+    // returns whether the segment is handed over, rather than dropped
+    private boolean receive(Segment segment) {
         short newRemoteTransmissionId = segment.getLastTransmissionId();
 
+        // update baselines for decoding subsequent data; the segment has been decoded already
+        if (deltaControl != null)
+            deltaControl.refreshReceivedBaseline(segment);
+
         // add received, remote transmissionIds
         ackBitsControl.addToAck(segment.getTransmissionIds(), remoteTransmissionId);
 
-        // update newest, remote data
-        newestReceivedControl.refreshNewestReceived(segment);
-
-        // add received, remote dataIds
-        receivedMapControl.addToReceived(segment);
-        // discard old received entries in internal data structures
-        receivedMapControl.discardEntries();
-        // remove received, remote dataIds from tail
-        receivedMapControl.removeFromTail();
-
         // change remote transmissionId
         if (IdComparator.instance.compare(remoteTransmissionId, newRemoteTransmissionId) < 0)
             remoteTransmissionId = newRemoteTransmissionId;
+
+        ProtocolConfig.DeliveryLane lane = segment.getLane();
+        if (lane == ProtocolConfig.DeliveryLane.UNRELIABLE_SEQUENCED && !refreshSequenced(segment.getDataId()))
+            return false;
+
+        // update newest, remote data; fragments are reassembled first
+        if (!segment.isFragment())
+            newestReceivedControl.refreshNewestReceived(segment);
+
+        if (lane == ProtocolConfig.DeliveryLane.RELIABLE_ORDERED) {
+            // add received, remote dataIds
+            receivedMapControl.addToReceived(segment);
+            // discard old received entries in internal data structures
+            receivedMapControl.discardEntries();
+            // remove received, remote dataIds from tail
+            receivedMapControl.removeFromTail();
+            // discard fragmented user-data that can no longer be reassembled
+            fragmentControl.discardMessages(segment.getStreamId(), receivedMapControl.getNextDataId(segment.getStreamId()));
+        } else if (lane == ProtocolConfig.DeliveryLane.RELIABLE_UNORDERED && refreshUnordered(segment.getDataId())) {
+            listener.handleUnorderedData(segment.getDataId(), segment.getData());
+            if (segment.getData() != null) segment.getData().rewind();
+        }
+
+        return true;
+    }
+
+    // returns whether the dataId is newer than any dataId received on the sequenced lane before
+    private boolean refreshSequenced(short dataId) {
+        if (hasSequencedDataId && IdComparator.instance.compare(dataId, sequencedDataId) <= 0)
+            return false;
+
+        hasSequencedDataId = true;
+        sequencedDataId = dataId;
+        return true;
+    }
+
+    // returns whether the dataId is received for the first time, as far as the history of received dataIds reaches back
+    private boolean refreshUnordered(short dataId) {
+        if (unorderedDataIds == null) {
+            unorderedDataIds = new short[UNORDERED_HISTORY];
+            unorderedDatas = new boolean[UNORDERED_HISTORY];
+        }
+
+        int index = dataId & UNORDERED_MASK;
+        if (unorderedDatas[index] && unorderedDataIds[index] == dataId)
+            return false;
+
+        unorderedDatas[index] = true;
+        unorderedDataIds[index] = dataId;
+        return true;
+    }
+
+    // the packet transmission id is only written by the compact header format
+    private boolean usesPacketTransmissionIds() {
+        return usePacketTransmissionIds && ProtocolConfig.useCompactHeaders();
     }
 
     public ByteBuffer consume(Segment segment) {
@@ -189,9 +670,39 @@ public class ProcessingController implements SystemClock {
         return "Controller:\t"
                 + "DataId = " + dataId + "\t"
                 + "LocalTransmissionId = " + localTransmissionId + "\t"
+                + "LocalPacketTransmissionId = " + localPacketTransmissionId + "\t"
                 + "RemoteTransmissionId = " + remoteTransmissionId;
     }
 
+    public int getFragmentLimit() {
+        return fragmentLimit;
+    }
+
+    /**
+     * Get the number of bytes that may be sent in addition to the bytes in flight,
+     * which is {@link Integer#MAX_VALUE} if congestion control is disabled.
+     */
+    public int getCongestionBudget() {
+        return congestionController != null
+                ? congestionController.getCongestionWindow() - bytesInFlight : Integer.MAX_VALUE;
+    }
+
+    public int getCongestionWindow() {
+        return congestionController != null ? congestionController.getCongestionWindow() : Integer.MAX_VALUE;
+    }
+
+    public int getBytesInFlight() {
+        return bytesInFlight;
+    }
+
+    public int getParityGroupSize() {
+        return parityGroupSize;
+    }
+
+    public float getLossRate() {
+        return lossRateHandler.getLossRate();
+    }
+
     public long getSmoothedRTT() {
         return rttHandler.getSmoothedRTT();
     }
@@ -199,4 +710,12 @@ public class ProcessingController implements SystemClock {
     public long getRTTVariation() {
         return rttHandler.getRTTVariation();
     }
+
+    public int getStreamCount() {
+        return receivedMapControl.getStreamCount();
+    }
+
+    private static final class Stream {
+        private short dataId;
+    }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.CongestionController;
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+
+/**
+ * A loss-based {@link CongestionController}, which increases the congestion window additively
+ * and decreases it multiplicatively, similar to TCP NewReno.
+ * <br />
+ * The window starts in slow start, growing by the acknowledged bytes, until it reaches the slow start threshold.
+ * Thereafter it grows by about one segment size per round-trip time.
+ * A loss halves the window, a retransmission timeout shrinks it to the minimum window.
+ * The window is decreased at most once per round-trip time, as losses of the same flight are detected together.
+ */
+public class AIMDCongestionController implements CongestionController {
+    public static final int SEGMENT_SIZE = ProtocolConfig.CONSERVATIVE_MTU_SIZE;
+    public static final int MIN_WINDOW = 2 * SEGMENT_SIZE;
+    public static final int INITIAL_WINDOW = 4 * SEGMENT_SIZE;
+    public static final int MAX_WINDOW = Integer.MAX_VALUE / 2;
+
+    private int congestionWindow = INITIAL_WINDOW;
+    private int slowStartThreshold = Integer.MAX_VALUE;
+    // acknowledged bytes, which did not yet increase the window in congestion avoidance
+    private int ackedBytes = 0;
+    private long recoveryEndTime = Long.MIN_VALUE;
+
+    @Override
+    public int getCongestionWindow() {
+        return congestionWindow;
+    }
+
+    public int getSlowStartThreshold() {
+        return slowStartThreshold;
+    }
+
+    @Override
+    public void handleAcked(int ackedBytes, int bytesInFlight, long timeNow) {
+        if (congestionWindow < slowStartThreshold) {
+            congestionWindow = (int) Math.min((long) congestionWindow + ackedBytes, MAX_WINDOW);
+        } else {
+            this.ackedBytes += ackedBytes;
+            if (this.ackedBytes >= congestionWindow) {
+                this.ackedBytes -= congestionWindow;
+                congestionWindow = Math.min(congestionWindow + SEGMENT_SIZE, MAX_WINDOW);
+            }
+        }
+    }
+
+    @Override
+    public void handleLost(int lostBytes, boolean timedOut, long smoothedRTT, long timeNow) {
+        if (timeNow < recoveryEndTime)
+            return;
+
+        slowStartThreshold = Math.max(congestionWindow / 2, MIN_WINDOW);
+        congestionWindow = timedOut ? MIN_WINDOW : slowStartThreshold;
+        ackedBytes = 0;
+        recoveryEndTime = timeNow + smoothedRTT;
+    }
+
+    @Override
+    public void handleRTTSample(long rtt, long smoothedRTT, long timeNow) {
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A thread-safe arena of reusable byte buffers, which are partitioned into size classes.
+ * <br />
+ * The size classes are powers of two, starting at {@value #MIN_SIZE_CLASS} bytes up to the
+ * {@link ProtocolConfig#getHighestPossibleMTUSize() highest possible MTU size}, which is the capacity of the largest class.
+ * Requested buffers are served from the smallest size class that fits the requested size,
+ * thus retained memory scales with the actual payload sizes instead of the MTU size.
+ * <br />
+ * Buffers are allocated in direct memory, if {@link ProtocolConfig#useDirectBuffers() direct buffers} are used.
+ * <br />
+ * Released buffers are kept for reuse as long as the total capacity of kept buffers stays below the
+ * {@link ProtocolConfig#getBufferArenaMemoryLimit() memory limit}, otherwise they are left to the garbage collector.
+ */
+public final class BufferArena {
+    public static final int MIN_SIZE_CLASS = 32;
+    private static final int MIN_SIZE_CLASS_SHIFT = FastLog.log2(MIN_SIZE_CLASS);
+
+    public static final BufferArena instance = new BufferArena();
+
+    private final List<ArrayDeque<ByteBuffer>> freeBuffers = new ArrayList<ArrayDeque<ByteBuffer>>();
+    private final List<ArrayDeque<ByteBuffer>> freeDirectBuffers = new ArrayList<ArrayDeque<ByteBuffer>>();
+    private long retainedBytes = 0L;
+
+    private long hitCount = 0L;
+    private long missCount = 0L;
+    private long dropCount = 0L;
+
+    /**
+     * Allocate a buffer that can hold at least the given amount of bytes.
+     * The returned buffer is cleared, its capacity (and limit) may be larger than the requested size.
+     *
+     * @param size the minimum capacity of the buffer
+     * @return the allocated buffer
+     */
+    public synchronized ByteBuffer allocate(int size) {
+        boolean direct = ProtocolConfig.useDirectBuffers();
+        if (size > getMaxCapacity()) {
+            missCount++;
+            return allocate(size, direct);
+        }
+
+        int sizeClass = getSizeClass(size);
+        int capacity = getCapacity(sizeClass);
+        ByteBuffer buffer = getFreeBuffers(sizeClass, direct).pollLast();
+        if (buffer != null)
+            retainedBytes -= buffer.capacity();
+
+        // size class capacities change along with the highest possible MTU size
+        if (buffer != null && buffer.capacity() >= size) {
+            hitCount++;
+            buffer.clear();
+        } else {
+            missCount++;
+            buffer = allocate(capacity, direct);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Release a buffer back to this arena. The buffer must not be used thereafter.
+     *
+     * @param buffer the buffer previously {@link #allocate(int) allocated} from this arena
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int sizeClass = getSizeClass(capacity);
+        if (capacity <= getMaxCapacity() && getCapacity(sizeClass) == capacity
+                && retainedBytes + capacity <= ProtocolConfig.getBufferArenaMemoryLimit()) {
+            retainedBytes += capacity;
+            getFreeBuffers(sizeClass, buffer.isDirect()).addLast(buffer);
+        } else {
+            dropCount++;
+        }
+    }
+
+    /**
+     * Release all buffers kept for reuse.
+     */
+    public synchronized void clear() {
+        for (int i = 0, l = freeBuffers.size(); i < l; ++i)
+            freeBuffers.get(i).clear();
+        for (int i = 0, l = freeDirectBuffers.size(); i < l; ++i)
+            freeDirectBuffers.get(i).clear();
+        retainedBytes = 0L;
+    }
+
+    /**
+     * Get the total capacity of buffers kept for reuse.
+     */
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getDropCount() {
+        return dropCount;
+    }
+
+    private ArrayDeque<ByteBuffer> getFreeBuffers(int sizeClass, boolean direct) {
+        List<ArrayDeque<ByteBuffer>> buffers = direct ? freeDirectBuffers : freeBuffers;
+        while (buffers.size() <= sizeClass)
+            buffers.add(new ArrayDeque<ByteBuffer>());
+        return buffers.get(sizeClass);
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    static int getSizeClass(int size) {
+        return size <= MIN_SIZE_CLASS ? 0 : (Integer.SIZE - Integer.numberOfLeadingZeros(size - 1)) - MIN_SIZE_CLASS_SHIFT;
+    }
+
+    static int getCapacity(int sizeClass) {
+        return Math.min(MIN_SIZE_CLASS << sizeClass, getMaxCapacity());
+    }
+
+    private static int getMaxCapacity() {
+        return Math.max(MIN_SIZE_CLASS, ProtocolConfig.getHighestPossibleMTUSize());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BufferArena:\t"
+                + "Retained = " + retainedBytes + "B/" + ProtocolConfig.getBufferArenaMemoryLimit() + "B\t"
+                + "Hits = " + hitCount + "\t"
+                + "Misses = " + missCount + "\t"
+                + "Dropped = " + dropCount;
+    }
+}
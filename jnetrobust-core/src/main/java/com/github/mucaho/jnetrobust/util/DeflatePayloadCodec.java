@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.PayloadCodec;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link PayloadCodec} which compresses with the DEFLATE algorithm of the JDK, without any zlib header or checksum.
+ * <br />
+ * An optional preset dictionary primes the compressor with byte sequences that are expected to occur in the user-datas,
+ * which greatly improves the compression of the small payloads of a single packet.
+ * Both communicating parties have to use the same dictionary.
+ */
+public class DeflatePayloadCodec implements PayloadCodec {
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] dictionary;
+
+    private byte[] inBytes = new byte[0];
+    private byte[] outBytes = new byte[0];
+
+    /**
+     * Construct a new codec with the default compression level and no preset dictionary.
+     */
+    public DeflatePayloadCodec() {
+        this(Deflater.DEFAULT_COMPRESSION, null);
+    }
+
+    /**
+     * Construct a new codec.
+     *
+     * @param level      the compression level, see {@link Deflater#setLevel(int)}
+     * @param dictionary the preset dictionary, or <code>null</code> if none should be used
+     */
+    public DeflatePayloadCodec(int level, byte[] dictionary) {
+        this.deflater = new Deflater(level, true);
+        this.dictionary = dictionary != null ? dictionary.clone() : null;
+    }
+
+    @Override
+    public boolean compress(ByteBuffer src, ByteBuffer dst) {
+        int srcLength = src.remaining();
+        int dstLength = dst.remaining();
+        ensureCapacity(srcLength, dstLength);
+        src.get(inBytes, 0, srcLength);
+
+        deflater.reset();
+        if (dictionary != null)
+            deflater.setDictionary(dictionary);
+        deflater.setInput(inBytes, 0, srcLength);
+        deflater.finish();
+
+        int written = 0;
+        while (!deflater.finished()) {
+            if (written == dstLength)
+                return false;
+            written += deflater.deflate(outBytes, written, dstLength - written);
+        }
+
+        dst.put(outBytes, 0, written);
+        return true;
+    }
+
+    @Override
+    public boolean decompress(ByteBuffer src, ByteBuffer dst) {
+        int srcLength = src.remaining();
+        int dstLength = dst.remaining();
+        // the inflater expects an extra dummy byte, if there is no zlib header;
+        // an extra output byte reveals whether the decompressed bytes exceed the destination buffer
+        ensureCapacity(srcLength + 1, dstLength + 1);
+        src.get(inBytes, 0, srcLength);
+        inBytes[srcLength] = 0;
+
+        inflater.reset();
+        if (dictionary != null)
+            inflater.setDictionary(dictionary);
+        inflater.setInput(inBytes, 0, srcLength + 1);
+
+        int written = 0;
+        try {
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(outBytes, written, dstLength + 1 - written);
+                if (inflated == 0 && !inflater.finished())
+                    return false;
+                written += inflated;
+                if (written > dstLength)
+                    return false;
+            }
+        } catch (DataFormatException e) {
+            return false;
+        }
+
+        dst.put(outBytes, 0, written);
+        return true;
+    }
+
+    private void ensureCapacity(int inLength, int outLength) {
+        if (inBytes.length < inLength)
+            inBytes = new byte[inLength];
+        if (outBytes.length < outLength)
+            outBytes = new byte[outLength];
+    }
+}
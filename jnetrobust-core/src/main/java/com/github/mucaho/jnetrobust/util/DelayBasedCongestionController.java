@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.CongestionController;
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+
+/**
+ * A delay-based {@link CongestionController}, which models the path similar to BBR.
+ * <br />
+ * The congestion window is sized to twice the bandwidth-delay product, i.e. the product of the maximum of the recent
+ * delivery rates and the minimum of the recent round-trip times, thus it does not fill the queues along the path.
+ * The delivery rate is sampled about once per round-trip time, from the bytes acknowledged in the meantime.
+ * During startup the window grows like in slow start, until the delivery rate stops growing by a quarter for
+ * {@value #STARTUP_ROUNDS} consecutive samples.
+ * Losses are not interpreted as congestion, unless the retransmission timeout elapses,
+ * in which case the window shrinks to the minimum window until the path is sampled anew.
+ */
+public class DelayBasedCongestionController implements CongestionController {
+    public static final int SEGMENT_SIZE = ProtocolConfig.CONSERVATIVE_MTU_SIZE;
+    public static final int MIN_WINDOW = 2 * SEGMENT_SIZE;
+    public static final int INITIAL_WINDOW = 4 * SEGMENT_SIZE;
+    public static final int MAX_WINDOW = Integer.MAX_VALUE / 2;
+
+    private static final float WINDOW_GAIN = 2f;
+    private static final float STARTUP_GROWTH = 1.25f;
+    private static final int STARTUP_ROUNDS = 3;
+    private static final int BANDWIDTH_SAMPLES = 10;
+    private static final long MIN_SAMPLE_INTERVAL = 10L; // in ms
+    private static final long MIN_RTT_EXPIRY = 10000L; // in ms
+
+    private int congestionWindow = INITIAL_WINDOW;
+
+    private boolean startup = true;
+    private float startupBandwidth = 0f;
+    private int startupRounds = 0;
+
+    // in bytes per ms
+    private final float[] bandwidths = new float[BANDWIDTH_SAMPLES];
+    private int bandwidthIndex = 0;
+    private long sampleStartTime = -1L;
+    private int sampleBytes = 0;
+
+    private long minRTT = -1L;
+    private long minRTTTime = -1L;
+
+    @Override
+    public int getCongestionWindow() {
+        return congestionWindow;
+    }
+
+    public boolean isStartup() {
+        return startup;
+    }
+
+    public float getBandwidth() {
+        float bandwidth = 0f;
+        for (int i = 0; i < BANDWIDTH_SAMPLES; ++i)
+            bandwidth = Math.max(bandwidth, bandwidths[i]);
+        return bandwidth;
+    }
+
+    public long getMinRTT() {
+        return minRTT;
+    }
+
+    @Override
+    public void handleAcked(int ackedBytes, int bytesInFlight, long timeNow) {
+        // the bytes acknowledged at the start of a sample interval were delivered before it
+        if (sampleStartTime < 0L) {
+            sampleStartTime = timeNow;
+        } else {
+            sampleBytes += ackedBytes;
+            long interval = timeNow - sampleStartTime;
+            if (interval >= Math.max(minRTT, MIN_SAMPLE_INTERVAL)) {
+                addBandwidthSample((float) sampleBytes / interval);
+                sampleStartTime = timeNow;
+                sampleBytes = 0;
+            }
+        }
+
+        if (startup)
+            congestionWindow = (int) Math.min((long) congestionWindow + ackedBytes, MAX_WINDOW);
+        else
+            updateCongestionWindow();
+    }
+
+    private void addBandwidthSample(float bandwidth) {
+        bandwidths[bandwidthIndex] = bandwidth;
+        bandwidthIndex = (bandwidthIndex + 1) % BANDWIDTH_SAMPLES;
+
+        if (startup) {
+            if (bandwidth >= startupBandwidth * STARTUP_GROWTH) {
+                startupBandwidth = bandwidth;
+                startupRounds = 0;
+            } else if (++startupRounds >= STARTUP_ROUNDS) {
+                startup = false;
+            }
+        }
+    }
+
+    private void updateCongestionWindow() {
+        float bandwidth = getBandwidth();
+        if (bandwidth > 0f && minRTT >= 0L) {
+            double window = WINDOW_GAIN * bandwidth * Math.max(minRTT, 1L);
+            congestionWindow = (int) Math.max(MIN_WINDOW, Math.min(window, MAX_WINDOW));
+        }
+    }
+
+    @Override
+    public void handleLost(int lostBytes, boolean timedOut, long smoothedRTT, long timeNow) {
+        if (!timedOut)
+            return;
+
+        startup = false;
+        congestionWindow = MIN_WINDOW;
+        for (int i = 0; i < BANDWIDTH_SAMPLES; ++i)
+            bandwidths[i] = 0f;
+        sampleStartTime = -1L;
+        sampleBytes = 0;
+    }
+
+    @Override
+    public void handleRTTSample(long rtt, long smoothedRTT, long timeNow) {
+        if (minRTT < 0L || rtt <= minRTT || timeNow - minRTTTime > MIN_RTT_EXPIRY) {
+            minRTT = rtt;
+            minRTTTime = timeNow;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.PayloadCodec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A fast {@link PayloadCodec} which replaces repeated byte sequences with back-references to their previous occurrence.
+ * It trades compression ratio for speed and works on heap and direct buffers alike, without any intermediate copies.
+ * <br />
+ * The compressed bytes consist of sequences, each one starting with a token byte.
+ * The upper 4 bits of the token hold the number of literal bytes, which follow the token,
+ * the lower 4 bits hold the length of the back-reference, which follows the literals, minus {@value #MIN_MATCH}.
+ * A value of <code>15</code> is extended by the following bytes, until a byte is smaller than <code>255</code>.
+ * A back-reference consists of the 2-byte little-endian offset to the previous occurrence, followed by the length extension.
+ * The last sequence consists of the token and the remaining literals only.
+ */
+public class LZPayloadCodec implements PayloadCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int NIBBLE_MASK = 0xF;
+    private static final int LENGTH_EXTENSION = 0xFF;
+    private static final int HASH_LOG = 12;
+    private static final int HASH_MULTIPLIER = -1640531535; // golden ratio
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    @Override
+    public boolean compress(ByteBuffer src, ByteBuffer dst) {
+        int srcStart = src.position();
+        int srcEnd = src.limit();
+        int dstIndex = dst.position();
+        int dstEnd = dst.limit();
+        Arrays.fill(hashTable, -1);
+
+        int anchor = srcStart;
+        int index = srcStart;
+        while (srcEnd - index >= MIN_MATCH) {
+            int sequence = src.getInt(index);
+            int hash = (sequence * HASH_MULTIPLIER) >>> (Integer.SIZE - HASH_LOG);
+            int reference = hashTable[hash];
+            hashTable[hash] = index;
+
+            if (reference >= srcStart && index - reference <= MAX_OFFSET && src.getInt(reference) == sequence) {
+                int matchLength = MIN_MATCH;
+                while (index + matchLength < srcEnd && src.get(reference + matchLength) == src.get(index + matchLength))
+                    matchLength++;
+
+                dstIndex = writeSequence(src, anchor, index - anchor, dst, dstIndex, dstEnd, index - reference, matchLength);
+                if (dstIndex < 0)
+                    return false;
+                index += matchLength;
+                anchor = index;
+            } else {
+                index++;
+            }
+        }
+
+        dstIndex = writeSequence(src, anchor, srcEnd - anchor, dst, dstIndex, dstEnd, 0, 0);
+        if (dstIndex < 0)
+            return false;
+
+        src.position(srcEnd);
+        dst.position(dstIndex);
+        return true;
+    }
+
+    // returns the index following the written sequence, or -1 if it does not fit
+    private static int writeSequence(ByteBuffer src, int literalIndex, int literalLength,
+                                     ByteBuffer dst, int dstIndex, int dstEnd, int offset, int matchLength) {
+        int matchExtension = offset > 0 ? matchLength - MIN_MATCH : 0;
+        int size = 1 + getExtensionSize(literalLength) + literalLength
+                + (offset > 0 ? 2 + getExtensionSize(matchExtension) : 0);
+        if (dstEnd - dstIndex < size)
+            return -1;
+
+        dst.put(dstIndex++, (byte) ((Math.min(literalLength, NIBBLE_MASK) << 4) | Math.min(matchExtension, NIBBLE_MASK)));
+        dstIndex = writeExtension(dst, dstIndex, literalLength);
+        copy(src, literalIndex, dst, dstIndex, literalLength);
+        dstIndex += literalLength;
+
+        if (offset > 0) {
+            dst.put(dstIndex++, (byte) offset);
+            dst.put(dstIndex++, (byte) (offset >>> 8));
+            dstIndex = writeExtension(dst, dstIndex, matchExtension);
+        }
+        return dstIndex;
+    }
+
+    private static int getExtensionSize(int length) {
+        return length < NIBBLE_MASK ? 0 : (length - NIBBLE_MASK) / LENGTH_EXTENSION + 1;
+    }
+
+    private static int writeExtension(ByteBuffer dst, int dstIndex, int length) {
+        if (length < NIBBLE_MASK)
+            return dstIndex;
+
+        length -= NIBBLE_MASK;
+        while (length >= LENGTH_EXTENSION) {
+            dst.put(dstIndex++, (byte) LENGTH_EXTENSION);
+            length -= LENGTH_EXTENSION;
+        }
+        dst.put(dstIndex++, (byte) length);
+        return dstIndex;
+    }
+
+    @Override
+    public boolean decompress(ByteBuffer src, ByteBuffer dst) {
+        int srcIndex = src.position();
+        int srcEnd = src.limit();
+        int dstStart = dst.position();
+        int dstIndex = dstStart;
+        int dstEnd = dst.limit();
+
+        while (srcIndex < srcEnd) {
+            int token = src.get(srcIndex++) & 0xFF;
+
+            int literalLength = token >>> 4;
+            if (literalLength == NIBBLE_MASK) {
+                int b;
+                do {
+                    if (srcIndex == srcEnd)
+                        return false;
+                    b = src.get(srcIndex++) & 0xFF;
+                    literalLength += b;
+                } while (b == LENGTH_EXTENSION);
+            }
+            if (literalLength > srcEnd - srcIndex || literalLength > dstEnd - dstIndex)
+                return false;
+            copy(src, srcIndex, dst, dstIndex, literalLength);
+            srcIndex += literalLength;
+            dstIndex += literalLength;
+
+            if (srcIndex == srcEnd)
+                break;
+
+            if (srcEnd - srcIndex < 2)
+                return false;
+            int offset = (src.get(srcIndex) & 0xFF) | ((src.get(srcIndex + 1) & 0xFF) << 8);
+            srcIndex += 2;
+            if (offset == 0 || offset > dstIndex - dstStart)
+                return false;
+
+            int matchLength = token & NIBBLE_MASK;
+            if (matchLength == NIBBLE_MASK) {
+                int b;
+                do {
+                    if (srcIndex == srcEnd)
+                        return false;
+                    b = src.get(srcIndex++) & 0xFF;
+                    matchLength += b;
+                } while (b == LENGTH_EXTENSION);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > dstEnd - dstIndex)
+                return false;
+
+            // byte by byte, as the match may overlap the bytes it produces
+            for (int i = 0; i < matchLength; ++i, ++dstIndex)
+                dst.put(dstIndex, dst.get(dstIndex - offset));
+        }
+
+        src.position(srcEnd);
+        dst.position(dstIndex);
+        return true;
+    }
+
+    private static void copy(ByteBuffer src, int srcIndex, ByteBuffer dst, int dstIndex, int length) {
+        if (src.hasArray() && dst.hasArray()) {
+            System.arraycopy(src.array(), src.arrayOffset() + srcIndex, dst.array(), dst.arrayOffset() + dstIndex, length);
+        } else {
+            for (int i = 0; i < length; ++i)
+                dst.put(dstIndex + i, src.get(srcIndex + i));
+        }
+    }
+}
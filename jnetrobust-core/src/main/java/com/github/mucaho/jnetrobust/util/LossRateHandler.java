@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+/**
+ * LOSS = (1 - alpha) * LOSS + alpha * L'
+ * LOSS += ( L' - LOSS ) * alpha;
+ * <p/>
+ * L' = 0 for each acknowledged transmission, L' = 1 for each transmission that has to be retransmitted
+ * <p/>
+ * alpha = 1/32
+ */
+public final class LossRateHandler {
+    private static final float ALPHA = 1f / 32f;
+
+    private float lossRate = 0f;
+
+    public float getLossRate() {
+        return lossRate;
+    }
+
+    public void updateDelivered() {
+        lossRate += (0f - lossRate) * ALPHA;
+    }
+
+    public void updateLost() {
+        lossRate += (1f - lossRate) * ALPHA;
+    }
+}
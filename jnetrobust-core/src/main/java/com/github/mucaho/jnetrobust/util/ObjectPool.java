@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe pool of reusable objects.
+ * <br />
+ * Objects are {@link #obtain() obtained} from the pool and handed back to it by {@link #recycle(Object) recycling} them,
+ * once they are no longer referenced anywhere. If the pool is empty a new object is {@link #create() created} (a miss),
+ * if the pool is full a recycled object is dropped and left to the garbage collector.
+ * <br />
+ * Leak detection can be enabled for debugging purposes: each obtained object is tracked weakly and counted as
+ * {@link #getLeakCount() leaked} if it gets garbage collected without having been recycled beforehand.
+ *
+ * @param <T> the type of pooled objects
+ */
+public abstract class ObjectPool<T> {
+    private final int capacity;
+    private final ArrayDeque<T> freeObjects;
+
+    private long hitCount = 0L;
+    private long missCount = 0L;
+    private long recycleCount = 0L;
+    private long dropCount = 0L;
+
+    private boolean leakDetection = false;
+    private long leakCount = 0L;
+    private final ReferenceQueue<T> leakQueue = new ReferenceQueue<T>();
+    private final Map<Integer, LeakTracker<T>> leakTrackers = new HashMap<Integer, LeakTracker<T>>();
+
+    public ObjectPool(int capacity) {
+        this.capacity = capacity;
+        this.freeObjects = new ArrayDeque<T>(capacity);
+    }
+
+    /**
+     * Create a new object, in case the pool has no free objects left.
+     */
+    protected abstract T create();
+
+    /**
+     * Reset the object's state before it is put back into the pool.
+     */
+    protected abstract void reset(T object);
+
+    public synchronized T obtain() {
+        T object = freeObjects.pollLast();
+        if (object != null) {
+            hitCount++;
+        } else {
+            missCount++;
+            object = create();
+        }
+
+        if (leakDetection) {
+            pollLeaks();
+            track(object);
+        }
+
+        return object;
+    }
+
+    public synchronized void recycle(T object) {
+        if (leakDetection) {
+            untrack(object);
+            pollLeaks();
+        }
+
+        reset(object);
+        recycleCount++;
+        if (freeObjects.size() < capacity)
+            freeObjects.addLast(object);
+        else
+            dropCount++;
+    }
+
+    public synchronized void clear() {
+        freeObjects.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getFreeCount() {
+        return freeObjects.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getRecycleCount() {
+        return recycleCount;
+    }
+
+    public synchronized long getDropCount() {
+        return dropCount;
+    }
+
+    public synchronized boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * Enable or disable leak detection. Tracking each obtained object adds overhead,
+     * thus leak detection should only be enabled for debugging purposes.
+     */
+    public synchronized void setLeakDetection(boolean leakDetection) {
+        if (!leakDetection) {
+            for (LeakTracker<T> tracker : leakTrackers.values()) {
+                while (tracker != null) {
+                    tracker.clear();
+                    tracker = tracker.next;
+                }
+            }
+            leakTrackers.clear();
+        }
+        this.leakDetection = leakDetection;
+    }
+
+    /**
+     * Get the amount of obtained objects that have been garbage collected without being recycled.
+     * Only counted while {@link #setLeakDetection(boolean) leak detection} is enabled.
+     */
+    public synchronized long getLeakCount() {
+        pollLeaks();
+        return leakCount;
+    }
+
+    private void track(T object) {
+        Integer hash = System.identityHashCode(object);
+        LeakTracker<T> tracker = new LeakTracker<T>(object, hash, leakQueue);
+        tracker.next = leakTrackers.put(hash, tracker);
+    }
+
+    private void untrack(T object) {
+        Integer hash = System.identityHashCode(object);
+        LeakTracker<T> previous = null;
+        LeakTracker<T> tracker = leakTrackers.get(hash);
+        while (tracker != null && tracker.get() != object) {
+            previous = tracker;
+            tracker = tracker.next;
+        }
+
+        if (tracker != null) {
+            tracker.clear();
+            unlink(previous, tracker);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void pollLeaks() {
+        LeakTracker<T> leaked = (LeakTracker<T>) leakQueue.poll();
+        while (leaked != null) {
+            LeakTracker<T> previous = null;
+            LeakTracker<T> tracker = leakTrackers.get(leaked.hash);
+            while (tracker != null && tracker != leaked) {
+                previous = tracker;
+                tracker = tracker.next;
+            }
+
+            if (tracker != null) {
+                unlink(previous, tracker);
+                leakCount++;
+            }
+
+            leaked = (LeakTracker<T>) leakQueue.poll();
+        }
+    }
+
+    private void unlink(LeakTracker<T> previous, LeakTracker<T> tracker) {
+        if (previous != null)
+            previous.next = tracker.next;
+        else if (tracker.next != null)
+            leakTrackers.put(tracker.hash, tracker.next);
+        else
+            leakTrackers.remove(tracker.hash);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ObjectPool:\t"
+                + "Free = " + freeObjects.size() + "/" + capacity + "\t"
+                + "Hits = " + hitCount + "\t"
+                + "Misses = " + missCount + "\t"
+                + "Recycled = " + recycleCount + "\t"
+                + "Dropped = " + dropCount + "\t"
+                + "Leaked = " + leakCount;
+    }
+
+    private static final class LeakTracker<T> extends WeakReference<T> {
+        private final Integer hash;
+        private LeakTracker<T> next;
+
+        private LeakTracker(T referent, Integer hash, ReferenceQueue<T> queue) {
+            super(referent, queue);
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.control.Segment;
+
+import java.util.Comparator;
+
+/**
+ * Orders segments by their {@link Segment#getDeadline() deadline}, the earliest one first.
+ * <br />
+ * Not equal-consistent, thus it is only meant for stable sorting of lists, not for ordered sets.
+ */
+public final class SegmentDeadlineComparator implements Comparator<Segment> {
+    public static final SegmentDeadlineComparator instance = new SegmentDeadlineComparator();
+
+    @Override
+    public int compare(Segment o1, Segment o2) {
+        long deadline1 = o1.getDeadline();
+        long deadline2 = o2.getDeadline();
+        return deadline1 < deadline2 ? -1 : (deadline1 == deadline2 ? 0 : 1);
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import java.util.*;
+
+/**
+ * A compact, sorted set of wrap-around <code>short</code> ids, which is meant to hold a handful of ids.
+ * <br />
+ * The ids are ordered according to the {@link IdComparator} and stored in a circular array,
+ * which grows on demand and is reused after {@link #clearIds() clearing}.
+ * Retrieving the first and last id, appending a newer id and removing the first or last id take constant time.
+ * Other lookups use a binary search, unless they are made with the id that was looked up last,
+ * thus iterating via {@link #higher(Short)} or {@link #lower(Short)} takes constant time per step.
+ * <br />
+ * The set is read-only through the <code>Set</code> interface, subclasses may use the protected methods to modify it.
+ * The boxed ids supplied upon insertion are stored and returned upon navigation.
+ * The range views ({@link #subSet(Short, boolean, Short, boolean) subSet}, {@link #headSet(Short, boolean) headSet},
+ * {@link #tailSet(Short, boolean) tailSet} and {@link #descendingSet() descendingSet}) are unmodifiable snapshots.
+ */
+public class ShortIdSet extends AbstractSet<Short> implements NavigableSet<Short> {
+    private Short[] ids;
+    private int mask;
+    private int head = 0;
+    private int size = 0;
+    // logical index of the id that was looked up last
+    private int hint = 0;
+
+    public ShortIdSet(int initialCapacity) {
+        int capacity = 1;
+        while (capacity < initialCapacity)
+            capacity <<= 1;
+        ids = new Short[capacity];
+        mask = capacity - 1;
+    }
+
+    protected boolean addId(Short id) {
+        if (size == 0 || IdComparator.instance.compare(id, ids[(head + size - 1) & mask]) > 0) {
+            ensureCapacity();
+            ids[(head + size) & mask] = id;
+            hint = size++;
+            return true;
+        }
+
+        int index = search(id);
+        if (index >= 0)
+            return false;
+
+        index = -(index + 1);
+        ensureCapacity();
+        if (index == 0) {
+            head = (head - 1) & mask;
+        } else {
+            for (int i = size; i > index; --i)
+                ids[(head + i) & mask] = ids[(head + i - 1) & mask];
+        }
+        ids[(head + index) & mask] = id;
+        hint = index;
+        size++;
+        return true;
+    }
+
+    protected boolean removeId(Short id) {
+        int index = size > 0 ? search(id) : -1;
+        if (index < 0)
+            return false;
+
+        if (index == 0) {
+            ids[head] = null;
+            head = (head + 1) & mask;
+        } else {
+            for (int i = index; i < size - 1; ++i)
+                ids[(head + i) & mask] = ids[(head + i + 1) & mask];
+            ids[(head + size - 1) & mask] = null;
+        }
+        size--;
+        hint = 0;
+        return true;
+    }
+
+    protected void clearIds() {
+        for (int i = 0; i < size; ++i)
+            ids[(head + i) & mask] = null;
+        head = 0;
+        size = 0;
+        hint = 0;
+    }
+
+    protected void addAllIds(ShortIdSet other) {
+        for (int i = 0; i < other.size; ++i)
+            addId(other.get(i));
+    }
+
+    private void ensureCapacity() {
+        if (size < ids.length)
+            return;
+
+        Short[] newIds = new Short[ids.length << 1];
+        for (int i = 0; i < size; ++i)
+            newIds[i] = ids[(head + i) & mask];
+        ids = newIds;
+        mask = newIds.length - 1;
+        head = 0;
+    }
+
+    private Short get(int index) {
+        return ids[(head + index) & mask];
+    }
+
+    /*
+     * Returns the logical index of the id, if it's contained,
+     * otherwise <code>(-(insertion point) - 1)</code> like Arrays#binarySearch.
+     */
+    private int search(short id) {
+        if (hint < size && get(hint) == id)
+            return hint;
+
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = IdComparator.instance.compare(get(mid).shortValue(), id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                hint = mid;
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // index of the least id >= the given id (inclusive) or > the given id (exclusive)
+    private int ceilingIndex(short id, boolean inclusive) {
+        int index = search(id);
+        return index >= 0 ? (inclusive ? index : index + 1) : -(index + 1);
+    }
+
+    // index of the greatest id <= the given id (inclusive) or < the given id (exclusive)
+    private int floorIndex(short id, boolean inclusive) {
+        int index = search(id);
+        return index >= 0 ? (inclusive ? index : index - 1) : -(index + 1) - 1;
+    }
+
+    private Short getOrNull(int index) {
+        if (index >= 0 && index < size) {
+            hint = index;
+            return get(index);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Short && size > 0 && search((Short) o) >= 0;
+    }
+
+    @Override
+    public boolean add(Short id) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Short first() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return get(0);
+    }
+
+    @Override
+    public Short last() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return get(size - 1);
+    }
+
+    @Override
+    public Short lower(Short id) {
+        return size == 0 ? null : getOrNull(floorIndex(id, false));
+    }
+
+    @Override
+    public Short floor(Short id) {
+        return size == 0 ? null : getOrNull(floorIndex(id, true));
+    }
+
+    @Override
+    public Short ceiling(Short id) {
+        return size == 0 ? null : getOrNull(ceilingIndex(id, true));
+    }
+
+    @Override
+    public Short higher(Short id) {
+        return size == 0 ? null : getOrNull(ceilingIndex(id, false));
+    }
+
+    @Override
+    public Short pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Short pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Comparator<? super Short> comparator() {
+        return IdComparator.instance;
+    }
+
+    @Override
+    public Iterator<Short> iterator() {
+        return new IdIterator(false);
+    }
+
+    @Override
+    public Iterator<Short> descendingIterator() {
+        return new IdIterator(true);
+    }
+
+    private NavigableSet<Short> snapshot() {
+        NavigableSet<Short> snapshot = new TreeSet<Short>(IdComparator.instance);
+        for (int i = 0; i < size; ++i)
+            snapshot.add(get(i));
+        return snapshot;
+    }
+
+    @Override
+    public NavigableSet<Short> descendingSet() {
+        return CollectionUtils.unmodifiableNavigableSet(snapshot().descendingSet());
+    }
+
+    @Override
+    public NavigableSet<Short> subSet(Short fromElement, boolean fromInclusive, Short toElement, boolean toInclusive) {
+        return CollectionUtils.unmodifiableNavigableSet(snapshot().subSet(fromElement, fromInclusive, toElement, toInclusive));
+    }
+
+    @Override
+    public NavigableSet<Short> headSet(Short toElement, boolean inclusive) {
+        return CollectionUtils.unmodifiableNavigableSet(snapshot().headSet(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<Short> tailSet(Short fromElement, boolean inclusive) {
+        return CollectionUtils.unmodifiableNavigableSet(snapshot().tailSet(fromElement, inclusive));
+    }
+
+    @Override
+    public SortedSet<Short> subSet(Short fromElement, Short toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<Short> headSet(Short toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<Short> tailSet(Short fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    private class IdIterator implements Iterator<Short> {
+        private final boolean descending;
+        private int remaining = size;
+
+        private IdIterator(boolean descending) {
+            this.descending = descending;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Short next() {
+            if (remaining <= 0)
+                throw new NoSuchElementException();
+
+            remaining--;
+            return descending ? get(remaining) : get(size - 1 - remaining);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
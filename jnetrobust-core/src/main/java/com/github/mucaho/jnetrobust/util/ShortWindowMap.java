@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import java.util.*;
+
+/**
+ * A map of wrap-around <code>short</code> ids to values, which is backed by a circular array.
+ * <br />
+ * The keys are ordered according to the {@link IdComparator}. All keys lie within a window, that starts at the first key
+ * and ends at the last key. Each key is stored at index <code>key &amp; mask</code>, thus insertion, lookup and removal
+ * take constant time, whereas navigating to a {@link #higherKey(Short) higher} or {@link #lowerKey(Short) lower} key
+ * scans an occupancy bit set 64 slots at a time. The backing array grows as the window grows,
+ * it is meant to store ids that are dense within a bounded window.
+ * <br />
+ * The boxed keys supplied upon insertion are stored and returned upon navigation, no boxing takes place otherwise.
+ * <code>null</code> keys and values are not permitted.
+ *
+ * @param <V> the type of mapped values
+ */
+public class ShortWindowMap<V> extends AbstractMap<Short, V> {
+    private static final int MIN_CAPACITY = Long.SIZE;
+    private static final int MAX_CAPACITY = IdComparator.MAX_SEQUENCE;
+
+    private Short[] keys;
+    private Object[] values;
+    private long[] occupied;
+    private int mask;
+
+    private int size = 0;
+    private short first;
+    private short last;
+
+    private final Set<Map.Entry<Short, V>> entrySet = new EntrySet();
+
+    public ShortWindowMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public ShortWindowMap(int initialCapacity) {
+        allocate(capacityFor(initialCapacity));
+    }
+
+    private void allocate(int capacity) {
+        keys = new Short[capacity];
+        values = new Object[capacity];
+        occupied = new long[capacity / Long.SIZE];
+        mask = capacity - 1;
+    }
+
+    private static int capacityFor(int span) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < span && capacity < MAX_CAPACITY)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Short && get(((Short) key).shortValue()) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Short ? get(((Short) key).shortValue()) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(short key) {
+        return contains(key) ? (V) values[key & mask] : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(Short key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException("Null keys or values are not permitted!");
+
+        short k = key;
+        if (size == 0) {
+            first = k;
+            last = k;
+        } else if (IdComparator.instance.compare(k, first) < 0) {
+            ensureCapacity(distance(k, last) + 1);
+            first = k;
+        } else if (IdComparator.instance.compare(k, last) > 0) {
+            ensureCapacity(distance(first, k) + 1);
+            last = k;
+        }
+
+        int index = k & mask;
+        V oldValue = (V) values[index];
+        if (oldValue == null) {
+            occupied[index >>> 6] |= 1L << index;
+            size++;
+        }
+        keys[index] = key;
+        values[index] = value;
+
+        return oldValue;
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Short ? remove(((Short) key).shortValue()) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(short key) {
+        if (!contains(key))
+            return null;
+
+        int index = key & mask;
+        V oldValue = (V) values[index];
+        if (oldValue != null) {
+            occupied[index >>> 6] &= ~(1L << index);
+            keys[index] = null;
+            values[index] = null;
+            size--;
+
+            if (size > 0) {
+                if (key == first)
+                    first = keys[nextIndex(index)];
+                else if (key == last)
+                    last = keys[previousIndex(index)];
+            }
+        }
+
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        Arrays.fill(occupied, 0L);
+        size = 0;
+    }
+
+    /**
+     * @return the first (lowest) key or <code>null</code> if this map is empty
+     */
+    public Short firstKey() {
+        return size == 0 ? null : keys[first & mask];
+    }
+
+    /**
+     * @return the last (highest) key or <code>null</code> if this map is empty
+     */
+    public Short lastKey() {
+        return size == 0 ? null : keys[last & mask];
+    }
+
+    /**
+     * @param key the key to start looking from, which does not need to be contained in this map
+     * @return the least key strictly greater than the given key or <code>null</code> if there is no such key
+     */
+    public Short higherKey(Short key) {
+        if (size == 0)
+            return null;
+
+        short k = key;
+        if (IdComparator.instance.compare(k, first) < 0)
+            return keys[first & mask];
+        else if (IdComparator.instance.compare(k, last) >= 0)
+            return null;
+        else
+            return keys[nextIndex(k & mask)];
+    }
+
+    /**
+     * @param key the key to start looking from, which does not need to be contained in this map
+     * @return the greatest key strictly less than the given key or <code>null</code> if there is no such key
+     */
+    public Short lowerKey(Short key) {
+        if (size == 0)
+            return null;
+
+        short k = key;
+        if (IdComparator.instance.compare(k, last) > 0)
+            return keys[last & mask];
+        else if (IdComparator.instance.compare(k, first) <= 0)
+            return null;
+        else
+            return keys[previousIndex(k & mask)];
+    }
+
+    @Override
+    public Set<Map.Entry<Short, V>> entrySet() {
+        return entrySet;
+    }
+
+    private boolean contains(short key) {
+        return size > 0 && distance(first, key) <= distance(first, last);
+    }
+
+    private static int distance(short from, short to) {
+        return (to - from) & (MAX_CAPACITY - 1);
+    }
+
+    private void ensureCapacity(int span) {
+        if (span <= keys.length)
+            return;
+
+        Short[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldMask = mask;
+
+        allocate(capacityFor(span));
+        for (int i = 0, index = first & oldMask; i < size; ++i, index = (index + 1) & oldMask) {
+            while (oldKeys[index] == null)
+                index = (index + 1) & oldMask;
+
+            int newIndex = oldKeys[index] & mask;
+            keys[newIndex] = oldKeys[index];
+            values[newIndex] = oldValues[index];
+            occupied[newIndex >>> 6] |= 1L << newIndex;
+        }
+    }
+
+    // index of next occupied slot after the given index, wrapping around; there must be at least one occupied slot
+    private int nextIndex(int index) {
+        int start = (index + 1) & mask;
+        int word = start >>> 6;
+        long bits = occupied[word] & (-1L << start);
+        while (bits == 0L) {
+            word = (word + 1) % occupied.length;
+            bits = occupied[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    // index of previous occupied slot before the given index, wrapping around; there must be at least one occupied slot
+    private int previousIndex(int index) {
+        int start = (index - 1) & mask;
+        int word = start >>> 6;
+        long bits = occupied[word] & (-1L >>> (Long.SIZE - 1 - (start & (Long.SIZE - 1))));
+        while (bits == 0L) {
+            word = (word - 1 + occupied.length) % occupied.length;
+            bits = occupied[word];
+        }
+        return (word << 6) + (Long.SIZE - 1 - Long.numberOfLeadingZeros(bits));
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<Short, V>> {
+        @Override
+        public Iterator<Map.Entry<Short, V>> iterator() {
+            return new Iterator<Map.Entry<Short, V>>() {
+                private Short nextKey = firstKey();
+
+                @Override
+                public boolean hasNext() {
+                    return nextKey != null;
+                }
+
+                @Override
+                public Map.Entry<Short, V> next() {
+                    if (nextKey == null)
+                        throw new NoSuchElementException();
+
+                    Map.Entry<Short, V> entry = new SimpleImmutableEntry<Short, V>(nextKey, get(nextKey.shortValue()));
+                    nextKey = higherKey(nextKey);
+                    return entry;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -30,6 +30,21 @@ public final class TimeoutHandler {
         return timeoutsOut;
     }
 
+    public List<Segment> filterExpired(NavigableSet<Segment> datas, long timeNow) {
+        timeouts.clear();
+
+        Segment data = datas.isEmpty() ? null : datas.first();
+        while (data != null) {
+            if (data.isExpired(timeNow)) {
+                timeouts.add(data);
+            }
+
+            data = datas.higher(data);
+        }
+
+        return timeoutsOut;
+    }
+
     public List<Segment> filterLostInBetween(NavigableSet<Segment> segments, long relativeTimeout, int minDistance) {
         timeouts.clear();
         if (segments.isEmpty()) return timeoutsOut;
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length encoding of non-negative integers, 7 bits per byte, least significant group first.
+ * The most significant bit of each byte indicates whether another byte follows.
+ * <br />
+ * Signed 16-bit id deltas are mapped to non-negative integers with the zig-zag encoding first,
+ * so that small positive and small negative deltas both occupy a single byte.
+ */
+public final class VarInt {
+    private static final int DATA_BITS = 7;
+    private static final int DATA_MASK = 0x7F;
+    private static final int CONTINUATION_BIT = 0x80;
+    private static final int MAX_SIZE = (Integer.SIZE + DATA_BITS - 1) / DATA_BITS;
+
+    private VarInt() {
+    }
+
+    public static int getSize(int value) {
+        int size = 1;
+        while ((value >>>= DATA_BITS) != 0)
+            size++;
+        return size;
+    }
+
+    public static int write(ByteBuffer out, int index, int value) {
+        while ((value & ~DATA_MASK) != 0) {
+            out.put(index++, (byte) ((value & DATA_MASK) | CONTINUATION_BIT));
+            value >>>= DATA_BITS;
+        }
+        out.put(index++, (byte) value);
+        return index;
+    }
+
+    /**
+     * Read a value, the encoding of which occupies {@link #getSize(int) getSize(value)} bytes of the buffer.
+     */
+    public static int read(ByteBuffer in, int index) {
+        int value = 0;
+        for (int i = 0; i < MAX_SIZE; ++i) {
+            int b = in.get(index + i);
+            value |= (b & DATA_MASK) << (DATA_BITS * i);
+            if ((b & CONTINUATION_BIT) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed variable-length integer!");
+    }
+
+    public static void write(ObjectOutput out, int value) throws IOException {
+        while ((value & ~DATA_MASK) != 0) {
+            out.writeByte((value & DATA_MASK) | CONTINUATION_BIT);
+            value >>>= DATA_BITS;
+        }
+        out.writeByte(value);
+    }
+
+    public static int read(ObjectInput in) throws IOException {
+        int value = 0;
+        for (int i = 0; i < MAX_SIZE; ++i) {
+            int b = in.readUnsignedByte();
+            value |= (b & DATA_MASK) << (DATA_BITS * i);
+            if ((b & CONTINUATION_BIT) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed variable-length integer!");
+    }
+
+    /**
+     * Map the wrapped-around difference of two 16-bit ids to a non-negative integer.
+     */
+    public static int encodeDelta(short id, short baseId) {
+        short delta = (short) (id - baseId);
+        return ((delta << 1) ^ (delta >> (Short.SIZE - 1))) & 0xFFFF;
+    }
+
+    public static short decodeDelta(int encodedDelta, short baseId) {
+        return (short) (baseId + ((encodedDelta >>> 1) ^ -(encodedDelta & 1)));
+    }
+}
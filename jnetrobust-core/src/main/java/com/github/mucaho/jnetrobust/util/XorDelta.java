@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Delta encoding of a data against a baseline data, which is known to both communicating parties.
+ * <br />
+ * The data is XOR-ed with the baseline, thus bytes that did not change become zero.
+ * The result is encoded as the {@link VarInt variable-length} size of the data, followed by runs,
+ * each of which consists of the number of zero bytes, the number of literal bytes and the literal bytes themselves.
+ * Bytes beyond the end of the baseline are XOR-ed with zero.
+ * <br />
+ * All methods work on the bytes between index <code>0</code> and the buffers' limits
+ * and do not modify the buffers' positions.
+ */
+public final class XorDelta {
+    // shorter runs of zero bytes are kept within the literal bytes, as encoding them would take more space
+    private static final int MIN_ZERO_RUN = 3;
+
+    private XorDelta() {
+    }
+
+    /**
+     * Encode the data against the baseline.
+     *
+     * @param data     the data to encode
+     * @param baseline the baseline to encode against
+     * @param out      the buffer to write the encoded data to, up to its limit
+     * @return the size of the encoded data, or <code>-1</code> if it does not fit into the output buffer
+     */
+    public static int encode(ByteBuffer data, ByteBuffer baseline, ByteBuffer out) {
+        int size = data.limit();
+        int baselineSize = baseline.limit();
+        int outLimit = out.limit();
+        if (outLimit < VarInt.getSize(size))
+            return -1;
+        int outIndex = VarInt.write(out, 0, size);
+
+        int index = 0;
+        while (index < size) {
+            int zeroStart = index;
+            while (index < size && xor(data, baseline, baselineSize, index) == 0)
+                index++;
+            int zeroCount = index - zeroStart;
+
+            int literalStart = index;
+            int zeroRun = 0;
+            while (index < size && zeroRun < MIN_ZERO_RUN) {
+                zeroRun = xor(data, baseline, baselineSize, index) == 0 ? zeroRun + 1 : 0;
+                index++;
+            }
+            // a run of zero bytes that ends the literals starts the next run instead
+            if (zeroRun == MIN_ZERO_RUN)
+                index -= MIN_ZERO_RUN;
+            int literalCount = index - literalStart;
+
+            if (outLimit - outIndex < VarInt.getSize(zeroCount) + VarInt.getSize(literalCount) + literalCount)
+                return -1;
+            outIndex = VarInt.write(out, outIndex, zeroCount);
+            outIndex = VarInt.write(out, outIndex, literalCount);
+            for (int i = literalStart; i < index; ++i)
+                out.put(outIndex++, xor(data, baseline, baselineSize, i));
+        }
+
+        return outIndex;
+    }
+
+    /**
+     * Get the size of the data, once it is decoded.
+     * The size is checked before it is used to allocate a buffer for the decoded data,
+     * it can not exceed the {@link ProtocolConfig#getHighestPossibleMTUSize() highest possible MTU size}.
+     *
+     * @param delta the encoded data
+     * @return the size of the decoded data
+     * @throws IllegalArgumentException if the encoded data is malformed
+     */
+    public static int getDecodedSize(ByteBuffer delta) {
+        int size;
+        try {
+            size = VarInt.read(delta, 0);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed delta!", e);
+        }
+        if (size < 0 || size > ProtocolConfig.getHighestPossibleMTUSize())
+            throw new IllegalArgumentException("Malformed delta!");
+
+        return size;
+    }
+
+    /**
+     * Decode the data from its encoding against the baseline.
+     *
+     * @param delta    the encoded data
+     * @param baseline the baseline the data was encoded against
+     * @param out      the buffer to write the decoded data to,
+     *                 which must have room for {@link #getDecodedSize(ByteBuffer)} bytes
+     * @return the size of the decoded data
+     * @throws IllegalArgumentException if the encoded data is malformed
+     */
+    public static int decode(ByteBuffer delta, ByteBuffer baseline, ByteBuffer out) {
+        int baselineSize = baseline.limit();
+        try {
+            int size = VarInt.read(delta, 0);
+            int deltaIndex = VarInt.getSize(size);
+            if (size < 0 || size > out.limit())
+                throw new IllegalArgumentException("Malformed delta!");
+
+            int index = 0;
+            while (index < size) {
+                int zeroCount = VarInt.read(delta, deltaIndex);
+                deltaIndex += VarInt.getSize(zeroCount);
+                int literalCount = VarInt.read(delta, deltaIndex);
+                deltaIndex += VarInt.getSize(literalCount);
+                if (zeroCount < 0 || literalCount < 0 || zeroCount + literalCount == 0
+                        || size - index < zeroCount || size - index - zeroCount < literalCount)
+                    throw new IllegalArgumentException("Malformed delta!");
+
+                for (int end = index + zeroCount; index < end; ++index)
+                    out.put(index, index < baselineSize ? baseline.get(index) : 0);
+                for (int end = index + literalCount; index < end; ++index)
+                    out.put(index, (byte) (delta.get(deltaIndex++) ^ (index < baselineSize ? baseline.get(index) : 0)));
+            }
+            if (deltaIndex != delta.limit())
+                throw new IllegalArgumentException("Malformed delta!");
+
+            return size;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed delta!", e);
+        }
+    }
+
+    private static byte xor(ByteBuffer data, ByteBuffer baseline, int baselineSize, int index) {
+        return (byte) (index < baselineSize ? data.get(index) ^ baseline.get(index) : data.get(index));
+    }
+}
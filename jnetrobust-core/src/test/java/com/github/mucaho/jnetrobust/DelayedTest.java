@@ -547,16 +547,16 @@ public class DelayedTest {
                     AbstractSegmentMap dataMap = Deencapsulation.getField(sentMapControl, "dataMap");
                     Map keyMap = Deencapsulation.getField(dataMap, "keyMap");
                     assertEquals(1, keyMap.size());
-                    Map valueMap = Deencapsulation.getField(dataMap, "valueMap");
-                    assertEquals(1, valueMap.size());
+                    Set valueSet = Deencapsulation.getField(dataMap, "valueSet");
+                    assertEquals(1, valueSet.size());
                 }
                 {
                     AbstractMapControl receivedMapControl = Deencapsulation.getField(subControllerA, "receivedMapControl");
                     AbstractSegmentMap dataMap = Deencapsulation.getField(receivedMapControl, "dataMap");
                     Map keyMap = Deencapsulation.getField(dataMap, "keyMap");
                     assertEquals(0, keyMap.size());
-                    Map valueMap = Deencapsulation.getField(dataMap, "valueMap");
-                    assertEquals(0, valueMap.size());
+                    Set valueSet = Deencapsulation.getField(dataMap, "valueSet");
+                    assertEquals(0, valueSet.size());
                 }
 
                 Protocol protocolB = Deencapsulation.getField(hostB, "protocol");
@@ -567,16 +567,16 @@ public class DelayedTest {
                     AbstractSegmentMap dataMap = Deencapsulation.getField(sentMapControl, "dataMap");
                     Map keyMap = Deencapsulation.getField(dataMap, "keyMap");
                     assertEquals(1, keyMap.size());
-                    Map valueMap = Deencapsulation.getField(dataMap, "valueMap");
-                    assertEquals(1, valueMap.size());
+                    Set valueSet = Deencapsulation.getField(dataMap, "valueSet");
+                    assertEquals(1, valueSet.size());
                 }
                 {
                     AbstractMapControl receivedMapControl = Deencapsulation.getField(subControllerB, "receivedMapControl");
                     AbstractSegmentMap dataMap = Deencapsulation.getField(receivedMapControl, "dataMap");
                     Map keyMap = Deencapsulation.getField(dataMap, "keyMap");
                     assertEquals(0, keyMap.size());
-                    Map valueMap = Deencapsulation.getField(dataMap, "valueMap");
-                    assertEquals(0, valueMap.size());
+                    Set valueSet = Deencapsulation.getField(dataMap, "valueSet");
+                    assertEquals(0, valueSet.size());
                 }
             }
         }
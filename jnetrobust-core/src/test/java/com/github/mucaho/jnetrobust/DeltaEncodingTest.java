@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust;
+
+import com.github.mucaho.jnetrobust.controller.Packet;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeltaEncodingTest {
+    private static final int SNAPSHOT_COUNT = 50;
+    private static final int SNAPSHOT_SIZE = 256;
+
+    @Test
+    public void testSnapshotSizes() {
+        int[] rawSizes = sendSnapshots(false);
+        int[] encodedSizes = sendSnapshots(true);
+
+        assertEquals("first snapshot has no baseline", rawSizes[0], encodedSizes[0]);
+        for (int i = 1; i < SNAPSHOT_COUNT; ++i)
+            assertTrue("snapshot " + i + " was not encoded: " + encodedSizes[i] + " >= " + rawSizes[i],
+                    encodedSizes[i] < rawSizes[i] / 4);
+    }
+
+    // sends slowly changing snapshots, returns the sizes of the datagrams they were sent in
+    private static int[] sendSnapshots(boolean useDeltaEncoding) {
+        final List<ByteBuffer> orderedSnapshots = new ArrayList<ByteBuffer>();
+        final List<ByteBuffer> newestSnapshots = new ArrayList<ByteBuffer>();
+        ProtocolConfig config = new ProtocolConfig();
+        config.setUseDeltaEncoding(useDeltaEncoding);
+        Protocol sender = new Protocol(new ProtocolListener(), config);
+        Protocol receiver = new Protocol(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                orderedSnapshots.add(copy(orderedData));
+            }
+
+            @Override
+            public void handleNewestData(short dataId, ByteBuffer newestData) {
+                newestSnapshots.add(copy(newestData));
+            }
+        }, config);
+
+        Random random = new Random(42L);
+        List<ByteBuffer> snapshots = new ArrayList<ByteBuffer>();
+        ByteBuffer snapshot = ByteBuffer.allocate(SNAPSHOT_SIZE);
+        random.nextBytes(snapshot.array());
+
+        int[] sizes = new int[SNAPSHOT_COUNT];
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        for (int i = 0; i < SNAPSHOT_COUNT; ++i) {
+            // only a few bytes change between consecutive snapshots
+            snapshot.put(random.nextInt(SNAPSHOT_SIZE), (byte) random.nextInt());
+            snapshot.put(random.nextInt(SNAPSHOT_SIZE), (byte) random.nextInt());
+            snapshot.rewind();
+            snapshots.add(copy(snapshot));
+
+            for (Packet packet : sender.send(snapshot).values()) {
+                datagram.clear();
+                sender.send(packet, datagram);
+                sizes[i] = datagram.position();
+                datagram.flip();
+                receiver.receive(datagram);
+            }
+
+            // some acknowledgements are lost, thus older snapshots serve as baseline
+            for (Map.Entry<Short, Packet> entry : receiver.send().entrySet()) {
+                datagram.clear();
+                receiver.send(entry.getValue(), datagram);
+                datagram.flip();
+                if (i % 3 != 1)
+                    sender.receive(datagram);
+            }
+        }
+
+        assertEquals("ordered snapshots mismatch", snapshots, orderedSnapshots);
+        assertEquals("newest snapshots mismatch", snapshots, newestSnapshots);
+        return sizes;
+    }
+
+    private static ByteBuffer copy(ByteBuffer data) {
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data.duplicate());
+        copy.flip();
+        return copy;
+    }
+}
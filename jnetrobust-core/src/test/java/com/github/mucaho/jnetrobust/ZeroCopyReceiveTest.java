@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+
+import static org.junit.Assert.*;
+
+public class ZeroCopyReceiveTest {
+
+    @Test
+    public void testReceiveZeroCopy() {
+        final List<Byte> orderedValues = new ArrayList<Byte>();
+        Protocol sender = new Protocol(new ProtocolConfig());
+        Protocol receiver = new Protocol(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                orderedValues.add(orderedData.get(0));
+            }
+        }, new ProtocolConfig());
+
+        // sent packets are only valid until the next send, thus serialize them right away
+        ByteBuffer[] datagrams = new ByteBuffer[3];
+        for (int i = 0; i < datagrams.length; ++i) {
+            datagrams[i] = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+            ByteBuffer data = ByteBuffer.allocate(16);
+            data.put(0, (byte) (i + 1));
+            sender.send(sender.send(data).lastEntry().getValue(), datagrams[i]);
+            datagrams[i].flip();
+        }
+
+        // second datagram arrives first, its data has to be kept for reordering and is thus copied
+        NavigableMap<Short, ByteBuffer> received = receiver.receiveZeroCopy(datagrams[1]);
+        ByteBuffer reorderedData = received.firstEntry().getValue();
+        assertEquals(2, reorderedData.get(0));
+        assertTrue(orderedValues.isEmpty());
+        datagrams[1].put(datagrams[1].limit() - 16, (byte) 42);
+        assertEquals("Retained data was not copied", 2, reorderedData.get(0));
+
+        // first datagram arrives, its data is delivered as a view of the datagram
+        received = receiver.receiveZeroCopy(datagrams[0]);
+        ByteBuffer view = received.firstEntry().getValue();
+        assertTrue(view.isReadOnly());
+        assertEquals(1, view.get(0));
+        assertEquals(2, orderedValues.size());
+        assertEquals(Byte.valueOf((byte) 1), orderedValues.get(0));
+        assertEquals(Byte.valueOf((byte) 2), orderedValues.get(1));
+
+        datagrams[0].put(datagrams[0].limit() - 16, (byte) 42);
+        assertEquals("Received data is not a view of the datagram", 42, view.get(0));
+
+        // views are invalidated upon the next receive
+        received = receiver.receiveZeroCopy(datagrams[2]);
+        assertEquals(0, view.limit());
+        assertEquals(3, received.firstEntry().getValue().get(0));
+        assertEquals(3, orderedValues.size());
+    }
+}
@@ -15,11 +15,14 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Random;
+import java.util.TreeSet;
 
 import static com.github.mucaho.jnetrobust.util.BitConstants.*;
 import static com.github.mucaho.jnetrobust.util.TestUtils.binLong;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 @RunWith(JUnitParamsRunner.class)
@@ -70,4 +73,30 @@ public class AckBitsControlTest {
         return list;
     }
 
+    @Test
+    public final void testAckRanges() {
+        AckBitsControl handler = new AckBitsControl();
+        short newest = 10;
+        // ids preceding the ack bits: [-100, -91], [-80, -80], [-70, -23]; ids within the ack bits are ignored
+        for (short id = -100; id <= newest; ++id) {
+            if (id > -91 && id < -80 || id > -80 && id < -70 || id == 0 || id == 5)
+                continue;
+            handler.addToAck(new TreeSet<Short>(Arrays.asList(id)), id);
+        }
+
+        short[] ranges = new short[8];
+        assertEquals("range count", 3, handler.getAckRanges(newest, Integer.SIZE, ranges, 4));
+        assertArrayEquals("ranges, newest first", new short[] {-70, 48, -80, 1, -100, 10, 0, 0}, ranges);
+
+        assertEquals("range count is limited", 2, handler.getAckRanges(newest, Integer.SIZE, ranges, 2));
+        assertEquals("no ranges beyond the ack bits", 0, handler.getAckRanges(newest, 200, ranges, 4));
+
+        // ids older than the history are forgotten
+        short newer = (short) (newest + AckBitsControl.HISTORY_SIZE - 60);
+        handler.addToAck(new TreeSet<Short>(Arrays.asList(newer)), newer);
+        assertEquals("range count", 3, handler.getAckRanges(newer, Integer.SIZE, ranges, 4));
+        assertArrayEquals("ranges, newest first", new short[] {6, 5, 1, 4, -49, 49, 0, 0}, ranges);
+        assertEquals("oldest remembered id", (short) (newer - AckBitsControl.HISTORY_SIZE + 1), ranges[4]);
+    }
+
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.control;
+
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DeltaControlTest {
+    private static final int DATA_SIZE = 64;
+    private static final int MAX_RECEIVED_BASELINE_OFFSET = DeltaControl.MAX_BASELINE_OFFSET * 2;
+
+    private static ByteBuffer createData(int changedIndex) {
+        ByteBuffer data = ByteBuffer.allocate(DATA_SIZE);
+        data.put(changedIndex, (byte) -1);
+        return data;
+    }
+
+    @Test
+    public final void testLateReceivedBaseline() {
+        DeltaControl control = new DeltaControl();
+        short newestDataId = (short) (Short.MAX_VALUE - 10);
+        short lateDataId = (short) (newestDataId - MAX_RECEIVED_BASELINE_OFFSET);
+
+        Segment baseline = Segment.obtain(lateDataId, createData(0));
+        Segment segment = Segment.obtain((short) (lateDataId + 1), createData(1));
+        assertTrue(segment.encodeDelta(baseline));
+
+        // the late segment is not kept, as newer segments may no longer be encoded against it
+        control.refreshReceivedBaseline(Segment.obtain(newestDataId, createData(2)));
+        control.refreshReceivedBaseline(baseline);
+        assertFalse("segment decoded against discarded baseline", control.decode(segment));
+        assertNull(segment.getData());
+        assertFalse(segment.isDeltaEncoded());
+
+        // a reordered segment, which is not too late, is kept
+        baseline = Segment.obtain((short) (lateDataId + 1), createData(0));
+        segment = Segment.obtain((short) (lateDataId + 2), createData(1));
+        assertTrue(segment.encodeDelta(baseline));
+        control.refreshReceivedBaseline(baseline);
+        assertTrue("segment not decoded against reordered baseline", control.decode(segment));
+        assertEquals(createData(1), segment.getData());
+
+        // unencoded segments are always available
+        assertTrue(control.decode(Segment.obtain(newestDataId, createData(3))));
+    }
+
+    @Test
+    public final void testLateSentBaseline() {
+        DeltaControl control = new DeltaControl();
+        short newestDataId = (short) (Short.MAX_VALUE - 10);
+        short lateDataId = (short) (newestDataId - MAX_RECEIVED_BASELINE_OFFSET);
+
+        // the receiver acknowledges, but does not keep segments that arrive too late
+        control.refreshSentBaseline(Segment.obtain(lateDataId, createData(0)), newestDataId);
+        assertNull("late segment used as baseline", Deencapsulation.getField(control, "sentBaseline"));
+
+        Segment baseline = Segment.obtain((short) (lateDataId + 1), createData(0));
+        control.refreshSentBaseline(baseline, newestDataId);
+        assertSame(baseline, Deencapsulation.getField(control, "sentBaseline"));
+
+        // older segments do not replace the baseline
+        control.refreshSentBaseline(Segment.obtain(lateDataId, createData(0)), newestDataId);
+        assertSame(baseline, Deencapsulation.getField(control, "sentBaseline"));
+    }
+}
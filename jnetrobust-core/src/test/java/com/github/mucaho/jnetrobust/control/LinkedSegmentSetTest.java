@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.control;
+
+import com.github.mucaho.jnetrobust.util.SegmentLastTransmissionIdComparator;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LinkedSegmentSetTest {
+
+    @Test
+    public void testOrderAgainstTreeSet() {
+        Random random = new Random(42L);
+        LinkedSegmentSet set = new LinkedSegmentSet(SegmentLastTransmissionIdComparator.instance);
+        TreeSet<Segment> expectedSet = new TreeSet<Segment>(SegmentLastTransmissionIdComparator.instance);
+
+        Segment[] segments = new Segment[16];
+        for (int i = 0; i < segments.length; ++i)
+            segments[i] = new Segment((short) i, null);
+
+        short transmissionId = Short.MAX_VALUE - 500;
+        for (int i = 0; i < 20000; ++i) {
+            Segment segment = segments[random.nextInt(segments.length)];
+            expectedSet.remove(segment);
+
+            if (random.nextInt(3) > 0 || segment.getTransmissionIds().isEmpty()) {
+                // usually a newer transmission id, sometimes an older one
+                short newId = random.nextInt(8) > 0 ? ++transmissionId : (short) (transmissionId - random.nextInt(16));
+                segment.addTransmissionId(newId);
+            } else {
+                segment.removeTransmissionId(random.nextBoolean()
+                        ? segment.getFirstTransmissionId() : segment.getLastTransmissionId());
+            }
+
+            if (segment.getTransmissionIds().isEmpty()) {
+                assertTrue(set.removeSegment(segment));
+                assertNull(set.getKeys(segment));
+            } else {
+                expectedSet.add(segment);
+                set.putSegment(segment, segment.getTransmissionIds());
+                assertSame(segment.getTransmissionIds(), set.getKeys(segment));
+            }
+
+            assertEquals(expectedSet.size(), set.size());
+            assertEquals(new ArrayList<Segment>(expectedSet), new ArrayList<Segment>(set));
+            if (!expectedSet.isEmpty()) {
+                assertSame(expectedSet.first(), set.first());
+                assertSame(expectedSet.last(), set.last());
+                assertSame(expectedSet.higher(segment), set.higher(segment));
+                assertSame(expectedSet.lower(segment), set.lower(segment));
+            }
+        }
+
+        assertEquals(new ArrayList<Segment>(expectedSet.descendingSet()), new ArrayList<Segment>(set.descendingSet()));
+        Segment segment = set.pollFirstSegment();
+        while (segment != null) {
+            assertSame(expectedSet.pollFirst(), segment);
+            assertFalse(set.contains(segment));
+            segment = set.pollFirstSegment();
+        }
+        assertTrue(expectedSet.isEmpty());
+    }
+
+    @Test
+    public void testSingleOwner() {
+        LinkedSegmentSet set = new LinkedSegmentSet(SegmentLastTransmissionIdComparator.instance);
+        LinkedSegmentSet otherSet = new LinkedSegmentSet(SegmentLastTransmissionIdComparator.instance);
+        Segment segment = new Segment((short) 1, null);
+        segment.addTransmissionId((short) 1);
+
+        assertTrue(set.putSegment(segment, segment.getTransmissionIds()));
+        assertFalse(set.putSegment(segment, segment.getTransmissionIds()));
+        assertFalse(otherSet.contains(segment));
+        assertFalse(otherSet.removeSegment(segment));
+
+        try {
+            otherSet.putSegment(segment, segment.getTransmissionIds());
+            fail("Segment can be contained in one set only");
+        } catch (IllegalStateException e) {
+        }
+
+        try {
+            set.remove(segment);
+            fail("Set should be read-only");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+}
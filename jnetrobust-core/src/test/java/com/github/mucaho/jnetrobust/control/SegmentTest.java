@@ -7,6 +7,8 @@
 
 package com.github.mucaho.jnetrobust.control;
 
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.util.VarInt;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
 import mockit.Deencapsulation;
@@ -77,7 +79,7 @@ public class SegmentTest {
 
         int i = 0;
         for (short ref : segment.getTransmissionIds()) {
-            assertEquals("Reference does not match.", expectedRefs[i++], new Short(ref));
+            assertEquals("Reference does not match.", expectedRefs[i++], Short.valueOf(ref));
         }
     }
 
@@ -173,7 +175,7 @@ public class SegmentTest {
         assertNotEquals("Cloned value did not change", deserialize(original.getData()), deserialize(clone.getData()));
 
         Deencapsulation.setField(original, "dataId", Short.MIN_VALUE);
-        assertEquals("Original dataId did change", new Short(Short.MIN_VALUE), original.getDataId());
+        assertEquals("Original dataId did change", Short.valueOf(Short.MIN_VALUE), original.getDataId());
         assertNotEquals("Cloned reference did not change", original.getDataId(), clone.getDataId());
 
         original.addTransmissionId((short) -1);
@@ -202,6 +204,352 @@ public class SegmentTest {
         }
     }
 
+    @Test
+    public void testPooledRecycling() {
+        Segment segment = Segment.obtain((short) 5, serialize("Heyya!"));
+        segment.addTransmissionId((short) 2);
+        assertEquals("Obtained segment is referenced once", 1, segment.getReferenceCount());
+
+        segment.retain();
+        segment.release();
+        assertEquals("Segment is not recycled while referenced", Short.valueOf((short) 5), segment.getDataId());
+
+        long recycleCount = Segment.getPool().getRecycleCount();
+        segment.release();
+        assertEquals("Segment is recycled once not referenced", recycleCount + 1, Segment.getPool().getRecycleCount());
+        assertNull("Recycled segment was reset", segment.getDataId());
+        assertNull("Recycled segment was reset", segment.getData());
+        assertTrue("Recycled segment was reset", segment.getTransmissionIds().isEmpty());
+
+        try {
+            segment.release();
+            fail("Recycled segment must not be released again");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testBorrowedData() {
+        Segment outSegment = Segment.obtain((short) 5, serialize("Heyya!"));
+        outSegment.addTransmissionId((short) 2);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        int index = 3;
+        Segment.writeExternalStatic(outSegment, buffer, index);
+
+        Segment segment = Segment.readExternalStatic(buffer, index, null, null, true);
+        assertTrue("Data is borrowed", segment.isDataBorrowed());
+        assertTrue("Borrowed data is read-only", segment.getData().isReadOnly());
+        assertEquals("Value mismatch.", "Heyya!", deserialize(segment.getData()));
+        segment.getData().rewind();
+
+        // borrowed data is a view of the buffer
+        int dataIndex = index + outSegment.getSize() - serialize("Heyya!").remaining();
+        buffer.putChar(dataIndex + Integer.SIZE / Byte.SIZE, 'B');
+        assertEquals("Borrowed data is not a view", "Beyya!", deserialize(segment.getData()));
+        segment.getData().rewind();
+
+        ByteBuffer borrowedView = segment.getData();
+        segment.detachData();
+        assertFalse("Data is detached", segment.isDataBorrowed());
+        assertEquals("Borrowed view is invalidated", 0, borrowedView.limit());
+        buffer.putChar(index + Short.SIZE / Byte.SIZE * 2 + 1 + Integer.SIZE / Byte.SIZE, 'H');
+        assertEquals("Detached data is a copy", "Beyya!", deserialize(segment.getData()));
+        segment.release();
+
+        segment = Segment.readExternalStatic(buffer, index, null, null, true);
+        borrowedView = segment.getData();
+        segment.release();
+        assertEquals("Borrowed view is invalidated upon recycling", 0, borrowedView.limit());
+
+        outSegment.release();
+    }
+
+    public Object[][] parametersForTestDeltaSerialization() {
+        return new Object[][] {
+                {false, false},
+                {false, true},
+                {true, false},
+                {true, true}
+        };
+    }
+
+    @Test
+    @Parameters
+    public final void testDeltaSerialization(Boolean compact, Boolean stream) throws Exception {
+        boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+        ProtocolConfig.setUseCompactHeaders(compact);
+        try {
+            String baselineValue = "position=(1.0,2.0,3.0) rotation=(0.0,0.0)";
+            String value = "position=(1.0,2.5,3.0) rotation=(0.0,0.0)!";
+            Segment baseline = Segment.obtain((short) 7, serialize(baselineValue));
+            Segment outSegment = Segment.obtain((short) 9, serialize(value));
+            outSegment.addTransmissionId((short) 4);
+
+            int rawSize = outSegment.getSize();
+            assertTrue("Data was not encoded", outSegment.encodeDelta(baseline));
+            assertTrue(outSegment.isDeltaEncoded());
+            assertEquals(Short.valueOf((short) 7), outSegment.getBaselineDataId());
+            assertTrue("Encoded segment is not smaller", outSegment.getSize() < rawSize);
+            assertEquals("Data was modified", value, deserialize(outSegment.getData()));
+
+            Segment inSegment;
+            if (stream) {
+                ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(outStream);
+                outSegment.writeExternal(out);
+                out.close();
+
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+                inSegment = new Segment();
+                inSegment.readExternal(in);
+                in.close();
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(256);
+                outSegment.writeExternal(buffer);
+                assertEquals("Size mismatch", outSegment.getSize(), buffer.position());
+                buffer.flip();
+                inSegment = new Segment();
+                inSegment.readExternal(buffer);
+            }
+
+            assertEquals(outSegment.getDataId(), inSegment.getDataId());
+            assertEquals(outSegment.getLastTransmissionId(), inSegment.getLastTransmissionId());
+            assertEquals(Short.valueOf((short) 7), inSegment.getBaselineDataId());
+            assertNull("Data decoded without baseline", inSegment.getData());
+
+            Segment clonedSegment = inSegment.clone();
+            Segment oversizedSegment = inSegment.clone();
+            assertTrue("Data not decoded", inSegment.decodeDelta(baseline));
+            assertFalse(inSegment.isDeltaEncoded());
+            assertEquals("Value mismatch", value, deserialize(inSegment.getData()));
+
+            // data is discarded if baseline is missing
+            assertFalse("Data decoded without baseline", clonedSegment.decodeDelta(null));
+            assertFalse(clonedSegment.isDeltaEncoded());
+            assertNull(clonedSegment.getData());
+
+            // data is discarded if the encoded data claims an oversized data, before a buffer is allocated for it
+            ByteBuffer oversizedDelta = Deencapsulation.getField(oversizedSegment, "delta");
+            oversizedDelta.limit(oversizedDelta.capacity());
+            oversizedDelta.limit(VarInt.write(oversizedDelta, 0, Integer.MAX_VALUE));
+            assertFalse("Oversized data decoded", oversizedSegment.decodeDelta(baseline));
+            assertFalse(oversizedSegment.isDeltaEncoded());
+            assertNull(oversizedSegment.getData());
+
+            // data is transmitted as is, if the encoding does not pay off
+            Segment unrelatedSegment = Segment.obtain((short) 10, serialize("Heyya!"));
+            assertFalse(unrelatedSegment.encodeDelta(baseline));
+            assertFalse(unrelatedSegment.isDeltaEncoded());
+
+            outSegment.discardDelta();
+            assertFalse(outSegment.isDeltaEncoded());
+            assertEquals(rawSize, outSegment.getSize());
+        } finally {
+            ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+        }
+    }
+
+    public Object[][] parametersForTestFragmentSerialization() {
+        return new Object[][] {
+                {false, false},
+                {false, true},
+                {true, false},
+                {true, true}
+        };
+    }
+
+    @Test
+    @Parameters
+    public final void testFragmentSerialization(Boolean compact, Boolean stream) throws Exception {
+        boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+        ProtocolConfig.setUseCompactHeaders(compact);
+        try {
+            String value = "fragment";
+            Segment outSegment = Segment.obtain((short) 9, serialize(value));
+            outSegment.addTransmissionId((short) 4);
+            int rawSize = outSegment.getSize();
+            outSegment.setFragment(3, 5);
+            assertTrue(outSegment.isFragment());
+            assertTrue("Fragment header is missing", outSegment.getSize() > rawSize);
+            assertTrue(outSegment.getSize() - rawSize <= Segment.getMaximumFragmentHeaderSize());
+
+            Segment inSegment;
+            if (stream) {
+                ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(outStream);
+                outSegment.writeExternal(out);
+                out.close();
+
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+                inSegment = new Segment();
+                inSegment.readExternal(in);
+                in.close();
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(256);
+                outSegment.writeExternal(buffer);
+                assertEquals("Size mismatch", outSegment.getSize(), buffer.position());
+                buffer.flip();
+                inSegment = new Segment();
+                inSegment.readExternal(buffer);
+            }
+
+            assertEquals(outSegment.getDataId(), inSegment.getDataId());
+            assertTrue(inSegment.isFragment());
+            assertEquals(3, inSegment.getFragmentIndex());
+            assertEquals(5, inSegment.getFragmentCount());
+            assertEquals("Value mismatch", value, deserialize(inSegment.getData()));
+
+            Segment clonedSegment = inSegment.clone();
+            assertEquals(3, clonedSegment.getFragmentIndex());
+            assertEquals(5, clonedSegment.getFragmentCount());
+
+            try {
+                outSegment.setFragment(5, 5);
+                fail("Fragment index beyond fragment count accepted");
+            } catch (IllegalArgumentException e) {
+            }
+        } finally {
+            ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+        }
+    }
+
+    @Test
+    public final void testFixedDataSizeLimit() throws Exception {
+        boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+        int highestPossibleMTUSize = ProtocolConfig.getHighestPossibleMTUSize();
+        ProtocolConfig.setUseCompactHeaders(false);
+        try {
+            // the data size would overlap the flags of the fixed header format otherwise
+            ProtocolConfig.setHighestPossibleMTUSize(1 << 15);
+            assertEquals(ProtocolConfig.MAX_HIGHEST_POSSIBLE_MTU_SIZE, ProtocolConfig.getHighestPossibleMTUSize());
+
+            int dataSize = ProtocolConfig.MAX_HIGHEST_POSSIBLE_MTU_SIZE - Segment.getMaximumFragmentHeaderSize() - 8;
+            ByteBuffer data = ByteBuffer.allocate(dataSize);
+            data.put(dataSize - 1, (byte) 1);
+            Segment outSegment = Segment.obtain((short) 9, data);
+            outSegment.addTransmissionId((short) 4);
+            outSegment.setFragment(3, 5);
+
+            ByteBuffer buffer = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+            outSegment.writeExternal(buffer);
+            buffer.flip();
+            Segment inSegment = new Segment();
+            inSegment.readExternal(buffer);
+
+            assertTrue(inSegment.isFragment());
+            assertFalse(inSegment.isDeltaEncoded());
+            assertEquals(3, inSegment.getFragmentIndex());
+            assertEquals(dataSize, inSegment.getData().limit());
+            assertEquals(1, inSegment.getData().get(dataSize - 1));
+        } finally {
+            ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+            ProtocolConfig.setHighestPossibleMTUSize(highestPossibleMTUSize);
+        }
+    }
+
+    @Test
+    public final void testOversizedSerialization() throws Exception {
+        boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+        ProtocolConfig.setUseCompactHeaders(true);
+        try {
+            // a header, whose data size exceeds the highest possible MTU size regardless of its flags
+            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(outStream);
+            out.writeShort(9);
+            out.writeShort(4);
+            VarInt.write(out, 1 << 24);
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+            try {
+                new Segment().readExternal(in);
+                fail("Oversized data size accepted");
+            } catch (IllegalArgumentException e) {
+            }
+            in.close();
+
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            buffer.putShort((short) 9);
+            buffer.putShort((short) 4);
+            buffer.position(VarInt.write(buffer, buffer.position(), 1 << 24));
+            buffer.flip();
+            try {
+                new Segment().readExternal(buffer);
+                fail("Oversized data size accepted");
+            } catch (IllegalArgumentException e) {
+            }
+        } finally {
+            ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+        }
+    }
+
+    public Object[][] parametersForTestLaneSerialization() {
+        return new Object[][] {
+                {ProtocolConfig.DeliveryLane.RELIABLE_ORDERED, false},
+                {ProtocolConfig.DeliveryLane.RELIABLE_ORDERED, true},
+                {ProtocolConfig.DeliveryLane.RELIABLE_UNORDERED, false},
+                {ProtocolConfig.DeliveryLane.UNRELIABLE_SEQUENCED, true},
+                {ProtocolConfig.DeliveryLane.UNRELIABLE, false}
+        };
+    }
+
+    @Test
+    @Parameters
+    public final void testLaneSerialization(ProtocolConfig.DeliveryLane lane, Boolean stream) throws Exception {
+        boolean useDeliveryLanes = ProtocolConfig.useDeliveryLanes();
+        boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+        ProtocolConfig.setUseDeliveryLanes(true);
+        ProtocolConfig.setUseCompactHeaders(true);
+        try {
+            String value = "lane";
+            Segment outSegment = Segment.obtain((short) 9, serialize(value));
+            outSegment.addTransmissionId((short) 4);
+            int rawSize = outSegment.getSize();
+            if (lane == ProtocolConfig.DeliveryLane.RELIABLE_ORDERED) {
+                // user-datas of other lanes and streams were sent in between
+                outSegment.setStreamId(300);
+                outSegment.setPrecedingDataId((short) 1);
+            } else {
+                outSegment.setLane(lane);
+            }
+            assertTrue("Lane header is missing", outSegment.getSize() > rawSize);
+            assertTrue(outSegment.getSize() - rawSize <= 6);
+
+            Segment inSegment;
+            if (stream) {
+                ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(outStream);
+                outSegment.writeExternal(out);
+                out.close();
+
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+                inSegment = new Segment();
+                inSegment.readExternal(in);
+                in.close();
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(256);
+                outSegment.writeExternal(buffer);
+                assertEquals("Size mismatch", outSegment.getSize(), buffer.position());
+                buffer.flip();
+                inSegment = new Segment();
+                inSegment.readExternal(buffer);
+            }
+
+            assertEquals(outSegment.getDataId(), inSegment.getDataId());
+            assertEquals(lane, inSegment.getLane());
+            assertEquals(outSegment.getPrecedingDataId(), inSegment.getPrecedingDataId());
+            assertEquals(outSegment.getStreamId(), inSegment.getStreamId());
+            assertEquals("Value mismatch", value, deserialize(inSegment.getData()));
+
+            Segment clonedSegment = inSegment.clone();
+            assertEquals(lane, clonedSegment.getLane());
+            assertEquals(outSegment.getPrecedingDataId(), clonedSegment.getPrecedingDataId());
+            assertEquals(outSegment.getStreamId(), clonedSegment.getStreamId());
+        } finally {
+            ProtocolConfig.setUseDeliveryLanes(useDeliveryLanes);
+            ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+        }
+    }
+
     protected static ByteBuffer serialize(String value) {
         char[] chars = value.toCharArray();
 
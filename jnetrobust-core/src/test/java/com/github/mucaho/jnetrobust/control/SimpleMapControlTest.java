@@ -276,6 +276,36 @@ public class SimpleMapControlTest extends AbstractMapControlTest {
         assertEquals("dataMap value size is 0", 0, dataMap.valueSize());
     }
 
+    @Test
+    public final void testDiscardEntriesWithTooManyEntryKeys_RedundantKeys() {
+        final int redundantCount = 10;
+        Segment segment = new Segment(++dataId, serializeInt(0));
+        short key = 0;
+
+        // redundant copies do not count towards the limit
+        for (int i = 0; i < redundantCount; ++i) {
+            dataMap.put(++key, segment);
+            segment.addRedundantTransmissionId(key);
+        }
+        for (int i = 0; i < control.maxEntryOccurrences; ++i)
+            dataMap.put(++key, segment);
+        Deencapsulation.invoke(control, "discardEntriesWithTooManyEntryKeys");
+        assertTrue("discarded data count is 0", discardedSegments.isEmpty());
+        assertEquals(redundantCount, segment.getRedundantTransmissionCount());
+
+        // once the keys of the redundant copies are trimmed, they are no longer subtracted
+        for (short redundantKey = 1; redundantKey <= redundantCount; ++redundantKey)
+            dataMap.remove(redundantKey);
+        assertEquals(0, segment.getRedundantTransmissionCount());
+        Deencapsulation.invoke(control, "discardEntriesWithTooManyEntryKeys");
+        assertTrue("discarded data count is 0", discardedSegments.isEmpty());
+
+        dataMap.put(++key, segment);
+        Deencapsulation.invoke(control, "discardEntriesWithTooManyEntryKeys");
+        assertEquals("discarded data count is 1", 1, discardedSegments.size());
+        assertTrue("datamap is empty", dataMap.isEmpty());
+    }
+
     @Test
     public final void testDiscardTimedoutEntries() throws InterruptedException {
         Deencapsulation.setField(control, "maxEntryTimeout", 1000L);
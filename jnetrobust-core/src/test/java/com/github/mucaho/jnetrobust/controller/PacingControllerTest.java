@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.controller;
+
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.ProtocolListener;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class PacingControllerTest {
+    private static final int PACKET_COUNT = 20;
+    private static final int DATA_SIZE = 400;
+    private static final int PACING_RATE = 10 * 1024;
+
+    private static PacingController createPacedController(int pacingRate) {
+        ProtocolConfig config = new ProtocolConfig();
+        PackagingController controller = new PackagingController(new ProcessingController(new ProtocolListener(), config));
+        PacingController pacingController = new PacingController(controller, pacingRate);
+
+        for (int i = 0; i < PACKET_COUNT; ++i)
+            pacingController.pace(controller.send(ByteBuffer.allocate(DATA_SIZE)));
+
+        return pacingController;
+    }
+
+    @Test
+    public final void testUnpaced() {
+        PacingController pacingController = createPacedController(0);
+        assertEquals(0L, pacingController.getPacingRate());
+        assertEquals(PACKET_COUNT, pacingController.getPacedCount());
+
+        long timeNow = 0L;
+        for (int i = 0; i < PACKET_COUNT; ++i) {
+            assertEquals(timeNow, pacingController.getNextSendTime(timeNow));
+            Packet packet = pacingController.poll(timeNow);
+            assertNotNull(packet);
+            assertEquals(1, packet.getSegments().size());
+            packet.release();
+        }
+
+        assertNull(pacingController.poll(timeNow));
+        assertEquals(Long.MAX_VALUE, pacingController.getNextSendTime(timeNow));
+    }
+
+    @Test
+    public final void testPaced() {
+        PacingController pacingController = createPacedController(PACING_RATE);
+        assertEquals(PACING_RATE, pacingController.getPacingRate());
+
+        long startTime = 1000L;
+        long timeNow = startTime;
+        int packetSize = 0;
+        int burstCount = 0;
+
+        // a burst of at most two packets of MTU size is released immediately
+        Packet packet = pacingController.poll(timeNow);
+        while (packet != null) {
+            packetSize = packet.getSize();
+            packet.release();
+            burstCount++;
+            packet = pacingController.poll(timeNow);
+        }
+        assertEquals(2 * ProtocolConfig.CONSERVATIVE_MTU_SIZE / packetSize, burstCount);
+
+        // the remaining packets are released once enough time has passed
+        int releasedCount = burstCount;
+        while (releasedCount < PACKET_COUNT) {
+            long nextSendTime = pacingController.getNextSendTime(timeNow);
+            assertTrue(nextSendTime > timeNow);
+            assertNull(pacingController.poll(nextSendTime - 1));
+
+            timeNow = nextSendTime;
+            packet = pacingController.poll(timeNow);
+            assertNotNull(packet);
+            packet.release();
+            releasedCount++;
+        }
+        assertEquals(Long.MAX_VALUE, pacingController.getNextSendTime(timeNow));
+
+        // the packets after the burst are released at the pacing rate, once the credit left over from the burst is spent
+        int leftoverCredit = 2 * ProtocolConfig.CONSERVATIVE_MTU_SIZE - burstCount * packetSize;
+        long expectedDuration = ((PACKET_COUNT - burstCount) * packetSize - leftoverCredit) * 1000L / PACING_RATE;
+        long duration = timeNow - startTime;
+        assertTrue("paced packets were not released at the pacing rate: " + duration + " != " + expectedDuration,
+                Math.abs(duration - expectedDuration) <= burstCount);
+    }
+}
@@ -0,0 +1,1114 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.controller;
+
+import com.github.mucaho.jnetrobust.CongestionController;
+import com.github.mucaho.jnetrobust.PayloadCodec;
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.ProtocolListener;
+import com.github.mucaho.jnetrobust.SendOptions;
+import com.github.mucaho.jnetrobust.control.Segment;
+import com.github.mucaho.jnetrobust.util.AIMDCongestionController;
+import com.github.mucaho.jnetrobust.util.DeflatePayloadCodec;
+import com.github.mucaho.jnetrobust.util.LZPayloadCodec;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnitParamsRunner.class)
+public class PackagingControllerTest {
+    private static final int DATA_COUNT = 60;
+    // exceeds the number of transmission ids covered by the preceding transmission ack vector
+    private static final int ACKED_DATA_COUNT = 150;
+    private static final int LOST_DATA_COUNT = 5;
+    private static final int FRAGMENTED_DATA_SIZE = 5000;
+    private static final int PARITY_GROUP_SIZE = 4;
+    // packets of this many segments spread their first transmissionIds, the ones of every other packet are 128 apart
+    private static final int PARITY_SEGMENT_COUNT = 64;
+    private static final int REDUNDANCY_LIMIT = 3;
+    private static final int CONSUMPTION_WINDOW = 8;
+    private static final int DELTA_DATA_SIZE = 64;
+    // exceeds the number of datas the receiver holds on to as baselines
+    private static final int DELTA_DATA_COUNT = 130;
+
+    private static class ShiftedTimeController extends ProcessingController {
+        private long timeShift = 0L;
+
+        ShiftedTimeController(ProtocolListener listener, ProtocolConfig config) {
+            super(listener, config);
+        }
+
+        @Override
+        public void setTimeNow(long timeNow) {
+            super.setTimeNow(timeNow + timeShift);
+        }
+    }
+
+    // the tested features require the compact header format
+    private final boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+
+    @Before
+    public void setUp() {
+        ProtocolConfig.setUseCompactHeaders(true);
+    }
+
+    @After
+    public void tearDown() {
+        ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+    }
+
+    public Object[][] parametersForTestCompressedPacking() {
+        return new Object[][] {
+                {new LZPayloadCodec(), new LZPayloadCodec()},
+                {new DeflatePayloadCodec(), new DeflatePayloadCodec()}
+        };
+    }
+
+    @Test
+    @Parameters
+    public final void testCompressedPacking(PayloadCodec senderCodec, PayloadCodec receiverCodec) {
+        int uncompressedPacketCount = retransmitAll(null, null);
+        int compressedPacketCount = retransmitAll(senderCodec, receiverCodec);
+        assertTrue("compression does not pack more segments into a packet: "
+                        + compressedPacketCount + " >= " + uncompressedPacketCount,
+                compressedPacketCount < uncompressedPacketCount);
+    }
+
+    @Test
+    public final void testPacketTransmissionIds() {
+        int segmentAckedCount = retransmitAllAndAcknowledge(false);
+        int packetAckedCount = retransmitAllAndAcknowledge(true);
+        assertTrue("ack vector covers all segments of the packets: " + segmentAckedCount,
+                segmentAckedCount < ACKED_DATA_COUNT);
+        assertEquals("ack vector does not cover all packets", ACKED_DATA_COUNT, packetAckedCount);
+    }
+
+    @Test
+    public final void testAckRanges() {
+        int ackRangeLimit = ProtocolConfig.getAckRangeLimit();
+        try {
+            ProtocolConfig.setAckRangeLimit(0);
+            int bitsAckedCount = sendAndAcknowledgeLast(false);
+            ProtocolConfig.setAckRangeLimit(4);
+            int rangesAckedCount = sendAndAcknowledgeLast(false);
+            int packetRangesAckedCount = sendAndAcknowledgeLast(true);
+
+            int receivedCount = ACKED_DATA_COUNT - LOST_DATA_COUNT;
+            assertTrue("ack vector covers all transmissions: " + bitsAckedCount, bitsAckedCount < receivedCount);
+            assertEquals("ack ranges do not cover all transmissions", receivedCount, rangesAckedCount);
+            assertEquals("ack ranges do not cover all packets", receivedCount, packetRangesAckedCount);
+        } finally {
+            ProtocolConfig.setAckRangeLimit(ackRangeLimit);
+        }
+    }
+
+    @Test
+    public final void testBatchSend() {
+        final List<Byte> orderedValues = new ArrayList<Byte>();
+        final List<Short> orderedDataIds = new ArrayList<Short>();
+        PackagingController sender = new PackagingController(new ProcessingController(new ProtocolListener(),
+                new ProtocolConfig()));
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                orderedValues.add(orderedData.get(0));
+                orderedDataIds.add(dataId);
+            }
+        }, new ProtocolConfig()));
+
+        List<ByteBuffer> datas = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < DATA_COUNT; ++i) {
+            ByteBuffer data = ByteBuffer.allocate(32);
+            data.put(0, (byte) i);
+            datas.add(data);
+        }
+
+        // no data is sent if one of them is too large
+        datas.add(ByteBuffer.allocate(sender.getMaximumDataSize() + 1));
+        try {
+            sender.send(datas);
+            fail("data exceeding the maximum data size accepted");
+        } catch (IllegalArgumentException e) {
+        }
+        datas.remove(datas.size() - 1);
+
+        NavigableMap<Short, Packet> packets = sender.send(datas);
+        assertTrue("datas are not packed together", packets.size() < DATA_COUNT / 10);
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        for (Packet packet : packets.values()) {
+            datagram.clear();
+            sender.send(packet, datagram);
+            datagram.flip();
+            receiver.receive(datagram);
+        }
+
+        // each data is received individually, in the order of the list
+        assertEquals(DATA_COUNT, orderedValues.size());
+        for (int i = 0; i < DATA_COUNT; ++i) {
+            assertEquals((byte) i, orderedValues.get(i).byteValue());
+            assertEquals((short) (Short.MIN_VALUE + 1 + i), orderedDataIds.get(i).shortValue());
+        }
+    }
+
+    @Test
+    public final void testFragmentation() {
+        final List<ByteBuffer> orderedDatas = new ArrayList<ByteBuffer>();
+        final List<Short> orderedDataIds = new ArrayList<Short>();
+        ProtocolConfig config = new ProtocolConfig();
+        config.setFragmentLimit(8);
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener(), config);
+        PackagingController sender = new PackagingController(senderController);
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                ByteBuffer copy = ByteBuffer.allocate(orderedData.remaining());
+                copy.put(orderedData);
+                copy.flip();
+                orderedDatas.add(copy);
+                orderedDataIds.add(dataId);
+            }
+        }, config));
+
+        try {
+            sender.send(ByteBuffer.allocate(sender.getMaximumFragmentedDataSize() + 1));
+            fail("data exceeding the fragment limit accepted");
+        } catch (IllegalArgumentException e) {
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(FRAGMENTED_DATA_SIZE);
+        for (int i = 0; i < FRAGMENTED_DATA_SIZE; ++i)
+            data.put(i, (byte) i);
+
+        // each fragment is sent in a packet of its own, the second one is lost
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        NavigableMap<Short, Packet> packets = sender.send(data);
+        int fragmentCount = (FRAGMENTED_DATA_SIZE + sender.getMaximumDataSize() - 1) / sender.getMaximumDataSize();
+        assertTrue("data was not fragmented", packets.size() >= fragmentCount);
+        Short lastDataId = packets.lastKey();
+        Short lostDataId = packets.higherKey(packets.firstKey());
+        for (Packet packet : packets.values()) {
+            assertTrue(packet.getFirstSegment().isFragment());
+            if (packet.getLastSegment().getDataId().equals(lostDataId))
+                continue;
+
+            datagram.clear();
+            sender.send(packet, datagram);
+            datagram.flip();
+            assertTrue("fragments are handed out", receiver.receive(datagram).isEmpty());
+        }
+        assertTrue("incomplete data was reassembled", orderedDatas.isEmpty());
+
+        // all received fragments are acknowledged
+        datagram.clear();
+        receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+        datagram.flip();
+        sender.receive(datagram);
+
+        // only the lost fragment is retransmitted
+        senderController.timeShift = 10000L;
+        packets = sender.send((ByteBuffer) null);
+        assertEquals(1, packets.size());
+        Packet retransmit = packets.firstEntry().getValue();
+        assertEquals(1, retransmit.getSegments().size());
+        assertEquals(lostDataId, retransmit.getFirstSegment().getDataId());
+
+        datagram.clear();
+        sender.send(retransmit, datagram);
+        datagram.flip();
+        receiver.receive(datagram);
+
+        data.rewind();
+        assertEquals(1, orderedDatas.size());
+        assertEquals("reassembled data mismatch", data, orderedDatas.get(0));
+        assertEquals(lastDataId, orderedDataIds.get(0));
+    }
+
+    public Object[][] parametersForTestParityRecovery() {
+        return new Object[][] {
+                {1},
+                {PARITY_SEGMENT_COUNT}
+        };
+    }
+
+    @Test
+    @Parameters
+    public final void testParityRecovery(int segmentCount) {
+        final List<Short> orderedDataIds = new ArrayList<Short>();
+        final Set<Short> ackedDataIds = new HashSet<Short>();
+        ProtocolConfig config = new ProtocolConfig();
+        config.setParityGroupSize(PARITY_GROUP_SIZE);
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener() {
+            @Override
+            public void handleAckedData(short dataId, ByteBuffer ackedData) {
+                ackedDataIds.add(dataId);
+            }
+        }, config);
+        PackagingController sender = new PackagingController(senderController);
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                orderedDataIds.add(dataId);
+            }
+        }, config));
+
+        // each batch of datas is sent in a packet of its own, the parity follows the last packet of the group
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        Packet parity = null;
+        for (int i = 0; i < PARITY_GROUP_SIZE; ++i) {
+            List<ByteBuffer> datas = new ArrayList<ByteBuffer>();
+            for (int j = 0; j < segmentCount; ++j) {
+                ByteBuffer data = ByteBuffer.allocate(segmentCount > 1 ? 1 + i : sender.getMaximumDataSize() - i * 10);
+                data.put(0, (byte) i);
+                datas.add(data);
+            }
+            for (Packet packet : sender.send(datas).values()) {
+                if (!packet.isParity())
+                    assertEquals("datas are not packed together", segmentCount, packet.getSegments().size());
+                datagram.clear();
+                sender.send(packet, datagram);
+                assertTrue("packet exceeds maximum transmission unit",
+                        datagram.position() <= sender.getMaximumTransmissionUnitSize()
+                                - ProtocolConfig.MAXIMUM_LOWER_STACK_HEADER_SIZE);
+                datagram.flip();
+                if (packet.isParity())
+                    parity = packet;
+                // the second data is lost
+                else if (i != 1)
+                    receiver.receive(datagram);
+            }
+        }
+        assertEquals("datas following the lost data are ordered", segmentCount, orderedDataIds.size());
+        assertTrue("no parity sent", parity != null);
+
+        // the lost datas are recovered from the parity
+        datagram.clear();
+        sender.send(parity, datagram);
+        datagram.flip();
+        assertEquals("lost datas not recovered", segmentCount, receiver.receive(datagram).size());
+        assertEquals(PARITY_GROUP_SIZE * segmentCount, orderedDataIds.size());
+        for (int i = 0; i < PARITY_GROUP_SIZE * segmentCount; ++i)
+            assertEquals((short) (Short.MIN_VALUE + 1 + i), orderedDataIds.get(i).shortValue());
+
+        // the recovered datas are acknowledged, thus nothing is retransmitted
+        int ackRangeLimit = ProtocolConfig.getAckRangeLimit();
+        try {
+            // the ack vector does not cover all segments of the packets
+            ProtocolConfig.setAckRangeLimit(ProtocolConfig.MAX_ACK_RANGE_LIMIT);
+            datagram.clear();
+            receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+            datagram.flip();
+            sender.receive(datagram);
+        } finally {
+            ProtocolConfig.setAckRangeLimit(ackRangeLimit);
+        }
+        assertEquals(PARITY_GROUP_SIZE * segmentCount, ackedDataIds.size());
+
+        senderController.timeShift = 10000L;
+        NavigableMap<Short, Packet> packets = sender.send((ByteBuffer) null);
+        assertEquals(1, packets.size());
+        assertTrue("data retransmitted", packets.firstEntry().getValue().getSegments().isEmpty());
+        assertEquals(0f, sender.getLossRate(), 0f);
+    }
+
+    @Test
+    public final void testDeltaBaselineReordering() {
+        final List<ByteBuffer> orderedDatas = new ArrayList<ByteBuffer>();
+        final Set<Short> ackedDataIds = new HashSet<Short>();
+        ProtocolConfig config = new ProtocolConfig();
+        config.setUseDeltaEncoding(true);
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener() {
+            @Override
+            public void handleAckedData(short dataId, ByteBuffer ackedData) {
+                ackedDataIds.add(dataId);
+            }
+        }, config);
+        PackagingController sender = new PackagingController(senderController);
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                ByteBuffer copy = ByteBuffer.allocate(orderedData.remaining());
+                copy.put(orderedData);
+                copy.flip();
+                orderedDatas.add(copy);
+            }
+        }, config));
+
+        List<ByteBuffer> datas = new ArrayList<ByteBuffer>();
+        ByteBuffer data = ByteBuffer.allocate(DELTA_DATA_SIZE);
+        for (int i = 0; i < DELTA_DATA_SIZE; ++i)
+            data.put(i, (byte) i);
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+
+        // the baseline is received and acknowledged
+        datas.add(copy(data));
+        sendAndAcknowledge(sender, receiver, data, datagram, null);
+
+        // the data encoded against the baseline is delayed
+        data.put(0, (byte) -1);
+        datas.add(copy(data));
+        NavigableMap<Short, Packet> packets = sender.send(data);
+        data.rewind();
+        assertEquals(1, packets.size());
+        Short delayedDataId = packets.firstKey();
+        Packet delayedPacket = packets.firstEntry().getValue();
+        assertTrue("data not encoded", delayedPacket.getFirstSegment().isDeltaEncoded());
+        datagram.clear();
+        sender.send(delayedPacket, datagram);
+        datagram.flip();
+        ByteBuffer delayedDatagram = copy(datagram);
+
+        // so many newer datas are received meanwhile, that the receiver discards the baseline
+        for (int i = 0; i < DELTA_DATA_COUNT; ++i) {
+            data.put(1 + i % (DELTA_DATA_SIZE - 1), (byte) -1);
+            datas.add(copy(data));
+            sendAndAcknowledge(sender, receiver, data, datagram, delayedDataId);
+        }
+        assertEquals("datas following the delayed data are ordered", 1, orderedDatas.size());
+
+        // the delayed data can not be decoded, thus it is neither delivered nor acknowledged
+        receiver.receive(delayedDatagram);
+        assertEquals(1, orderedDatas.size());
+        datagram.clear();
+        receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+        datagram.flip();
+        sender.receive(datagram);
+        assertFalse("undecodable data acknowledged", ackedDataIds.contains(delayedDataId));
+
+        // the delayed data is retransmitted unencoded
+        senderController.timeShift = 10000L;
+        packets = sender.send((ByteBuffer) null);
+        for (Packet packet : packets.values()) {
+            for (Segment segment : packet.getSegments())
+                assertFalse("retransmitted data encoded", segment.isDeltaEncoded());
+            datagram.clear();
+            sender.send(packet, datagram);
+            datagram.flip();
+            receiver.receive(datagram);
+        }
+        assertEquals("ordered datas mismatch", datas, orderedDatas);
+    }
+
+    // sends the data and receives the acknowledgement, unless the packet contains the lost data
+    private static void sendAndAcknowledge(PackagingController sender, PackagingController receiver,
+                                           ByteBuffer data, ByteBuffer datagram, Short lostDataId) {
+        for (Packet packet : sender.send(data).values()) {
+            boolean lost = false;
+            for (Segment segment : packet.getSegments())
+                lost |= segment.getDataId().equals(lostDataId);
+            if (lost)
+                continue;
+
+            datagram.clear();
+            sender.send(packet, datagram);
+            datagram.flip();
+            receiver.receive(datagram);
+        }
+        data.rewind();
+
+        datagram.clear();
+        receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+        datagram.flip();
+        sender.receive(datagram);
+    }
+
+    private static ByteBuffer copy(ByteBuffer data) {
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data.duplicate());
+        copy.flip();
+        return copy;
+    }
+
+    @Test
+    public final void testRedundantTransmission() {
+        final List<Short> orderedDataIds = new ArrayList<Short>();
+        final Set<Short> ackedDataIds = new HashSet<Short>();
+        final Set<Short> unackedDataIds = new HashSet<Short>();
+        ProtocolConfig config = new ProtocolConfig();
+        config.setRedundancyLimit(REDUNDANCY_LIMIT);
+        // each data is sent once and copied redundantly thereafter
+        config.setPacketRetransmitLimit(1);
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener() {
+            @Override
+            public void handleAckedData(short dataId, ByteBuffer ackedData) {
+                ackedDataIds.add(dataId);
+            }
+
+            @Override
+            public void handleUnackedData(short dataId, ByteBuffer unackedData) {
+                unackedDataIds.add(dataId);
+            }
+        }, config);
+        PackagingController sender = new PackagingController(senderController);
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                orderedDataIds.add(dataId);
+            }
+        }, config));
+
+        // the packet of the second data is lost, its copy arrives along with the third data
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        for (int i = 0; i < REDUNDANCY_LIMIT + 1; ++i) {
+            senderController.timeShift = i * 50L;
+            NavigableMap<Short, Packet> packets = sender.send(ByteBuffer.allocate(8));
+            assertEquals(1, packets.size());
+            assertEquals((short) (Short.MIN_VALUE + 1 + i), packets.firstKey().shortValue());
+            Packet packet = packets.firstEntry().getValue();
+            assertEquals("unacked datas are not copied", Math.min(i, REDUNDANCY_LIMIT) + 1, packet.getSegments().size());
+            if (i == 1)
+                continue;
+
+            datagram.clear();
+            sender.send(packet, datagram);
+            datagram.flip();
+            receiver.receive(datagram);
+            assertEquals("lost data not received with the next packet", i + 1, orderedDataIds.size());
+        }
+        assertTrue("redundant copies count as retransmissions", unackedDataIds.isEmpty());
+
+        // the newest transmission is a redundant copy, which does not yield a round-trip time sample
+        senderController.timeShift = 1000L;
+        datagram.clear();
+        receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+        datagram.flip();
+        sender.receive(datagram);
+        assertEquals(REDUNDANCY_LIMIT + 1, ackedDataIds.size());
+        assertEquals("round-trip time sampled from redundant copy", 0L, sender.getSmoothedRTT());
+
+        // acked datas are no longer copied
+        assertEquals(1, sender.send(ByteBuffer.allocate(8)).firstEntry().getValue().getSegments().size());
+    }
+
+    @Test
+    public final void testCongestionControl() {
+        final List<Short> orderedDataIds = new ArrayList<Short>();
+        ProtocolConfig senderConfig = new ProtocolConfig();
+        senderConfig.setCongestionController(new AIMDCongestionController());
+        PackagingController sender = new PackagingController(new ProcessingController(new ProtocolListener(),
+                senderConfig));
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                orderedDataIds.add(dataId);
+            }
+        }, new ProtocolConfig()));
+        assertEquals(AIMDCongestionController.INITIAL_WINDOW, sender.getCongestionWindow());
+
+        // acknowledgements do not reach the sender, thus the window fills up and datas are deferred
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        int sentCount = 0;
+        for (int i = 0; i < DATA_COUNT; ++i) {
+            for (Packet packet : sender.send(ByteBuffer.allocate(200)).values()) {
+                sentCount += packet.getSegments().size();
+                datagram.clear();
+                sender.send(packet, datagram);
+                datagram.flip();
+                receiver.receive(datagram);
+            }
+            assertTrue("window exceeded", sender.getBytesInFlight() <= sender.getCongestionWindow());
+        }
+        assertTrue("datas not deferred", sentCount < DATA_COUNT / 2);
+        assertEquals(sentCount, orderedDataIds.size());
+
+        // acknowledgements open the window, the deferred datas are sent in order
+        for (int i = 0; i < DATA_COUNT && orderedDataIds.size() < DATA_COUNT; ++i) {
+            datagram.clear();
+            receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+            datagram.flip();
+            sender.receive(datagram);
+
+            for (Packet packet : sender.send((ByteBuffer) null).values()) {
+                datagram.clear();
+                sender.send(packet, datagram);
+                datagram.flip();
+                receiver.receive(datagram);
+            }
+            assertTrue("window exceeded", sender.getBytesInFlight() <= sender.getCongestionWindow());
+        }
+        assertTrue("window did not grow", sender.getCongestionWindow() > AIMDCongestionController.INITIAL_WINDOW);
+        assertEquals(DATA_COUNT, orderedDataIds.size());
+        for (int i = 0; i < DATA_COUNT; ++i)
+            assertEquals((short) (Short.MIN_VALUE + 1 + i), orderedDataIds.get(i).shortValue());
+    }
+
+    @Test
+    public final void testDeferredRetransmits() {
+        // a window, which is narrowed after the datas are sent, and which counts the losses
+        final int[] window = {2048};
+        final int[] lostCounts = {0, 0};
+        ProtocolConfig senderConfig = new ProtocolConfig();
+        senderConfig.setCongestionController(new CongestionController() {
+            @Override
+            public int getCongestionWindow() {
+                return window[0];
+            }
+
+            @Override
+            public void handleAcked(int ackedBytes, int bytesInFlight, long timeNow) {
+            }
+
+            @Override
+            public void handleLost(int lostBytes, boolean timedOut, long smoothedRTT, long timeNow) {
+                lostCounts[0]++;
+                lostCounts[1] += lostBytes;
+            }
+
+            @Override
+            public void handleRTTSample(long rtt, long smoothedRTT, long timeNow) {
+            }
+        });
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener(), senderConfig);
+        PackagingController sender = new PackagingController(senderController);
+        final List<Short> orderedDataIds = new ArrayList<Short>();
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                orderedDataIds.add(dataId);
+            }
+        }, new ProtocolConfig()));
+
+        // all datas are sent, but lost
+        List<ByteBuffer> datas = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < 8; ++i)
+            datas.add(ByteBuffer.allocate(200));
+        sender.send(datas);
+        int sentBytes = sender.getBytesInFlight();
+        assertTrue("datas deferred", sentBytes > 8 * 200);
+
+        // the datas time out, only some of the retransmits fit into the narrowed window
+        window[0] = 512;
+        senderController.timeShift = 1100L;
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        int retransmitCount = 0;
+        for (Packet packet : sender.send((ByteBuffer) null).values()) {
+            retransmitCount += packet.getSegments().size();
+            datagram.clear();
+            sender.send(packet, datagram);
+            datagram.flip();
+            receiver.receive(datagram);
+        }
+        assertTrue("retransmits not deferred", retransmitCount > 0 && retransmitCount < 8);
+        assertEquals(1, lostCounts[0]);
+        assertEquals(sentBytes, lostCounts[1]);
+        float lossRate = sender.getLossRate();
+
+        // the window stays full, the deferred retransmits are not lost anew, although their sent time is outdated
+        for (int i = 0; i < 4; ++i) {
+            senderController.timeShift = 2100L + i * 100L;
+            for (Packet packet : sender.send((ByteBuffer) null).values())
+                assertTrue("deferred retransmits sent", packet.getSegments().isEmpty());
+            assertEquals(1, lostCounts[0]);
+            assertEquals(sentBytes, lostCounts[1]);
+            assertEquals(lossRate, sender.getLossRate(), 0f);
+        }
+
+        // the window opens, the deferred retransmits are sent
+        window[0] = 4096;
+        for (Packet packet : sender.send((ByteBuffer) null).values()) {
+            retransmitCount += packet.getSegments().size();
+            datagram.clear();
+            sender.send(packet, datagram);
+            datagram.flip();
+            receiver.receive(datagram);
+        }
+        assertEquals(8, retransmitCount);
+        assertEquals(1, lostCounts[0]);
+        assertEquals(8, orderedDataIds.size());
+    }
+
+    @Test
+    public final void testFlowControl() {
+        boolean useFlowControl = ProtocolConfig.useFlowControl();
+        ProtocolConfig.setUseFlowControl(true);
+        try {
+            final List<Short> orderedDataIds = new ArrayList<Short>();
+            PackagingController sender = new PackagingController(new ProcessingController(new ProtocolListener(),
+                    new ProtocolConfig()));
+            PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+                @Override
+                public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                    orderedDataIds.add(dataId);
+                }
+            }, new ProtocolConfig()));
+            receiver.setConsumptionWindow(CONSUMPTION_WINDOW);
+
+            // the receiver advertises its receive window
+            ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+            datagram.clear();
+            receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+            datagram.flip();
+            sender.receive(datagram);
+
+            // acknowledgements do not reach the sender, thus datas beyond the receive window are held back
+            for (int i = 0; i < DATA_COUNT; ++i) {
+                for (Packet packet : sender.send(ByteBuffer.allocate(200)).values()) {
+                    datagram.clear();
+                    sender.send(packet, datagram);
+                    datagram.flip();
+                    receiver.receive(datagram);
+                }
+            }
+            assertEquals("receive window exceeded", CONSUMPTION_WINDOW, orderedDataIds.size());
+
+            // the advanced receive window lets the next datas through
+            for (int i = 0; i < DATA_COUNT && orderedDataIds.size() < DATA_COUNT; ++i) {
+                // the receiver opens its receive window completely after a while
+                if (i == 1)
+                    receiver.setConsumptionWindow(ProtocolConfig.MAX_PACKET_QUEUE_LIMIT);
+
+                datagram.clear();
+                receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+                datagram.flip();
+                sender.receive(datagram);
+
+                for (Packet packet : sender.send((ByteBuffer) null).values()) {
+                    datagram.clear();
+                    sender.send(packet, datagram);
+                    datagram.flip();
+                    receiver.receive(datagram);
+                }
+
+                int expectedCount = i == 0 ? 2 * CONSUMPTION_WINDOW : DATA_COUNT;
+                assertEquals("receive window not advanced", expectedCount, orderedDataIds.size());
+            }
+            assertEquals(DATA_COUNT, orderedDataIds.size());
+            for (int i = 0; i < DATA_COUNT; ++i)
+                assertEquals((short) (Short.MIN_VALUE + 1 + i), orderedDataIds.get(i).shortValue());
+        } finally {
+            ProtocolConfig.setUseFlowControl(useFlowControl);
+        }
+    }
+
+    @Test
+    public final void testDeliveryLanes() {
+        final List<Short> orderedDataIds = new ArrayList<Short>();
+        final List<Short> unorderedDataIds = new ArrayList<Short>();
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener(), new ProtocolConfig());
+        PackagingController sender = new PackagingController(senderController);
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                orderedDataIds.add(dataId);
+            }
+
+            @Override
+            public void handleUnorderedData(short dataId, ByteBuffer unorderedData) {
+                unorderedDataIds.add(dataId);
+            }
+        }, new ProtocolConfig()));
+
+        SendOptions options = new SendOptions();
+        options.setLane(ProtocolConfig.DeliveryLane.UNRELIABLE);
+        try {
+            sender.send(ByteBuffer.allocate(8), options);
+            fail("data sent on lane without using delivery lanes");
+        } catch (IllegalStateException e) {
+        }
+
+        boolean useDeliveryLanes = ProtocolConfig.useDeliveryLanes();
+        ProtocolConfig.setUseDeliveryLanes(true);
+        try {
+            try {
+                sender.send(ByteBuffer.allocate(sender.getMaximumDataSize() + 1), options);
+                fail("data of unreliable lane fragmented");
+            } catch (IllegalArgumentException e) {
+            }
+
+            // the lanes take turns, every fifth packet is lost and the third one is delayed
+            ProtocolConfig.DeliveryLane[] lanes = ProtocolConfig.DeliveryLane.values();
+            ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+            ByteBuffer delayedDatagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+            int receivedCount = 0;
+            for (int i = 0; i < 5 * lanes.length; ++i) {
+                options.setLane(lanes[i % lanes.length]);
+                for (Packet packet : sender.send(ByteBuffer.allocate(8), options).values()) {
+                    if (i % 5 == 4)
+                        continue;
+
+                    ByteBuffer out = i == 2 ? delayedDatagram : datagram;
+                    out.clear();
+                    sender.send(packet, out);
+                    out.flip();
+                    if (i != 2)
+                        receivedCount += receiver.receive(out).size();
+                }
+            }
+            assertEquals(5 * lanes.length - 5, receivedCount);
+            assertTrue("outdated data of sequenced lane received", receiver.receive(delayedDatagram).isEmpty());
+
+            // the lost data of the ordered lane blocks only the ordered lane
+            assertEquals(1, orderedDataIds.size());
+            assertEquals(Short.MIN_VALUE + 1, orderedDataIds.get(0).shortValue());
+            assertEquals(4, unorderedDataIds.size());
+            for (int i = 0; i < unorderedDataIds.size(); ++i)
+                assertEquals(1, (unorderedDataIds.get(i) - Short.MIN_VALUE - 1) % lanes.length);
+
+            // only the lost datas of the reliable lanes are retransmitted
+            datagram.clear();
+            receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+            datagram.flip();
+            sender.receive(datagram);
+            senderController.timeShift = 10000L;
+            NavigableMap<Short, Packet> packets = sender.send((ByteBuffer) null);
+            assertEquals(1, packets.size());
+            Packet retransmit = packets.firstEntry().getValue();
+            assertEquals(2, retransmit.getSegments().size());
+            assertEquals(Short.MIN_VALUE + 1 + 4, retransmit.getFirstSegment().getDataId().shortValue());
+            assertEquals(Short.MIN_VALUE + 1 + 9, retransmit.getLastSegment().getDataId().shortValue());
+
+            // the ordered lane is unblocked, the unordered data is handed over once
+            for (int i = 0; i < 2; ++i) {
+                datagram.clear();
+                sender.send(retransmit, datagram);
+                datagram.flip();
+                receiver.receive(datagram);
+            }
+            assertEquals(5, orderedDataIds.size());
+            for (int i = 0; i < orderedDataIds.size(); ++i)
+                assertEquals(Short.MIN_VALUE + 1 + i * lanes.length, orderedDataIds.get(i).shortValue());
+            assertEquals(5, unorderedDataIds.size());
+            assertEquals(Short.MIN_VALUE + 1 + 9, unorderedDataIds.get(4).shortValue());
+        } finally {
+            ProtocolConfig.setUseDeliveryLanes(useDeliveryLanes);
+        }
+    }
+
+    @Test
+    public final void testOrderedStreams() {
+        final int streamCount = 3;
+        final List<List<Short>> orderedDataIds = new ArrayList<List<Short>>();
+        for (int i = 0; i < streamCount; ++i)
+            orderedDataIds.add(new ArrayList<Short>());
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener(), new ProtocolConfig());
+        PackagingController sender = new PackagingController(senderController);
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                orderedDataIds.get(orderedData.get(0)).add(dataId);
+            }
+        }, new ProtocolConfig()));
+
+        SendOptions options = new SendOptions();
+        options.setStreamId(1);
+        try {
+            sender.send(ByteBuffer.allocate(8), options);
+            fail("data sent on stream without using delivery lanes");
+        } catch (IllegalStateException e) {
+        }
+
+        boolean useDeliveryLanes = ProtocolConfig.useDeliveryLanes();
+        ProtocolConfig.setUseDeliveryLanes(true);
+        try {
+            try {
+                options.setStreamId(ProtocolConfig.MAX_STREAM_ID + 1);
+                fail("data sent on invalid stream");
+            } catch (IllegalArgumentException e) {
+            }
+            options.setLane(ProtocolConfig.DeliveryLane.RELIABLE_UNORDERED);
+            try {
+                sender.send(ByteBuffer.allocate(8), options);
+                fail("data sent on stream of unordered lane");
+            } catch (IllegalArgumentException e) {
+            }
+            options.setLane(ProtocolConfig.DeliveryLane.RELIABLE_ORDERED);
+
+            // the streams take turns, the first data of stream 1 is lost
+            ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+            for (int i = 0; i < 5 * streamCount; ++i) {
+                ByteBuffer data = ByteBuffer.allocate(8);
+                data.put(0, (byte) (i % streamCount));
+                options.setStreamId(i % streamCount);
+                for (Packet packet : sender.send(data, options).values()) {
+                    if (i == 1)
+                        continue;
+
+                    datagram.clear();
+                    sender.send(packet, datagram);
+                    datagram.flip();
+                    receiver.receive(datagram);
+                }
+            }
+            // the lost data blocks only its own stream
+            assertEquals(5, orderedDataIds.get(0).size());
+            assertEquals(0, orderedDataIds.get(1).size());
+            assertEquals(5, orderedDataIds.get(2).size());
+
+            // the stream is unblocked once the lost data is retransmitted
+            datagram.clear();
+            receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+            datagram.flip();
+            sender.receive(datagram);
+            senderController.timeShift = 10000L;
+            for (Packet packet : sender.send((ByteBuffer) null).values()) {
+                datagram.clear();
+                sender.send(packet, datagram);
+                datagram.flip();
+                receiver.receive(datagram);
+            }
+            for (int stream = 0; stream < streamCount; ++stream) {
+                List<Short> dataIds = orderedDataIds.get(stream);
+                assertEquals(5, dataIds.size());
+                for (int i = 0; i < dataIds.size(); ++i)
+                    assertEquals(Short.MIN_VALUE + 1 + stream + i * streamCount, dataIds.get(i).shortValue());
+            }
+            assertEquals(streamCount, receiver.getStreamCount());
+
+            // idle streams are evicted once the default stream has moved on far enough
+            for (int i = 0; i <= ProtocolConfig.MAX_STREAM_OFFSET; ++i) {
+                for (Packet packet : sender.send(ByteBuffer.allocate(8)).values()) {
+                    datagram.clear();
+                    sender.send(packet, datagram);
+                    datagram.flip();
+                    receiver.receive(datagram);
+                    datagram.clear();
+                    receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+                    datagram.flip();
+                    sender.receive(datagram);
+                }
+            }
+            assertEquals(1, receiver.getStreamCount());
+        } finally {
+            ProtocolConfig.setUseDeliveryLanes(useDeliveryLanes);
+        }
+    }
+
+    @Test
+    public final void testDeadlines() {
+        final List<Short> unackedDataIds = new ArrayList<Short>();
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener() {
+            @Override
+            public void handleUnackedData(short dataId, ByteBuffer unackedData) {
+                unackedDataIds.add(dataId);
+            }
+        }, new ProtocolConfig());
+        PackagingController sender = new PackagingController(senderController);
+
+        SendOptions options = new SendOptions();
+        try {
+            options.setTimeout(-1L);
+            fail("data sent with invalid timeout");
+        } catch (IllegalArgumentException e) {
+        }
+
+        // all datas are lost, the second one is useless shortly after, the third one remains useful for longer
+        short firstDataId = sender.send(ByteBuffer.allocate(8)).firstKey();
+        options.setTimeout(100L);
+        short shortDataId = sender.send(ByteBuffer.allocate(8), options).firstKey();
+        options.setTimeout(60000L);
+        short longDataId = sender.send(ByteBuffer.allocate(8), options).firstKey();
+        assertTrue(unackedDataIds.isEmpty());
+
+        // the expired data is not retransmitted, the others are sent in order of their deadlines
+        senderController.timeShift = 10000L;
+        options.setTimeout(20000L);
+        NavigableMap<Short, Packet> packets = sender.send(ByteBuffer.allocate(8), options);
+        assertEquals(1, unackedDataIds.size());
+        assertEquals(shortDataId, unackedDataIds.get(0).shortValue());
+        assertEquals(1, packets.size());
+        List<Segment> segments = packets.firstEntry().getValue().getSegments();
+        assertEquals(3, segments.size());
+        assertEquals(longDataId + 1, segments.get(0).getDataId().shortValue());
+        assertEquals(longDataId, segments.get(1).getDataId().shortValue());
+        assertEquals(firstDataId, segments.get(2).getDataId().shortValue());
+    }
+
+    @Test
+    public final void testPriorities() {
+        // a fixed window, which the bulk datas exceed
+        ProtocolConfig senderConfig = new ProtocolConfig();
+        senderConfig.setCongestionController(new CongestionController() {
+            @Override
+            public int getCongestionWindow() {
+                return 2048;
+            }
+
+            @Override
+            public void handleAcked(int ackedBytes, int bytesInFlight, long timeNow) {
+            }
+
+            @Override
+            public void handleLost(int lostBytes, boolean timedOut, long smoothedRTT, long timeNow) {
+            }
+
+            @Override
+            public void handleRTTSample(long rtt, long smoothedRTT, long timeNow) {
+            }
+        });
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener(), senderConfig);
+        PackagingController sender = new PackagingController(senderController);
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener(),
+                new ProtocolConfig()));
+
+        // bulk datas are sent every 10 ms, an urgent data is sent alongside once the window is exhausted
+        List<ByteBuffer> datas = new ArrayList<ByteBuffer>();
+        SendOptions bulkOptions = new SendOptions();
+        bulkOptions.setPriority(ProtocolConfig.Priority.LOW);
+        SendOptions urgentOptions = new SendOptions();
+        urgentOptions.setPriority(ProtocolConfig.Priority.URGENT);
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        for (int i = 0; i < DATA_COUNT; ++i) {
+            senderController.timeShift += 10L;
+            datas.clear();
+            for (int j = 0; j < 12; ++j)
+                datas.add(ByteBuffer.allocate(200));
+            for (Packet packet : sender.send(datas, bulkOptions).values()) {
+                datagram.clear();
+                sender.send(packet, datagram);
+                datagram.flip();
+                receiver.receive(datagram);
+            }
+            for (Packet packet : sender.send(ByteBuffer.allocate(20), urgentOptions).values()) {
+                datagram.clear();
+                sender.send(packet, datagram);
+                datagram.flip();
+                receiver.receive(datagram);
+            }
+
+            datagram.clear();
+            receiver.send(receiver.send((ByteBuffer) null).firstEntry().getValue(), datagram);
+            datagram.flip();
+            sender.receive(datagram);
+        }
+
+        // the urgent datas are not held up by the bulk datas, which are not starved either
+        assertTrue("bulk datas not deferred", sender.getDeferredCount(ProtocolConfig.Priority.LOW) > 0);
+        assertEquals(DATA_COUNT, sender.getSentCount(ProtocolConfig.Priority.URGENT));
+        assertTrue("urgent datas delayed", sender.getMaximumQueuingDelay(ProtocolConfig.Priority.URGENT) <= 10L);
+        assertTrue("bulk datas starved", sender.getSentCount(ProtocolConfig.Priority.LOW) > 0);
+        assertTrue(sender.getAverageQueuingDelay(ProtocolConfig.Priority.LOW)
+                > sender.getAverageQueuingDelay(ProtocolConfig.Priority.URGENT));
+        assertEquals(0, sender.getSentCount(ProtocolConfig.Priority.NORMAL));
+    }
+
+    // sends datas, some of which are lost, but only the last acknowledgement reaches the sender,
+    // returns the number of acked datas
+    private static int sendAndAcknowledgeLast(boolean usePacketTransmissionIds) {
+        final Set<Short> ackedDataIds = new HashSet<Short>();
+        ProtocolConfig config = new ProtocolConfig();
+        config.setUsePacketTransmissionIds(usePacketTransmissionIds);
+        PackagingController sender = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleAckedData(short dataId, ByteBuffer ackedData) {
+                ackedDataIds.add(dataId);
+            }
+        }, config));
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener(), config));
+
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        for (int i = 0; i < ACKED_DATA_COUNT; ++i) {
+            for (Packet packet : sender.send(ByteBuffer.allocate(8)).values()) {
+                // a burst of lost datas splits the received transmissions into two ranges
+                if (i >= ACKED_DATA_COUNT / 3 && i < ACKED_DATA_COUNT / 3 + LOST_DATA_COUNT)
+                    continue;
+
+                datagram.clear();
+                sender.send(packet, datagram);
+                datagram.flip();
+                receiver.receive(datagram);
+            }
+        }
+
+        Packet ack = receiver.send((ByteBuffer) null).firstEntry().getValue();
+        datagram.clear();
+        receiver.send(ack, datagram);
+        datagram.flip();
+        sender.receive(datagram);
+
+        return ackedDataIds.size();
+    }
+
+    // retransmits all sent datas at once and acknowledges their packets at once, returns the number of acked datas
+    private static int retransmitAllAndAcknowledge(boolean usePacketTransmissionIds) {
+        final Set<Short> ackedDataIds = new HashSet<Short>();
+        ProtocolConfig config = new ProtocolConfig();
+        config.setUsePacketTransmissionIds(usePacketTransmissionIds);
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener() {
+            @Override
+            public void handleAckedData(short dataId, ByteBuffer ackedData) {
+                ackedDataIds.add(dataId);
+            }
+        }, config);
+        PackagingController sender = new PackagingController(senderController);
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener(), config));
+
+        // datas are lost on their first transmission
+        for (int i = 0; i < ACKED_DATA_COUNT; ++i)
+            sender.send(ByteBuffer.allocate(32));
+
+        // all datas time out and are retransmitted together, many of them per packet
+        senderController.timeShift = 10000L;
+        NavigableMap<Short, Packet> packets = sender.send((ByteBuffer) null);
+        assertTrue("datas are not packed together", packets.size() < ACKED_DATA_COUNT / 10);
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        for (Packet packet : packets.values()) {
+            datagram.clear();
+            sender.send(packet, datagram);
+            datagram.flip();
+            receiver.receive(datagram);
+        }
+
+        // a single acknowledgement reaches the sender
+        Packet ack = receiver.send((ByteBuffer) null).firstEntry().getValue();
+        datagram.clear();
+        receiver.send(ack, datagram);
+        datagram.flip();
+        sender.receive(datagram);
+
+        return ackedDataIds.size();
+    }
+
+    // retransmits all sent datas at once, returns the number of packets they are packed into
+    private static int retransmitAll(PayloadCodec senderCodec, PayloadCodec receiverCodec) {
+        final Set<Short> receivedDataIds = new HashSet<Short>();
+        ShiftedTimeController senderController = new ShiftedTimeController(new ProtocolListener(), new ProtocolConfig());
+        PackagingController sender = new PackagingController(senderController, senderCodec);
+        PackagingController receiver = new PackagingController(new ProcessingController(new ProtocolListener() {
+            @Override
+            public void handleOrderedData(short dataId, ByteBuffer orderedData) {
+                receivedDataIds.add(dataId);
+            }
+        }, new ProtocolConfig()), receiverCodec);
+
+        // datas are lost on their first transmission
+        byte[] text = "position=(1.0,2.0,3.0) rotation=(0.0,0.0) velocity=(1.0,1.0,1.0) ".getBytes();
+        for (int i = 0; i < DATA_COUNT; ++i) {
+            ByteBuffer data = ByteBuffer.wrap(text);
+            data.put(0, (byte) i);
+            sender.send(data);
+        }
+
+        // all datas time out and are retransmitted together
+        senderController.timeShift = 10000L;
+        NavigableMap<Short, Packet> packets = sender.send((ByteBuffer) null);
+        int packetCount = 0;
+        ByteBuffer datagram = ByteBuffer.allocate(ProtocolConfig.getHighestPossibleMTUSize());
+        for (Packet packet : packets.values()) {
+            datagram.clear();
+            sender.send(packet, datagram);
+            assertTrue("packet exceeds maximum packet size", datagram.position() <= sender.getMaximumPacketSize());
+            datagram.flip();
+            receiver.receive(datagram);
+            packetCount++;
+        }
+
+        assertEquals("not all datas received", DATA_COUNT, receivedDataIds.size());
+        return packetCount;
+    }
+}
@@ -10,7 +10,13 @@ package com.github.mucaho.jnetrobust.controller;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
 import mockit.Deencapsulation;
+import com.github.mucaho.jnetrobust.PayloadCodec;
+import com.github.mucaho.jnetrobust.ProtocolConfig;
 import com.github.mucaho.jnetrobust.control.Segment;
+import com.github.mucaho.jnetrobust.util.BufferArena;
+import com.github.mucaho.jnetrobust.util.LZPayloadCodec;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -18,10 +24,15 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 import static com.github.mucaho.jarrayliterals.ArrayShortcuts.$;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(JUnitParamsRunner.class)
 public class PacketTest {
@@ -29,6 +40,19 @@ public class PacketTest {
         System.setProperty("jmockit-mockParameters", "annotated");
     }
 
+    // the tested features require the compact header format
+    private final boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+
+    @Before
+    public void setUp() {
+        ProtocolConfig.setUseCompactHeaders(true);
+    }
+
+    @After
+    public void tearDown() {
+        ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+    }
+
     @Test(expected = IndexOutOfBoundsException.class)
     public final void testExceptions() {
         Packet packet = new Packet();
@@ -37,12 +61,39 @@ public class PacketTest {
         }
     }
 
+    @Test
+    public final void testRelease() {
+        Packet packet = Packet.obtain();
+        Segment segment = Segment.obtain((short) 5, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        packet.addLastSegment(segment);
+        segment.release();
+
+        long recycleCount = Packet.getPool().getRecycleCount();
+        packet.release();
+        assertEquals("Packet is recycled", recycleCount + 1, Packet.getPool().getRecycleCount());
+        assertTrue("Recycled packet was reset", packet.getSegments().isEmpty());
+        assertEquals("Segments are released along with the packet", 0, segment.getReferenceCount());
+
+        try {
+            packet.release();
+            fail("Recycled packet must not be released again");
+        } catch (IllegalStateException e) {
+        }
+        assertEquals("Packet is recycled twice", recycleCount + 1, Packet.getPool().getRecycleCount());
+
+        // packets are released once again after being obtained from the pool
+        packet = Packet.obtain();
+        packet.release();
+    }
+
     public Object[][] parametersForTestSerialization() {
         Object[][] out = (Object[][])
                 $($(
-                        (short) 10, 1831
+                        (short) 10, 1831, false
                 ), $(
-                        (short) 20, 1245
+                        (short) 20, 1245, true
+                ), $(
+                        (short) 30, 0, true
                 ));
 
         return out;
@@ -51,36 +102,531 @@ public class PacketTest {
 
     @Test
     @Parameters
-    public final void testSerialization(Short ack, Integer lastAcks) throws Exception {
-        Packet inPacket, outPacket;
+    public final void testSerialization(Short ack, Integer lastAcks, Boolean compact) throws Exception {
+        boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+        ProtocolConfig.setUseCompactHeaders(compact);
+        try {
+            Packet inPacket, outPacket;
 
-        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(outStream);
-        {
-            outPacket = new Packet();
+            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(outStream);
+            {
+                outPacket = new Packet();
+                outPacket.setTransmissionAck(ack);
+                outPacket.setPrecedingTransmissionAcks(lastAcks);
+                // ids wrap around between segments
+                short[] ids = new short[] {Short.MIN_VALUE, Short.MAX_VALUE, 0};
+                for (short id : ids) {
+                    Segment segment = new Segment();
+                    Deencapsulation.setField(segment, "dataId", id);
+                    Deencapsulation.invoke(segment, "addTransmissionId", id);
+                    outPacket.addLastSegment(segment);
+                }
+                outPacket.writeExternal(out);
+            }
+            out.close();
+
+            ByteArrayInputStream inStream = new ByteArrayInputStream(outStream.toByteArray());
+            ObjectInputStream in = new ObjectInputStream(inStream);
+            {
+                inPacket = new Packet();
+                inPacket.readExternal(in);
+            }
+            in.close();
+
+            assertEquals("ack mismatch", outPacket.getTransmissionAck(), inPacket.getTransmissionAck());
+            assertEquals("lastAck mismatch", outPacket.getPrecedingTransmissionAcks(), inPacket.getPrecedingTransmissionAcks());
+            assertNotSame("datas are different objects", outPacket.getFirstSegment(), inPacket.getFirstSegment());
+            assertEquals("segments size mismatch", outPacket.getSegments().size(), inPacket.getSegments().size());
+            for (int i = 0; i < outPacket.getSegments().size(); ++i) {
+                Segment outSegment = outPacket.getSegments().get(i);
+                Segment inSegment = inPacket.getSegments().get(i);
+                assertEquals("dataId mismatch", outSegment.getDataId(), inSegment.getDataId());
+                assertEquals("transmissionId mismatch", outSegment.getLastTransmissionId(), inSegment.getLastTransmissionId());
+            }
+        } finally {
+            ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+        }
+    }
+
+
+    public Object[][] parametersForTestByteBufferSerialization() {
+        Object[][] out = (Object[][])
+                $($(
+                        (short) 10, 1831, false, false, 1
+                ), $(
+                        (short) 20, 1245, true, false, 1
+                ), $(
+                        (short) 30, 1831, false, true, 1
+                ), $(
+                        (short) 40, 0, true, true, 1
+                ), $(
+                        (short) 50, 1245, false, true, -300
+                ));
+
+        return out;
+    }
+
+    @Test
+    @Parameters
+    public final void testByteBufferSerialization(Short ack, Integer lastAcks, Boolean direct, Boolean compact,
+                                                  Integer transmissionIdStep) throws Exception {
+        boolean useDirectBuffers = ProtocolConfig.useDirectBuffers();
+        boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+        ProtocolConfig.setUseDirectBuffers(direct);
+        ProtocolConfig.setUseCompactHeaders(compact);
+        try {
+            Packet outPacket = Packet.obtain();
             outPacket.setTransmissionAck(ack);
             outPacket.setPrecedingTransmissionAcks(lastAcks);
-            Segment segment = new Segment();
-            Deencapsulation.setField(segment, "dataId", Short.MIN_VALUE);
-            Deencapsulation.invoke(segment, "addTransmissionId", Short.MIN_VALUE);
+            for (short dataId = 0; dataId < 3; ++dataId) {
+                ByteBuffer data = ByteBuffer.allocate(100 * dataId);
+                while (data.hasRemaining())
+                    data.put((byte) data.position());
+                data.flip();
+
+                Segment segment = Segment.obtain(dataId, data);
+                Deencapsulation.invoke(segment, "addTransmissionId", (short) (dataId * transmissionIdStep));
+                outPacket.addLastSegment(segment);
+                segment.release();
+            }
+
+            ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(1024) : ByteBuffer.allocate(1024);
+            Packet.writeExternalStatic(outPacket, buffer);
+            assertEquals("size mismatch", outPacket.getSize(), buffer.position());
+            buffer.flip();
+            Packet inPacket = Packet.readExternalStatic(buffer);
+            assertEquals("buffer not consumed", 0, buffer.remaining());
+
+            // absolute index variants leave the position untouched
+            ByteBuffer absoluteBuffer = direct ? ByteBuffer.allocateDirect(1024) : ByteBuffer.allocate(1024);
+            int index = 7;
+            assertEquals("end index mismatch", index + outPacket.getSize(),
+                    Packet.writeExternalStatic(outPacket, absoluteBuffer, index));
+            assertEquals("position changed", 0, absoluteBuffer.position());
+            Packet absolutePacket = Packet.readExternalStatic(absoluteBuffer, index);
+            assertEquals("position changed", 0, absoluteBuffer.position());
+            assertEquals("size mismatch", outPacket.getSize(), absolutePacket.getSize());
+            assertEquals("segments size mismatch", outPacket.getSegments().size(), absolutePacket.getSegments().size());
+            assertEquals("data mismatch",
+                    outPacket.getLastSegment().getData(), absolutePacket.getLastSegment().getData());
+            absolutePacket.release();
+
+            ByteBuffer smallBuffer = ByteBuffer.allocate(outPacket.getSize() - 1);
+            try {
+                Packet.writeExternalStatic(outPacket, smallBuffer);
+                fail("buffer should overflow");
+            } catch (BufferOverflowException e) {
+            }
+            try {
+                buffer.rewind();
+                buffer.limit(buffer.limit() - 1);
+                Packet.readExternalStatic(buffer);
+                fail("buffer should underflow");
+            } catch (BufferUnderflowException e) {
+            }
+
+            assertEquals("ack mismatch", outPacket.getTransmissionAck(), inPacket.getTransmissionAck());
+            assertEquals("lastAck mismatch", outPacket.getPrecedingTransmissionAcks(), inPacket.getPrecedingTransmissionAcks());
+            assertEquals("segments size mismatch", outPacket.getSegments().size(), inPacket.getSegments().size());
+            for (int i = 0; i < outPacket.getSegments().size(); ++i) {
+                Segment outSegment = outPacket.getSegments().get(i);
+                Segment inSegment = inPacket.getSegments().get(i);
+                assertEquals("dataId mismatch", outSegment.getDataId(), inSegment.getDataId());
+                assertEquals("transmissionId mismatch", outSegment.getLastTransmissionId(), inSegment.getLastTransmissionId());
+                assertEquals("data mismatch", outSegment.getData(), inSegment.getData());
+                if (inSegment.getData() != null)
+                    assertEquals("data memory mismatch", direct, inSegment.getData().isDirect());
+            }
+
+            outPacket.release();
+            inPacket.release();
+        } finally {
+            ProtocolConfig.setUseDirectBuffers(useDirectBuffers);
+            ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+        }
+    }
+
+    public Object[][] parametersForTestGatheringSerialization() {
+        Object[][] out = (Object[][])
+                $($(
+                        false
+                ), $(
+                        true
+                ));
+
+        return out;
+    }
+
+    @Test
+    @Parameters
+    public final void testGatheringSerialization(Boolean compact) throws Exception {
+        boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+        ProtocolConfig.setUseCompactHeaders(compact);
+        try {
+            Packet packet = Packet.obtain();
+            packet.setTransmissionAck((short) 10);
+            packet.setPrecedingTransmissionAcks(1831);
+            for (short dataId = 0; dataId < 4; ++dataId) {
+                // segments without data in between
+                ByteBuffer data = ByteBuffer.allocate(dataId % 2 == 0 ? 0 : 100 * dataId);
+                while (data.hasRemaining())
+                    data.put((byte) data.position());
+                data.flip();
+
+                Segment segment = Segment.obtain(dataId, data);
+                Deencapsulation.invoke(segment, "addTransmissionId", dataId);
+                packet.addLastSegment(segment);
+                segment.release();
+            }
+
+            ByteBuffer expected = ByteBuffer.allocate(1024);
+            Packet.writeExternalStatic(packet, expected);
+            expected.flip();
+
+            ByteBuffer headers = ByteBuffer.allocate(1024);
+            headers.position(3);
+            ByteBuffer[] buffers = new ByteBuffer[Packet.getMaximumGatheringBufferCount(packet.getSegments().size())];
+            int count = Packet.writeExternalStatic(packet, headers, buffers);
+            assertEquals("headers, data, headers, data", 4, count);
+            assertEquals("data mismatch", packet.getSegments().get(1).getData(), buffers[1]);
+            assertTrue("data is a view", buffers[1].isReadOnly());
+            assertEquals("header position mismatch", 3 + packet.getSize() - 100 - 300, headers.position());
+
+            ByteBuffer gathered = ByteBuffer.allocate(1024);
+            for (int i = 0; i < count; ++i)
+                gathered.put(buffers[i]);
+            gathered.flip();
+            assertEquals("gathered packet mismatch", expected, gathered);
+
+            try {
+                Packet.writeExternalStatic(packet, ByteBuffer.allocate(4), buffers);
+                fail("header buffer should overflow");
+            } catch (BufferOverflowException e) {
+            }
+            try {
+                Packet.writeExternalStatic(packet, headers, new ByteBuffer[count]);
+                fail("buffer array should be too short");
+            } catch (IllegalArgumentException e) {
+            }
+
+            packet.release();
+        } finally {
+            ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+        }
+    }
+
+    @Test
+    public final void testCompressedSerialization() throws Exception {
+        PayloadCodec codec = new LZPayloadCodec();
+        Packet outPacket = Packet.obtain();
+        outPacket.setTransmissionAck((short) 10);
+        outPacket.setPrecedingTransmissionAcks(1831);
+        byte[] text = "position=(1.0,2.0,3.0) rotation=(0.0,0.0) ".getBytes();
+        for (short dataId = 0; dataId < 8; ++dataId) {
+            ByteBuffer data = ByteBuffer.wrap(text);
+            Segment segment = Segment.obtain(dataId, data);
+            Deencapsulation.invoke(segment, "addTransmissionId", (short) (dataId - 4));
             outPacket.addLastSegment(segment);
-            outPacket.writeExternal(out);
+            segment.release();
+        }
+        int uncompressedSize = outPacket.getSize();
+
+        ByteBuffer uncompressed = ByteBuffer.allocate(1024);
+        int segmentsSize = Packet.writeSegmentsStatic(outPacket.getSegments(), uncompressed, 0);
+        uncompressed.limit(segmentsSize);
+        ByteBuffer compressed = BufferArena.instance.allocate(1024);
+        assertTrue(codec.compress(uncompressed, compressed));
+        compressed.flip();
+        outPacket.setCompressedSegments(compressed, segmentsSize);
+        assertTrue("packet not compressed", outPacket.isCompressed());
+        assertTrue("compressed packet not smaller", outPacket.getSize() < uncompressedSize / 2);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        assertEquals("end index mismatch", outPacket.getSize(), Packet.writeExternalStatic(outPacket, buffer, 0));
+        buffer.limit(outPacket.getSize());
+        assertPacketEquals(outPacket, Packet.readExternalStatic(buffer, false, codec));
+        assertEquals("buffer not consumed", 0, buffer.remaining());
+        try {
+            Packet.readExternalStatic(buffer, 0);
+            fail("compressed packet read without codec");
+        } catch (IllegalStateException e) {
         }
+
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(outStream);
+        Packet.writeExternalStatic(outPacket, out);
         out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+        assertPacketEquals(outPacket, Packet.readExternalStatic(in, codec));
+        in.close();
+
+        ByteBuffer[] buffers = new ByteBuffer[Packet.getMaximumGatheringBufferCount(outPacket.getSegments().size())];
+        ByteBuffer headers = ByteBuffer.allocate(1024);
+        assertEquals("headers, compressed segments", 2, Packet.writeExternalStatic(outPacket, headers, buffers));
+        ByteBuffer gathered = ByteBuffer.allocate(1024);
+        gathered.put(buffers[0]).put(buffers[1]).flip();
+        buffer.rewind();
+        assertEquals("gathered packet mismatch", buffer, gathered);
 
-        ByteArrayInputStream inStream = new ByteArrayInputStream(outStream.toByteArray());
-        ObjectInputStream in = new ObjectInputStream(inStream);
-        {
-            inPacket = new Packet();
-            inPacket.readExternal(in);
+        Packet clone = outPacket.clone();
+        assertTrue("clone not compressed", clone.isCompressed());
+        assertEquals("clone size mismatch", outPacket.getSize(), clone.getSize());
+        clone.release();
+
+        // compressed segments are discarded once the transmission ids are no longer consecutive
+        Deencapsulation.invoke(outPacket.getLastSegment(), "addTransmissionId", (short) 100);
+        assertTrue("packet not written uncompressed", outPacket.getSize() > uncompressedSize);
+        buffer.clear();
+        assertEquals("end index mismatch", outPacket.getSize(), Packet.writeExternalStatic(outPacket, buffer, 0));
+        assertPacketEquals(outPacket, Packet.readExternalStatic(buffer, 0));
+        outPacket.release();
+    }
+
+    @Test
+    public final void testSharedTransmissionIdSerialization() throws Exception {
+        Packet outPacket = Packet.obtain();
+        outPacket.setTransmissionAck((short) 10);
+        outPacket.setTransmissionId((short) 42);
+        // segments keep their own transmission ids, only the shared one is written
+        short[] transmissionIds = new short[] {7, 3, 100};
+        for (short i = 0; i < transmissionIds.length; ++i) {
+            Segment segment = Segment.obtain((short) (20 + i), ByteBuffer.wrap(new byte[] {1, 2, (byte) i}));
+            Deencapsulation.invoke(segment, "addTransmissionId", transmissionIds[i]);
+            outPacket.addLastSegment(segment);
+            segment.release();
         }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        assertEquals("end index mismatch", outPacket.getSize(), Packet.writeExternalStatic(outPacket, buffer, 0));
+        buffer.limit(outPacket.getSize());
+        assertSharedTransmissionId(outPacket, Packet.readExternalStatic(buffer, 0));
+
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(outStream);
+        Packet.writeExternalStatic(outPacket, out);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+        assertSharedTransmissionId(outPacket, Packet.readExternalStatic(in));
         in.close();
 
+        Packet clone = outPacket.clone();
+        assertEquals("clone transmissionId mismatch", outPacket.getTransmissionId(), clone.getTransmissionId());
+        clone.release();
+        outPacket.release();
+    }
+
+    @Test
+    public final void testAckRangeSerialization() throws Exception {
+        int ackRangeLimit = ProtocolConfig.getAckRangeLimit();
+        ProtocolConfig.setAckRangeLimit(4);
+        try {
+            Packet outPacket = Packet.obtain();
+            outPacket.setTransmissionAck((short) 10);
+            // ranges wrap around
+            short[] ranges = new short[] {-70, 48, -300, 1, Short.MAX_VALUE - 5, 900};
+            outPacket.setAckRanges(ranges, 3);
+            int size = outPacket.getSize();
+            assertEquals("ack range size", 1 + (1 + 1) + (2 + 1) + (3 + 2), size - (1 + 2 + 4));
+
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            assertEquals("end index mismatch", size, Packet.writeExternalStatic(outPacket, buffer, 0));
+            buffer.limit(size);
+            assertAckRanges(outPacket, Packet.readExternalStatic(buffer, 0));
+
+            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(outStream);
+            Packet.writeExternalStatic(outPacket, out);
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+            assertAckRanges(outPacket, Packet.readExternalStatic(in));
+            in.close();
+
+            Packet clone = outPacket.clone();
+            assertAckRanges(outPacket, clone);
+
+            // more ranges than permitted
+            ProtocolConfig.setAckRangeLimit(2);
+            try {
+                Packet.readExternalStatic(buffer, 0);
+                fail("too many ack ranges accepted");
+            } catch (IllegalArgumentException e) {
+            }
+            outPacket.release();
+        } finally {
+            ProtocolConfig.setAckRangeLimit(ackRangeLimit);
+        }
+    }
+
+    @Test
+    public final void testReceiveWindowSerialization() throws Exception {
+        boolean useFlowControl = ProtocolConfig.useFlowControl();
+        ProtocolConfig.setUseFlowControl(true);
+        try {
+            Packet outPacket = Packet.obtain();
+            outPacket.setTransmissionAck((short) 10);
+            outPacket.setReceiveWindow((short) -5, 200);
+            int size = outPacket.getSize();
+            assertEquals("receive window size", 2 + 2, size - (1 + 2));
+
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            assertEquals("end index mismatch", size, Packet.writeExternalStatic(outPacket, buffer, 0));
+            buffer.limit(size);
+            assertReceiveWindow(outPacket, Packet.readExternalStatic(buffer, 0));
+
+            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(outStream);
+            Packet.writeExternalStatic(outPacket, out);
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+            assertReceiveWindow(outPacket, Packet.readExternalStatic(in));
+            in.close();
+
+            assertReceiveWindow(outPacket, outPacket.clone());
+
+            // larger window than permitted
+            outPacket.setReceiveWindow((short) -5, ProtocolConfig.MAX_PACKET_QUEUE_LIMIT + 1);
+            Packet.writeExternalStatic(outPacket, buffer, 0);
+            try {
+                Packet.readExternalStatic(buffer, 0);
+                fail("too large receive window accepted");
+            } catch (IllegalArgumentException e) {
+            }
+            outPacket.release();
+        } finally {
+            ProtocolConfig.setUseFlowControl(useFlowControl);
+        }
+    }
+
+    @Test
+    public final void testParitySerialization() throws Exception {
+        Packet outPacket = Packet.obtain();
+        outPacket.setTransmissionAck((short) 10);
+        outPacket.setPrecedingTransmissionAcks(5L);
+        ByteBuffer parity = BufferArena.instance.allocate(300);
+        for (int i = 0; i < 300; ++i)
+            parity.put(i, (byte) (i * 7));
+        parity.limit(300);
+        outPacket.setParity(parity);
+        assertTrue(outPacket.isParity());
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        assertEquals("end index mismatch", outPacket.getSize(), Packet.writeExternalStatic(outPacket, buffer, 0));
+        buffer.limit(outPacket.getSize());
+        assertParity(outPacket, Packet.readExternalStatic(buffer, 0));
+
+        ByteBuffer headers = ByteBuffer.allocate(Packet.getMaximumHeaderSize() + 8);
+        ByteBuffer[] views = new ByteBuffer[Packet.getMaximumGatheringBufferCount(0) + 1];
+        int viewCount = Packet.writeExternalStatic(outPacket, headers, views);
+        ByteBuffer gathered = ByteBuffer.allocate(1024);
+        for (int i = 0; i < viewCount; ++i)
+            gathered.put(views[i]);
+        gathered.flip();
+        assertEquals("gathered bytes mismatch", buffer, gathered);
+
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(outStream);
+        Packet.writeExternalStatic(outPacket, out);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+        assertParity(outPacket, Packet.readExternalStatic(in));
+        in.close();
+
+        assertParity(outPacket, outPacket.clone());
+        outPacket.release();
+    }
+
+    private static void assertParity(Packet outPacket, Packet inPacket) {
         assertEquals("ack mismatch", outPacket.getTransmissionAck(), inPacket.getTransmissionAck());
         assertEquals("lastAck mismatch", outPacket.getPrecedingTransmissionAcks(), inPacket.getPrecedingTransmissionAcks());
-        assertNotSame("datas are different objects", outPacket.getFirstSegment(), inPacket.getFirstSegment());
+        assertTrue("parity missing", inPacket.isParity());
+        assertEquals("segments size mismatch", 0, inPacket.getSegments().size());
+        assertEquals("parity mismatch", outPacket.getParity(), inPacket.getParity());
+        inPacket.release();
+    }
+
+    private static void assertReceiveWindow(Packet outPacket, Packet inPacket) {
+        assertEquals("ack mismatch", outPacket.getTransmissionAck(), inPacket.getTransmissionAck());
+        assertEquals("next dataId mismatch", outPacket.getReceiveNextDataId(), inPacket.getReceiveNextDataId());
+        assertEquals("receive window mismatch", outPacket.getReceiveWindow(), inPacket.getReceiveWindow());
+        inPacket.release();
+    }
+
+    private static void assertAckRanges(Packet outPacket, Packet inPacket) {
+        assertEquals("ack mismatch", outPacket.getTransmissionAck(), inPacket.getTransmissionAck());
+        assertEquals("ack range count mismatch", outPacket.getAckRangeCount(), inPacket.getAckRangeCount());
+        for (int i = 0; i < outPacket.getAckRangeCount(); ++i) {
+            assertEquals("ack range start mismatch", outPacket.getAckRangeStart(i), inPacket.getAckRangeStart(i));
+            assertEquals("ack range length mismatch", outPacket.getAckRangeLength(i), inPacket.getAckRangeLength(i));
+        }
+        inPacket.release();
     }
 
+    private static void assertSharedTransmissionId(Packet outPacket, Packet inPacket) {
+        assertEquals("transmissionId mismatch", outPacket.getTransmissionId(), inPacket.getTransmissionId());
+        assertEquals("segments size mismatch", outPacket.getSegments().size(), inPacket.getSegments().size());
+        for (int i = 0; i < outPacket.getSegments().size(); ++i) {
+            Segment outSegment = outPacket.getSegments().get(i);
+            Segment inSegment = inPacket.getSegments().get(i);
+            assertEquals("dataId mismatch", outSegment.getDataId(), inSegment.getDataId());
+            assertEquals("segment transmissionId mismatch", outPacket.getTransmissionId(), inSegment.getLastTransmissionId());
+            assertEquals("data mismatch", outSegment.getData(), inSegment.getData());
+        }
+        inPacket.release();
+    }
+
+    private static void assertPacketEquals(Packet outPacket, Packet inPacket) {
+        assertEquals("ack mismatch", outPacket.getTransmissionAck(), inPacket.getTransmissionAck());
+        assertEquals("lastAck mismatch", outPacket.getPrecedingTransmissionAcks(), inPacket.getPrecedingTransmissionAcks());
+        assertEquals("segments size mismatch", outPacket.getSegments().size(), inPacket.getSegments().size());
+        for (int i = 0; i < outPacket.getSegments().size(); ++i) {
+            Segment outSegment = outPacket.getSegments().get(i);
+            Segment inSegment = inPacket.getSegments().get(i);
+            assertEquals("dataId mismatch", outSegment.getDataId(), inSegment.getDataId());
+            assertEquals("transmissionId mismatch", outSegment.getLastTransmissionId(), inSegment.getLastTransmissionId());
+            assertEquals("data mismatch", outSegment.getData(), inSegment.getData());
+        }
+        inPacket.release();
+    }
+
+    @Test
+    public final void testCompactHeaderSize() {
+        boolean useCompactHeaders = ProtocolConfig.useCompactHeaders();
+        try {
+            Packet packet = new Packet();
+            packet.setTransmissionAck((short) 1);
+            for (short id = 100; id < 110; ++id) {
+                Segment segment = new Segment();
+                Deencapsulation.setField(segment, "dataId", id);
+                Deencapsulation.invoke(segment, "addTransmissionId", (short) (id + 1000));
+                packet.addLastSegment(segment);
+            }
+
+            ProtocolConfig.setUseCompactHeaders(false);
+            assertEquals("fixed header size", 2 + 4 + 1 + 10 * 6, packet.getSize());
+
+            // segment count with flags, which takes two bytes for more than 3 segments; transmissionAck;
+            // no preceding acks; transmissionId of the first segment;
+            // first segment with full dataId; other segments with single byte dataId deltas and implied transmission ids;
+            // single byte data sizes
+            ProtocolConfig.setUseCompactHeaders(true);
+            assertEquals("compact header size", 2 + 2 + (2 + 2) + 9 * 1 + 10 * 1, packet.getSize());
+
+            packet.setPrecedingTransmissionAcks(1L);
+            assertEquals("compact header size with preceding acks", 2 + 2 + 4 + (2 + 2) + 9 * 1 + 10 * 1, packet.getSize());
+
+            // transmission id shared by all segments takes the place of the transmissionId of the first segment
+            packet.setTransmissionId((short) 42);
+            assertEquals("compact header size with shared transmission id",
+                    2 + 2 + 4 + (2 + 2) + 9 * 1 + 10 * 1, packet.getSize());
+
+            ByteBuffer buffer = ByteBuffer.allocate(packet.getSize());
+            Packet.writeExternalStatic(packet, buffer);
+            assertEquals("buffer not filled", 0, buffer.remaining());
+        } finally {
+            ProtocolConfig.setUseCompactHeaders(useCompactHeaders);
+        }
+    }
 
     public Object[][] parametersForTestClone() {
         Object[][] out = (Object[][])
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.controller;
+
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import com.github.mucaho.jnetrobust.control.Segment;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PriorityControllerTest {
+    private static final int SEGMENT_COUNT = 16;
+    private static final int DATA_SIZE = 100;
+
+    private static short dataId = Short.MIN_VALUE;
+
+    private static Segment createSegment(ProtocolConfig.Priority priority) {
+        Segment segment = Segment.obtain(++dataId, ByteBuffer.allocate(DATA_SIZE));
+        segment.setPriority(priority);
+        return segment;
+    }
+
+    private static List<Segment> createSegments(ProtocolConfig.Priority first, ProtocolConfig.Priority second) {
+        List<Segment> segments = new ArrayList<Segment>();
+        for (int i = 0; i < SEGMENT_COUNT; ++i)
+            segments.add(createSegment(i < SEGMENT_COUNT / 2 ? first : second));
+        return segments;
+    }
+
+    private static int count(List<Segment> segments, int end, ProtocolConfig.Priority priority) {
+        int count = 0;
+        for (int i = 0; i < end; ++i) {
+            if (segments.get(i).getPriority() == priority)
+                count++;
+        }
+        return count;
+    }
+
+    private static void release(List<Segment> segments) {
+        for (Segment segment : segments)
+            segment.release();
+    }
+
+    @Test
+    public final void testSamePriority() {
+        PriorityController priorityController = new PriorityController();
+        List<Segment> segments = createSegments(ProtocolConfig.Priority.LOW, ProtocolConfig.Priority.LOW);
+        List<Segment> expectedSegments = new ArrayList<Segment>(segments);
+
+        priorityController.schedule(segments);
+        assertEquals(expectedSegments, segments);
+
+        release(segments);
+    }
+
+    @Test
+    public final void testWeightedShare() {
+        PriorityController priorityController = new PriorityController();
+        List<Segment> segments = createSegments(ProtocolConfig.Priority.LOW, ProtocolConfig.Priority.URGENT);
+        Segment firstLowSegment = segments.get(0);
+
+        // the priorities take turns according to their weights, the higher one first
+        priorityController.schedule(segments);
+        assertEquals(SEGMENT_COUNT, segments.size());
+        assertEquals(ProtocolConfig.Priority.URGENT, segments.get(0).getPriority());
+        assertSame(firstLowSegment, segments.get(1));
+        assertEquals(1, count(segments, 9, ProtocolConfig.Priority.LOW));
+        assertEquals(8, count(segments, 9, ProtocolConfig.Priority.URGENT));
+
+        // the order within each priority is kept
+        short previousDataId = Short.MIN_VALUE;
+        for (Segment segment : segments) {
+            if (segment.getPriority() == ProtocolConfig.Priority.LOW) {
+                assertTrue(segment.getDataId() > previousDataId);
+                previousDataId = segment.getDataId();
+            }
+        }
+
+        release(segments);
+    }
+
+    @Test
+    public final void testIdlePriority() {
+        PriorityController priorityController = new PriorityController();
+
+        // the low priority was idle, thus it does not catch up on the share it did not use
+        for (int i = 0; i < SEGMENT_COUNT * 4; ++i) {
+            Segment segment = createSegment(ProtocolConfig.Priority.URGENT);
+            priorityController.addSent(segment, 0L);
+            segment.release();
+        }
+        List<Segment> segments = createSegments(ProtocolConfig.Priority.LOW, ProtocolConfig.Priority.URGENT);
+        priorityController.schedule(segments);
+        assertEquals(1, count(segments, 8, ProtocolConfig.Priority.LOW));
+
+        // only sent segments are accounted for, the deferred urgent ones are still ahead
+        priorityController.addSent(segments.get(0), 0L);
+        priorityController.schedule(segments);
+        assertEquals(0, count(segments, 7, ProtocolConfig.Priority.LOW));
+
+        release(segments);
+    }
+
+    @Test
+    public final void testCounters() {
+        PriorityController priorityController = new PriorityController();
+        Segment urgentSegment = createSegment(ProtocolConfig.Priority.URGENT);
+        Segment lowSegment = createSegment(ProtocolConfig.Priority.LOW);
+
+        priorityController.addSent(urgentSegment, 10L);
+        priorityController.addSent(urgentSegment, 30L);
+        // retransmissions do not count
+        priorityController.addSent(urgentSegment, -1L);
+        priorityController.addDeferred(lowSegment);
+        priorityController.addDeferred(lowSegment);
+        priorityController.addSent(lowSegment, 100L);
+
+        assertEquals(2L, priorityController.getSentCount(ProtocolConfig.Priority.URGENT));
+        assertEquals(2L * urgentSegment.getSize(), priorityController.getSentBytes(ProtocolConfig.Priority.URGENT));
+        assertEquals(0L, priorityController.getDeferredCount(ProtocolConfig.Priority.URGENT));
+        assertEquals(20L, priorityController.getAverageQueuingDelay(ProtocolConfig.Priority.URGENT));
+        assertEquals(30L, priorityController.getMaximumQueuingDelay(ProtocolConfig.Priority.URGENT));
+
+        assertEquals(1L, priorityController.getSentCount(ProtocolConfig.Priority.LOW));
+        assertEquals(2L, priorityController.getDeferredCount(ProtocolConfig.Priority.LOW));
+        assertEquals(100L, priorityController.getAverageQueuingDelay(ProtocolConfig.Priority.LOW));
+
+        assertEquals(0L, priorityController.getSentCount(ProtocolConfig.Priority.NORMAL));
+        assertEquals(0L, priorityController.getAverageQueuingDelay(ProtocolConfig.Priority.NORMAL));
+
+        urgentSegment.release();
+        lowSegment.release();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class BufferArenaTest {
+    private final long memoryLimit = ProtocolConfig.getBufferArenaMemoryLimit();
+
+    @After
+    public void tearDown() {
+        ProtocolConfig.setBufferArenaMemoryLimit(memoryLimit);
+    }
+
+    @Test
+    public void testSizeClasses() {
+        BufferArena arena = new BufferArena();
+        int mtu = ProtocolConfig.getHighestPossibleMTUSize();
+
+        assertEquals(32, arena.allocate(0).capacity());
+        assertEquals(32, arena.allocate(1).capacity());
+        assertEquals(32, arena.allocate(32).capacity());
+        assertEquals(64, arena.allocate(33).capacity());
+        assertEquals(128, arena.allocate(100).capacity());
+        assertEquals(mtu, arena.allocate(mtu - 1).capacity());
+        assertEquals(mtu, arena.allocate(mtu).capacity());
+        assertEquals("Oversized buffers are allocated exactly", mtu + 1, arena.allocate(mtu + 1).capacity());
+    }
+
+    @Test
+    public void testReuse() {
+        BufferArena arena = new BufferArena();
+
+        ByteBuffer small = arena.allocate(8);
+        small.putLong(Long.MAX_VALUE);
+        arena.release(small);
+        assertEquals(small.capacity(), arena.getRetainedBytes());
+
+        assertNotSame("Different size class is not reused", small, arena.allocate(40));
+        ByteBuffer reused = arena.allocate(20);
+        assertSame("Same size class is reused", small, reused);
+        assertEquals("Reused buffer is cleared", 0, reused.position());
+        assertEquals("Reused buffer is cleared", reused.capacity(), reused.limit());
+        assertEquals(0, arena.getRetainedBytes());
+        assertEquals(1, arena.getHitCount());
+        assertEquals(2, arena.getMissCount());
+
+        arena.release(ByteBuffer.allocate(100));
+        assertEquals("Foreign buffers are not kept", 1, arena.getDropCount());
+        assertEquals(0, arena.getRetainedBytes());
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        BufferArena arena = new BufferArena();
+        ProtocolConfig.setBufferArenaMemoryLimit(256);
+
+        ByteBuffer[] buffers = new ByteBuffer[10];
+        for (int i = 0; i < buffers.length; ++i)
+            buffers[i] = arena.allocate(64);
+        for (ByteBuffer buffer : buffers)
+            arena.release(buffer);
+
+        assertEquals("Retained memory is limited", 256, arena.getRetainedBytes());
+        assertEquals(6, arena.getDropCount());
+
+        arena.clear();
+        assertEquals(0, arena.getRetainedBytes());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.CongestionController;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnitParamsRunner.class)
+public class CongestionControllerTest {
+    private static final int SEGMENT_SIZE = 1000;
+    private static final long RTT = 50L;
+
+    public Object[][] parametersForTestTimeout() {
+        return new Object[][] {
+                {new AIMDCongestionController(), AIMDCongestionController.MIN_WINDOW},
+                {new DelayBasedCongestionController(), DelayBasedCongestionController.MIN_WINDOW}
+        };
+    }
+
+    @Test
+    @Parameters
+    public final void testTimeout(CongestionController controller, int minWindow) {
+        long timeNow = 0L;
+        for (int i = 0; i < 100; ++i) {
+            timeNow += 10L;
+            controller.handleRTTSample(RTT, RTT, timeNow);
+            controller.handleAcked(SEGMENT_SIZE, 0, timeNow);
+        }
+        assertTrue("window did not grow", controller.getCongestionWindow() > minWindow);
+
+        controller.handleLost(SEGMENT_SIZE, true, RTT, timeNow);
+        assertEquals("window not reduced on timeout", minWindow, controller.getCongestionWindow());
+    }
+
+    @Test
+    public final void testAIMD() {
+        AIMDCongestionController controller = new AIMDCongestionController();
+        long timeNow = 0L;
+
+        // slow start
+        int window = controller.getCongestionWindow();
+        controller.handleAcked(SEGMENT_SIZE, 0, timeNow);
+        assertEquals(window + SEGMENT_SIZE, controller.getCongestionWindow());
+
+        // multiplicative decrease, once per round-trip time
+        window = controller.getCongestionWindow();
+        controller.handleLost(SEGMENT_SIZE, false, RTT, timeNow);
+        assertEquals(window / 2, controller.getCongestionWindow());
+        assertEquals(window / 2, controller.getSlowStartThreshold());
+        controller.handleLost(SEGMENT_SIZE, false, RTT, timeNow + RTT / 2);
+        assertEquals(window / 2, controller.getCongestionWindow());
+
+        // additive increase, by one segment size per window
+        window = controller.getCongestionWindow();
+        for (int acked = 0; acked < window; acked += SEGMENT_SIZE)
+            controller.handleAcked(SEGMENT_SIZE, 0, timeNow + RTT);
+        assertEquals(window + AIMDCongestionController.SEGMENT_SIZE, controller.getCongestionWindow());
+
+        window = controller.getCongestionWindow();
+        controller.handleLost(SEGMENT_SIZE, false, RTT, timeNow + 2 * RTT);
+        assertEquals(Math.max(window / 2, AIMDCongestionController.MIN_WINDOW), controller.getCongestionWindow());
+    }
+
+    @Test
+    public final void testDelayBased() {
+        DelayBasedCongestionController controller = new DelayBasedCongestionController();
+        long timeNow = 0L;
+
+        // the path delivers 100 bytes per ms, the window grows until the delivery rate stops growing
+        for (int i = 0; i < 100 && controller.isStartup(); ++i) {
+            timeNow += 10L;
+            controller.handleRTTSample(RTT + i % 5, RTT + 2, timeNow);
+            controller.handleAcked(SEGMENT_SIZE, 0, timeNow);
+        }
+        assertFalse("startup not left", controller.isStartup());
+        assertEquals(RTT, controller.getMinRTT());
+        assertEquals(100f, controller.getBandwidth(), 1f);
+
+        // the window approximates twice the bandwidth-delay product, losses do not shrink it
+        timeNow += 10L;
+        controller.handleAcked(SEGMENT_SIZE, 0, timeNow);
+        assertEquals(2 * 100 * RTT, controller.getCongestionWindow(), 2 * RTT);
+        controller.handleLost(SEGMENT_SIZE, false, RTT, timeNow);
+        assertEquals(2 * 100 * RTT, controller.getCongestionWindow(), 2 * RTT);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ObjectPoolTest {
+    private static class Item {
+        private boolean reset = false;
+    }
+
+    private static ObjectPool<Item> createPool(int capacity) {
+        return new ObjectPool<Item>(capacity) {
+            @Override
+            protected Item create() {
+                return new Item();
+            }
+
+            @Override
+            protected void reset(Item item) {
+                item.reset = true;
+            }
+        };
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        ObjectPool<Item> pool = createPool(2);
+
+        Item first = pool.obtain();
+        Item second = pool.obtain();
+        Item third = pool.obtain();
+        assertEquals(3, pool.getMissCount());
+        assertEquals(0, pool.getHitCount());
+
+        pool.recycle(first);
+        pool.recycle(second);
+        pool.recycle(third);
+        assertTrue("Recycled object was reset", first.reset);
+        assertEquals(3, pool.getRecycleCount());
+        assertEquals("Pool is bounded by capacity", 2, pool.getFreeCount());
+        assertEquals(1, pool.getDropCount());
+
+        assertSame("Most recently recycled object is reused", second, pool.obtain());
+        assertSame(first, pool.obtain());
+        assertEquals(2, pool.getHitCount());
+        assertEquals(0, pool.getFreeCount());
+
+        assertNotSame(first, pool.obtain());
+        assertEquals(4, pool.getMissCount());
+    }
+
+    @Test
+    public void testLeakDetection() throws InterruptedException {
+        ObjectPool<Item> pool = createPool(16);
+        pool.setLeakDetection(true);
+
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 0; i < 8; ++i)
+            items.add(pool.obtain());
+        for (int i = 0; i < 4; ++i)
+            pool.recycle(items.get(i));
+        items.clear();
+        pool.clear();
+
+        for (int i = 0; i < 100 && pool.getLeakCount() < 4; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals("Objects not recycled are leaked", 4, pool.getLeakCount());
+
+        pool.setLeakDetection(false);
+        pool.obtain();
+        System.gc();
+        Thread.sleep(10);
+        assertEquals("Leaks are not counted without leak detection", 4, pool.getLeakCount());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.PayloadCodec;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static com.github.mucaho.jarrayliterals.ArrayShortcuts.$;
+import static org.junit.Assert.*;
+
+@RunWith(JUnitParamsRunner.class)
+public class PayloadCodecTest {
+
+    public Object[][] parametersForTestRoundTrip() {
+        byte[] dictionary = "position rotation velocity".getBytes();
+        Object[][] out = (Object[][])
+                $($(
+                        new DeflatePayloadCodec(), false
+                ), $(
+                        new DeflatePayloadCodec(9, dictionary), true
+                ), $(
+                        new LZPayloadCodec(), false
+                ), $(
+                        new LZPayloadCodec(), true
+                ));
+
+        return out;
+    }
+
+    @Test
+    @Parameters
+    public final void testRoundTrip(PayloadCodec codec, Boolean direct) {
+        Random random = new Random(42L);
+        byte[] text = "position=(1.0,2.0,3.0) rotation=(0.0,0.0) velocity=(1.0,1.0,1.0) ".getBytes();
+        int[] sizes = new int[] {0, 1, 4, 15, 16, 300, 2048};
+
+        for (int size : sizes) {
+            for (int compressible = 0; compressible < 2; ++compressible) {
+                ByteBuffer src = allocate(size, direct);
+                for (int i = 0; i < size; ++i)
+                    src.put(i, compressible > 0 ? text[i % text.length] : (byte) random.nextInt());
+                ByteBuffer compressed = allocate(size * 2 + 16, direct);
+                ByteBuffer decompressed = allocate(size, direct);
+
+                assertTrue("compression failed", codec.compress(src, compressed));
+                assertEquals("source not consumed", 0, src.remaining());
+                if (compressible > 0 && size >= 300)
+                    assertTrue("repetitive data not compressed", compressed.position() < size / 2);
+
+                compressed.flip();
+                assertTrue("decompression failed", codec.decompress(compressed, decompressed));
+                assertEquals("compressed bytes not consumed", 0, compressed.remaining());
+                assertEquals("size mismatch", size, decompressed.position());
+
+                src.rewind();
+                decompressed.flip();
+                assertEquals("content mismatch", src, decompressed);
+            }
+        }
+    }
+
+    public Object[][] parametersForTestInsufficientSpace() {
+        return new Object[][] {
+                {new DeflatePayloadCodec()},
+                {new LZPayloadCodec()}
+        };
+    }
+
+    @Test
+    @Parameters
+    public final void testInsufficientSpace(PayloadCodec codec) {
+        Random random = new Random(42L);
+        ByteBuffer src = ByteBuffer.allocate(256);
+        random.nextBytes(src.array());
+
+        // random bytes do not compress
+        assertFalse("compressed into less space", codec.compress(src, ByteBuffer.allocate(128)));
+
+        src.rewind();
+        ByteBuffer compressed = ByteBuffer.allocate(512);
+        assertTrue(codec.compress(src, compressed));
+        compressed.flip();
+        assertFalse("decompressed into less space", codec.decompress(compressed, ByteBuffer.allocate(255)));
+    }
+
+    @Test
+    public final void testMalformed() {
+        PayloadCodec codec = new LZPayloadCodec();
+        ByteBuffer src = ByteBuffer.allocate(64);
+        for (int i = 0; i < src.limit(); ++i)
+            src.put(i, (byte) (i % 8));
+        ByteBuffer compressed = ByteBuffer.allocate(128);
+        assertTrue(codec.compress(src, compressed));
+        compressed.flip();
+
+        // truncated back-reference
+        ByteBuffer truncated = compressed.duplicate();
+        truncated.limit(10);
+        assertFalse("truncated input accepted", codec.decompress(truncated, ByteBuffer.allocate(64)));
+
+        // back-reference before the start of the output
+        ByteBuffer invalidOffset = ByteBuffer.wrap(new byte[] {0x10, 1, 5, 0});
+        assertFalse("invalid offset accepted", codec.decompress(invalidOffset, ByteBuffer.allocate(64)));
+    }
+
+    private static ByteBuffer allocate(int size, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+}
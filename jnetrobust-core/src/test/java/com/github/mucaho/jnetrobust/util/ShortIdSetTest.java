@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ShortIdSetTest {
+
+    @Test
+    public void testNavigation() {
+        ShortIdSet set = new ShortIdSet(1);
+        assertTrue(set.isEmpty());
+        assertNull(set.higher((short) 0));
+        assertNull(set.lower((short) 0));
+
+        // ids wrap around
+        assertTrue(set.addId(Short.MIN_VALUE));
+        assertTrue(set.addId((short) 32766));
+        assertTrue(set.addId((short) -32766));
+        assertTrue(set.addId(Short.MAX_VALUE));
+        assertFalse(set.addId(Short.MAX_VALUE));
+        assertEquals(4, set.size());
+
+        assertEquals(Short.valueOf((short) 32766), set.first());
+        assertEquals(Short.valueOf((short) -32766), set.last());
+        assertEquals(Short.valueOf(Short.MIN_VALUE), set.higher(Short.MAX_VALUE));
+        assertEquals(Short.valueOf(Short.MAX_VALUE), set.lower(Short.MIN_VALUE));
+        assertEquals(Short.valueOf(Short.MIN_VALUE), set.ceiling(Short.MIN_VALUE));
+        assertEquals(Short.valueOf(Short.MIN_VALUE), set.floor(Short.MIN_VALUE));
+        assertNull(set.higher((short) -32766));
+        assertNull(set.lower((short) 32766));
+        assertArrayEquals(new Short[] {32766, Short.MAX_VALUE, Short.MIN_VALUE, -32766}, set.toArray());
+
+        assertTrue(set.removeId(Short.MIN_VALUE));
+        assertFalse(set.removeId(Short.MIN_VALUE));
+        assertFalse(set.contains(Short.MIN_VALUE));
+        assertEquals("Higher id of absent id", Short.valueOf((short) -32766), set.higher(Short.MIN_VALUE));
+        assertEquals("Lower id of absent id", Short.valueOf(Short.MAX_VALUE), set.lower(Short.MIN_VALUE));
+
+        set.clearIds();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(Short.MAX_VALUE));
+    }
+
+    @Test
+    public void testAgainstTreeSet() {
+        Random random = new Random(42L);
+        ShortIdSet set = new ShortIdSet(4);
+        TreeSet<Short> expectedSet = new TreeSet<Short>(IdComparator.instance);
+
+        short windowStart = (short) -1000;
+        for (int i = 0; i < 100000; ++i) {
+            short id = (short) (windowStart + random.nextInt(16));
+            if (random.nextInt(3) > 0) {
+                assertEquals(expectedSet.add(id), set.addId(id));
+            } else {
+                assertEquals(expectedSet.remove(id), set.removeId(id));
+            }
+            while (!expectedSet.isEmpty() && IdComparator.instance.compare(expectedSet.first(), windowStart) < 0) {
+                Short first = expectedSet.pollFirst();
+                assertTrue(set.removeId(first));
+            }
+            windowStart += random.nextInt(2);
+
+            assertEquals(expectedSet.size(), set.size());
+            assertEquals(expectedSet, set);
+            if (!expectedSet.isEmpty()) {
+                assertEquals(expectedSet.first(), set.first());
+                assertEquals(expectedSet.last(), set.last());
+            }
+            short probe = (short) (windowStart - 4 + random.nextInt(24));
+            assertEquals(expectedSet.contains(probe), set.contains(probe));
+            assertEquals(expectedSet.higher(probe), set.higher(probe));
+            assertEquals(expectedSet.lower(probe), set.lower(probe));
+            assertEquals(expectedSet.ceiling(probe), set.ceiling(probe));
+            assertEquals(expectedSet.floor(probe), set.floor(probe));
+        }
+
+        assertEquals(new ArrayList<Short>(expectedSet), new ArrayList<Short>(set));
+        assertEquals(new ArrayList<Short>(expectedSet.descendingSet()), new ArrayList<Short>(set.descendingSet()));
+        Short middle = set.higher(set.first());
+        if (middle != null)
+            assertEquals(expectedSet.headSet(middle, true), set.headSet(middle, true));
+    }
+
+    @Test
+    public void testReadOnly() {
+        ShortIdSet set = new ShortIdSet(1);
+        set.addId((short) 1);
+
+        try {
+            set.add((short) 2);
+            fail("Set should be read-only");
+        } catch (UnsupportedOperationException e) {
+        }
+
+        try {
+            set.remove((short) 1);
+            fail("Set should be read-only");
+        } catch (UnsupportedOperationException e) {
+        }
+
+        try {
+            set.iterator().remove();
+            fail("Set should be read-only");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ShortWindowMapTest {
+
+    @Test
+    public void testNavigation() {
+        ShortWindowMap<String> map = new ShortWindowMap<String>();
+        assertNull(map.firstKey());
+        assertNull(map.lastKey());
+        assertNull(map.higherKey((short) 0));
+        assertNull(map.lowerKey((short) 0));
+
+        // window wraps around
+        map.put((short) 32766, "a");
+        map.put(Short.MAX_VALUE, "b");
+        map.put(Short.MIN_VALUE, "c");
+        map.put((short) -32766, "d");
+        assertEquals(4, map.size());
+
+        assertEquals(Short.valueOf((short) 32766), map.firstKey());
+        assertEquals(Short.valueOf((short) -32766), map.lastKey());
+        assertEquals(Short.valueOf(Short.MIN_VALUE), map.higherKey(Short.MAX_VALUE));
+        assertEquals(Short.valueOf(Short.MAX_VALUE), map.lowerKey(Short.MIN_VALUE));
+        assertEquals("Lower than first", Short.valueOf((short) 32766), map.higherKey((short) 0));
+        assertNull(map.higherKey((short) -32766));
+        assertNull(map.lowerKey((short) 32766));
+
+        assertEquals("c", map.remove(Short.MIN_VALUE));
+        assertNull(map.remove(Short.MIN_VALUE));
+        assertEquals("Higher key of absent key", Short.valueOf((short) -32766), map.higherKey(Short.MIN_VALUE));
+        assertEquals("Lower key of absent key", Short.valueOf(Short.MAX_VALUE), map.lowerKey(Short.MIN_VALUE));
+
+        assertEquals("a", map.remove((short) 32766));
+        assertEquals(Short.valueOf(Short.MAX_VALUE), map.firstKey());
+        assertEquals("d", map.remove((short) -32766));
+        assertEquals(Short.valueOf(Short.MAX_VALUE), map.lastKey());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(Short.MAX_VALUE));
+        assertNull(map.firstKey());
+    }
+
+    @Test
+    public void testStoredKeys() {
+        ShortWindowMap<String> map = new ShortWindowMap<String>();
+        Short key = Short.valueOf((short) 1000);
+        map.put(key, "a");
+        map.put((short) 1001, "b");
+
+        assertSame("Supplied key instance is returned", key, map.firstKey());
+        assertSame(key, map.lowerKey((short) 1001));
+        assertSame(key, map.keySet().iterator().next());
+    }
+
+    @Test
+    public void testAgainstTreeMap() {
+        Random random = new Random(42L);
+        ShortWindowMap<Integer> map = new ShortWindowMap<Integer>();
+        TreeMap<Short, Integer> expectedMap = new TreeMap<Short, Integer>(IdComparator.instance);
+
+        short windowStart = (short) -1000;
+        for (int i = 0; i < 100000; ++i) {
+            // slide the window over the whole id range, while varying its size
+            int windowSize = 1 + (i / 1000) % 2 * 511 + random.nextInt(64);
+            short key = (short) (windowStart + random.nextInt(windowSize));
+            if (random.nextInt(3) > 0) {
+                assertEquals(expectedMap.put(key, i), map.put(key, i));
+            } else {
+                assertEquals(expectedMap.remove(key), map.remove(key));
+            }
+            while (!expectedMap.isEmpty()
+                    && IdComparator.instance.compare(expectedMap.firstKey(), (short) (windowStart - windowSize)) < 0) {
+                assertEquals(expectedMap.remove(expectedMap.firstKey()), map.remove(map.firstKey()));
+            }
+            windowStart += random.nextInt(4);
+
+            assertEquals(expectedMap.size(), map.size());
+            assertEquals(expectedMap.isEmpty() ? null : expectedMap.firstKey(), map.firstKey());
+            assertEquals(expectedMap.isEmpty() ? null : expectedMap.lastKey(), map.lastKey());
+            short probe = (short) (windowStart - windowSize + random.nextInt(2 * windowSize));
+            assertEquals(expectedMap.get(probe), map.get(probe));
+            assertEquals(expectedMap.containsKey(probe), map.containsKey(probe));
+            if (!expectedMap.isEmpty()) {
+                assertEquals(expectedMap.higherKey(probe), map.higherKey(probe));
+                assertEquals(expectedMap.lowerKey(probe), map.lowerKey(probe));
+            }
+        }
+
+        assertEquals(expectedMap, map);
+        assertEquals(new ArrayList<Short>(expectedMap.keySet()), new ArrayList<Short>(map.keySet()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValue() {
+        new ShortWindowMap<String>().put((short) 0, null);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class VarIntTest {
+
+    private static final int[] VALUES = new int[] {
+            0, 1, 127, 128, 255, 16383, 16384, 65535, 2097151, 2097152, Integer.MAX_VALUE, -1, Integer.MIN_VALUE
+    };
+    private static final int[] SIZES = new int[] {
+            1, 1, 1, 2, 2, 2, 3, 3, 3, 4, 5, 5, 5
+    };
+
+    @Test
+    public void testByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        for (int i = 0; i < VALUES.length; ++i) {
+            int index = 3;
+            assertEquals("size mismatch", SIZES[i], VarInt.getSize(VALUES[i]));
+            assertEquals("end index mismatch", index + SIZES[i], VarInt.write(buffer, index, VALUES[i]));
+            assertEquals("value mismatch", VALUES[i], VarInt.read(buffer, index));
+            assertEquals("position changed", 0, buffer.position());
+        }
+    }
+
+    @Test
+    public void testObjectStream() throws Exception {
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(outStream);
+        for (int value : VALUES)
+            VarInt.write(out, value);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(outStream.toByteArray()));
+        for (int value : VALUES)
+            assertEquals("value mismatch", value, VarInt.read(in));
+        in.close();
+    }
+
+    @Test
+    public void testDelta() {
+        short[] baseIds = new short[] {0, 1, -1, Short.MAX_VALUE, Short.MIN_VALUE};
+        for (short baseId : baseIds) {
+            for (int delta = Short.MIN_VALUE; delta <= Short.MAX_VALUE; ++delta) {
+                short id = (short) (baseId + delta);
+                int encodedDelta = VarInt.encodeDelta(id, baseId);
+                assertEquals("delta is not mapped to 16 bits", encodedDelta & 0xFFFF, encodedDelta);
+                assertEquals("id mismatch", id, VarInt.decodeDelta(encodedDelta, baseId));
+            }
+        }
+
+        assertEquals(0, VarInt.encodeDelta((short) 5, (short) 5));
+        assertEquals(1, VarInt.encodeDelta((short) 4, (short) 5));
+        assertEquals(2, VarInt.encodeDelta((short) 6, (short) 5));
+        assertEquals("wrap around", 2, VarInt.encodeDelta(Short.MIN_VALUE, Short.MAX_VALUE));
+        assertEquals("wrap around", 1, VarInt.encodeDelta(Short.MAX_VALUE, Short.MIN_VALUE));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014 mucaho (https://github.com/mucaho).
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.github.mucaho.jnetrobust.util;
+
+import com.github.mucaho.jnetrobust.ProtocolConfig;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnitParamsRunner.class)
+public class XorDeltaTest {
+
+    public Object[][] parametersForTestRoundTrip() {
+        return new Object[][] {
+                {0, 0, 0},
+                {16, 16, 0},
+                {16, 16, 1},
+                {64, 64, 5},
+                {64, 32, 5},
+                {32, 64, 5},
+                {300, 300, 300},
+                {1024, 1000, 20}
+        };
+    }
+
+    @Test
+    @Parameters
+    public final void testRoundTrip(int size, int baselineSize, int changes) {
+        Random random = new Random(42L);
+        ByteBuffer baseline = ByteBuffer.allocate(baselineSize);
+        random.nextBytes(baseline.array());
+        ByteBuffer data = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; ++i)
+            data.put(i, i < baselineSize ? baseline.get(i) : (byte) random.nextInt());
+        for (int i = 0; i < changes; ++i)
+            data.put(random.nextInt(size), (byte) random.nextInt());
+
+        ByteBuffer delta = ByteBuffer.allocate(size * 2 + 16);
+        int deltaSize = XorDelta.encode(data, baseline, delta);
+        assertTrue("encoding failed", deltaSize > 0);
+        if (size == baselineSize && size >= 64 && changes <= 5)
+            assertTrue("unchanged bytes were not omitted", deltaSize < size / 2);
+        delta.limit(deltaSize);
+
+        assertEquals("decoded size mismatch", size, XorDelta.getDecodedSize(delta));
+        ByteBuffer decoded = ByteBuffer.allocate(size);
+        assertEquals("decoded size mismatch", size, XorDelta.decode(delta, baseline, decoded));
+        assertEquals("content mismatch", data, decoded);
+        assertEquals("position modified", 0, data.position());
+        assertEquals("position modified", 0, delta.position());
+    }
+
+    @Test
+    public final void testInsufficientSpace() {
+        ByteBuffer baseline = ByteBuffer.allocate(64);
+        ByteBuffer data = ByteBuffer.allocate(64);
+        for (int i = 0; i < data.limit(); ++i)
+            data.put(i, (byte) i);
+
+        ByteBuffer delta = ByteBuffer.allocate(64);
+        delta.limit(32);
+        assertEquals("encoded into less space", -1, XorDelta.encode(data, baseline, delta));
+    }
+
+    @Test
+    public final void testMalformed() {
+        ByteBuffer baseline = ByteBuffer.allocate(8);
+        ByteBuffer data = ByteBuffer.allocate(8);
+        data.put(3, (byte) 1);
+        ByteBuffer delta = ByteBuffer.allocate(16);
+        delta.limit(XorDelta.encode(data, baseline, delta));
+
+        ByteBuffer truncated = delta.duplicate();
+        truncated.limit(truncated.limit() - 1);
+        try {
+            XorDelta.decode(truncated, baseline, ByteBuffer.allocate(8));
+            fail("truncated delta accepted");
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            XorDelta.decode(delta, baseline, ByteBuffer.allocate(4));
+            fail("delta decoded into less space");
+        } catch (IllegalArgumentException e) {
+        }
+
+        // runs exceed the decoded size
+        ByteBuffer overlong = ByteBuffer.wrap(new byte[] {2, 1, 2, 5, 5});
+        try {
+            XorDelta.decode(overlong, baseline, ByteBuffer.allocate(8));
+            fail("overlong runs accepted");
+        } catch (IllegalArgumentException e) {
+        }
+
+        // the decoded size is checked before a buffer is allocated for it
+        ByteBuffer oversized = ByteBuffer.allocate(16);
+        oversized.limit(VarInt.write(oversized, 0, Integer.MAX_VALUE));
+        try {
+            XorDelta.getDecodedSize(oversized);
+            fail("oversized delta accepted");
+        } catch (IllegalArgumentException e) {
+        }
+        oversized.limit(VarInt.write(oversized, 0, ProtocolConfig.getHighestPossibleMTUSize() + 1));
+        try {
+            XorDelta.getDecodedSize(oversized);
+            fail("delta larger than the highest possible MTU size accepted");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
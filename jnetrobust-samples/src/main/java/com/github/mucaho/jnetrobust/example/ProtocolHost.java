@@ -16,7 +16,6 @@ import com.esotericsoftware.kryo.io.KryoObjectOutput;
 import com.github.mucaho.jnetrobust.Logger;
 import com.github.mucaho.jnetrobust.Protocol;
 import com.github.mucaho.jnetrobust.ProtocolListener;
-import com.github.mucaho.jnetrobust.control.Segment;
 import com.github.mucaho.jnetrobust.controller.Packet;
 import com.github.mucaho.jnetrobust.example.ProtocolHandle.ProtocolId;
 import com.github.mucaho.jnetrobust.example.ProtocolHandleListener.ProtocolException;
@@ -54,11 +53,9 @@ public class ProtocolHost {
     // serialization fields
     private final Kryo kryo;
 
-    private final ByteBuffer buffer = ByteBuffer.allocate(4096);
-    private final ByteBufferInput bufferInput = new ByteBufferInput();
-    private final ByteBufferOutput bufferOutput = new ByteBufferOutput();
-    private final KryoObjectInput objectInput;
-    private final KryoObjectOutput objectOutput;
+    // direct buffer is handed over to the channel without further copying,
+    // use ProtocolConfig.setUseDirectBuffers(true) to also keep the data in direct memory
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
 
     private final ByteBuffer bufferForSerialization = ByteBuffer.allocate(4096);
     private final ByteBufferInput bufferInputForSerialization = new ByteBufferInput();
@@ -78,14 +75,9 @@ public class ProtocolHost {
 
         // setup serialization
         kryo = new Kryo();
-        kryo.register(Packet.class); // add argument `new ExternalizableSerializer()` if needed
-        kryo.register(Segment.class); // add argument `new ExternalizableSerializer()` if needed
         for (Class<? extends Serializable> dataClass : dataClasses)
             kryo.register(dataClass);
 
-        objectInput = new KryoObjectInput(kryo, bufferInput);
-        objectOutput = new KryoObjectOutput(kryo, bufferOutput);
-
         objectInputForSerialization = new KryoObjectInput(kryo, bufferInputForSerialization);
         objectOutputForSerialization = new KryoObjectOutput(kryo, bufferOutputForSerialization);
 
@@ -280,9 +272,7 @@ public class ProtocolHost {
         while (key != null || currentKeyIsOkToBeNull) {
             buffer.clear();
             buffer.put(protocolId.getTopic());
-            bufferOutput.setBuffer(buffer);
-            protocol.send(packetMap.get(key), objectOutput);
-            bufferOutput.flush();
+            protocol.send(packetMap.get(key), buffer);
 
             buffer.flip();
             channel.send(buffer, protocolId.getRemoteAddress());
@@ -322,8 +312,7 @@ public class ProtocolHost {
             ProtocolId protocolId = new ProtocolId(buffer.get(), remoteAddress);
             Protocol protocol = protocols.get(protocolId);
 
-            bufferInput.setBuffer(buffer);
-            NavigableMap<Short, ByteBuffer> receivedEntries = protocol.receive(objectInput);
+            NavigableMap<Short, ByteBuffer> receivedEntries = protocol.receive(buffer);
             Short key = receivedEntries.isEmpty() ? null : receivedEntries.firstKey();
             while (key != null) {
                 ByteBuffer receivedData = receivedEntries.get(key);